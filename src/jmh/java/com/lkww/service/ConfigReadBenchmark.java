@@ -0,0 +1,71 @@
+package com.lkww.service;
+
+import com.lkww.config.JdbcConfiguration;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micronaut.jdbc.DataSourceResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads of the live JDBC configuration: the per-query read of the statement settings and the synchronized
+ * snapshot taken when a run starts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class ConfigReadBenchmark {
+
+    private HikariDataSource dataSource;
+    private JdbcConfigurationService jdbcConfigurationService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:jmh-config;DB_CLOSE_DELAY=-1");
+        config.setUsername("sa");
+        config.setMaximumPoolSize(1);
+        dataSource = new HikariDataSource(config);
+        jdbcConfigurationService = new JdbcConfigurationService(new JdbcConfiguration(), dataSource, DataSourceResolver.DEFAULT,
+                event -> { });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public int statementSettings() {
+        JdbcConfiguration config = jdbcConfigurationService.getCurrentConfiguration();
+        return config.getFetchSize() + config.getQueryTimeout();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int statementSettingsContended() {
+        JdbcConfiguration config = jdbcConfigurationService.getCurrentConfiguration();
+        return config.getFetchSize() + config.getQueryTimeout();
+    }
+
+    @Benchmark
+    public JdbcConfiguration snapshot() {
+        return jdbcConfigurationService.snapshotConfiguration();
+    }
+}
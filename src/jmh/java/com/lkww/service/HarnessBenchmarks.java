@@ -0,0 +1,131 @@
+package com.lkww.service;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Runs the harness benchmarks with the allocation profiler and reports the time and the bytes allocated per
+ * operation. The results are saved as a baseline; given an earlier baseline with {@code -Djmh.baseline=<file>},
+ * the run fails when a benchmark got slower than {@code -Djmh.tolerance} (default 0.25) or allocates more.
+ * Arguments are passed on to JMH, e.g. {@code -f 1 -wi 2 WorkerLoopBenchmark}.
+ */
+public class HarnessBenchmarks {
+
+    private static final Path RESULT_FILE = Path.of("target", "jmh-result.json");
+    private static final Path BASELINE_FILE = Path.of("target", "jmh-baseline.properties");
+    private static final String TIME_SUFFIX = ".nsPerOp";
+    private static final String ALLOCATION_SUFFIX = ".bytesPerOp";
+    // Allocation is exact apart from TLAB sampling noise, a few bytes either way are not a regression
+    private static final double ALLOCATION_SLACK_BYTES = 8;
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        Files.createDirectories(RESULT_FILE.getParent());
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .jvmArgs("-Xms1g", "-Xmx1g")
+                .resultFormat(ResultFormatType.JSON)
+                .result(RESULT_FILE.toString())
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        Properties current = toProperties(results);
+        try (Writer writer = Files.newBufferedWriter(BASELINE_FILE)) {
+            current.store(writer, "Harness benchmark baseline");
+        }
+        System.out.println("Baseline written to " + BASELINE_FILE.toAbsolutePath());
+
+        String baselinePath = System.getProperty("jmh.baseline");
+        if (baselinePath != null && !baselinePath.isBlank()) {
+            double tolerance = Double.parseDouble(System.getProperty("jmh.tolerance", "0.25"));
+            List<String> regressions = compare(current, load(Path.of(baselinePath)), tolerance);
+            if (!regressions.isEmpty()) {
+                regressions.forEach(regression -> System.out.println("REGRESSION " + regression));
+                System.exit(1);
+            }
+            System.out.println("No regressions against " + baselinePath);
+        }
+    }
+
+    private static Properties toProperties(Collection<RunResult> results) {
+        Properties properties = new Properties();
+        for (RunResult result : results) {
+            String name = describe(result);
+            properties.setProperty(name + TIME_SUFFIX, format(result.getPrimaryResult().getScore()));
+            Result<?> allocation = result.getSecondaryResults().entrySet().stream()
+                    .filter(entry -> entry.getKey().endsWith("gc.alloc.rate.norm"))
+                    .map(Map.Entry::getValue)
+                    .findFirst()
+                    .orElse(null);
+            if (allocation != null) {
+                properties.setProperty(name + ALLOCATION_SUFFIX, format(allocation.getScore()));
+            }
+        }
+        return properties;
+    }
+
+    private static String describe(RunResult result) {
+        var params = result.getParams();
+        String benchmark = params.getBenchmark().substring(params.getBenchmark().lastIndexOf('.',
+                params.getBenchmark().lastIndexOf('.') - 1) + 1);
+        List<String> values = new ArrayList<>();
+        for (String key : params.getParamsKeys()) {
+            values.add(key + "=" + params.getParam(key));
+        }
+        return values.isEmpty() ? benchmark : benchmark + "[" + String.join(",", values) + "]";
+    }
+
+    private static List<String> compare(Properties current, Properties baseline, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        for (var entry : new TreeMap<>(current).entrySet()) {
+            String key = (String) entry.getKey();
+            String previous = baseline.getProperty(key);
+            if (previous == null) {
+                continue;
+            }
+            double now = Double.parseDouble((String) entry.getValue());
+            double before = Double.parseDouble(previous);
+            boolean regressed = key.endsWith(ALLOCATION_SUFFIX)
+                    ? now > before + ALLOCATION_SLACK_BYTES
+                    : now > before * (1 + tolerance);
+            System.out.printf("%-90s %14.1f %14.1f %+8.1f%%%n", key, before, now, before > 0 ? (now / before - 1) * 100 : 0.0);
+            if (regressed) {
+                regressions.add(key + ": " + previous + " -> " + entry.getValue());
+            }
+        }
+        return regressions;
+    }
+
+    private static Properties load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+}
@@ -0,0 +1,129 @@
+package com.lkww.service;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bookkeeping a worker does around every query, without the database. {@link #successfulQuery()} and
+ * {@link #failedQuery()} follow the calls of TestExecutionService for one query in the same order, the other
+ * benchmarks take the steps apart.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class InstrumentationBenchmark {
+
+    private static final long LATENCY_NANOS = 1_234_567;
+    private static final QueryPhase[] PHASES = QueryPhase.values();
+
+    private PerformanceMetricsService metrics;
+    private LatencyHistogram histogram;
+    private PhaseRecorder phases;
+    private IntervalRecorder intervalRecorder;
+    private WorkloadMix.MixStatement statement;
+    private ErrorAggregator errors;
+    private SQLException failure;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        metrics = new PerformanceMetricsService(new SimpleMeterRegistry());
+        histogram = new LatencyHistogram();
+        phases = new PhaseRecorder();
+        intervalRecorder = new IntervalRecorder();
+        statement = WorkloadMix.single("SELECT 1").next();
+        failure = new SQLException("Benchmark failure", "08S01");
+        errors = new ErrorAggregator("jmh");
+    }
+
+    @Benchmark
+    public Timer.Sample startQueryTimer() {
+        return metrics.startQueryTimer();
+    }
+
+    @Benchmark
+    public void recordQuerySuccess() {
+        metrics.recordQuerySuccess(metrics.startQueryTimer());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordQuerySuccessContended() {
+        metrics.recordQuerySuccess(metrics.startQueryTimer());
+    }
+
+    @Benchmark
+    public void recordPhase() {
+        metrics.recordPhase(QueryPhase.EXECUTE, LATENCY_NANOS);
+    }
+
+    @Benchmark
+    public void recordHistogram() {
+        histogram.recordNanos(LATENCY_NANOS);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordHistogramContended() {
+        histogram.recordNanos(LATENCY_NANOS);
+    }
+
+    @Benchmark
+    public void recordInterval() {
+        intervalRecorder.recordNanos(LATENCY_NANOS);
+    }
+
+    @Benchmark
+    public void successfulQuery() {
+        Timer.Sample sample = metrics.startQueryTimer();
+        long startNanos = System.nanoTime();
+        long phaseStartNanos = System.nanoTime();
+        for (QueryPhase phase : PHASES) {
+            phaseStartNanos = markPhase(phase, phaseStartNanos);
+        }
+        metrics.recordRowsRead(1, 0);
+        metrics.recordQuerySuccess(sample);
+        long latencyNanos = System.nanoTime() - startNanos;
+        histogram.recordNanos(latencyNanos);
+        statement.recordSuccess(latencyNanos);
+        intervalRecorder.recordNanos(latencyNanos);
+    }
+
+    @Benchmark
+    public void failedQuery() {
+        Timer.Sample sample = metrics.startQueryTimer();
+        statement.recordError();
+        metrics.recordQueryError(sample, errors.record(failure));
+        intervalRecorder.recordError();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void failedQueryContended() {
+        failedQuery();
+    }
+
+    private long markPhase(QueryPhase phase, long phaseStartNanos) {
+        long now = System.nanoTime();
+        phases.record(phase, now - phaseStartNanos);
+        metrics.recordPhase(phase, now - phaseStartNanos);
+        return now;
+    }
+}
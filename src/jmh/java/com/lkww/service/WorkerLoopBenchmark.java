@@ -0,0 +1,125 @@
+package com.lkww.service;
+
+import com.lkww.controller.TestController.TestRequest;
+import com.lkww.service.TestExecutionService.ResultConsumption;
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.json.JsonMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One query against in-memory H2, once as bare JDBC and once through the worker's own
+ * {@link TestExecutionService#executeQuery} (borrow, prepare, execute, drain, record) on a run prepared by the
+ * service. Both use the configured fetch size and read the same columns, so the difference between the two is
+ * what the harness adds to every query it measures.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class WorkerLoopBenchmark {
+
+    @Param({"1", "100"})
+    public int rows;
+
+    @Param({"NEXT_ONLY", "NATIVE"})
+    public ResultConsumption resultConsumption;
+
+    private ApplicationContext context;
+    private DataSource dataSource;
+    private TestExecutionService testExecutionService;
+    private TestRun run;
+    private TestExecutionService.WorkerSession session;
+    private WorkloadMix.MixStatement statement;
+    private LatencyHistogram histogram;
+    private PhaseRecorder phases;
+    private String query;
+    private int fetchSize;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        context = ApplicationContext.run(Map.of(
+                "datasources.default.url", "jdbc:h2:mem:jmh;DB_CLOSE_DELAY=-1",
+                "datasources.default.driver-class-name", "org.h2.Driver",
+                "datasources.default.username", "sa",
+                "datasources.default.password", "",
+                "performance.store.enabled", false));
+        JdbcConfigurationService jdbcConfigurationService = context.getBean(JdbcConfigurationService.class);
+        dataSource = jdbcConfigurationService.getDataSource();
+        try (Connection connection = dataSource.getConnection(); Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS ITEMS (ID INT PRIMARY KEY, NAME VARCHAR(40), AMOUNT DECIMAL(11, 2))");
+            stmt.execute("MERGE INTO ITEMS SELECT X, 'item-' || X, X * 1.5 FROM SYSTEM_RANGE(1, 1000)");
+        }
+
+        query = "SELECT ID, NAME, AMOUNT FROM ITEMS WHERE ID BETWEEN 1 AND " + rows;
+        TestRequest request = context.getBean(JsonMapper.class).readValue("""
+                {"duration": 1, "concurrency": 1, "query": "%s", "resultConsumption": "%s"}"""
+                .formatted(query, resultConsumption), TestRequest.class);
+        testExecutionService = context.getBean(TestExecutionService.class);
+        run = testExecutionService.createRun(request, null);
+        session = testExecutionService.new WorkerSession(run);
+        statement = run.getWorkloadMix().next();
+        histogram = new LatencyHistogram();
+        phases = new PhaseRecorder();
+        fetchSize = jdbcConfigurationService.getCurrentConfiguration().getFetchSize();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        session.close();
+        run.finish();
+        context.close();
+        // executeQuery counts a failed query as an error instead of throwing, which would only measure the failure
+        if (run.getErrorCount().get() > 0) {
+            throw new IllegalStateException(run.getErrorCount().get() + " benchmark queries failed");
+        }
+    }
+
+    @Benchmark
+    public long plainQuery() throws SQLException {
+        long rowsRead = 0;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
+            stmt.setFetchSize(fetchSize);
+            try (ResultSet rs = stmt.executeQuery()) {
+                int columns = resultConsumption != ResultConsumption.NEXT_ONLY ? rs.getMetaData().getColumnCount() : 0;
+                while (rs.next()) {
+                    rowsRead++;
+                    for (int i = 1; i <= columns; i++) {
+                        rs.getObject(i);
+                    }
+                }
+            }
+        }
+        return rowsRead;
+    }
+
+    @Benchmark
+    public long instrumentedQuery() {
+        testExecutionService.executeQuery(run, statement, histogram, phases, session);
+        return run.getRowCount().get();
+    }
+}
@@ -0,0 +1,19 @@
+package com.lkww.config;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+@ConfigurationProperties("performance.cluster")
+public class ClusterConfiguration {
+
+    // Set both to register this instance as an agent, the advertised URL must be reachable by the coordinator
+    private String coordinatorUrl;
+    private String advertisedUrl;
+    private Integer heartbeatSeconds = 10;
+
+    // Time the coordinator gives its agents between handing out a test and starting it in sync
+    private Integer startDelayMillis = 2000;
+}
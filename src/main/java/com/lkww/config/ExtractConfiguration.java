@@ -0,0 +1,16 @@
+package com.lkww.config;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+@ConfigurationProperties("performance.extract")
+public class ExtractConfiguration {
+
+    // Extract files land here, kept only when a request asks for it
+    private String directory = "data/extracts";
+    // Size of each of the two off-heap write buffers
+    private Integer bufferKilobytes = 4096;
+}
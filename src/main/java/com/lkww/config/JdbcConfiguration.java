@@ -1,11 +1,13 @@
 package com.lkww.config;
 
 import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.serde.annotation.Serdeable;
 import lombok.Getter;
 import lombok.Setter;
 
 @Getter
 @Setter
+@Serdeable
 @ConfigurationProperties("performance.test")
 public class JdbcConfiguration {
 
@@ -38,4 +40,5 @@ public class JdbcConfiguration {
     // Query Performance Settings (removed fetchSize since blockSize takes precedence)
     private Integer queryTimeout = 0;
     private Integer fetchSize = 1000;
+    private Integer batchSize = 100;
 }
@@ -0,0 +1,32 @@
+package com.lkww.config;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@ConfigurationProperties("performance.proxy")
+public class NetworkProxyConfiguration {
+
+    // Start the proxy (and optionally an H2 TCP server behind it) before the datasource connects
+    private Boolean enabled = false;
+    // Loopback by default, the proxy has no authentication of its own
+    private String listenAddress = "127.0.0.1";
+    private Integer listenPort = 9093;
+    private String targetHost = "localhost";
+    // Hosts besides target-host that POST /proxy/start may forward to
+    private List<String> allowedTargetHosts = new ArrayList<>();
+    private Integer targetPort = 9092;
+    private Boolean h2Server = true;
+
+    // Initial link impairment, can be changed at runtime via PUT /proxy/impairment
+    private Integer rttMillis = 0;
+    private Integer jitterMillis = 0;
+    private Integer bandwidthKbps = 0;
+    private Integer packetDelayMicros = 0;
+    private Integer packetSize = 1460;
+}
@@ -0,0 +1,20 @@
+package com.lkww.config;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+@ConfigurationProperties("performance.queue")
+public class QueueConfiguration {
+
+    // Queued and finished entries, point this at a persistent volume to resume after a restart
+    private String directory = "data/queue";
+    // Pause after each queued run so the database settles before the next one
+    private Integer cooldownSeconds = 60;
+    // Cron-style window for entries without their own, several separated by ';', empty for any time
+    private String window = "";
+    // Zone the windows are in, empty for the system default
+    private String timeZone = "";
+}
@@ -0,0 +1,15 @@
+package com.lkww.config;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+@ConfigurationProperties("performance.store")
+public class RunStoreConfiguration {
+
+    // Append-only run history, point this at a persistent volume
+    private Boolean enabled = true;
+    private String directory = "data/runs";
+}
@@ -0,0 +1,39 @@
+package com.lkww.controller;
+
+import com.lkww.service.AbTestService;
+import com.lkww.service.AbTestService.AbTestRequest;
+import com.lkww.service.AbTestService.AbTestStatus;
+import io.micronaut.http.annotation.Body;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.PathVariable;
+import io.micronaut.http.annotation.Post;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.inject.Inject;
+
+@Controller("/ab")
+@Tag(name = "A/B", description = "Side-by-side comparison of two JDBC configurations")
+public class AbTestController {
+
+    @Inject
+    private AbTestService abTestService;
+
+    @Post
+    @Operation(summary = "Start A/B test", description = "Runs the same workload on a pool for each of two configurations, concurrently or taking turns in slices")
+    public AbTestStatus startAbTest(@Body AbTestRequest request) {
+        return abTestService.startAbTest(request);
+    }
+
+    @Get("/{abTestId}")
+    @Operation(summary = "Get A/B test status", description = "Returns the results of both variants and the differences of B to A with confidence intervals")
+    public AbTestStatus getAbTest(@PathVariable String abTestId) {
+        return abTestService.getAbTest(abTestId);
+    }
+
+    @Post("/{abTestId}/stop")
+    @Operation(summary = "Stop A/B test", description = "Stops both variants and compares what was measured so far")
+    public AbTestStatus stopAbTest(@PathVariable String abTestId) {
+        return abTestService.stopAbTest(abTestId);
+    }
+}
@@ -0,0 +1,57 @@
+package com.lkww.controller;
+
+import com.lkww.service.AgentService;
+import com.lkww.service.AgentService.AgentClock;
+import com.lkww.service.AgentService.AgentInterval;
+import com.lkww.service.AgentService.AgentResult;
+import com.lkww.service.AgentService.AgentTestRequest;
+import com.lkww.service.AgentService.AgentTestStarted;
+import io.micronaut.http.annotation.Body;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.PathVariable;
+import io.micronaut.http.annotation.Post;
+import io.micronaut.http.annotation.QueryValue;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.inject.Inject;
+
+import java.util.List;
+
+@Controller("/agent")
+@Tag(name = "Agent", description = "Endpoints a cluster coordinator drives its agents with")
+public class AgentController {
+    
+    @Inject
+    private AgentService agentService;
+    
+    @Get("/clock")
+    @Operation(summary = "Get agent clock", description = "Returns the agent's wall clock so the coordinator can estimate its offset")
+    public AgentClock getClock() {
+        return agentService.getClock();
+    }
+    
+    @Post("/tests")
+    @Operation(summary = "Start agent test", description = "Prepares the agent's share of a cluster test and starts it at the given time")
+    public AgentTestStarted startTest(@Body AgentTestRequest request) {
+        return agentService.startTest(request);
+    }
+    
+    @Get("/tests/{testId}/intervals")
+    @Operation(summary = "Get interval histograms", description = "Returns the per-second snapshots with their encoded histograms, starting at the given index")
+    public List<AgentInterval> getIntervals(@PathVariable String testId, @QueryValue(defaultValue = "0") int from) {
+        return agentService.getIntervals(testId, from);
+    }
+    
+    @Get("/tests/{testId}/result")
+    @Operation(summary = "Get agent result", description = "Returns the state of the agent's test and, once finished, its result and encoded latency histogram")
+    public AgentResult getResult(@PathVariable String testId) {
+        return agentService.getResult(testId);
+    }
+    
+    @Post("/tests/{testId}/stop")
+    @Operation(summary = "Stop agent test", description = "Stops the agent's share of a cluster test")
+    public void stopTest(@PathVariable String testId) {
+        agentService.stopTest(testId);
+    }
+}
@@ -0,0 +1,69 @@
+package com.lkww.controller;
+
+import com.lkww.service.ClusterService;
+import com.lkww.service.ClusterService.AgentInfo;
+import com.lkww.service.ClusterService.AgentRegistration;
+import com.lkww.service.ClusterService.ClusterTestRequest;
+import com.lkww.service.ClusterService.ClusterTestStatus;
+import io.micronaut.http.annotation.Body;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Delete;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.PathVariable;
+import io.micronaut.http.annotation.Post;
+import io.micronaut.http.annotation.QueryValue;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.inject.Inject;
+
+import java.util.List;
+
+@Controller("/cluster")
+@Tag(name = "Cluster", description = "Coordinator endpoints for tests driven by several tester instances")
+public class ClusterController {
+    
+    @Inject
+    private ClusterService clusterService;
+    
+    @Post("/agents")
+    @Operation(summary = "Register an agent", description = "Registers a tester instance as an agent, agents repeat this as their heartbeat")
+    public AgentInfo registerAgent(@Body AgentRegistration registration) {
+        return clusterService.registerAgent(registration);
+    }
+    
+    @Get("/agents")
+    @Operation(summary = "List agents", description = "Lists the registered agents and when they were last seen")
+    public List<AgentInfo> listAgents() {
+        return clusterService.listAgents();
+    }
+    
+    @Delete("/agents")
+    @Operation(summary = "Unregister an agent", description = "Removes an agent until it registers again")
+    public void unregisterAgent(@QueryValue String url) {
+        clusterService.unregisterAgent(url);
+    }
+    
+    @Post("/tests")
+    @Operation(summary = "Start cluster test", description = "Splits a test across the agents, starts them in sync and merges their results")
+    public ClusterTestStatus startTest(@Body ClusterTestRequest request) {
+        return clusterService.startTest(request);
+    }
+    
+    @Get("/tests")
+    @Operation(summary = "List cluster tests", description = "Lists running and retained finished cluster tests, newest first")
+    public List<ClusterTestStatus> listTests() {
+        return clusterService.listTests();
+    }
+    
+    @Get("/tests/{clusterTestId}")
+    @Operation(summary = "Get cluster test", description = "Returns the agents of a cluster test, the merged per-second timeline and the global result")
+    public ClusterTestStatus getTest(@PathVariable String clusterTestId) {
+        return clusterService.getTest(clusterTestId);
+    }
+    
+    @Post("/tests/{clusterTestId}/stop")
+    @Operation(summary = "Stop cluster test", description = "Stops the test on all of its agents")
+    public ClusterTestStatus stopTest(@PathVariable String clusterTestId) {
+        return clusterService.stopTest(clusterTestId);
+    }
+}
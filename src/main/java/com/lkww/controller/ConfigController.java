@@ -3,11 +3,14 @@ package com.lkww.controller;
 import com.lkww.config.JdbcConfiguration;
 import com.lkww.service.JdbcConfigurationService;
 import com.lkww.service.JdbcConfigurationService.JdbcConfigurationUpdateRequest;
+import com.lkww.service.JdbcConfigurationService.PoolSwap;
 import io.micronaut.http.annotation.*;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.inject.Inject;
 
+import java.util.List;
+
 @Controller("/config")
 @Tag(name = "Configuration", description = "JDBC Configuration management endpoints")
 public class ConfigController {
@@ -27,6 +30,12 @@ public class ConfigController {
         return jdbcConfigurationService.updateConfiguration(request);
     }
     
+    @Get("/pool-swaps")
+    @Operation(summary = "Get connection pool swaps", description = "Returns the timing of the last replacements of the shared pool after driver property changes")
+    public List<PoolSwap> getPoolSwaps() {
+        return jdbcConfigurationService.getPoolSwaps();
+    }
+    
     @Put("/{fieldName}")
     @Operation(summary = "Update single configuration field", description = "Updates a single field in the JDBC configuration")
     public JdbcConfiguration updateSingleField(@PathVariable String fieldName, @Body String value) {
@@ -0,0 +1,39 @@
+package com.lkww.controller;
+
+import com.lkww.service.ExtractService;
+import com.lkww.service.ExtractService.ExtractRequest;
+import com.lkww.service.ExtractService.ExtractStatus;
+import io.micronaut.http.annotation.Body;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.PathVariable;
+import io.micronaut.http.annotation.Post;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.inject.Inject;
+
+@Controller("/extract")
+@Tag(name = "Extract", description = "End-to-end extraction of a result set into a file")
+public class ExtractController {
+
+    @Inject
+    private ExtractService extractService;
+
+    @Post
+    @Operation(summary = "Start extract", description = "Streams the result set of a query, or of a table scanned in key ranges on several connections, into binary row files")
+    public ExtractStatus startExtract(@Body ExtractRequest request) {
+        return extractService.startExtract(request);
+    }
+
+    @Get("/{extractId}")
+    @Operation(summary = "Get extract status", description = "Returns rows/s, MB/s and how the time split between driver fetch, column decoding and file writes")
+    public ExtractStatus getExtract(@PathVariable String extractId) {
+        return extractService.getExtract(extractId);
+    }
+
+    @Post("/{extractId}/stop")
+    @Operation(summary = "Stop extract", description = "Stops reading rows and reports what was extracted so far")
+    public ExtractStatus stopExtract(@PathVariable String extractId) {
+        return extractService.stopExtract(extractId);
+    }
+}
@@ -1,5 +1,6 @@
 package com.lkww.controller;
 
+import com.lkww.service.JdbcConfigurationService;
 import io.micronaut.http.annotation.Controller;
 import io.micronaut.http.annotation.Get;
 import io.micronaut.serde.annotation.Serdeable;
@@ -7,7 +8,6 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.inject.Inject;
 
-import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
 
@@ -16,7 +16,7 @@ import java.sql.SQLException;
 public class HealthController {
     
     @Inject
-    private DataSource dataSource;
+    private JdbcConfigurationService jdbcConfigurationService;
     
     @Get
     @Operation(summary = "Check application health", description = "Returns the health status of the application and database connection")
@@ -31,7 +31,7 @@ public class HealthController {
     }
     
     private boolean checkDatabaseHealth() {
-        try (Connection connection = dataSource.getConnection()) {
+        try (Connection connection = jdbcConfigurationService.getDataSource().getConnection()) {
             return connection.isValid(5);
         } catch (SQLException e) {
             return false;
@@ -0,0 +1,46 @@
+package com.lkww.controller;
+
+import com.lkww.service.NetworkProxyService;
+import com.lkww.service.NetworkProxyService.NetworkImpairment;
+import com.lkww.service.NetworkProxyService.ProxyStartRequest;
+import com.lkww.service.NetworkProxyService.ProxyStatus;
+import io.micronaut.http.annotation.Body;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.Post;
+import io.micronaut.http.annotation.Put;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.inject.Inject;
+
+@Controller("/proxy")
+@Tag(name = "Network Proxy", description = "WAN emulation proxy and embedded H2 server endpoints")
+public class ProxyController {
+    
+    @Inject
+    private NetworkProxyService networkProxyService;
+    
+    @Get
+    @Operation(summary = "Get proxy status", description = "Returns whether the proxy runs, its current impairment and traffic counters")
+    public ProxyStatus getStatus() {
+        return networkProxyService.getStatus();
+    }
+    
+    @Post("/start")
+    @Operation(summary = "Start network proxy", description = "Starts the latency-shaping TCP proxy, optionally with an embedded H2 TCP server behind it")
+    public ProxyStatus start(@Body ProxyStartRequest request) {
+        return networkProxyService.start(request);
+    }
+    
+    @Post("/stop")
+    @Operation(summary = "Stop network proxy", description = "Stops the proxy and the embedded H2 server and closes all proxied connections")
+    public ProxyStatus stop() {
+        return networkProxyService.stop();
+    }
+    
+    @Put("/impairment")
+    @Operation(summary = "Change link impairment", description = "Changes RTT, jitter, bandwidth and per-packet delay for data sent from now on")
+    public ProxyStatus updateImpairment(@Body NetworkImpairment impairment) {
+        return networkProxyService.updateImpairment(impairment);
+    }
+}
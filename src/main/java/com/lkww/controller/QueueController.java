@@ -0,0 +1,58 @@
+package com.lkww.controller;
+
+import com.lkww.service.TestQueueService;
+import com.lkww.service.TestQueueService.QueueEntry;
+import com.lkww.service.TestQueueService.QueueRequest;
+import com.lkww.service.TestQueueService.QueueStatus;
+import io.micronaut.http.annotation.Body;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.PathVariable;
+import io.micronaut.http.annotation.Post;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.inject.Inject;
+
+@Controller("/queue")
+@Tag(name = "Queue", description = "Persistent queue of tests and sweeps run one after another")
+public class QueueController {
+
+    @Inject
+    private TestQueueService testQueueService;
+
+    @Post
+    @Operation(summary = "Queue test or sweep", description = "Saves a test or sweep to run after the ones before it, optionally only inside a cron-style time window")
+    public QueueEntry submit(@Body QueueRequest request) {
+        return testQueueService.submit(request);
+    }
+
+    @Get
+    @Operation(summary = "Get queue", description = "Returns all queued, running and recently finished entries")
+    public QueueStatus getQueue() {
+        return testQueueService.getQueue();
+    }
+
+    @Get("/{entryId}")
+    @Operation(summary = "Get queue entry", description = "Returns the state of an entry and the id of its test or sweep")
+    public QueueEntry getEntry(@PathVariable String entryId) {
+        return testQueueService.getEntry(entryId);
+    }
+
+    @Post("/{entryId}/cancel")
+    @Operation(summary = "Cancel queue entry", description = "Removes a pending entry from the queue or stops a running one")
+    public QueueEntry cancel(@PathVariable String entryId) {
+        return testQueueService.cancel(entryId);
+    }
+
+    @Post("/pause")
+    @Operation(summary = "Pause queue", description = "Starts no further entries, a running one finishes")
+    public QueueStatus pause() {
+        return testQueueService.setPaused(true);
+    }
+
+    @Post("/resume")
+    @Operation(summary = "Resume queue", description = "Starts queued entries again")
+    public QueueStatus resume() {
+        return testQueueService.setPaused(false);
+    }
+}
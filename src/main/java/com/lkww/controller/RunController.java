@@ -0,0 +1,49 @@
+package com.lkww.controller;
+
+import com.lkww.service.RunStore;
+import com.lkww.service.RunStore.RunComparison;
+import com.lkww.service.RunStore.RunSummary;
+import com.lkww.service.RunStore.StoredRun;
+import com.lkww.service.SweepService.RankBy;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.PathVariable;
+import io.micronaut.http.annotation.QueryValue;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.inject.Inject;
+
+import java.util.List;
+
+@Controller("/runs")
+@Tag(name = "Run History", description = "Persisted test runs and historical comparison endpoints")
+public class RunController {
+    
+    @Inject
+    private RunStore runStore;
+    
+    @Get
+    @Operation(summary = "List stored runs", description = "Lists persisted test runs, newest first, optionally only those for one query")
+    public List<RunSummary> listRuns(@QueryValue @Nullable String query, @QueryValue(defaultValue = "100") int limit) {
+        return runStore.listRuns(query, limit);
+    }
+    
+    @Get("/{testId}")
+    @Operation(summary = "Get stored run", description = "Returns the request, configuration, results and per-second statistics of a persisted run")
+    public StoredRun getRun(@PathVariable String testId) {
+        return runStore.getRun(testId);
+    }
+    
+    @Get("/compare")
+    @Operation(summary = "Compare two runs", description = "Compares throughput and latency of two persisted runs and lists the configuration differences")
+    public RunComparison compare(@QueryValue String baseline, @QueryValue String candidate) {
+        return runStore.compare(baseline, candidate);
+    }
+    
+    @Get("/best")
+    @Operation(summary = "Best configuration for a query", description = "Returns the error-free persisted run with the highest throughput or lowest p99 for a query")
+    public StoredRun findBest(@QueryValue String query, @QueryValue @Nullable RankBy rankBy) {
+        return runStore.findBest(query, rankBy);
+    }
+}
@@ -0,0 +1,39 @@
+package com.lkww.controller;
+
+import com.lkww.service.SweepService;
+import com.lkww.service.SweepService.SweepRequest;
+import com.lkww.service.SweepService.SweepStatus;
+import io.micronaut.http.annotation.Body;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.PathVariable;
+import io.micronaut.http.annotation.Post;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.inject.Inject;
+
+@Controller("/sweep")
+@Tag(name = "Sweep", description = "Automated JDBC parameter sweep endpoints")
+public class SweepController {
+    
+    @Inject
+    private SweepService sweepService;
+    
+    @Post
+    @Operation(summary = "Start parameter sweep", description = "Runs a warmup and a measured test for every combination of the given configuration values")
+    public SweepStatus startSweep(@Body SweepRequest request) {
+        return sweepService.startSweep(request);
+    }
+    
+    @Get("/{sweepId}")
+    @Operation(summary = "Get sweep status", description = "Returns the progress of a sweep and its results ranked by throughput or tail latency")
+    public SweepStatus getSweep(@PathVariable String sweepId) {
+        return sweepService.getSweep(sweepId);
+    }
+    
+    @Post("/{sweepId}/stop")
+    @Operation(summary = "Stop parameter sweep", description = "Stops a sweep after the current test and restores the original configuration")
+    public SweepStatus stopSweep(@PathVariable String sweepId) {
+        return sweepService.stopSweep(sweepId);
+    }
+}
@@ -1,14 +1,28 @@
 package com.lkww.controller;
 
+import com.lkww.service.HarnessOverheadProbe.HarnessOverhead;
 import com.lkww.service.TestExecutionService;
+import com.lkww.service.TestExecutionService.ExecutorMode;
+import com.lkww.service.TestExecutionService.IntervalSnapshot;
+import com.lkww.service.TestExecutionService.LoadProfile;
+import com.lkww.service.TestExecutionService.PoolTuning;
+import com.lkww.service.TestExecutionService.ResultConsumption;
+import com.lkww.service.TestExecutionService.StatementReuse;
+import com.lkww.service.TestExecutionService.TestRunSummary;
+import com.lkww.service.TestExecutionService.WorkloadStatement;
+import io.micronaut.http.MediaType;
 import io.micronaut.http.annotation.Body;
 import io.micronaut.http.annotation.Controller;
 import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.PathVariable;
 import io.micronaut.http.annotation.Post;
 import io.micronaut.serde.annotation.Serdeable;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.inject.Inject;
+import org.reactivestreams.Publisher;
+
+import java.util.List;
 
 @Controller("/test")
 @Tag(name = "Testing", description = "Database latency and performance testing endpoints")
@@ -25,25 +39,107 @@ public class TestController {
     }
     
     @Post("/stop")
-    @Operation(summary = "Stop running test", description = "Stops the currently running performance test")
+    @Operation(summary = "Stop running tests", description = "Stops all currently running performance tests")
     public TestResponse stopTest() {
         testExecutionService.stopTest();
         return new TestResponse("stopped", null);
     }
     
     @Get("/results")
-    @Operation(summary = "Get test results", description = "Retrieves the results of the most recent performance test")
+    @Operation(summary = "Get test results", description = "Retrieves the results of the most recent finished performance test")
     public Object getResults() {
         return testExecutionService.getResults();
     }
     
+    @Get
+    @Operation(summary = "List test runs", description = "Lists running tests and the retained finished tests, newest first")
+    public List<TestRunSummary> listRuns() {
+        return testExecutionService.listRuns();
+    }
+    
+    @Post("/{testId}/stop")
+    @Operation(summary = "Stop a test run", description = "Stops a single running performance test")
+    public TestResponse stopTest(@PathVariable String testId) {
+        testExecutionService.stopTest(testId);
+        return new TestResponse("stopped", testId);
+    }
+    
+    @Get("/{testId}/results")
+    @Operation(summary = "Get results of a test run", description = "Retrieves the results of a single performance test")
+    public Object getResults(@PathVariable String testId) {
+        return testExecutionService.getResults(testId);
+    }
+    
+    @Get(value = "/{testId}/stream", produces = MediaType.TEXT_EVENT_STREAM)
+    @Operation(summary = "Stream live test statistics", description = "Streams a snapshot of throughput, latency, errors and pool usage every second while the test runs")
+    public Publisher<IntervalSnapshot> streamIntervals(@PathVariable String testId) {
+        return testExecutionService.streamIntervals(testId);
+    }
+    
+    @Get("/{testId}/intervals")
+    @Operation(summary = "Get per-second statistics", description = "Retrieves the per-second snapshots recorded so far for a test run")
+    public List<IntervalSnapshot> getIntervals(@PathVariable String testId) {
+        return testExecutionService.getIntervals(testId);
+    }
+    
+    @Get("/overhead")
+    @Operation(summary = "Compare harness overhead", description = "Compares the tester's own CPU and thread usage of the latest test run per executor mode")
+    public List<HarnessOverhead> getHarnessOverhead() {
+        return testExecutionService.getHarnessOverheadComparison();
+    }
+    
     @Serdeable
     public record TestRequest(
             String queryType,
             int duration,
             int concurrency,
-            String query
-    ) {}
+            String query,
+            Integer expectedIntervalMs,
+            Integer targetQps,
+            Integer maxInFlight,
+            ExecutorMode executorMode,
+            Integer maxConcurrentQueries,
+            Boolean isolatedPool,
+            StatementReuse statementReuse,
+            Integer commitInterval,
+            String dataFile,
+            List<WorkloadStatement> workload,
+            ResultConsumption resultConsumption,
+            Integer warmupSeconds,
+            LoadProfile loadProfile,
+            PoolTuning poolTuning
+    ) {
+        public TestRequest withDuration(int newDuration) {
+            return new TestRequest(queryType, newDuration, concurrency, query, expectedIntervalMs, targetQps, maxInFlight,
+                    executorMode, maxConcurrentQueries, isolatedPool, statementReuse, commitInterval, dataFile, workload,
+                    resultConsumption, warmupSeconds, loadProfile, poolTuning);
+        }
+        
+        public TestRequest withStatementReuse(StatementReuse newStatementReuse) {
+            return new TestRequest(queryType, duration, concurrency, query, expectedIntervalMs, targetQps, maxInFlight,
+                    executorMode, maxConcurrentQueries, isolatedPool, newStatementReuse, commitInterval, dataFile, workload,
+                    resultConsumption, warmupSeconds, loadProfile, poolTuning);
+        }
+        
+        public TestRequest withLoad(int newConcurrency, Integer newTargetQps, Integer newMaxInFlight,
+                                    LoadProfile newLoadProfile) {
+            return new TestRequest(queryType, duration, newConcurrency, query, expectedIntervalMs, newTargetQps,
+                    newMaxInFlight, executorMode, maxConcurrentQueries, isolatedPool, statementReuse, commitInterval,
+                    dataFile, workload, resultConsumption, warmupSeconds, newLoadProfile, poolTuning);
+        }
+        
+        public TestRequest withResultConsumption(ResultConsumption newResultConsumption) {
+            return new TestRequest(queryType, duration, concurrency, query, expectedIntervalMs, targetQps, maxInFlight,
+                    executorMode, maxConcurrentQueries, isolatedPool, statementReuse, commitInterval, dataFile, workload,
+                    newResultConsumption, warmupSeconds, loadProfile, poolTuning);
+        }
+        
+        public TestRequest withWarmupSeconds(Integer newWarmupSeconds) {
+            return new TestRequest(queryType, duration, concurrency, query, expectedIntervalMs, targetQps, maxInFlight,
+                    executorMode, maxConcurrentQueries, isolatedPool, statementReuse, commitInterval, dataFile, workload,
+                    resultConsumption, newWarmupSeconds, loadProfile, poolTuning);
+        }
+    }
     
     @Serdeable
     public record TestResponse(String status, String testId) {}
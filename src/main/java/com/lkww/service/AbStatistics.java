@@ -0,0 +1,183 @@
+package com.lkww.service;
+
+import com.lkww.service.AbTestService.AbComparison;
+import com.lkww.service.AbTestService.MetricComparison;
+import com.lkww.service.AbTestService.RankTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Statistics of an A/B test. The measurement is cut into pairs of periods in which A and B ran side by side or
+ * right after each other, so a change of the database load or the network hits both halves of a pair alike.
+ * Confidence intervals of the differences come from a bootstrap that resamples whole pairs; the rank test
+ * compares the two latency distributions as a whole.
+ */
+final class AbStatistics {
+
+    private static final List<Metric> METRICS = List.of(
+            new Metric("queriesPerSecond", sample -> sample.latency.getTotalCount() / sample.seconds),
+            new Metric("meanMs", sample -> toMillis(sample.latency.getTotalCount() == 0
+                    ? 0.0
+                    : (double) sample.totalNanos / sample.latency.getTotalCount())),
+            new Metric("p50Ms", sample -> toMillis(sample.latency.getValueAtPercentile(50.0))),
+            new Metric("p90Ms", sample -> toMillis(sample.latency.getValueAtPercentile(90.0))),
+            new Metric("p99Ms", sample -> toMillis(sample.latency.getValueAtPercentile(99.0)))
+    );
+
+    private AbStatistics() {
+    }
+
+    static AbComparison compare(List<PeriodPair> pairs, double confidenceLevel, int resamples, SplittableRandom random) {
+        int pairCount = pairs.size();
+        Sample a = new Sample();
+        Sample b = new Sample();
+        int[] all = new int[pairCount];
+        Arrays.fill(all, 1);
+        a.collect(pairs, all, PeriodPair::a);
+        b.collect(pairs, all, PeriodPair::b);
+        double[] pointA = evaluate(a);
+        double[] pointB = evaluate(b);
+        // Taken before the resamples below re-use the samples
+        RankTest rankTest = rankTest(a.latency.buckets(), b.latency.buckets(), 1.0 - confidenceLevel);
+
+        // Pairs are drawn with replacement, a pair drawn k times counts k times
+        double[][] differences = new double[METRICS.size()][resamples];
+        double[][] percentages = new double[METRICS.size()][resamples];
+        int[] draws = new int[pairCount];
+        for (int resample = 0; resample < resamples; resample++) {
+            Arrays.fill(draws, 0);
+            for (int i = 0; i < pairCount; i++) {
+                draws[random.nextInt(pairCount)]++;
+            }
+            a.collect(pairs, draws, PeriodPair::a);
+            b.collect(pairs, draws, PeriodPair::b);
+            double[] valuesA = evaluate(a);
+            double[] valuesB = evaluate(b);
+            for (int metric = 0; metric < METRICS.size(); metric++) {
+                differences[metric][resample] = valuesB[metric] - valuesA[metric];
+                percentages[metric][resample] = percentOf(valuesB[metric] - valuesA[metric], valuesA[metric]);
+            }
+        }
+
+        double alpha = 1.0 - confidenceLevel;
+        List<MetricComparison> metrics = new ArrayList<>();
+        for (int metric = 0; metric < METRICS.size(); metric++) {
+            Arrays.sort(differences[metric]);
+            Arrays.sort(percentages[metric]);
+            double lower = quantile(differences[metric], alpha / 2);
+            double upper = quantile(differences[metric], 1 - alpha / 2);
+            double difference = pointB[metric] - pointA[metric];
+            metrics.add(new MetricComparison(METRICS.get(metric).name, pointA[metric], pointB[metric],
+                    difference, lower, upper, percentOf(difference, pointA[metric]),
+                    quantile(percentages[metric], alpha / 2), quantile(percentages[metric], 1 - alpha / 2),
+                    lower > 0 || upper < 0));
+        }
+        return new AbComparison(pairCount, confidenceLevel, resamples, metrics, rankTest);
+    }
+
+    /**
+     * Mann-Whitney U test on the latencies of all queries, with the normal approximation and the variance
+     * corrected for ties. Queries within one histogram bucket (under 1% apart) count as ties.
+     */
+    static RankTest rankTest(LatencyHistogram.Buckets a, LatencyHistogram.Buckets b, double alpha) {
+        double countA = a.totalCount();
+        double countB = b.totalCount();
+        if (countA == 0 || countB == 0) {
+            return new RankTest(0.5, 0.0, 1.0, false);
+        }
+
+        // Walks both bucket lists in ascending order; uB counts the (a, b) pairs in which b is faster
+        double uB = 0;
+        double tieTerm = 0;
+        double belowOrAtA = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.values().length || j < b.values().length) {
+            long value = Math.min(i < a.values().length ? a.values()[i] : Long.MAX_VALUE,
+                    j < b.values().length ? b.values()[j] : Long.MAX_VALUE);
+            double tiedA = i < a.values().length && a.values()[i] == value ? a.counts()[i++] : 0;
+            double tiedB = j < b.values().length && b.values()[j] == value ? b.counts()[j++] : 0;
+            belowOrAtA += tiedA;
+            uB += tiedB * (countA - belowOrAtA) + 0.5 * tiedB * tiedA;
+            double tied = tiedA + tiedB;
+            tieTerm += tied * tied * tied - tied;
+        }
+
+        double n = countA + countB;
+        double mean = countA * countB / 2;
+        double variance = countA * countB / 12 * ((n + 1) - tieTerm / (n * (n - 1)));
+        double z = variance > 0 ? (uB - mean) / Math.sqrt(variance) : 0.0;
+        double pValue = erfc(Math.abs(z) / Math.sqrt(2));
+        return new RankTest(uB / (countA * countB), z, pValue, pValue < alpha);
+    }
+
+    private static double[] evaluate(Sample sample) {
+        double[] values = new double[METRICS.size()];
+        for (int metric = 0; metric < values.length; metric++) {
+            values[metric] = METRICS.get(metric).value.applyAsDouble(sample);
+        }
+        return values;
+    }
+
+    private static double quantile(double[] sorted, double q) {
+        return sorted[(int) Math.round(q * (sorted.length - 1))];
+    }
+
+    private static double percentOf(double difference, double base) {
+        return base != 0 ? difference / base * 100 : 0.0;
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    // Complementary error function after Numerical Recipes, fractional error below 1.2e-7
+    private static double erfc(double x) {
+        double t = 1.0 / (1.0 + 0.5 * x);
+        return t * Math.exp(-x * x - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+                + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+                + t * (-0.82215223 + t * 0.17087277)))))))));
+    }
+
+    /**
+     * What one variant did in one period: the latencies of its successful queries and how long it ran.
+     */
+    record Period(LatencyHistogram.Buckets latency, double seconds) {}
+
+    record PeriodPair(Period a, Period b) {}
+
+    private record Metric(String name, ToDoubleFunction<Sample> value) {}
+
+    /**
+     * One variant's periods added up, re-used across resamples.
+     */
+    private static final class Sample {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private long totalNanos;
+        private double seconds;
+
+        private void collect(List<PeriodPair> pairs, int[] draws, Function<PeriodPair, Period> side) {
+            latency.reset();
+            totalNanos = 0;
+            seconds = 0;
+            for (int i = 0; i < draws.length; i++) {
+                if (draws[i] == 0) {
+                    continue;
+                }
+                Period period = side.apply(pairs.get(i));
+                LatencyHistogram.Buckets buckets = period.latency();
+                for (int bucket = 0; bucket < buckets.values().length; bucket++) {
+                    latency.recordNanos(buckets.values()[bucket], buckets.counts()[bucket] * draws[i]);
+                }
+                totalNanos += buckets.totalNanos() * draws[i];
+                seconds += period.seconds() * draws[i];
+            }
+        }
+    }
+}
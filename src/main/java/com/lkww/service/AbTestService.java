@@ -0,0 +1,425 @@
+package com.lkww.service;
+
+import com.lkww.config.JdbcConfiguration;
+import com.lkww.controller.TestController.TestRequest;
+import com.lkww.service.AbStatistics.Period;
+import com.lkww.service.AbStatistics.PeriodPair;
+import com.lkww.service.TestExecutionService.IntervalSnapshot;
+import com.lkww.service.TestExecutionService.RunOptions;
+import com.lkww.service.TestExecutionService.TestResult;
+import io.micronaut.serde.annotation.Serdeable;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the same workload against two JDBC configurations at the same time, each on a pool of its own, and
+ * reports how B differs from A with confidence intervals. CONCURRENT runs both for the whole test,
+ * INTERLEAVED lets them take turns in slices in the order A B B A A B B A ..., so neither side gets the other's
+ * share of the database and a trend over the test affects both sides alike.
+ */
+@Singleton
+public class AbTestService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AbTestService.class);
+    private static final int DEFAULT_SLICE_SECONDS = 5;
+    private static final double DEFAULT_CONFIDENCE_LEVEL = 0.95;
+    private static final int DEFAULT_BOOTSTRAP_RESAMPLES = 2000;
+    private static final int MIN_PAIRS = 2;
+    private static final int MAX_RETAINED_TESTS = 50;
+    // Both pools are built before the start time, this only has to cover handing out the two runs
+    private static final long START_DELAY_MILLIS = 500;
+
+    @Inject
+    private TestExecutionService testExecutionService;
+
+    @Inject
+    private JdbcConfigurationService jdbcConfigurationService;
+
+    private final ExecutorService abTestExecutor = Executors.newSingleThreadExecutor();
+    private final Map<String, AbRun> abTests = new ConcurrentHashMap<>();
+
+    public AbTestStatus startAbTest(AbTestRequest request) {
+        if (request.test() == null || request.a() == null || request.b() == null) {
+            throw new IllegalArgumentException("An A/B test needs a test request and the variants a and b");
+        }
+        AbMode mode = request.mode() != null ? request.mode() : AbMode.INTERLEAVED;
+        int sliceSeconds = request.sliceSeconds() != null ? request.sliceSeconds() : DEFAULT_SLICE_SECONDS;
+        double confidenceLevel = request.confidenceLevel() != null ? request.confidenceLevel() : DEFAULT_CONFIDENCE_LEVEL;
+        int resamples = request.bootstrapResamples() != null ? request.bootstrapResamples() : DEFAULT_BOOTSTRAP_RESAMPLES;
+        if (sliceSeconds < 1) {
+            throw new IllegalArgumentException("sliceSeconds must be at least 1");
+        }
+        if (confidenceLevel <= 0 || confidenceLevel >= 1) {
+            throw new IllegalArgumentException("confidenceLevel must be between 0 and 1");
+        }
+        if (resamples < 100) {
+            throw new IllegalArgumentException("bootstrapResamples must be at least 100");
+        }
+        validate(request.test(), mode, sliceSeconds);
+
+        AbRun abRun = new AbRun(UUID.randomUUID().toString(), request, mode, sliceSeconds, confidenceLevel, resamples,
+                List.of(prepareVariant(request.a(), "A", request.test()), prepareVariant(request.b(), "B", request.test())));
+        abTests.put(abRun.abTestId, abRun);
+        evictFinishedTests();
+        LOG.info("Queued A/B test {} ({}, {}s slices): {} vs {}", abRun.abTestId, mode, sliceSeconds,
+                abRun.variants.get(0).parameters, abRun.variants.get(1).parameters);
+        abTestExecutor.submit(() -> executeAbTest(abRun));
+        return abRun.toStatus();
+    }
+
+    public AbTestStatus getAbTest(String abTestId) {
+        return getAbRun(abTestId).toStatus();
+    }
+
+    public AbTestStatus stopAbTest(String abTestId) {
+        AbRun abRun = getAbRun(abTestId);
+        abRun.stopRequested = true;
+        for (VariantRun variant : abRun.variants) {
+            if (variant.testId != null) {
+                testExecutionService.stopTest(variant.testId);
+            }
+        }
+        return abRun.toStatus();
+    }
+
+    private AbRun getAbRun(String abTestId) {
+        AbRun abRun = abTests.get(abTestId);
+        if (abRun == null) {
+            throw new IllegalArgumentException("Unknown A/B test: " + abTestId);
+        }
+        return abRun;
+    }
+
+    private void evictFinishedTests() {
+        abTests.values().stream()
+                .filter(run -> run.finishedAt != null)
+                .sorted(Comparator.comparing((AbRun run) -> run.startedAt).reversed())
+                .skip(MAX_RETAINED_TESTS)
+                .forEach(run -> abTests.remove(run.abTestId));
+    }
+
+    private void validate(TestRequest test, AbMode mode, int sliceSeconds) {
+        if (test.poolTuning() != null) {
+            throw new IllegalArgumentException("Pool tuning is not supported in A/B tests, the pool size is part of the variants");
+        }
+        if (mode == AbMode.INTERLEAVED) {
+            // Taking turns parks the workers, which open-loop dispatch, load profiles and batched writes do not follow
+            if (test.targetQps() != null || test.loadProfile() != null || test.warmupSeconds() != null
+                    || TestExecutionService.isBatchWrite(test)) {
+                throw new IllegalArgumentException(
+                        "INTERLEAVED A/B tests need a closed-loop read test without targetQps, loadProfile or warmupSeconds");
+            }
+        }
+        if (test.loadProfile() == null) {
+            int slicesPerPair = mode == AbMode.INTERLEAVED ? 2 : 1;
+            if (test.duration() < MIN_PAIRS * slicesPerPair * sliceSeconds) {
+                throw new IllegalArgumentException("An " + mode + " A/B test with " + sliceSeconds
+                        + "s slices needs a duration of at least " + MIN_PAIRS * slicesPerPair * sliceSeconds + "s");
+            }
+        }
+    }
+
+    private VariantRun prepareVariant(AbVariant variant, String defaultName, TestRequest test) {
+        Map<String, String> parameters = variant.parameters() != null ? variant.parameters() : Map.of();
+        Map<String, String> configurationFields = new LinkedHashMap<>();
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            if (SweepService.isTestParameter(parameter.getKey())) {
+                test = SweepService.withTestParameter(test, parameter.getKey(), parameter.getValue());
+            } else {
+                configurationFields.put(parameter.getKey(), parameter.getValue());
+            }
+        }
+        String name = variant.name() != null ? variant.name() : defaultName;
+        return new VariantRun(name, parameters, test, jdbcConfigurationService.deriveConfiguration(configurationFields));
+    }
+
+    private void executeAbTest(AbRun abRun) {
+        abRun.state = AbTestState.RUNNING;
+        try {
+            Instant startAt = Instant.now().plusMillis(START_DELAY_MILLIS);
+            for (VariantRun variant : abRun.variants) {
+                if (abRun.stopRequested) {
+                    break;
+                }
+                variant.testId = testExecutionService.startTest(variant.test,
+                        new RunOptions(startAt, variant.configuration, variant::record));
+            }
+            if (abRun.mode == AbMode.INTERLEAVED && !abRun.stopRequested) {
+                takeTurns(abRun, startAt);
+            }
+            for (VariantRun variant : abRun.variants) {
+                if (variant.testId != null) {
+                    variant.result = testExecutionService.awaitResult(variant.testId);
+                }
+            }
+
+            List<PeriodPair> pairs = pairPeriods(abRun);
+            if (pairs.size() < MIN_PAIRS) {
+                throw new IllegalStateException("Only " + pairs.size() + " complete pairs of slices were measured, at least "
+                        + MIN_PAIRS + " are needed for a comparison");
+            }
+            abRun.comparison = AbStatistics.compare(pairs, abRun.confidenceLevel, abRun.resamples, new SplittableRandom());
+            abRun.state = abRun.stopRequested ? AbTestState.STOPPED : AbTestState.COMPLETED;
+        } catch (RuntimeException e) {
+            LOG.error("A/B test {} failed", abRun.abTestId, e);
+            abRun.error = e.getMessage();
+            abRun.state = abRun.stopRequested ? AbTestState.STOPPED : AbTestState.FAILED;
+            abRun.variants.stream()
+                    .filter(variant -> variant.testId != null)
+                    .forEach(variant -> testExecutionService.stopTest(variant.testId));
+        } finally {
+            abRun.finishedAt = Instant.now();
+            LOG.info("A/B test {} finished with status {}", abRun.abTestId, abRun.state);
+        }
+    }
+
+    /**
+     * Parks the workers of the variant whose turn it is not, switching at every slice boundary.
+     */
+    private void takeTurns(AbRun abRun, Instant startAt) {
+        String testIdA = abRun.variants.get(0).testId;
+        String testIdB = abRun.variants.get(1).testId;
+        int slices = abRun.request.test().duration() / abRun.sliceSeconds;
+        testExecutionService.pauseTest(testIdB, true);
+        for (int slice = 1; slice < slices && !abRun.stopRequested; slice++) {
+            Instant sliceStart = startAt.plusSeconds((long) slice * abRun.sliceSeconds);
+            long remainingMillis;
+            while (!abRun.stopRequested && (remainingMillis = Duration.between(Instant.now(), sliceStart).toMillis()) > 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.min(remainingMillis, 100)));
+            }
+            boolean turnOfA = isTurnOfA(slice);
+            testExecutionService.pauseTest(turnOfA ? testIdB : testIdA, true);
+            testExecutionService.pauseTest(turnOfA ? testIdA : testIdB, false);
+        }
+    }
+
+    private static boolean isTurnOfA(int slice) {
+        // A B B A A B B A ...: each pair of slices has both orders equally often
+        return (slice + 1) / 2 % 2 == 0;
+    }
+
+    private List<PeriodPair> pairPeriods(AbRun abRun) {
+        VariantRun a = abRun.variants.get(0);
+        VariantRun b = abRun.variants.get(1);
+        int warmupSeconds = abRun.request.test().warmupSeconds() != null ? abRun.request.test().warmupSeconds() : 0;
+        int measuredSeconds = Math.min(testExecutionService.getRunSummary(a.testId).duration(),
+                testExecutionService.getRunSummary(b.testId).duration());
+        int slices = measuredSeconds / abRun.sliceSeconds;
+
+        List<PeriodPair> pairs = new ArrayList<>();
+        if (abRun.mode == AbMode.CONCURRENT) {
+            for (int slice = 0; slice < slices; slice++) {
+                Period periodA = a.period(warmupSeconds, slice, abRun.sliceSeconds);
+                Period periodB = b.period(warmupSeconds, slice, abRun.sliceSeconds);
+                if (periodA == null || periodB == null) {
+                    break;
+                }
+                pairs.add(new PeriodPair(periodA, periodB));
+            }
+        } else {
+            for (int slice = 0; slice + 1 < slices; slice += 2) {
+                int sliceOfA = isTurnOfA(slice) ? slice : slice + 1;
+                int sliceOfB = isTurnOfA(slice) ? slice + 1 : slice;
+                Period periodA = a.period(0, sliceOfA, abRun.sliceSeconds);
+                Period periodB = b.period(0, sliceOfB, abRun.sliceSeconds);
+                if (periodA == null || periodB == null) {
+                    break;
+                }
+                pairs.add(new PeriodPair(periodA, periodB));
+            }
+        }
+        return pairs;
+    }
+
+    private static final class VariantRun {
+        private final String name;
+        private final Map<String, String> parameters;
+        private final TestRequest test;
+        private final JdbcConfiguration configuration;
+        // The histogram of every interval, kept as buckets, which take a few hundred bytes each
+        private final List<LatencyHistogram.Buckets> intervals = new CopyOnWriteArrayList<>();
+        private volatile String testId;
+        private volatile TestResult result;
+
+        private VariantRun(String name, Map<String, String> parameters, TestRequest test, JdbcConfiguration configuration) {
+            this.name = name;
+            this.parameters = parameters;
+            this.test = test;
+            this.configuration = configuration;
+        }
+
+        private void record(IntervalSnapshot snapshot, LatencyHistogram histogram) {
+            intervals.add(histogram.buckets());
+        }
+
+        /**
+         * The intervals of a slice after the warmup merged into one period, null if the run did not get that far.
+         */
+        private Period period(int warmupSeconds, int slice, int sliceSeconds) {
+            int from = warmupSeconds + slice * sliceSeconds;
+            if (from + sliceSeconds > intervals.size()) {
+                return null;
+            }
+            LatencyHistogram merged = new LatencyHistogram();
+            long totalNanos = 0;
+            for (LatencyHistogram.Buckets interval : intervals.subList(from, from + sliceSeconds)) {
+                for (int bucket = 0; bucket < interval.values().length; bucket++) {
+                    merged.recordNanos(interval.values()[bucket], interval.counts()[bucket]);
+                }
+                totalNanos += interval.totalNanos();
+            }
+            LatencyHistogram.Buckets buckets = merged.buckets();
+            return new Period(new LatencyHistogram.Buckets(buckets.values(), buckets.counts(), buckets.totalCount(), totalNanos),
+                    sliceSeconds);
+        }
+
+        private AbVariantResult toResult() {
+            return new AbVariantResult(name, parameters, testId,
+                    result != null ? result.queriesPerSecond() : null,
+                    result != null ? result.failedQueries() : null,
+                    result != null ? result.latency() : null);
+        }
+    }
+
+    private static final class AbRun {
+        private final String abTestId;
+        private final AbTestRequest request;
+        private final AbMode mode;
+        private final int sliceSeconds;
+        private final double confidenceLevel;
+        private final int resamples;
+        private final List<VariantRun> variants;
+        private final Instant startedAt = Instant.now();
+        private volatile Instant finishedAt;
+        private volatile AbTestState state = AbTestState.QUEUED;
+        private volatile AbComparison comparison;
+        private volatile String error;
+        private volatile boolean stopRequested;
+
+        private AbRun(String abTestId, AbTestRequest request, AbMode mode, int sliceSeconds, double confidenceLevel,
+                      int resamples, List<VariantRun> variants) {
+            this.abTestId = abTestId;
+            this.request = request;
+            this.mode = mode;
+            this.sliceSeconds = sliceSeconds;
+            this.confidenceLevel = confidenceLevel;
+            this.resamples = resamples;
+            this.variants = variants;
+        }
+
+        private AbTestStatus toStatus() {
+            return new AbTestStatus(abTestId, state, startedAt, finishedAt, mode, sliceSeconds,
+                    variants.stream().map(VariantRun::toResult).toList(), comparison, error);
+        }
+    }
+
+    public enum AbMode {
+        CONCURRENT,
+        INTERLEAVED
+    }
+
+    public enum AbTestState {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        STOPPED,
+        FAILED
+    }
+
+    @Serdeable
+    public record AbVariant(
+            String name,
+            Map<String, String> parameters
+    ) {}
+
+    @Serdeable
+    public record AbTestRequest(
+            TestRequest test,
+            AbVariant a,
+            AbVariant b,
+            AbMode mode,
+            Integer sliceSeconds,
+            Double confidenceLevel,
+            Integer bootstrapResamples
+    ) {}
+
+    @Serdeable
+    public record AbVariantResult(
+            String name,
+            Map<String, String> parameters,
+            String testId,
+            Double queriesPerSecond,
+            Long failedQueries,
+            LatencyHistogram.LatencySummary latency
+    ) {}
+
+    /**
+     * B compared to A: the difference is B minus A, with its confidence interval, also as a percentage of A.
+     * Significant when the interval does not include zero.
+     */
+    @Serdeable
+    public record MetricComparison(
+            String metric,
+            double a,
+            double b,
+            double difference,
+            double differenceLower,
+            double differenceUpper,
+            double differencePercent,
+            double differencePercentLower,
+            double differencePercentUpper,
+            boolean significant
+    ) {}
+
+    /**
+     * Mann-Whitney U test over the latencies of all queries. probabilityBFaster is the chance that a query of B
+     * is faster than one of A, 0.5 when neither side is.
+     */
+    @Serdeable
+    public record RankTest(
+            double probabilityBFaster,
+            double z,
+            double pValue,
+            boolean significant
+    ) {}
+
+    @Serdeable
+    public record AbComparison(
+            int pairs,
+            double confidenceLevel,
+            int bootstrapResamples,
+            List<MetricComparison> metrics,
+            RankTest latencyRankTest
+    ) {}
+
+    @Serdeable
+    public record AbTestStatus(
+            String abTestId,
+            AbTestState state,
+            Instant startedAt,
+            Instant finishedAt,
+            AbMode mode,
+            int sliceSeconds,
+            List<AbVariantResult> variants,
+            AbComparison comparison,
+            String error
+    ) {}
+}
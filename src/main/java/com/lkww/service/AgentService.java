@@ -0,0 +1,224 @@
+package com.lkww.service;
+
+import com.lkww.config.ClusterConfiguration;
+import com.lkww.controller.TestController.TestRequest;
+import com.lkww.service.ClusterService.AgentRegistration;
+import com.lkww.service.TestExecutionService.IntervalSnapshot;
+import com.lkww.service.TestExecutionService.RunOptions;
+import com.lkww.service.TestExecutionService.TestResult;
+import com.lkww.service.TestExecutionService.TestRunState;
+import com.lkww.service.TestExecutionService.TestRunSummary;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.serde.annotation.Serdeable;
+import io.micronaut.runtime.event.annotation.EventListener;
+import io.micronaut.runtime.server.event.ServerStartupEvent;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The agent side of a distributed test: runs the share of a test a coordinator hands out, starting it at the
+ * coordinator's start time, and keeps the histogram of every interval so the coordinator can merge them with
+ * those of the other agents. With a coordinator configured the agent registers itself and repeats the
+ * registration as a heartbeat, so a restarted coordinator learns about it again.
+ */
+@Singleton
+public class AgentService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AgentService.class);
+    private static final int MAX_RETAINED_RUNS = 50;
+
+    @Inject
+    private TestExecutionService testExecutionService;
+
+    @Inject
+    private ClusterConfiguration clusterConfiguration;
+
+    private final Map<String, AgentRun> agentRuns = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "agent-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private HttpClient coordinatorClient;
+    private volatile boolean registered;
+    private volatile boolean registrationFailing;
+
+    @EventListener
+    void onStartup(ServerStartupEvent event) {
+        String coordinatorUrl = clusterConfiguration.getCoordinatorUrl();
+        if (coordinatorUrl == null || coordinatorUrl.isBlank()) {
+            return;
+        }
+        String advertisedUrl = clusterConfiguration.getAdvertisedUrl();
+        if (advertisedUrl == null || advertisedUrl.isBlank()) {
+            LOG.warn("Not registering with coordinator {}: performance.cluster.advertised-url is not set", coordinatorUrl);
+            return;
+        }
+        try {
+            coordinatorClient = HttpClient.create(URI.create(coordinatorUrl).toURL());
+        } catch (IllegalArgumentException | MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid coordinator URL: " + coordinatorUrl, e);
+        }
+        heartbeat.scheduleWithFixedDelay(() -> register(advertisedUrl), 0,
+                Math.max(clusterConfiguration.getHeartbeatSeconds(), 1), TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        heartbeat.shutdownNow();
+        if (coordinatorClient != null) {
+            coordinatorClient.close();
+        }
+    }
+
+    public AgentClock getClock() {
+        return new AgentClock(Instant.now());
+    }
+
+    public AgentTestStarted startTest(AgentTestRequest request) {
+        if (request.test() == null || request.startAt() == null) {
+            throw new IllegalArgumentException("An agent test needs a test request and a start time");
+        }
+        AgentRun agentRun = new AgentRun();
+        String testId = testExecutionService.startTest(request.test(),
+                new RunOptions(request.startAt(), null, agentRun::record));
+        agentRuns.put(testId, agentRun);
+        evictOldRuns();
+        return new AgentTestStarted(testId, request.startAt());
+    }
+
+    /**
+     * The intervals captured so far, starting with the one at index {@code from}.
+     */
+    public List<AgentInterval> getIntervals(String testId, int from) {
+        List<AgentInterval> intervals = getAgentRun(testId).intervals;
+        int size = intervals.size();
+        return from < size ? List.copyOf(intervals.subList(Math.max(from, 0), size)) : List.of();
+    }
+
+    public AgentResult getResult(String testId) {
+        getAgentRun(testId);
+        TestRunSummary summary = testExecutionService.getRunSummary(testId);
+        if (summary.state() == TestRunState.RUNNING) {
+            return new AgentResult(testId, summary.state(), null, null, null);
+        }
+        Object result = testExecutionService.getResults(testId);
+        if (summary.state() == TestRunState.FAILED || !(result instanceof TestResult testResult)) {
+            String error = result instanceof TestResult failed && !failed.errors().isEmpty()
+                    ? failed.errors().get(0)
+                    : "Test failed";
+            return new AgentResult(testId, TestRunState.FAILED, null, null, error);
+        }
+        LatencyHistogram latency = testExecutionService.getLatencyHistogram(testId);
+        return new AgentResult(testId, summary.state(), testResult, latency != null ? encode(latency) : null, null);
+    }
+
+    public void stopTest(String testId) {
+        getAgentRun(testId);
+        testExecutionService.stopTest(testId);
+    }
+
+    private AgentRun getAgentRun(String testId) {
+        AgentRun agentRun = agentRuns.get(testId);
+        if (agentRun == null) {
+            throw new IllegalArgumentException("Unknown agent test: " + testId);
+        }
+        return agentRun;
+    }
+
+    private void evictOldRuns() {
+        agentRuns.entrySet().stream()
+                .sorted(Comparator.comparing((Map.Entry<String, AgentRun> entry) -> entry.getValue().createdAt).reversed())
+                .skip(MAX_RETAINED_RUNS)
+                .forEach(entry -> agentRuns.remove(entry.getKey()));
+    }
+
+    private void register(String advertisedUrl) {
+        try {
+            coordinatorClient.toBlocking().exchange(HttpRequest.POST("/cluster/agents", new AgentRegistration(advertisedUrl)));
+            if (!registered) {
+                LOG.info("Registered as agent {} with coordinator {}", advertisedUrl, clusterConfiguration.getCoordinatorUrl());
+                registered = true;
+            }
+            registrationFailing = false;
+        } catch (RuntimeException e) {
+            // Logged once per outage, the heartbeat keeps trying
+            if (!registrationFailing) {
+                LOG.warn("Registration with coordinator {} failed: {}", clusterConfiguration.getCoordinatorUrl(), e.getMessage());
+                registrationFailing = true;
+            }
+            registered = false;
+        }
+    }
+
+    static String encode(LatencyHistogram histogram) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            histogram.encode(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    static LatencyHistogram decode(String encoded) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(encoded)))) {
+            return LatencyHistogram.decode(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class AgentRun {
+        private final Instant createdAt = Instant.now();
+        private final List<AgentInterval> intervals = new CopyOnWriteArrayList<>();
+
+        private void record(IntervalSnapshot snapshot, LatencyHistogram histogram) {
+            intervals.add(new AgentInterval(snapshot, encode(histogram)));
+        }
+    }
+
+    @Serdeable
+    public record AgentClock(Instant time) {}
+
+    @Serdeable
+    public record AgentTestRequest(TestRequest test, Instant startAt) {}
+
+    @Serdeable
+    public record AgentTestStarted(String testId, Instant startAt) {}
+
+    @Serdeable
+    public record AgentInterval(IntervalSnapshot snapshot, String histogram) {}
+
+    @Serdeable
+    public record AgentResult(
+            String testId,
+            TestRunState state,
+            TestResult result,
+            String latency,
+            String error
+    ) {}
+}
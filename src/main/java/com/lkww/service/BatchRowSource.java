@@ -0,0 +1,119 @@
+package com.lkww.service;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parameter values for batched DML, either generated from a run-wide counter or read from a
+ * comma-separated file that is replayed from the start when it runs out of lines.
+ */
+class BatchRowSource implements AutoCloseable {
+
+    private final DataFileReader reader;
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis());
+
+    private BatchRowSource(DataFileReader reader) {
+        this.reader = reader;
+    }
+
+    static BatchRowSource synthetic() {
+        return new BatchRowSource(null);
+    }
+
+    static BatchRowSource fromFile(String path) {
+        return new BatchRowSource(new DataFileReader(path));
+    }
+
+    static ParameterTypes describe(PreparedStatement stmt) throws SQLException {
+        int count;
+        ParameterMetaData metaData;
+        try {
+            metaData = stmt.getParameterMetaData();
+            count = metaData.getParameterCount();
+        } catch (SQLException e) {
+            throw new SQLException("Batched writes need a driver that reports statement parameters", e);
+        }
+
+        int[] sqlTypes = new int[count];
+        int[] precisions = new int[count];
+        int[] scales = new int[count];
+        for (int i = 0; i < count; i++) {
+            // Some drivers can't describe every parameter; those are bound as strings
+            try {
+                sqlTypes[i] = metaData.getParameterType(i + 1);
+                precisions[i] = metaData.getPrecision(i + 1);
+                scales[i] = metaData.getScale(i + 1);
+            } catch (SQLException e) {
+                sqlTypes[i] = Types.VARCHAR;
+            }
+        }
+        return new ParameterTypes(sqlTypes, precisions, scales);
+    }
+
+    void bindNextRow(PreparedStatement stmt, ParameterTypes types) throws SQLException {
+        if (reader == null) {
+            bindSyntheticRow(stmt, types, sequence.incrementAndGet());
+        } else {
+            bindFileRow(stmt, types, reader.nextRow());
+        }
+    }
+
+    private void bindSyntheticRow(PreparedStatement stmt, ParameterTypes types, long key) throws SQLException {
+        for (int i = 0; i < types.sqlTypes().length; i++) {
+            int index = i + 1;
+            int precision = types.precisions()[i];
+            switch (types.sqlTypes()[i]) {
+                case Types.TINYINT -> stmt.setLong(index, key % Byte.MAX_VALUE);
+                case Types.SMALLINT -> stmt.setLong(index, key % Short.MAX_VALUE);
+                case Types.INTEGER -> stmt.setLong(index, key % Integer.MAX_VALUE);
+                case Types.BIGINT -> stmt.setLong(index, key);
+                case Types.DECIMAL, Types.NUMERIC -> {
+                    int digits = Math.max(precision - types.scales()[i], 1);
+                    stmt.setBigDecimal(index, BigDecimal.valueOf(key % (long) Math.pow(10, Math.min(digits, 18))));
+                }
+                case Types.REAL, Types.FLOAT, Types.DOUBLE -> stmt.setDouble(index, key);
+                case Types.BOOLEAN, Types.BIT -> stmt.setBoolean(index, key % 2 == 0);
+                case Types.DATE -> stmt.setDate(index, new Date(System.currentTimeMillis()));
+                case Types.TIME -> stmt.setTime(index, new Time(System.currentTimeMillis()));
+                case Types.TIMESTAMP -> stmt.setTimestamp(index, new Timestamp(System.currentTimeMillis()));
+                default -> {
+                    // Keep the low-order digits so values stay distinct when the column is short
+                    String value = "R" + key;
+                    stmt.setString(index, precision > 0 && value.length() > precision
+                            ? value.substring(value.length() - precision)
+                            : value);
+                }
+            }
+        }
+    }
+
+    private void bindFileRow(PreparedStatement stmt, ParameterTypes types, String[] values) throws SQLException {
+        int count = types.sqlTypes().length;
+        if (values.length < count) {
+            throw new SQLException("Data file row has " + values.length + " values, statement needs " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            if (values[i].isEmpty()) {
+                stmt.setNull(i + 1, types.sqlTypes()[i]);
+            } else {
+                stmt.setString(i + 1, values[i].trim());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    record ParameterTypes(int[] sqlTypes, int[] precisions, int[] scales) {}
+}
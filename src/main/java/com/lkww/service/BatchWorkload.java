@@ -0,0 +1,38 @@
+package com.lkww.service;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Settings and counters of a batched INSERT/UPDATE/MERGE run, shared by all of its workers.
+ */
+@Getter
+class BatchWorkload implements AutoCloseable {
+
+    private final int batchSize;
+    private final int commitInterval;
+    private final BatchRowSource rowSource;
+    private final AtomicLong committedRows = new AtomicLong(0);
+    private final AtomicLong rolledBackRows = new AtomicLong(0);
+    private final AtomicLong commits = new AtomicLong(0);
+    private final LatencyHistogram commitLatency = new LatencyHistogram();
+
+    BatchWorkload(int batchSize, int commitInterval, BatchRowSource rowSource) {
+        this.batchSize = batchSize;
+        this.commitInterval = commitInterval;
+        this.rowSource = rowSource;
+    }
+
+    void resetStatistics() {
+        committedRows.set(0);
+        rolledBackRows.set(0);
+        commits.set(0);
+        commitLatency.reset();
+    }
+
+    @Override
+    public void close() {
+        rowSource.close();
+    }
+}
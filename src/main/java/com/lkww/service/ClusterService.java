@@ -0,0 +1,591 @@
+package com.lkww.service;
+
+import com.lkww.config.ClusterConfiguration;
+import com.lkww.controller.TestController.TestRequest;
+import com.lkww.service.AgentService.AgentClock;
+import com.lkww.service.AgentService.AgentInterval;
+import com.lkww.service.AgentService.AgentResult;
+import com.lkww.service.AgentService.AgentTestRequest;
+import com.lkww.service.AgentService.AgentTestStarted;
+import com.lkww.service.TestExecutionService.IntervalSnapshot;
+import com.lkww.service.TestExecutionService.LoadProfile;
+import com.lkww.service.TestExecutionService.LoadTarget;
+import com.lkww.service.TestExecutionService.TestResult;
+import com.lkww.service.TestExecutionService.TestRunState;
+import io.micronaut.core.type.Argument;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import io.micronaut.serde.annotation.Serdeable;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The coordinator side of a distributed test. Splits the concurrency, arrival rate and load profile of a test
+ * across the registered agents, estimates each agent's clock offset so they all start at the same instant,
+ * then polls their interval histograms, merges them second by second into one timeline and finally merges
+ * their full latency histograms into one global result.
+ */
+@Singleton
+public class ClusterService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClusterService.class);
+    private static final long POLL_MILLIS = 1000;
+    private static final int MAX_POLL_FAILURES = 10;
+    private static final int CLOCK_SAMPLES = 5;
+    private static final int MAX_RETAINED_TESTS = 50;
+
+    @Inject
+    private ClusterConfiguration clusterConfiguration;
+
+    private final Map<String, AgentInfo> agents = new ConcurrentHashMap<>();
+    private final Map<String, ClusterRun> tests = new ConcurrentHashMap<>();
+    // Every cluster test polls its agents from its own thread
+    private final ExecutorService clusterExecutor = Executors.newCachedThreadPool();
+
+    public AgentInfo registerAgent(AgentRegistration registration) {
+        String url = normalizeUrl(registration.url());
+        Instant now = Instant.now();
+        return agents.merge(url, new AgentInfo(url, now, now),
+                (existing, registered) -> new AgentInfo(url, existing.registeredAt(), now));
+    }
+
+    public List<AgentInfo> listAgents() {
+        return agents.values().stream()
+                .sorted(Comparator.comparing(AgentInfo::url))
+                .toList();
+    }
+
+    public void unregisterAgent(String url) {
+        if (agents.remove(normalizeUrl(url)) == null) {
+            throw new IllegalArgumentException("Unknown agent: " + url);
+        }
+    }
+
+    public ClusterTestStatus startTest(ClusterTestRequest request) {
+        if (request.test() == null) {
+            throw new IllegalArgumentException("A cluster test needs a test request");
+        }
+        List<String> urls = request.agents() != null && !request.agents().isEmpty()
+                ? request.agents().stream().map(ClusterService::normalizeUrl).distinct().toList()
+                : listAgents().stream().map(AgentInfo::url).toList();
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("No agents registered");
+        }
+
+        ClusterRun run = new ClusterRun(UUID.randomUUID().toString(), request, urls);
+        tests.put(run.clusterTestId, run);
+        evictFinishedTests();
+        LOG.info("Starting cluster test {} on {} agents", run.clusterTestId, urls.size());
+        clusterExecutor.submit(() -> executeClusterTest(run));
+        return run.toStatus();
+    }
+
+    public List<ClusterTestStatus> listTests() {
+        return tests.values().stream()
+                .sorted(Comparator.comparing((ClusterRun run) -> run.startedAt).reversed())
+                .map(ClusterRun::toStatus)
+                .toList();
+    }
+
+    public ClusterTestStatus getTest(String clusterTestId) {
+        return getRun(clusterTestId).toStatus();
+    }
+
+    public ClusterTestStatus stopTest(String clusterTestId) {
+        ClusterRun run = getRun(clusterTestId);
+        run.stopRequested = true;
+        return run.toStatus();
+    }
+
+    private ClusterRun getRun(String clusterTestId) {
+        ClusterRun run = tests.get(clusterTestId);
+        if (run == null) {
+            throw new IllegalArgumentException("Unknown cluster test: " + clusterTestId);
+        }
+        return run;
+    }
+
+    private void executeClusterTest(ClusterRun run) {
+        try {
+            List<AgentHandle> reachable = run.agents.stream()
+                    .filter(this::measureClockOffset)
+                    .toList();
+            if (reachable.isEmpty()) {
+                throw new IllegalStateException("None of the agents is reachable");
+            }
+            if (run.stopRequested) {
+                run.state = ClusterTestState.STOPPED;
+                return;
+            }
+
+            TestRequest test = run.request.test();
+            int shares = Math.min(reachable.size(), getMaxShares(test));
+            int startDelayMillis = run.request.startDelayMillis() != null
+                    ? run.request.startDelayMillis()
+                    : clusterConfiguration.getStartDelayMillis();
+            Instant startAt = Instant.now().plusMillis(startDelayMillis);
+            for (int i = 0; i < reachable.size(); i++) {
+                AgentHandle agent = reachable.get(i);
+                if (i >= shares) {
+                    agent.skip("Not needed, the test only splits into " + shares + " shares");
+                    continue;
+                }
+                agent.request = split(test, i, shares);
+                // The agent waits for the start time on its own clock
+                AgentTestStarted started = agent.client.toBlocking().retrieve(
+                        HttpRequest.POST("/agent/tests",
+                                new AgentTestRequest(agent.request, startAt.plusMillis(agent.clockOffsetMillis))),
+                        AgentTestStarted.class);
+                agent.testId = started.testId();
+                agent.state = TestRunState.RUNNING;
+            }
+            run.startAt = startAt;
+            run.state = ClusterTestState.RUNNING;
+            long lateMillis = Duration.between(startAt, Instant.now()).toMillis();
+            if (lateMillis > 0) {
+                LOG.warn("Cluster test {} reached its last agent {}ms after the start time, raise startDelayMillis",
+                        run.clusterTestId, lateMillis);
+            }
+
+            monitor(run);
+            run.result = createResult(run);
+            boolean agentFailed = run.agents.stream()
+                    .anyMatch(agent -> agent.request != null && agent.state == TestRunState.FAILED);
+            run.state = run.stopRequested ? ClusterTestState.STOPPED
+                    : agentFailed ? ClusterTestState.FAILED : ClusterTestState.COMPLETED;
+        } catch (RuntimeException e) {
+            LOG.error("Cluster test {} failed", run.clusterTestId, e);
+            run.error = describe(e);
+            run.state = ClusterTestState.FAILED;
+            stopAgents(run);
+        } finally {
+            run.finishedAt = Instant.now();
+            run.agents.forEach(agent -> agent.client.close());
+            LOG.info("Cluster test {} finished with status {}", run.clusterTestId, run.state);
+        }
+    }
+
+    /**
+     * Estimates how far the agent's clock is ahead of ours from the midpoint of the fastest of a few round
+     * trips, the first one also pays for the connection setup. Agents that do not answer are left out of the
+     * test and unregistered until their next heartbeat.
+     */
+    private boolean measureClockOffset(AgentHandle agent) {
+        try {
+            long fastestRoundTripNanos = Long.MAX_VALUE;
+            for (int i = 0; i < CLOCK_SAMPLES; i++) {
+                long sentNanos = System.nanoTime();
+                Instant sent = Instant.now();
+                AgentClock clock = agent.client.toBlocking().retrieve(HttpRequest.GET("/agent/clock"), AgentClock.class);
+                long roundTripNanos = System.nanoTime() - sentNanos;
+                if (roundTripNanos < fastestRoundTripNanos) {
+                    fastestRoundTripNanos = roundTripNanos;
+                    Instant midpoint = sent.plusNanos(roundTripNanos / 2);
+                    agent.clockOffsetMillis = Duration.between(midpoint, clock.time()).toMillis();
+                }
+            }
+            return true;
+        } catch (RuntimeException e) {
+            LOG.warn("Agent {} is not reachable: {}", agent.url, e.getMessage());
+            agents.remove(agent.url);
+            agent.fail("Not reachable: " + describe(e));
+            return false;
+        }
+    }
+
+    private void monitor(ClusterRun run) {
+        List<AgentHandle> started = run.agents.stream()
+                .filter(agent -> agent.testId != null)
+                .toList();
+        boolean stopSent = false;
+        while (started.stream().anyMatch(agent -> !agent.finished)) {
+            if (run.stopRequested && !stopSent) {
+                stopAgents(run);
+                stopSent = true;
+            }
+            started.stream()
+                    .filter(agent -> !agent.finished)
+                    .forEach(this::poll);
+            mergeIntervals(run.intervals, started);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(POLL_MILLIS));
+        }
+        mergeIntervals(run.intervals, started);
+    }
+
+    private void poll(AgentHandle agent) {
+        try {
+            // The result first: once it is final, the intervals fetched after it are complete
+            AgentResult result = agent.client.toBlocking().retrieve(
+                    HttpRequest.GET("/agent/tests/" + agent.testId + "/result"), AgentResult.class);
+            List<AgentInterval> intervals = agent.client.toBlocking().retrieve(
+                    HttpRequest.GET("/agent/tests/" + agent.testId + "/intervals?from=" + agent.receivedIntervals),
+                    Argument.listOf(AgentInterval.class));
+            for (AgentInterval interval : intervals) {
+                agent.receive(interval.snapshot(), AgentService.decode(interval.histogram()));
+            }
+            agent.pollFailures = 0;
+            if (result.state() != TestRunState.RUNNING) {
+                agent.finish(result);
+            }
+        } catch (RuntimeException e) {
+            if (++agent.pollFailures >= MAX_POLL_FAILURES) {
+                LOG.warn("Lost contact with agent {} of test {}: {}", agent.url, agent.testId, e.getMessage());
+                agent.fail("Lost contact: " + describe(e));
+            }
+        }
+    }
+
+    /**
+     * Merges the next second of every agent into the cluster timeline once all agents still running have
+     * reported it. Merged interval histograms are dropped, only their summaries are kept.
+     */
+    static void mergeIntervals(List<IntervalSnapshot> merged, List<AgentHandle> started) {
+        while (started.stream().allMatch(agent -> agent.finished || !agent.pendingIntervals.isEmpty())) {
+            List<AgentHandle> reporting = started.stream()
+                    .filter(agent -> !agent.pendingIntervals.isEmpty())
+                    .toList();
+            if (reporting.isEmpty()) {
+                return;
+            }
+
+            LatencyHistogram latency = new LatencyHistogram();
+            long queries = 0;
+            long errors = 0;
+            double queriesPerSecond = 0.0;
+            Instant timestamp = Instant.EPOCH;
+            Integer poolActive = null;
+            Integer poolIdle = null;
+            Integer poolPending = null;
+            for (AgentHandle agent : reporting) {
+                ReceivedInterval interval = agent.pendingIntervals.poll();
+                IntervalSnapshot snapshot = interval.snapshot();
+                latency.add(interval.histogram());
+                queries += snapshot.queries();
+                errors += snapshot.errors();
+                queriesPerSecond += snapshot.queriesPerSecond();
+                Instant agentTimestamp = snapshot.timestamp().minusMillis(agent.clockOffsetMillis);
+                timestamp = agentTimestamp.isAfter(timestamp) ? agentTimestamp : timestamp;
+                poolActive = sum(poolActive, snapshot.poolActive());
+                poolIdle = sum(poolIdle, snapshot.poolIdle());
+                poolPending = sum(poolPending, snapshot.poolPending());
+            }
+            merged.add(new IntervalSnapshot(merged.size() + 1, timestamp, queries, errors,
+                    queriesPerSecond, latency.summarize(), poolActive, poolIdle, poolPending));
+        }
+    }
+
+    private ClusterResult createResult(ClusterRun run) {
+        LatencyHistogram latency = new LatencyHistogram();
+        int agentCount = 0;
+        long totalQueries = 0;
+        long successfulQueries = 0;
+        long failedQueries = 0;
+        long elapsedMillis = 0;
+        for (AgentHandle agent : run.agents) {
+            if (agent.result == null || agent.result.result() == null) {
+                continue;
+            }
+            TestResult result = agent.result.result();
+            agentCount++;
+            totalQueries += result.totalQueries();
+            successfulQueries += result.successfulQueries();
+            failedQueries += result.failedQueries();
+            elapsedMillis = Math.max(elapsedMillis, result.elapsedMillis());
+            if (agent.result.latency() != null) {
+                latency.add(AgentService.decode(agent.result.latency()));
+            }
+        }
+
+        Integer expectedIntervalMs = run.request.test().expectedIntervalMs();
+        return new ClusterResult(
+                agentCount,
+                totalQueries,
+                successfulQueries,
+                failedQueries,
+                elapsedMillis,
+                elapsedMillis > 0 ? successfulQueries * 1000.0 / elapsedMillis : 0.0,
+                latency.summarize(),
+                expectedIntervalMs != null
+                        ? latency.copyCorrectedForCoordinatedOmission(TimeUnit.MILLISECONDS.toNanos(expectedIntervalMs)).summarize()
+                        : null
+        );
+    }
+
+    private void stopAgents(ClusterRun run) {
+        run.agents.stream()
+                .filter(agent -> agent.testId != null && !agent.finished)
+                .forEach(agent -> {
+                    try {
+                        agent.client.toBlocking().exchange(HttpRequest.POST("/agent/tests/" + agent.testId + "/stop", ""));
+                    } catch (RuntimeException e) {
+                        LOG.warn("Could not stop test {} on agent {}: {}", agent.testId, agent.url, e.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * How many agents the test can be split across: every agent needs at least one worker, one arrival per
+     * second and one unit of every load profile step, so that all agents run the same number of steps.
+     */
+    static int getMaxShares(TestRequest test) {
+        int maxShares = Integer.MAX_VALUE;
+        LoadProfile profile = test.loadProfile();
+        boolean profileSetsWorkers = profile != null && LoadSchedule.getTarget(test) == LoadTarget.CONCURRENCY;
+        if (!profileSetsWorkers && test.concurrency() > 0) {
+            maxShares = Math.min(maxShares, test.concurrency());
+        }
+        if (test.targetQps() != null && test.targetQps() > 0 && profile == null) {
+            maxShares = Math.min(maxShares, test.targetQps());
+        }
+        if (profile != null && profile.start() != null && profile.start() > 0) {
+            maxShares = Math.min(maxShares, profile.start());
+            int increment = profile.increment() != null ? profile.increment() : 1;
+            if (profile.end() != null && profile.end() - profile.start() >= increment) {
+                maxShares = Math.min(maxShares, Math.max(increment, 1));
+            }
+        }
+        return maxShares;
+    }
+
+    static TestRequest split(TestRequest test, int index, int shares) {
+        Integer maxInFlight = share(test.maxInFlight(), index, shares);
+        return test.withLoad(share(test.concurrency(), index, shares), share(test.targetQps(), index, shares),
+                maxInFlight != null ? Math.max(maxInFlight, 1) : null, split(test.loadProfile(), index, shares));
+    }
+
+    private static LoadProfile split(LoadProfile profile, int index, int shares) {
+        if (profile == null || profile.start() == null || profile.end() == null) {
+            return profile;
+        }
+        int increment = profile.increment() != null ? profile.increment() : 1;
+        int steps = increment > 0 ? (profile.end() - profile.start()) / increment + 1 : 1;
+        int start = share(profile.start(), index, shares);
+        // A profile with a single step keeps its increment, the others split it like the levels
+        int incrementShare = steps > 1 ? share(increment, index, shares) : increment;
+        int end = start + (steps - 1) * incrementShare;
+        return new LoadProfile(profile.shape(), profile.target(), start, end, incrementShare, profile.stepSeconds());
+    }
+
+    private static Integer share(Integer total, int index, int shares) {
+        if (total == null) {
+            return null;
+        }
+        return total / shares + (index < total % shares ? 1 : 0);
+    }
+
+    private static Integer sum(Integer total, Integer value) {
+        if (value == null) {
+            return total;
+        }
+        return total != null ? total + value : value;
+    }
+
+    private static String describe(RuntimeException e) {
+        if (e instanceof HttpClientResponseException response) {
+            // The agent's own message is in the embedded errors of Micronaut's error body
+            Map<String, Object> body = response.getResponse()
+                    .getBody(Argument.mapOf(String.class, Object.class))
+                    .orElse(Map.of());
+            if (body.get("_embedded") instanceof Map<?, ?> embedded
+                    && embedded.get("errors") instanceof List<?> errors
+                    && !errors.isEmpty()
+                    && errors.get(0) instanceof Map<?, ?> error
+                    && error.get("message") != null) {
+                return error.get("message").toString();
+            }
+            return response.getMessage();
+        }
+        return e.getMessage();
+    }
+
+    private static String normalizeUrl(String url) {
+        if (url == null || url.isBlank()) {
+            throw new IllegalArgumentException("An agent needs a URL");
+        }
+        String normalized = url.trim();
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    private static URL toAgentUrl(String url) {
+        try {
+            return URI.create(url).toURL();
+        } catch (IllegalArgumentException | MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid agent URL: " + url, e);
+        }
+    }
+
+    private void evictFinishedTests() {
+        tests.values().stream()
+                .filter(run -> run.finishedAt != null)
+                .sorted(Comparator.comparing((ClusterRun run) -> run.startedAt).reversed())
+                .skip(MAX_RETAINED_TESTS)
+                .forEach(run -> tests.remove(run.clusterTestId));
+    }
+
+    private static final class ClusterRun {
+        private final String clusterTestId;
+        private final ClusterTestRequest request;
+        private final List<AgentHandle> agents;
+        private final List<IntervalSnapshot> intervals = new CopyOnWriteArrayList<>();
+        private final Instant startedAt = Instant.now();
+        private volatile ClusterTestState state = ClusterTestState.STARTING;
+        private volatile Instant startAt;
+        private volatile Instant finishedAt;
+        private volatile ClusterResult result;
+        private volatile String error;
+        private volatile boolean stopRequested;
+
+        private ClusterRun(String clusterTestId, ClusterTestRequest request, List<String> urls) {
+            this.clusterTestId = clusterTestId;
+            this.request = request;
+            // Every URL is checked before the first client is created, so an invalid one leaks no clients
+            List<URL> parsed = urls.stream().map(ClusterService::toAgentUrl).toList();
+            List<AgentHandle> handles = new ArrayList<>(urls.size());
+            for (int i = 0; i < urls.size(); i++) {
+                handles.add(new AgentHandle(urls.get(i), HttpClient.create(parsed.get(i))));
+            }
+            this.agents = List.copyOf(handles);
+        }
+
+        private ClusterTestStatus toStatus() {
+            return new ClusterTestStatus(clusterTestId, state, startedAt, startAt, finishedAt,
+                    agents.stream().map(AgentHandle::toAssignment).toList(), List.copyOf(intervals), result, error);
+        }
+    }
+
+    static final class AgentHandle {
+        private final String url;
+        private final HttpClient client;
+        // Only the cluster test's own thread polls, the volatile fields are also read for the status
+        private final Deque<ReceivedInterval> pendingIntervals = new ArrayDeque<>();
+        private int receivedIntervals;
+        private int pollFailures;
+        private volatile long clockOffsetMillis;
+        private volatile TestRequest request;
+        private volatile String testId;
+        private volatile TestRunState state;
+        private volatile AgentResult result;
+        private volatile String error;
+        private volatile boolean finished;
+
+        AgentHandle(String url, HttpClient client) {
+            this.url = url;
+            this.client = client;
+        }
+
+        void receive(IntervalSnapshot snapshot, LatencyHistogram histogram) {
+            pendingIntervals.add(new ReceivedInterval(snapshot, histogram));
+            receivedIntervals++;
+        }
+
+        void finish(AgentResult result) {
+            this.result = result;
+            state = result.state();
+            error = result.error();
+            finished = true;
+        }
+
+        private void fail(String reason) {
+            state = TestRunState.FAILED;
+            skip(reason);
+        }
+
+        private void skip(String reason) {
+            error = reason;
+            finished = true;
+        }
+
+        private AgentAssignment toAssignment() {
+            TestRequest assigned = request;
+            return new AgentAssignment(url, testId, clockOffsetMillis,
+                    assigned != null ? assigned.concurrency() : null,
+                    assigned != null ? assigned.targetQps() : null,
+                    state, error, result != null ? result.result() : null);
+        }
+    }
+
+    private record ReceivedInterval(IntervalSnapshot snapshot, LatencyHistogram histogram) {}
+
+    public enum ClusterTestState {
+        STARTING,
+        RUNNING,
+        COMPLETED,
+        STOPPED,
+        FAILED
+    }
+
+    @Serdeable
+    public record AgentRegistration(String url) {}
+
+    @Serdeable
+    public record AgentInfo(String url, Instant registeredAt, Instant lastSeen) {}
+
+    @Serdeable
+    public record ClusterTestRequest(
+            TestRequest test,
+            List<String> agents,
+            Integer startDelayMillis
+    ) {}
+
+    @Serdeable
+    public record AgentAssignment(
+            String url,
+            String testId,
+            long clockOffsetMillis,
+            Integer concurrency,
+            Integer targetQps,
+            TestRunState state,
+            String error,
+            TestResult result
+    ) {}
+
+    @Serdeable
+    public record ClusterResult(
+            int agents,
+            long totalQueries,
+            long successfulQueries,
+            long failedQueries,
+            long elapsedMillis,
+            double queriesPerSecond,
+            LatencyHistogram.LatencySummary latency,
+            LatencyHistogram.LatencySummary correctedLatency
+    ) {}
+
+    @Serdeable
+    public record ClusterTestStatus(
+            String clusterTestId,
+            ClusterTestState state,
+            Instant startedAt,
+            Instant startAt,
+            Instant finishedAt,
+            List<AgentAssignment> agents,
+            List<IntervalSnapshot> intervals,
+            ClusterResult result,
+            String error
+    ) {}
+}
@@ -0,0 +1,61 @@
+package com.lkww.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+/**
+ * Reads a comma-separated data file one line at a time, shared by all workers of a run, and starts over
+ * from the first line when the file runs out.
+ */
+class DataFileReader implements AutoCloseable {
+
+    private final Path file;
+    private BufferedReader reader;
+
+    DataFileReader(String path) {
+        this.file = Path.of(path);
+        reopen();
+    }
+
+    synchronized String[] nextRow() throws SQLException {
+        try {
+            for (boolean rewound = false; ; ) {
+                String line = reader.readLine();
+                if (line != null && !line.isBlank()) {
+                    return line.split(",", -1);
+                }
+                if (line == null) {
+                    if (rewound) {
+                        throw new SQLException("Data file " + file + " contains no rows");
+                    }
+                    reader.close();
+                    reopen();
+                    rewound = true;
+                }
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to read data file " + file, e);
+        }
+    }
+
+    private void reopen() {
+        try {
+            reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read data file: " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+}
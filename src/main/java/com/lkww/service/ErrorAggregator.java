@@ -0,0 +1,254 @@
+package com.lkww.service;
+
+import com.lkww.service.TestExecutionService.ErrorCategory;
+import com.lkww.service.TestExecutionService.ErrorGroup;
+import com.lkww.service.TestExecutionService.ErrorRate;
+import com.lkww.service.TestExecutionService.ErrorSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Errors of a run grouped by SQLState, vendor code and exception class. A group counts its errors, remembers
+ * when it was first and last seen and keeps a few distinct messages; only the first error of a group is logged
+ * with its stack trace and after that one line per group every {@link #LOG_INTERVAL_SECONDS}, so an outage at
+ * high concurrency costs a map lookup and a few counter updates per error instead of a log flood.
+ */
+class ErrorAggregator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ErrorAggregator.class);
+    private static final int MAX_GROUPS = 64;
+    private static final int MAX_MESSAGES = 5;
+    private static final int LOG_INTERVAL_SECONDS = 10;
+    private static final int TIMELINE_BUCKET_SECONDS = 10;
+    private static final long LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(LOG_INTERVAL_SECONDS);
+    private static final long BUCKET_NANOS = TimeUnit.SECONDS.toNanos(TIMELINE_BUCKET_SECONDS);
+    // Errors of kinds not seen before are counted here once MAX_GROUPS kinds exist
+    private static final ErrorKey OVERFLOW_KEY = new ErrorKey(null, 0, "other");
+
+    private final String testId;
+    private final Map<ErrorKey, Group> groups = new ConcurrentHashMap<>();
+    private final Map<Long, LongAdder[]> timeline = new ConcurrentHashMap<>();
+    private final LongAdder[] categoryCounts = newCounters();
+    private final LongAdder suppressedLogs = new LongAdder();
+    private volatile long originNanos = System.nanoTime();
+    private volatile Instant originTime = Instant.now();
+
+    ErrorAggregator(String testId) {
+        this.testId = testId;
+    }
+
+    /**
+     * Counts the error into its group and logs it if the group's log interval has passed. Returns how the
+     * error was classified.
+     */
+    ErrorCategory record(SQLException e) {
+        long now = System.nanoTime();
+        ErrorCategory category = classify(e);
+        Group group = group(new ErrorKey(e.getSQLState(), e.getErrorCode(), e.getClass().getName()), category);
+        group.count.increment();
+        group.lastSeenMillis = System.currentTimeMillis();
+        group.addMessage(e.getMessage());
+        categoryCounts[category.ordinal()].increment();
+
+        long bucket = (now - originNanos) / BUCKET_NANOS;
+        LongAdder[] counts = timeline.get(bucket);
+        if (counts == null) {
+            counts = timeline.computeIfAbsent(bucket, b -> newCounters());
+        }
+        counts[category.ordinal()].increment();
+
+        log(group, e, now);
+        return category;
+    }
+
+    static ErrorCategory classify(SQLException e) {
+        String state = e.getSQLState() != null ? e.getSQLState() : "";
+        // HYT00/HYT01 are JDBC timeouts, 57014 is DB2 for i cancelling a statement at its query timeout
+        if (e instanceof SQLTimeoutException || state.startsWith("HYT") || state.equals("57014")) {
+            return ErrorCategory.TIMEOUT;
+        }
+        // Class 08 covers connection failures and broken links, Hikari reports pool timeouts as transient
+        if (e instanceof SQLTransientConnectionException || e instanceof SQLNonTransientConnectionException
+                || state.startsWith("08")) {
+            return ErrorCategory.CONNECT;
+        }
+        return ErrorCategory.QUERY;
+    }
+
+    private Group group(ErrorKey key, ErrorCategory category) {
+        Group group = groups.get(key);
+        if (group != null) {
+            return group;
+        }
+        ErrorKey bounded = groups.size() < MAX_GROUPS ? key : OVERFLOW_KEY;
+        return groups.computeIfAbsent(bounded, k -> new Group(k, category));
+    }
+
+    private void log(Group group, SQLException e, long now) {
+        long next = group.nextLogNanos.get();
+        if (now - next < 0 || !group.nextLogNanos.compareAndSet(next, now + LOG_INTERVAL_NANOS)) {
+            group.suppressed.increment();
+            suppressedLogs.increment();
+            return;
+        }
+        long suppressed = group.suppressed.sumThenReset();
+        if (group.logged) {
+            LOG.warn("Test {}: {} more {} errors in the last {}s, latest: {}", testId, suppressed + 1,
+                    group.key.describe(), LOG_INTERVAL_SECONDS, e.getMessage());
+        } else {
+            group.logged = true;
+            LOG.warn("Test {}: query failed with {}", testId, group.key.describe(), e);
+        }
+    }
+
+    /**
+     * One line per group with its first message and count, for the plain error list of the results.
+     */
+    List<String> describeGroups() {
+        return sortedGroups().stream()
+                .map(group -> {
+                    long count = group.count.sum();
+                    List<String> messages = group.messages();
+                    String message = messages.isEmpty() ? group.key.describe() : messages.get(0);
+                    return "SQL Error: " + message + (count > 1 ? " (" + count + " times)" : "");
+                })
+                .toList();
+    }
+
+    ErrorSummary summarize(long elapsedMillis) {
+        Map<ErrorCategory, Long> categories = new EnumMap<>(ErrorCategory.class);
+        long total = 0;
+        for (ErrorCategory category : ErrorCategory.values()) {
+            long count = categoryCounts[category.ordinal()].sum();
+            categories.put(category, count);
+            total += count;
+        }
+
+        List<ErrorGroup> summaries = sortedGroups().stream()
+                .map(group -> new ErrorGroup(
+                        group.key.sqlState(),
+                        group.key.errorCode(),
+                        group.key.exceptionClass(),
+                        group.category,
+                        group.count.sum(),
+                        group.firstSeen,
+                        Instant.ofEpochMilli(group.lastSeenMillis),
+                        group.messages()))
+                .toList();
+
+        Instant origin = originTime;
+        long elapsedNanos = System.nanoTime() - originNanos;
+        List<ErrorRate> rates = timeline.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> {
+                    LongAdder[] counts = entry.getValue();
+                    long connect = counts[ErrorCategory.CONNECT.ordinal()].sum();
+                    long timeout = counts[ErrorCategory.TIMEOUT.ordinal()].sum();
+                    long query = counts[ErrorCategory.QUERY.ordinal()].sum();
+                    // The bucket the run ended in only covers part of its width
+                    long bucketNanos = Math.min(BUCKET_NANOS, elapsedNanos - entry.getKey() * BUCKET_NANOS);
+                    double seconds = Math.max(bucketNanos, 1) / (double) TimeUnit.SECONDS.toNanos(1);
+                    return new ErrorRate(origin.plusSeconds(entry.getKey() * TIMELINE_BUCKET_SECONDS),
+                            seconds, connect, timeout, query, (connect + timeout + query) / seconds);
+                })
+                .toList();
+
+        return new ErrorSummary(total, elapsedMillis > 0 ? total * 1000.0 / elapsedMillis : 0.0, categories,
+                summaries, rates, suppressedLogs.sum());
+    }
+
+    /**
+     * Forgets all errors, e.g. those of the warmup. Only safe while no worker is running.
+     */
+    void reset() {
+        groups.clear();
+        timeline.clear();
+        Arrays.stream(categoryCounts).forEach(LongAdder::reset);
+        suppressedLogs.reset();
+        originNanos = System.nanoTime();
+        originTime = Instant.now();
+    }
+
+    private List<Group> sortedGroups() {
+        List<Group> sorted = new ArrayList<>(groups.values());
+        sorted.sort(Comparator.comparingLong((Group group) -> group.count.sum()).reversed());
+        return sorted;
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[ErrorCategory.values().length];
+        Arrays.setAll(counters, i -> new LongAdder());
+        return counters;
+    }
+
+    private record ErrorKey(String sqlState, int errorCode, String exceptionClass) {
+        String describe() {
+            return exceptionClass + " [SQLState " + sqlState + ", error code " + errorCode + "]";
+        }
+    }
+
+    private static final class Group {
+        private final ErrorKey key;
+        private final ErrorCategory category;
+        private final Instant firstSeen = Instant.now();
+        private final LongAdder count = new LongAdder();
+        private final LongAdder suppressed = new LongAdder();
+        private final AtomicLong nextLogNanos = new AtomicLong(System.nanoTime());
+        // Copy-on-write, so the same message over and over is checked without taking a lock
+        private volatile String[] messages = new String[0];
+        private volatile long lastSeenMillis;
+        private volatile boolean logged;
+
+        private Group(ErrorKey key, ErrorCategory category) {
+            this.key = key;
+            this.category = category;
+        }
+
+        private void addMessage(String message) {
+            if (message == null || isKnown(messages, message)) {
+                return;
+            }
+            synchronized (this) {
+                String[] current = messages;
+                if (!isKnown(current, message)) {
+                    String[] added = Arrays.copyOf(current, current.length + 1);
+                    added[current.length] = message;
+                    messages = added;
+                }
+            }
+        }
+
+        // A full list counts as knowing every message
+        private static boolean isKnown(String[] known, String message) {
+            if (known.length == MAX_MESSAGES) {
+                return true;
+            }
+            for (String candidate : known) {
+                if (candidate.equals(message)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private List<String> messages() {
+            return List.of(messages);
+        }
+    }
+}
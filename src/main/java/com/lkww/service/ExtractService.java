@@ -0,0 +1,718 @@
+package com.lkww.service;
+
+import com.lkww.config.ExtractConfiguration;
+import com.lkww.config.JdbcConfiguration;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micronaut.serde.annotation.Serdeable;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Streams the result set of a query into a binary row file, measuring end-to-end extraction speed and how the
+ * time splits between the driver fetching rows, reading their columns and the local disk. A table can also be
+ * scanned in key ranges on several connections at once, to compare with a single cursor.
+ */
+@Singleton
+public class ExtractService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExtractService.class);
+    private static final int PROGRESS_ROWS = 1024;
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+    private static final int DEFAULT_CHUNKS_PER_PARTITION = 4;
+    private static final long SCAN_TERMINATION_SECONDS = 30;
+    private static final int MAX_RETAINED_EXTRACTS = 50;
+    // Plain or quoted SQL names, optionally qualified with a library (SQL or system naming)
+    private static final Pattern NAME = Pattern.compile("(\"[^\"]+\"|[\\w#@$]+)([./](\"[^\"]+\"|[\\w#@$]+))?");
+
+    @Inject
+    private JdbcConfigurationService jdbcConfigurationService;
+
+    @Inject
+    private PerformanceMetricsService performanceMetricsService;
+
+    @Inject
+    private ExtractConfiguration extractConfiguration;
+
+    private final ExecutorService extractExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService fileWriters = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "extract-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, ExtractRun> extracts = new ConcurrentHashMap<>();
+
+    public ExtractStatus startExtract(ExtractRequest request) {
+        Partitioning partitioning = request.partitioning();
+        if (partitioning != null) {
+            validatePartitioning(request);
+        } else if (request.query() == null || request.query().isBlank()) {
+            throw new IllegalArgumentException("An extract needs a query or a partitioned table");
+        }
+        int bufferKilobytes = request.bufferKilobytes() != null
+                ? request.bufferKilobytes()
+                : extractConfiguration.getBufferKilobytes();
+        if (bufferKilobytes < 64) {
+            throw new IllegalArgumentException("bufferKilobytes must be at least 64");
+        }
+
+        String query = partitioning != null ? scanQuery(partitioning) : request.query();
+        ExtractRun extract = new ExtractRun(UUID.randomUUID().toString(), request, query, bufferKilobytes * 1024);
+        extracts.put(extract.extractId, extract);
+        evictFinishedExtracts();
+        LOG.info("Queued extract {} with {}KB buffers", extract.extractId, bufferKilobytes);
+        extractExecutor.submit(() -> executeExtract(extract));
+        return extract.toStatus();
+    }
+
+    public ExtractStatus getExtract(String extractId) {
+        return findExtract(extractId).toStatus();
+    }
+
+    public ExtractStatus stopExtract(String extractId) {
+        ExtractRun extract = findExtract(extractId);
+        extract.stopRequested = true;
+        return extract.toStatus();
+    }
+
+    private ExtractRun findExtract(String extractId) {
+        ExtractRun extract = extracts.get(extractId);
+        if (extract == null) {
+            throw new IllegalArgumentException("Unknown extract: " + extractId);
+        }
+        return extract;
+    }
+
+    private void evictFinishedExtracts() {
+        extracts.values().stream()
+                .filter(run -> run.finishedAt != null)
+                .sorted(Comparator.comparing((ExtractRun run) -> run.startedAt).reversed())
+                .skip(MAX_RETAINED_EXTRACTS)
+                .forEach(run -> extracts.remove(run.extractId));
+    }
+
+    private static void validatePartitioning(ExtractRequest request) {
+        Partitioning partitioning = request.partitioning();
+        if (request.query() != null) {
+            throw new IllegalArgumentException("Give either a query or a partitioned table, not both");
+        }
+        if (partitioning.table() == null || !NAME.matcher(partitioning.table()).matches()) {
+            throw new IllegalArgumentException("A partitioned scan needs a table name, got: " + partitioning.table());
+        }
+        if (getDiscovery(partitioning) == RangeDiscovery.MIN_MAX
+                && (partitioning.keyColumn() == null || !NAME.matcher(partitioning.keyColumn()).matches())) {
+            throw new IllegalArgumentException("A partitioned scan by MIN_MAX needs a key column, got: "
+                    + partitioning.keyColumn());
+        }
+        if (partitioning.partitions() != null && partitioning.partitions() < 1) {
+            throw new IllegalArgumentException("partitions must be at least 1");
+        }
+        if (partitioning.chunksPerPartition() != null && partitioning.chunksPerPartition() < 1) {
+            throw new IllegalArgumentException("chunksPerPartition must be at least 1");
+        }
+        if ((partitioning.minKey() == null) != (partitioning.maxKey() == null)) {
+            throw new IllegalArgumentException("Give both minKey and maxKey or neither");
+        }
+        if (partitioning.minKey() != null && partitioning.minKey() > partitioning.maxKey()) {
+            throw new IllegalArgumentException("minKey must not be greater than maxKey");
+        }
+    }
+
+    private void executeExtract(ExtractRun extract) {
+        extract.state = ExtractState.RUNNING;
+        extract.startedAt = Instant.now();
+        JdbcConfiguration config = jdbcConfigurationService.snapshotConfiguration();
+        boolean keepFile = Boolean.TRUE.equals(extract.request.keepFile());
+
+        try {
+            Files.createDirectories(Path.of(extractConfiguration.getDirectory()));
+            extract.result = extract.request.partitioning() != null
+                    ? extractPartitioned(extract, config)
+                    : extractSingle(extract, config, extract.query, extractFile(extract, null));
+            extract.state = extract.stopRequested ? ExtractState.STOPPED : ExtractState.COMPLETED;
+        } catch (SQLException | IOException | RuntimeException e) {
+            LOG.error("Extract {} failed", extract.extractId, e);
+            extract.error = e.getMessage();
+            extract.state = ExtractState.FAILED;
+        } finally {
+            extract.finishedAt = Instant.now();
+            if (keepFile && extract.state != ExtractState.FAILED) {
+                // A connection of a partitioned scan that got no piece wrote no file
+                extract.keptFiles = extract.files.stream()
+                        .filter(Files::exists)
+                        .map(file -> file.toAbsolutePath().toString())
+                        .toList();
+            } else {
+                extract.files.forEach(ExtractService::deleteQuietly);
+            }
+            LOG.info("Extract {} finished with status {} after {} rows", extract.extractId, extract.state,
+                    extract.rowsRead.sum());
+        }
+    }
+
+    private Path extractFile(ExtractRun extract, String suffix) {
+        Path file = Path.of(extractConfiguration.getDirectory())
+                .resolve("extract-" + extract.extractId + (suffix != null ? "-" + suffix : "") + ".ltx");
+        extract.files.add(file);
+        return file;
+    }
+
+    private ExtractResult extractSingle(ExtractRun extract, JdbcConfiguration config, String query, Path file)
+            throws SQLException, IOException {
+        CursorStats stats = new CursorStats();
+        long start = System.nanoTime();
+        RowFileWriter writer;
+
+        try (Connection connection = jdbcConfigurationService.getDataSource().getConnection();
+             PreparedStatement stmt = prepareStatement(connection, config, query)) {
+            try (ResultSet rs = stmt.executeQuery()) {
+                stats.executeNanos = System.nanoTime() - start;
+                writer = new RowFileWriter(file, rs.getMetaData(), extract.bufferBytes, fileWriters);
+                try (writer) {
+                    drain(extract, rs, writer, stats);
+                }
+            }
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        performanceMetricsService.recordRowsRead(stats.rows, writer.getBytesWritten());
+        return toResult(elapsedNanos, List.of(stats), List.of(writer), config, extract.bufferBytes);
+    }
+
+    /**
+     * Scans a table in key ranges on one connection per partition. The key range is split in halves until the
+     * pieces are {@code chunksPerPartition} times smaller than a partition, and idle connections steal pieces
+     * from busy ones, so ranges with more rows than others do not hold up the scan.
+     */
+    private ExtractResult extractPartitioned(ExtractRun extract, JdbcConfiguration config)
+            throws SQLException, IOException {
+        Partitioning partitioning = extract.request.partitioning();
+        int partitions = partitioning.partitions() != null ? partitioning.partitions() : config.getMaximumPoolSize();
+        int chunksPerPartition = partitioning.chunksPerPartition() != null
+                ? partitioning.chunksPerPartition()
+                : DEFAULT_CHUNKS_PER_PARTITION;
+        RangeDiscovery discovery = getDiscovery(partitioning);
+
+        ExtractResult singleCursor = null;
+        if (Boolean.TRUE.equals(partitioning.compareSingleCursor())) {
+            LOG.info("Extract {} reading {} with a single cursor first", extract.extractId, partitioning.table());
+            singleCursor = extractSingle(extract, config, "SELECT T.* FROM " + partitioning.table() + " T",
+                    extractFile(extract, "single"));
+            extract.rowsRead.reset();
+            if (extract.stopRequested) {
+                extract.scan = new PartitionedScanResult(partitions, discovery, null, null, 0, 0, List.of(),
+                        singleCursor, null);
+                return singleCursor;
+            }
+        }
+
+        Long minKey = partitioning.minKey();
+        Long maxKey = partitioning.maxKey();
+        if (minKey == null) {
+            long[] range = discoverRange(config, partitioning);
+            minKey = range != null ? range[0] : null;
+            maxKey = range != null ? range[1] : null;
+        }
+        if (minKey == null) {
+            extract.scan = new PartitionedScanResult(partitions, discovery, null, null, 0, 0, List.of(),
+                    singleCursor, null);
+            return toResult(0, List.of(), List.of(), config, extract.bufferBytes);
+        }
+
+        long span = maxKey - minKey;
+        long grain = Math.max(Long.divideUnsigned(span, (long) partitions * chunksPerPartition), 1);
+        JdbcConfiguration scanConfig = jdbcConfigurationService.deriveConfiguration(Map.of(
+                "maximumPoolSize", String.valueOf(partitions), "minimumIdle", "0"));
+        LOG.info("Extract {} scanning {} keys {}..{} on {} connections in pieces of {} keys", extract.extractId,
+                partitioning.table(), minKey, maxKey, partitions, grain);
+
+        List<ScanWorker> workers = new ArrayList<>();
+        ForkJoinPool scheduler = new ForkJoinPool(partitions);
+        long elapsedNanos;
+        long steals;
+        try (HikariDataSource pool = jdbcConfigurationService.createDataSource(
+                "extract-" + extract.extractId.substring(0, 8), scanConfig, null)) {
+            try {
+                // Connections are opened before the clock starts, as the single cursor's was
+                BlockingQueue<ScanWorker> idle = new ArrayBlockingQueue<>(partitions);
+                for (int i = 0; i < partitions; i++) {
+                    ScanWorker worker = new ScanWorker(pool.getConnection(), extractFile(extract, "p" + (i + 1)));
+                    workers.add(worker);
+                    idle.add(worker);
+                }
+                // A piece takes whichever connection is free, a thread of the scheduler may block while joining
+                RangeScan.Chunk chunk = (from, to) -> {
+                    ScanWorker worker = takeWorker(idle);
+                    try {
+                        worker.scan(extract, config, from, to);
+                    } finally {
+                        idle.add(worker);
+                    }
+                };
+
+                long start = System.nanoTime();
+                try {
+                    scheduler.invoke(new RangeScan(minKey, maxKey, grain, chunk, () -> extract.stopRequested));
+                } catch (RuntimeException e) {
+                    // One piece failed, the ones still running on other threads stop at their next row
+                    extract.stopRequested = true;
+                    throw e;
+                }
+                for (ScanWorker worker : workers) {
+                    worker.finish();
+                }
+                elapsedNanos = System.nanoTime() - start;
+                steals = scheduler.getStealCount();
+            } finally {
+                scheduler.shutdownNow();
+                awaitPieces(extract, scheduler);
+                workers.forEach(ScanWorker::closeQuietly);
+            }
+        }
+
+        List<CursorStats> stats = workers.stream().map(worker -> worker.stats).toList();
+        List<RowFileWriter> writers = workers.stream().map(worker -> worker.writer).filter(Objects::nonNull).toList();
+        ExtractResult result = toResult(elapsedNanos, stats, writers, config, extract.bufferBytes);
+        performanceMetricsService.recordRowsRead(result.rows(), result.fileBytes());
+
+        int chunks = workers.stream().mapToInt(worker -> worker.chunks).sum();
+        List<Long> rowsPerConnection = workers.stream()
+                .map(worker -> worker.stats.rows)
+                .sorted(Comparator.reverseOrder())
+                .toList();
+        Double speedup = singleCursor != null && singleCursor.rowsPerSecond() > 0
+                ? result.rowsPerSecond() / singleCursor.rowsPerSecond()
+                : null;
+        extract.scan = new PartitionedScanResult(partitions, discovery, minKey, maxKey, chunks, steals,
+                rowsPerConnection, singleCursor, speedup);
+        return result;
+    }
+
+    /**
+     * Waits for the pieces still running, so their connections and files are not closed under them. Pieces that
+     * hang in the driver are cut off by closing their connections after a while.
+     */
+    private static void awaitPieces(ExtractRun extract, ForkJoinPool scheduler) {
+        try {
+            if (!scheduler.awaitTermination(SCAN_TERMINATION_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warn("Extract {} still has pieces running after {}s, closing their connections",
+                        extract.extractId, SCAN_TERMINATION_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ScanWorker takeWorker(BlockingQueue<ScanWorker> idle) {
+        try {
+            return idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a connection of the scan", e);
+        }
+    }
+
+    /**
+     * Lowest and highest key of the table, null for an empty table.
+     */
+    private long[] discoverRange(JdbcConfiguration config, Partitioning partitioning) throws SQLException {
+        String key = keyExpression(partitioning);
+        String query = "SELECT MIN(" + key + "), MAX(" + key + ") FROM " + partitioning.table() + " T";
+        try (Connection connection = jdbcConfigurationService.getDataSource().getConnection();
+             PreparedStatement stmt = prepareStatement(connection, config, query);
+             ResultSet rs = stmt.executeQuery()) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            if (!isIntegerType(metaData.getColumnType(1), metaData.getScale(1))) {
+                throw new IllegalArgumentException("Key column " + key + " must be an integer column to split into ranges");
+            }
+            rs.next();
+            long min = rs.getLong(1);
+            if (rs.wasNull()) {
+                return null;
+            }
+            return new long[] {min, rs.getLong(2)};
+        }
+    }
+
+    private static boolean isIntegerType(int type, int scale) {
+        return switch (type) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT -> true;
+            case Types.DECIMAL, Types.NUMERIC -> scale == 0;
+            default -> false;
+        };
+    }
+
+    private static RangeDiscovery getDiscovery(Partitioning partitioning) {
+        return partitioning.discovery() != null ? partitioning.discovery() : RangeDiscovery.MIN_MAX;
+    }
+
+    private static String keyExpression(Partitioning partitioning) {
+        return getDiscovery(partitioning) == RangeDiscovery.RRN ? "RRN(T)" : partitioning.keyColumn();
+    }
+
+    private static String scanQuery(Partitioning partitioning) {
+        return "SELECT T.* FROM " + partitioning.table() + " T WHERE " + keyExpression(partitioning)
+                + " BETWEEN ? AND ?";
+    }
+
+    private static PreparedStatement prepareStatement(Connection connection, JdbcConfiguration config, String query)
+            throws SQLException {
+        PreparedStatement stmt = connection.prepareStatement(query);
+        stmt.setFetchSize(config.getFetchSize());
+        if (config.getQueryTimeout() > 0) {
+            stmt.setQueryTimeout(config.getQueryTimeout());
+        }
+        return stmt;
+    }
+
+    /**
+     * Reads all rows of {@code rs} into {@code writer}. Time in next() is the driver fetching blocks, time in
+     * writeRow() reading the columns.
+     */
+    private static void drain(ExtractRun extract, ResultSet rs, RowFileWriter writer, CursorStats stats)
+            throws SQLException, IOException {
+        long rows = 0;
+        long before = System.nanoTime();
+        while (!extract.stopRequested) {
+            boolean hasRow = rs.next();
+            long fetched = System.nanoTime();
+            stats.fetchNanos += fetched - before;
+            if (!hasRow) {
+                break;
+            }
+            writer.writeRow(rs);
+            before = System.nanoTime();
+            stats.readNanos += before - fetched;
+            if (++rows % PROGRESS_ROWS == 0) {
+                extract.rowsRead.add(PROGRESS_ROWS);
+            }
+        }
+        extract.rowsRead.add(rows % PROGRESS_ROWS);
+        stats.rows += rows;
+    }
+
+    /**
+     * Adds up the cursors of one extract. Times are summed over the cursors, the rates use the wall clock.
+     */
+    private static ExtractResult toResult(long elapsedNanos, List<CursorStats> cursors, List<RowFileWriter> writers,
+                                          JdbcConfiguration config, int bufferBytes) {
+        long rows = 0;
+        long executeNanos = 0;
+        long fetchNanos = 0;
+        long readNanos = 0;
+        for (CursorStats cursor : cursors) {
+            rows += cursor.rows;
+            executeNanos += cursor.executeNanos;
+            fetchNanos += cursor.fetchNanos;
+            readNanos += cursor.readNanos;
+        }
+        long fileBytes = 0;
+        long writeNanos = 0;
+        long waitNanos = 0;
+        for (RowFileWriter writer : writers) {
+            fileBytes += writer.getBytesWritten();
+            writeNanos += writer.getWriteNanos();
+            waitNanos += writer.getWaitNanos();
+        }
+
+        // Waiting for a free buffer is counted as write time, not as reading the columns
+        long decodeNanos = Math.max(readNanos - waitNanos, 0);
+        double seconds = elapsedNanos / 1e9;
+        return new ExtractResult(rows, fileBytes, toMillis(elapsedNanos),
+                seconds > 0 ? rows / seconds : 0.0,
+                seconds > 0 ? fileBytes / BYTES_PER_MEGABYTE / seconds : 0.0,
+                rows > 0 ? (double) fileBytes / rows : 0.0,
+                toMillis(executeNanos), toMillis(fetchNanos), toMillis(decodeNanos),
+                toMillis(writeNanos), toMillis(waitNanos),
+                bottleneck(fetchNanos, decodeNanos, waitNanos),
+                config.getFetchSize(), config.getBlockSize(), bufferBytes);
+    }
+
+    private static ExtractBottleneck bottleneck(long fetchNanos, long decodeNanos, long waitNanos) {
+        if (waitNanos >= fetchNanos && waitNanos >= decodeNanos) {
+            return ExtractBottleneck.LOCAL_IO;
+        }
+        return fetchNanos >= decodeNanos ? ExtractBottleneck.DRIVER_FETCH : ExtractBottleneck.COLUMN_DECODE;
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("Could not delete extract file {}", file, e);
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable resource) {
+        try {
+            resource.close();
+        } catch (Exception e) {
+            LOG.debug("Closing {} failed", resource, e);
+        }
+    }
+
+    /**
+     * Rows and times of the cursors read by one thread.
+     */
+    private static final class CursorStats {
+        private long rows;
+        private long executeNanos;
+        private long fetchNanos;
+        private long readNanos;
+    }
+
+    /**
+     * A connection of a partitioned scan with its statement and file, used by one piece at a time.
+     */
+    private final class ScanWorker {
+        private final Connection connection;
+        private final Path file;
+        private final CursorStats stats = new CursorStats();
+        private PreparedStatement stmt;
+        private RowFileWriter writer;
+        private int chunks;
+
+        private ScanWorker(Connection connection, Path file) {
+            this.connection = connection;
+            this.file = file;
+        }
+
+        private void scan(ExtractRun extract, JdbcConfiguration config, long from, long to) {
+            try {
+                if (stmt == null) {
+                    stmt = prepareStatement(connection, config, extract.query);
+                }
+                stmt.setLong(1, from);
+                stmt.setLong(2, to);
+                long start = System.nanoTime();
+                try (ResultSet rs = stmt.executeQuery()) {
+                    stats.executeNanos += System.nanoTime() - start;
+                    if (writer == null) {
+                        writer = new RowFileWriter(file, rs.getMetaData(), extract.bufferBytes, fileWriters);
+                    }
+                    drain(extract, rs, writer, stats);
+                }
+                chunks++;
+            } catch (SQLException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void finish() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+
+        private void closeQuietly() {
+            if (writer != null) {
+                ExtractService.closeQuietly(writer);
+            }
+            if (stmt != null) {
+                ExtractService.closeQuietly(stmt);
+            }
+            ExtractService.closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Splits a key range in halves until the pieces are small enough to scan, so idle fork-join threads can
+     * steal the larger halves of busy ones.
+     */
+    private static final class RangeScan extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        interface Chunk {
+            void scan(long from, long to);
+        }
+
+        private final long from;
+        private final long to;
+        private final long grain;
+        private final transient Chunk chunk;
+        private final transient BooleanSupplier stopped;
+
+        private RangeScan(long from, long to, long grain, Chunk chunk, BooleanSupplier stopped) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.chunk = chunk;
+            this.stopped = stopped;
+        }
+
+        @Override
+        protected void compute() {
+            if (stopped.getAsBoolean()) {
+                return;
+            }
+            if (Long.compareUnsigned(to - from, grain) < 0) {
+                chunk.scan(from, to);
+                return;
+            }
+            long middle = from + ((to - from) >>> 1);
+            invokeAll(new RangeScan(from, middle, grain, chunk, stopped),
+                    new RangeScan(middle + 1, to, grain, chunk, stopped));
+        }
+    }
+
+    private static final class ExtractRun {
+        private final String extractId;
+        private final ExtractRequest request;
+        private final String query;
+        private final int bufferBytes;
+        private final List<Path> files = new CopyOnWriteArrayList<>();
+        private final LongAdder rowsRead = new LongAdder();
+        private volatile ExtractState state = ExtractState.QUEUED;
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+        private volatile ExtractResult result;
+        private volatile PartitionedScanResult scan;
+        private volatile List<String> keptFiles;
+        private volatile String error;
+        private volatile boolean stopRequested;
+
+        private ExtractRun(String extractId, ExtractRequest request, String query, int bufferBytes) {
+            this.extractId = extractId;
+            this.request = request;
+            this.query = query;
+            this.bufferBytes = bufferBytes;
+        }
+
+        private ExtractStatus toStatus() {
+            return new ExtractStatus(extractId, state, query, startedAt, finishedAt, rowsRead.sum(), keptFiles,
+                    result, scan, error);
+        }
+    }
+
+    public enum ExtractState {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        STOPPED,
+        FAILED
+    }
+
+    /**
+     * Where most of an extract's time went: waiting for the driver to fetch rows, reading the columns of
+     * fetched rows (conversion in the driver and encoding), or waiting for the local disk.
+     */
+    public enum ExtractBottleneck {
+        DRIVER_FETCH,
+        COLUMN_DECODE,
+        LOCAL_IO
+    }
+
+    /**
+     * How the key range of a partitioned scan is found: MIN and MAX of an integer key column, or the relative
+     * record numbers of the rows (IBM i {@code RRN()}), which needs no key at all.
+     */
+    public enum RangeDiscovery {
+        MIN_MAX,
+        RRN
+    }
+
+    @Serdeable
+    public record Partitioning(
+            String table,
+            String keyColumn,
+            Integer partitions,
+            RangeDiscovery discovery,
+            Long minKey,
+            Long maxKey,
+            Integer chunksPerPartition,
+            Boolean compareSingleCursor
+    ) {}
+
+    @Serdeable
+    public record ExtractRequest(
+            String query,
+            Integer bufferKilobytes,
+            Boolean keepFile,
+            Partitioning partitioning
+    ) {}
+
+    @Serdeable
+    public record ExtractResult(
+            long rows,
+            long fileBytes,
+            long elapsedMillis,
+            double rowsPerSecond,
+            double megabytesPerSecond,
+            double averageRowBytes,
+            long executeMillis,
+            long fetchMillis,
+            long decodeMillis,
+            long writeMillis,
+            long writeWaitMillis,
+            ExtractBottleneck bottleneck,
+            int fetchSize,
+            int blockSize,
+            int bufferBytes
+    ) {}
+
+    @Serdeable
+    public record PartitionedScanResult(
+            int partitions,
+            RangeDiscovery discovery,
+            Long minKey,
+            Long maxKey,
+            int chunks,
+            long steals,
+            List<Long> rowsPerConnection,
+            ExtractResult singleCursor,
+            Double speedup
+    ) {}
+
+    @Serdeable
+    public record ExtractStatus(
+            String extractId,
+            ExtractState status,
+            String query,
+            Instant startedAt,
+            Instant finishedAt,
+            long rows,
+            List<String> files,
+            ExtractResult result,
+            PartitionedScanResult scan,
+            String error
+    ) {}
+}
@@ -0,0 +1,97 @@
+package com.lkww.service;
+
+import io.micronaut.serde.annotation.Serdeable;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Captures the tester's own CPU, GC and thread usage over a test run, so we can tell whether the
+ * harness rather than the AS400 is the bottleneck. The figures are process-wide, so they only belong to
+ * the run if no other run overlapped with it.
+ */
+public class HarnessOverheadProbe {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final Object LOCK = new Object();
+    private static int activeProbes;
+    private static long startedProbes;
+
+    private final long startNanos;
+    private final long startCpuNanos;
+    private final long startGcMillis;
+    private final int startThreads;
+    private final boolean aloneAtStart;
+    private final long startedBefore;
+
+    private HarnessOverheadProbe() {
+        synchronized (LOCK) {
+            this.aloneAtStart = ++activeProbes == 1;
+            this.startedBefore = ++startedProbes;
+        }
+        if (aloneAtStart) {
+            // Would reset the peak of a run that is still going otherwise
+            THREADS.resetPeakThreadCount();
+        }
+        this.startNanos = System.nanoTime();
+        this.startCpuNanos = processCpuNanos();
+        this.startGcMillis = gcMillis();
+        this.startThreads = THREADS.getThreadCount();
+    }
+
+    public static HarnessOverheadProbe start() {
+        return new HarnessOverheadProbe();
+    }
+
+    public HarnessOverhead finish(TestExecutionService.ExecutorMode executorMode, long queries) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long cpuNanos = processCpuNanos() - startCpuNanos;
+        int processors = Runtime.getRuntime().availableProcessors();
+        boolean exclusive;
+        synchronized (LOCK) {
+            exclusive = aloneAtStart && startedProbes == startedBefore;
+            activeProbes--;
+        }
+
+        return new HarnessOverhead(
+                executorMode,
+                TimeUnit.NANOSECONDS.toMillis(cpuNanos),
+                queries > 0 ? cpuNanos / 1000.0 / queries : 0.0,
+                elapsedNanos > 0 ? cpuNanos * 100.0 / ((double) elapsedNanos * processors) : 0.0,
+                gcMillis() - startGcMillis,
+                startThreads,
+                THREADS.getPeakThreadCount(),
+                exclusive
+        );
+    }
+
+    private static long processCpuNanos() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(gc.getCollectionTime(), 0);
+        }
+        return total;
+    }
+
+    @Serdeable
+    public record HarnessOverhead(
+            TestExecutionService.ExecutorMode executorMode,
+            long processCpuMillis,
+            double cpuMicrosPerQuery,
+            double cpuUtilizationPercent,
+            long gcMillis,
+            int platformThreadsAtStart,
+            int peakPlatformThreads,
+            // False if another run overlapped, whose CPU, GC and threads are then included
+            boolean exclusive
+    ) {}
+}
@@ -0,0 +1,55 @@
+package com.lkww.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records latencies of the current interval into a histogram that is swapped for an empty one on every
+ * tick. Writers never block: a writer/reader phaser in the style of HdrHistogram's Recorder lets the
+ * reader wait until writers still recording into the old histogram have finished before it is read.
+ */
+class IntervalRecorder {
+
+    private final AtomicLong startEpoch = new AtomicLong(0);
+    private final AtomicLong evenEndEpoch = new AtomicLong(0);
+    private final AtomicLong oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong errors = new AtomicLong(0);
+    private volatile LatencyHistogram active = new LatencyHistogram();
+
+    void recordNanos(long nanos) {
+        long epoch = startEpoch.getAndIncrement();
+        try {
+            active.recordNanos(nanos);
+        } finally {
+            (epoch < 0 ? oddEndEpoch : evenEndEpoch).getAndIncrement();
+        }
+    }
+
+    void recordError() {
+        errors.incrementAndGet();
+    }
+
+    long takeErrors() {
+        return errors.getAndSet(0);
+    }
+
+    /**
+     * Swaps in an empty histogram and returns the one that collected the interval that just ended.
+     * Only one thread may call this at a time.
+     */
+    LatencyHistogram swap() {
+        LatencyHistogram interval = active;
+        active = new LatencyHistogram();
+
+        boolean nextPhaseIsEven = startEpoch.get() < 0;
+        long initialStartValue = nextPhaseIsEven ? 0 : Long.MIN_VALUE;
+        (nextPhaseIsEven ? evenEndEpoch : oddEndEpoch).set(initialStartValue);
+        long startValueAtFlip = startEpoch.getAndSet(initialStartValue);
+
+        AtomicLong previousEndEpoch = nextPhaseIsEven ? oddEndEpoch : evenEndEpoch;
+        while (previousEndEpoch.get() != startValueAtFlip) {
+            LockSupport.parkNanos(1000);
+        }
+        return interval;
+    }
+}
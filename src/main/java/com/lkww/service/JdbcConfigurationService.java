@@ -1,132 +1,158 @@
 package com.lkww.service;
 
 import com.lkww.config.JdbcConfiguration;
+import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.util.DriverDataSource;
+import io.micronaut.context.event.ApplicationEventPublisher;
+import io.micronaut.jdbc.DataSourceResolver;
+import io.micronaut.serde.annotation.Serdeable;
 import jakarta.inject.Singleton;
 import lombok.Getter;
+import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Singleton
 public class JdbcConfigurationService {
 
     private static final Logger LOG = LoggerFactory.getLogger(JdbcConfigurationService.class);
+    private static final long POOL_READY_POLL_MILLIS = 100;
+    private static final long SWAP_POLL_MILLIS = 10;
+    private static final long DRAIN_TIMEOUT_MILLIS = 60000;
+    private static final int MAX_RETAINED_SWAPS = 20;
     @Getter
     private final JdbcConfiguration currentConfiguration;
-    private final DataSource dataSource;
-
-    public JdbcConfigurationService(JdbcConfiguration initialConfiguration, DataSource dataSource) {
+    // The pool built by Micronaut from application.properties, kept as the template for the pools that replace it
+    private final DataSource baseDataSource;
+    // The shared pool; a change of the driver properties replaces it with a new one
+    @Getter
+    private volatile DataSource dataSource;
+    // Set by the pool telemetry so the replacements of the shared pool are tracked like the original
+    @Setter
+    private volatile MetricsTrackerFactory sharedPoolTrackerFactory;
+    private final ApplicationEventPublisher<PoolSwapped> poolSwappedPublisher;
+    // Taken by every change of the configuration, so a new shared pool can be built without locking the configuration
+    private final Object updateLock = new Object();
+    private final AtomicInteger poolGeneration = new AtomicInteger(1);
+    private final Deque<SwapProgress> poolSwaps = new ConcurrentLinkedDeque<>();
+    private final ExecutorService poolDrainer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pool-drain");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public JdbcConfigurationService(JdbcConfiguration initialConfiguration, DataSource dataSource,
+                                    DataSourceResolver dataSourceResolver,
+                                    ApplicationEventPublisher<PoolSwapped> poolSwappedPublisher) {
         // Create a mutable copy for runtime updates
         this.currentConfiguration = new JdbcConfiguration();
-        this.dataSource = dataSource;
+        // Unwrap Micronaut Data's contextual proxy so we talk to the HikariCP pool directly
+        this.baseDataSource = dataSourceResolver.resolve(dataSource);
+        this.dataSource = baseDataSource;
+        this.poolSwappedPublisher = poolSwappedPublisher;
         copyConfiguration(initialConfiguration, this.currentConfiguration);
         logCurrentConfiguration("Initial configuration loaded");
     }
 
     public JdbcConfiguration updateConfiguration(JdbcConfigurationUpdateRequest request) {
-        synchronized (currentConfiguration) {
-            boolean needsConnectionRefresh = false;
+        synchronized (updateLock) {
+            JdbcConfiguration updated = snapshotConfiguration();
 
             // HikariCP settings - using Lombok-generated setters
             if (request.maximumPoolSize() != null) {
-                currentConfiguration.setMaximumPoolSize(request.maximumPoolSize());
-                applyPoolSizeChange();
+                updated.setMaximumPoolSize(request.maximumPoolSize());
             }
             if (request.minimumIdle() != null) {
-                currentConfiguration.setMinimumIdle(request.minimumIdle());
-                applyPoolSizeChange();
+                updated.setMinimumIdle(request.minimumIdle());
             }
             if (request.connectionTimeout() != null) {
-                currentConfiguration.setConnectionTimeout(request.connectionTimeout());
-                applyPoolTimeoutChanges();
+                updated.setConnectionTimeout(request.connectionTimeout());
             }
             if (request.idleTimeout() != null) {
-                currentConfiguration.setIdleTimeout(request.idleTimeout());
-                applyPoolTimeoutChanges();
+                updated.setIdleTimeout(request.idleTimeout());
             }
             if (request.maxLifetime() != null) {
-                currentConfiguration.setMaxLifetime(request.maxLifetime());
-                applyPoolTimeoutChanges();
+                updated.setMaxLifetime(request.maxLifetime());
             }
             if (request.leakDetectionThreshold() != null) {
-                currentConfiguration.setLeakDetectionThreshold(request.leakDetectionThreshold());
-                applyPoolTimeoutChanges();
+                updated.setLeakDetectionThreshold(request.leakDetectionThreshold());
             }
             if (request.autoCommit() != null) {
-                currentConfiguration.setAutoCommit(request.autoCommit());
-                needsConnectionRefresh = true;
+                updated.setAutoCommit(request.autoCommit());
             }
 
             // AS/400 driver properties - these require new connections
             if (request.naming() != null) {
-                currentConfiguration.setNaming(request.naming());
-                needsConnectionRefresh = true;
+                updated.setNaming(request.naming());
             }
             if (request.libraries() != null) {
-                currentConfiguration.setLibraries(request.libraries());
-                needsConnectionRefresh = true;
+                updated.setLibraries(request.libraries());
             }
             if (request.threadUsed() != null) {
-                currentConfiguration.setThreadUsed(request.threadUsed());
-                needsConnectionRefresh = true;
+                updated.setThreadUsed(request.threadUsed());
             }
             if (request.cursorHold() != null) {
-                currentConfiguration.setCursorHold(request.cursorHold());
-                needsConnectionRefresh = true;
+                updated.setCursorHold(request.cursorHold());
             }
             if (request.extendedDynamic() != null) {
-                currentConfiguration.setExtendedDynamic(request.extendedDynamic());
-                needsConnectionRefresh = true;
+                updated.setExtendedDynamic(request.extendedDynamic());
             }
             if (request.packageCache() != null) {
-                currentConfiguration.setPackageCache(request.packageCache());
-                needsConnectionRefresh = true;
+                updated.setPackageCache(request.packageCache());
             }
             if (request.blockSize() != null) {
-                currentConfiguration.setBlockSize(request.blockSize());
-                needsConnectionRefresh = true;
+                updated.setBlockSize(request.blockSize());
             }
             if (request.socketTimeout() != null) {
-                currentConfiguration.setSocketTimeout(request.socketTimeout());
-                needsConnectionRefresh = true;
+                updated.setSocketTimeout(request.socketTimeout());
             }
             if (request.socketKeepAlive() != null) {
-                currentConfiguration.setSocketKeepAlive(request.socketKeepAlive());
-                needsConnectionRefresh = true;
+                updated.setSocketKeepAlive(request.socketKeepAlive());
             }
             if (request.tcpNoDelay() != null) {
-                currentConfiguration.setTcpNoDelay(request.tcpNoDelay());
-                needsConnectionRefresh = true;
+                updated.setTcpNoDelay(request.tcpNoDelay());
             }
 
             // NEW: Critical AS/400 performance properties
             if (request.prefetch() != null) {
-                currentConfiguration.setPrefetch(request.prefetch());
-                needsConnectionRefresh = true;
+                updated.setPrefetch(request.prefetch());
             }
             if (request.queryOptimizeGoal() != null) {
-                currentConfiguration.setQueryOptimizeGoal(request.queryOptimizeGoal());
-                needsConnectionRefresh = true;
+                updated.setQueryOptimizeGoal(request.queryOptimizeGoal());
             }
             if (request.lobThreshold() != null) {
-                currentConfiguration.setLobThreshold(request.lobThreshold());
-                needsConnectionRefresh = true;
+                updated.setLobThreshold(request.lobThreshold());
             }
 
             // Query performance settings
             if (request.queryTimeout() != null) {
-                currentConfiguration.setQueryTimeout(request.queryTimeout());
+                updated.setQueryTimeout(request.queryTimeout());
             }
             if (request.fetchSize() != null) {
-                currentConfiguration.setFetchSize(request.fetchSize());
+                updated.setFetchSize(request.fetchSize());
             }
-
-            // Apply connection refresh if needed
-            if (needsConnectionRefresh) {
-                refreshConnectionPool();
+            if (request.batchSize() != null) {
+                updated.setBatchSize(request.batchSize());
             }
+
+            apply(updated);
         }
 
         logCurrentConfiguration("Configuration updated successfully");
@@ -134,111 +160,188 @@ public class JdbcConfigurationService {
     }
 
     public JdbcConfiguration updateSingleField(String fieldName, String value) {
+        synchronized (updateLock) {
+            JdbcConfiguration updated = snapshotConfiguration();
+            applyField(updated, fieldName, value);
+            apply(updated);
+        }
+
+        logCurrentConfiguration("Single field '" + fieldName + "' updated to '" + value + "'");
+        return currentConfiguration;
+    }
+
+    /**
+     * A copy of the current configuration with the given fields changed, for a pool of its own. Takes the same
+     * field names as {@link #updateSingleField}, the live configuration is left alone.
+     */
+    public JdbcConfiguration deriveConfiguration(Map<String, String> fields) {
+        JdbcConfiguration derived = snapshotConfiguration();
+        fields.forEach((fieldName, value) -> applyField(derived, fieldName, value));
+        return derived;
+    }
+
+    private static void applyField(JdbcConfiguration target, String fieldName, String value) {
+        switch (fieldName.toLowerCase()) {
+            // HikariCP pool settings - using Lombok-generated setters
+            case "maximumpoolsize" -> target.setMaximumPoolSize(Integer.parseInt(value));
+            case "minimumidle" -> target.setMinimumIdle(Integer.parseInt(value));
+            case "connectiontimeout" -> target.setConnectionTimeout(Integer.parseInt(value));
+            case "idletimeout" -> target.setIdleTimeout(Integer.parseInt(value));
+            case "maxlifetime" -> target.setMaxLifetime(Integer.parseInt(value));
+            case "leakdetectionthreshold" -> target.setLeakDetectionThreshold(Integer.parseInt(value));
+            case "autocommit" -> target.setAutoCommit(Boolean.parseBoolean(value));
+
+            // AS/400 driver properties - these require new connections
+            case "naming" -> target.setNaming(value);
+            case "libraries" -> target.setLibraries(value);
+            case "threadused" -> target.setThreadUsed(Boolean.parseBoolean(value));
+            case "cursorhold" -> target.setCursorHold(Boolean.parseBoolean(value));
+            case "extendeddynamic" -> target.setExtendedDynamic(Boolean.parseBoolean(value));
+            case "packagecache" -> target.setPackageCache(Boolean.parseBoolean(value));
+            case "blocksize" -> target.setBlockSize(Integer.parseInt(value));
+            case "sockettimeout" -> target.setSocketTimeout(Integer.parseInt(value));
+            case "socketkeepalive" -> target.setSocketKeepAlive(Boolean.parseBoolean(value));
+            case "tcpnodelay" -> target.setTcpNoDelay(Boolean.parseBoolean(value));
+
+            // NEW: Critical AS/400 performance properties
+            case "prefetch" -> target.setPrefetch(Boolean.parseBoolean(value));
+            case "queryoptimizegoal" -> target.setQueryOptimizeGoal(Integer.parseInt(value));
+            case "lobthreshold" -> target.setLobThreshold(Integer.parseInt(value));
+
+            // Query performance settings
+            case "querytimeout" -> target.setQueryTimeout(Integer.parseInt(value));
+            case "fetchsize" -> target.setFetchSize(Integer.parseInt(value));
+            case "batchsize" -> target.setBatchSize(Integer.parseInt(value));
+
+            default -> throw new IllegalArgumentException("Unknown configuration field: " + fieldName);
+        }
+    }
+
+    public JdbcConfiguration snapshotConfiguration() {
         synchronized (currentConfiguration) {
-            boolean needsConnectionRefresh = false;
+            JdbcConfiguration snapshot = new JdbcConfiguration();
+            copyConfiguration(currentConfiguration, snapshot);
+            return snapshot;
+        }
+    }
 
-            switch (fieldName.toLowerCase()) {
-                // HikariCP pool settings - using Lombok-generated setters
-                case "maximumpoolsize" -> {
-                    currentConfiguration.setMaximumPoolSize(Integer.parseInt(value));
-                    applyPoolSizeChange();
-                }
-                case "minimumidle" -> {
-                    currentConfiguration.setMinimumIdle(Integer.parseInt(value));
-                    applyPoolSizeChange();
-                }
-                case "connectiontimeout" -> {
-                    currentConfiguration.setConnectionTimeout(Integer.parseInt(value));
-                    applyPoolTimeoutChanges();
-                }
-                case "idletimeout" -> {
-                    currentConfiguration.setIdleTimeout(Integer.parseInt(value));
-                    applyPoolTimeoutChanges();
-                }
-                case "maxlifetime" -> {
-                    currentConfiguration.setMaxLifetime(Integer.parseInt(value));
-                    applyPoolTimeoutChanges();
-                }
-                case "leakdetectionthreshold" -> {
-                    currentConfiguration.setLeakDetectionThreshold(Integer.parseInt(value));
-                    applyPoolTimeoutChanges();
-                }
-                case "autocommit" -> {
-                    currentConfiguration.setAutoCommit(Boolean.parseBoolean(value));
-                    needsConnectionRefresh = true;
-                }
+    public JdbcConfiguration restoreConfiguration(JdbcConfiguration snapshot) {
+        synchronized (updateLock) {
+            JdbcConfiguration updated = new JdbcConfiguration();
+            copyConfiguration(snapshot, updated);
+            apply(updated);
+        }
 
-                // AS/400 driver properties - these require new connections
-                case "naming" -> {
-                    currentConfiguration.setNaming(value);
-                    needsConnectionRefresh = true;
-                }
-                case "libraries" -> {
-                    currentConfiguration.setLibraries(value);
-                    needsConnectionRefresh = true;
-                }
-                case "threadused" -> {
-                    currentConfiguration.setThreadUsed(Boolean.parseBoolean(value));
-                    needsConnectionRefresh = true;
-                }
-                case "cursorhold" -> {
-                    currentConfiguration.setCursorHold(Boolean.parseBoolean(value));
-                    needsConnectionRefresh = true;
-                }
-                case "extendeddynamic" -> {
-                    currentConfiguration.setExtendedDynamic(Boolean.parseBoolean(value));
-                    needsConnectionRefresh = true;
-                }
-                case "packagecache" -> {
-                    currentConfiguration.setPackageCache(Boolean.parseBoolean(value));
-                    needsConnectionRefresh = true;
-                }
-                case "blocksize" -> {
-                    currentConfiguration.setBlockSize(Integer.parseInt(value));
-                    needsConnectionRefresh = true;
-                }
-                case "sockettimeout" -> {
-                    currentConfiguration.setSocketTimeout(Integer.parseInt(value));
-                    needsConnectionRefresh = true;
-                }
-                case "socketkeepalive" -> {
-                    currentConfiguration.setSocketKeepAlive(Boolean.parseBoolean(value));
-                    needsConnectionRefresh = true;
-                }
-                case "tcpnodelay" -> {
-                    currentConfiguration.setTcpNoDelay(Boolean.parseBoolean(value));
-                    needsConnectionRefresh = true;
-                }
+        logCurrentConfiguration("Configuration restored");
+        return currentConfiguration;
+    }
 
-                // NEW: Critical AS/400 performance properties
-                case "prefetch" -> {
-                    currentConfiguration.setPrefetch(Boolean.parseBoolean(value));
-                    needsConnectionRefresh = true;
-                }
-                case "queryoptimizegoal" -> {
-                    currentConfiguration.setQueryOptimizeGoal(Integer.parseInt(value));
-                    needsConnectionRefresh = true;
-                }
-                case "lobthreshold" -> {
-                    currentConfiguration.setLobThreshold(Integer.parseInt(value));
-                    needsConnectionRefresh = true;
-                }
+    /**
+     * Resizes the shared pool through the configuration, so a pool that replaces it keeps the size.
+     */
+    public void resizeSharedPool(int maximumPoolSize, int minimumIdle) {
+        synchronized (updateLock) {
+            JdbcConfiguration updated = snapshotConfiguration();
+            updated.setMaximumPoolSize(maximumPoolSize);
+            updated.setMinimumIdle(minimumIdle);
+            apply(updated);
+        }
+    }
 
-                // Query performance settings
-                case "querytimeout" -> currentConfiguration.setQueryTimeout(Integer.parseInt(value));
-                case "fetchsize" -> currentConfiguration.setFetchSize(Integer.parseInt(value));
+    public boolean awaitPoolReady(long timeoutMillis) {
+        if (!(dataSource instanceof HikariDataSource hikariDS) || hikariDS.getHikariPoolMXBean() == null) {
+            return true;
+        }
 
-                default -> throw new IllegalArgumentException("Unknown configuration field: " + fieldName);
+        // After a soft eviction the pool is ready once the idle connections it can hold have been re-created
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (System.currentTimeMillis() < deadline) {
+            var pool = hikariDS.getHikariPoolMXBean();
+            int targetIdle = Math.min(hikariDS.getMinimumIdle(), hikariDS.getMaximumPoolSize() - pool.getActiveConnections());
+            if (pool.getIdleConnections() >= targetIdle) {
+                return true;
             }
-
-            // Apply connection refresh if needed
-            if (needsConnectionRefresh) {
-                refreshConnectionPool();
+            try {
+                Thread.sleep(POOL_READY_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
             }
         }
+        LOG.warn("Connection pool did not refresh within {}ms", timeoutMillis);
+        return false;
+    }
 
-        logCurrentConfiguration("Single field '" + fieldName + "' updated to '" + value + "'");
-        return currentConfiguration;
+    public HikariDataSource createDataSource(String poolName, MetricsTrackerFactory metricsTrackerFactory) {
+        return createDataSource(poolName, snapshotConfiguration(), metricsTrackerFactory);
+    }
+
+    public HikariDataSource createDataSource(String poolName, JdbcConfiguration config,
+                                             MetricsTrackerFactory metricsTrackerFactory) {
+        if (!(baseDataSource instanceof HikariDataSource baseDS)) {
+            throw new IllegalStateException("DataSource is not HikariDataSource, cannot create a separate pool");
+        }
+
+        HikariConfig hikariConfig = createPoolConfig(poolName, config, metricsTrackerFactory);
+        hikariConfig.setJdbcUrl(baseDS.getJdbcUrl());
+        hikariConfig.setUsername(baseDS.getUsername());
+        hikariConfig.setPassword(baseDS.getPassword());
+        if (baseDS.getDriverClassName() != null) {
+            hikariConfig.setDriverClassName(baseDS.getDriverClassName());
+        }
+        hikariConfig.setDataSourceProperties(buildDriverProperties(baseDS, config));
+
+        LOG.info("Creating connection pool '{}' with max={}, min={}", poolName, config.getMaximumPoolSize(), config.getMinimumIdle());
+        return new HikariDataSource(hikariConfig);
+    }
+
+    /**
+     * The last replacements of the shared pool, newest first.
+     */
+    public List<PoolSwap> getPoolSwaps() {
+        return poolSwaps.stream().map(SwapProgress::toPoolSwap).toList();
+    }
+
+    private HikariConfig createPoolConfig(String poolName, JdbcConfiguration config, MetricsTrackerFactory metricsTrackerFactory) {
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setPoolName(poolName);
+        hikariConfig.setMaximumPoolSize(config.getMaximumPoolSize());
+        hikariConfig.setMinimumIdle(config.getMinimumIdle());
+        hikariConfig.setConnectionTimeout(config.getConnectionTimeout());
+        hikariConfig.setIdleTimeout(config.getIdleTimeout());
+        hikariConfig.setMaxLifetime(config.getMaxLifetime());
+        hikariConfig.setLeakDetectionThreshold(config.getLeakDetectionThreshold());
+        hikariConfig.setAutoCommit(config.getAutoCommit());
+        if (metricsTrackerFactory != null) {
+            hikariConfig.setMetricsTrackerFactory(metricsTrackerFactory);
+        }
+        return hikariConfig;
+    }
+
+    private Properties buildDriverProperties(HikariDataSource baseDS, JdbcConfiguration config) {
+        Properties properties = new Properties();
+        properties.putAll(baseDS.getDataSourceProperties());
+        if (baseDS.getJdbcUrl() == null || !baseDS.getJdbcUrl().startsWith("jdbc:as400:")) {
+            return properties;
+        }
+
+        // Toolbox for Java property names, taken from the live configuration rather than application.properties
+        properties.setProperty("naming", config.getNaming());
+        if (config.getLibraries() != null && !config.getLibraries().isBlank()) {
+            properties.setProperty("libraries", config.getLibraries());
+        }
+        properties.setProperty("thread used", String.valueOf(config.getThreadUsed()));
+        properties.setProperty("cursor hold", String.valueOf(config.getCursorHold()));
+        properties.setProperty("extended dynamic", String.valueOf(config.getExtendedDynamic()));
+        properties.setProperty("package cache", String.valueOf(config.getPackageCache()));
+        properties.setProperty("block size", String.valueOf(config.getBlockSize()));
+        properties.setProperty("socket timeout", String.valueOf(config.getSocketTimeout()));
+        properties.setProperty("keep alive", String.valueOf(config.getSocketKeepAlive()));
+        properties.setProperty("tcp no delay", String.valueOf(config.getTcpNoDelay()));
+        properties.setProperty("prefetch", String.valueOf(config.getPrefetch()));
+        properties.setProperty("query optimize goal", String.valueOf(config.getQueryOptimizeGoal()));
+        properties.setProperty("lob threshold", String.valueOf(config.getLobThreshold()));
+        return properties;
     }
 
     private void copyConfiguration(JdbcConfiguration source, JdbcConfiguration target) {
@@ -269,6 +372,7 @@ public class JdbcConfigurationService {
 
         target.setQueryTimeout(source.getQueryTimeout());
         target.setFetchSize(source.getFetchSize());
+        target.setBatchSize(source.getBatchSize() != null ? source.getBatchSize() : 100);
     }
 
     private void applyPoolSizeChange() {
@@ -293,12 +397,136 @@ public class JdbcConfigurationService {
         }
     }
 
-    private void refreshConnectionPool() {
-        if (dataSource instanceof HikariDataSource hikariDS) {
-            hikariDS.getHikariPoolMXBean().softEvictConnections();
-            LOG.info("Connection pool refreshed - new connections will use updated driver properties");
-        } else {
-            LOG.warn("DataSource is not HikariDataSource, cannot refresh connection pool");
+    /**
+     * Makes the updated configuration the current one. Driver properties only apply to a pool when it is built, so a
+     * change of them replaces the shared pool; the new pool is built before the configuration is locked, so readers
+     * of it are not held up, and takes over together with the configuration. If no connection can be opened with the
+     * new configuration, neither the configuration nor the pool is changed.
+     */
+    private void apply(JdbcConfiguration updated) {
+        JdbcConfiguration previous = snapshotConfiguration();
+        HikariDataSource current = dataSource instanceof HikariDataSource hikariDS ? hikariDS : null;
+        SwapProgress swap = null;
+        HikariDataSource replacement = null;
+        if (current != null && baseDataSource instanceof HikariDataSource baseDS && opensConnectionsDifferently(baseDS, previous, updated)) {
+            String basePoolName = baseDS.getPoolName() != null ? baseDS.getPoolName() : "shared";
+            swap = new SwapProgress(basePoolName + "-" + poolGeneration.incrementAndGet(), current.getPoolName());
+            replacement = createSharedPool(baseDS, updated, swap);
+        }
+
+        synchronized (currentConfiguration) {
+            copyConfiguration(updated, currentConfiguration);
+            if (replacement != null) {
+                dataSource = replacement;
+            }
+            if (!Objects.equals(previous.getMaximumPoolSize(), updated.getMaximumPoolSize())
+                    || !Objects.equals(previous.getMinimumIdle(), updated.getMinimumIdle())) {
+                applyPoolSizeChange();
+            }
+            if (!Objects.equals(previous.getConnectionTimeout(), updated.getConnectionTimeout())
+                    || !Objects.equals(previous.getIdleTimeout(), updated.getIdleTimeout())
+                    || !Objects.equals(previous.getMaxLifetime(), updated.getMaxLifetime())
+                    || !Objects.equals(previous.getLeakDetectionThreshold(), updated.getLeakDetectionThreshold())) {
+                applyPoolTimeoutChanges();
+            }
+        }
+
+        if (replacement != null) {
+            swap.switchMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - swap.startNanos);
+            poolSwappedPublisher.publishEvent(new PoolSwapped(current, replacement));
+            recordSwap(swap);
+            LOG.info("Connection pool '{}' replaced '{}' after {}ms ({} connections opened in {}ms, {} failed)",
+                    swap.poolName, swap.previousPoolName, swap.switchMillis, swap.connectionsOpened, swap.openMillis,
+                    swap.connectionsFailed);
+            SwapProgress drainedSwap = swap;
+            poolDrainer.submit(() -> drain(current, drainedSwap));
+        }
+    }
+
+    private boolean opensConnectionsDifferently(HikariDataSource baseDS, JdbcConfiguration previous, JdbcConfiguration updated) {
+        // Driver properties of another database are left out, changing them needs no new pool
+        return !Objects.equals(previous.getAutoCommit(), updated.getAutoCommit())
+                || !buildDriverProperties(baseDS, previous).equals(buildDriverProperties(baseDS, updated));
+    }
+
+    /**
+     * A pool for the new configuration, filled with connections opened in parallel so it can take over at once.
+     */
+    private HikariDataSource createSharedPool(HikariDataSource baseDS, JdbcConfiguration config, SwapProgress swap) {
+        PrewarmedDataSource prewarmed = new PrewarmedDataSource(new DriverDataSource(baseDS.getJdbcUrl(),
+                baseDS.getDriverClassName(), buildDriverProperties(baseDS, config), baseDS.getUsername(), baseDS.getPassword()));
+        int wanted = Math.max(config.getMinimumIdle(), 1);
+        swap.connectionsOpened = prewarmed.prewarm(wanted,
+                (int) Math.max(TimeUnit.MILLISECONDS.toSeconds(config.getConnectionTimeout()), 1), config.getConnectionTimeout());
+        swap.connectionsFailed = prewarmed.getFailed();
+        swap.openMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - swap.startNanos);
+        if (swap.connectionsOpened == 0) {
+            prewarmed.closeUnused();
+            SQLException error = prewarmed.getFirstError();
+            throw new IllegalStateException("Could not open a connection with the new configuration, the pool was kept: "
+                    + (error != null ? error.getMessage() : "timed out after " + config.getConnectionTimeout() + "ms"), error);
+        }
+
+        HikariConfig hikariConfig = createPoolConfig(swap.poolName, config, sharedPoolTrackerFactory);
+        hikariConfig.setDataSource(prewarmed);
+        HikariDataSource replacement;
+        try {
+            replacement = new HikariDataSource(hikariConfig);
+        } catch (RuntimeException e) {
+            prewarmed.closeUnused();
+            throw new IllegalStateException("Could not start a pool with the new configuration, the pool was kept: " + e.getMessage(), e);
+        }
+        awaitIdle(replacement, Math.min(swap.connectionsOpened, config.getMinimumIdle()), config.getConnectionTimeout());
+        prewarmed.closeUnused();
+        swap.fillMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - swap.startNanos) - swap.openMillis;
+        return replacement;
+    }
+
+    private void awaitIdle(HikariDataSource pool, int idle, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        HikariPoolMXBean bean;
+        while (System.currentTimeMillis() < deadline
+                && ((bean = pool.getHikariPoolMXBean()) == null || bean.getIdleConnections() < idle)) {
+            try {
+                Thread.sleep(SWAP_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Lets the connections still in use be returned to the old pool, each is closed on return, and closes the pool
+     * once all are back or the drain timed out.
+     */
+    private void drain(HikariDataSource pool, SwapProgress swap) {
+        long startNanos = System.nanoTime();
+        long deadline = startNanos + TimeUnit.MILLISECONDS.toNanos(DRAIN_TIMEOUT_MILLIS);
+        HikariPoolMXBean bean = pool.getHikariPoolMXBean();
+        int active = 0;
+        if (bean != null) {
+            bean.softEvictConnections();
+            while ((active = bean.getActiveConnections()) > 0 && System.nanoTime() < deadline) {
+                try {
+                    Thread.sleep(POOL_READY_POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        pool.close();
+        swap.connectionsAborted = active;
+        swap.drainMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        LOG.info("Connection pool '{}' drained in {}ms{}", swap.previousPoolName, swap.drainMillis,
+                active > 0 ? ", " + active + " connections still in use were closed" : "");
+    }
+
+    private void recordSwap(SwapProgress swap) {
+        poolSwaps.addFirst(swap);
+        while (poolSwaps.size() > MAX_RETAINED_SWAPS) {
+            poolSwaps.pollLast();
         }
     }
 
@@ -307,7 +535,7 @@ public class JdbcConfigurationService {
         LOG.info("{}: Pool[max={}, min={}, connTimeout={}, idleTimeout={}, maxLife={}, leak={}], " +
                         "AutoCommit={}, AS400[thread={}, naming='{}', cursor={}, extended={}, cache={}, block={}], " +
                         "Network[sockTimeout={}, keepAlive={}, tcpNoDelay={}], Performance[prefetch={}, optimize={}, lobThreshold={}], " +
-                        "Query[timeout={}, fetchSize={}]",
+                        "Query[timeout={}, fetchSize={}, batchSize={}]",
                 message,
                 currentConfiguration.getMaximumPoolSize(), currentConfiguration.getMinimumIdle(), currentConfiguration.getConnectionTimeout(),
                 currentConfiguration.getIdleTimeout(), currentConfiguration.getMaxLifetime(), currentConfiguration.getLeakDetectionThreshold(),
@@ -315,9 +543,57 @@ public class JdbcConfigurationService {
                 currentConfiguration.getCursorHold(), currentConfiguration.getExtendedDynamic(), currentConfiguration.getPackageCache(),
                 currentConfiguration.getBlockSize(), currentConfiguration.getSocketTimeout(), currentConfiguration.getSocketKeepAlive(),
                 currentConfiguration.getTcpNoDelay(), currentConfiguration.getPrefetch(), currentConfiguration.getQueryOptimizeGoal(),
-                currentConfiguration.getLobThreshold(), currentConfiguration.getQueryTimeout(), currentConfiguration.getFetchSize());
+                currentConfiguration.getLobThreshold(), currentConfiguration.getQueryTimeout(), currentConfiguration.getFetchSize(),
+                currentConfiguration.getBatchSize());
     }
 
+    private static final class SwapProgress {
+        private final String poolName;
+        private final String previousPoolName;
+        private final Instant startedAt = Instant.now();
+        private final long startNanos = System.nanoTime();
+        private int connectionsOpened;
+        private int connectionsFailed;
+        private long openMillis;
+        private long fillMillis;
+        private long switchMillis;
+        private volatile Long drainMillis;
+        private volatile Integer connectionsAborted;
+
+        private SwapProgress(String poolName, String previousPoolName) {
+            this.poolName = poolName;
+            this.previousPoolName = previousPoolName;
+        }
+
+        private PoolSwap toPoolSwap() {
+            return new PoolSwap(poolName, previousPoolName, startedAt, connectionsOpened, connectionsFailed, openMillis,
+                    fillMillis, switchMillis, drainMillis, connectionsAborted);
+        }
+    }
+
+    /**
+     * Published when a new pool has taken over from {@code previous}, which is draining.
+     */
+    public record PoolSwapped(HikariDataSource previous, HikariDataSource current) {}
+
+    /**
+     * Timing of a replacement of the shared pool: opening the connections in parallel, filling the new pool with
+     * them, the total until it took over, and draining the old pool (null while it drains).
+     */
+    @Serdeable
+    public record PoolSwap(
+            String poolName,
+            String previousPoolName,
+            Instant startedAt,
+            int connectionsOpened,
+            int connectionsFailed,
+            long openMillis,
+            long fillMillis,
+            long switchMillis,
+            Long drainMillis,
+            Integer connectionsAborted
+    ) {}
+
     // Updated request record to include the new performance properties and remove fetchSize
     public record JdbcConfigurationUpdateRequest(
             // HikariCP Connection Pool Performance Settings
@@ -348,6 +624,7 @@ public class JdbcConfigurationService {
 
             // Query Performance Settings (removed fetchSize since blockSize takes precedence)
             Integer queryTimeout,
-            Integer fetchSize
+            Integer fetchSize,
+            Integer batchSize
     ) {}
 }
@@ -0,0 +1,254 @@
+package com.lkww.service;
+
+import io.micronaut.serde.annotation.Serdeable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram. Values are recorded in nanoseconds with
+ * roughly two significant digits of precision from 1 microsecond up to about 73 minutes.
+ * Recording is lock-free, so a histogram can be owned by one worker or shared by a few.
+ */
+public class LatencyHistogram {
+
+    // 2^10 ns (~1 microsecond) is the smallest value we can tell apart from zero
+    private static final int UNIT_MAGNITUDE = 10;
+    // 256 linear sub-buckets per power of two gives < 1% relative error
+    private static final int SUB_BUCKET_COUNT_MAGNITUDE = 8;
+    private static final int SUB_BUCKET_HALF_COUNT_MAGNITUDE = SUB_BUCKET_COUNT_MAGNITUDE - 1;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_COUNT_MAGNITUDE;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final long SUB_BUCKET_MASK = ((long) SUB_BUCKET_COUNT - 1) << UNIT_MAGNITUDE;
+    private static final int LEADING_ZERO_COUNT_BASE = 64 - UNIT_MAGNITUDE - SUB_BUCKET_HALF_COUNT_MAGNITUDE - 1;
+    private static final long HIGHEST_TRACKABLE_VALUE = (1L << 42) - 1;
+    private static final int COUNTS_LENGTH = countsArrayLength();
+
+    private final AtomicLongArray counts = new AtomicLongArray(COUNTS_LENGTH);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        recordNanos(nanos, 1);
+    }
+
+    public void recordNanos(long nanos, long count) {
+        long value = Math.min(Math.max(nanos, 0), HIGHEST_TRACKABLE_VALUE);
+        counts.addAndGet(countsIndex(value), count);
+        totalCount.addAndGet(count);
+        totalNanos.addAndGet(value * count);
+        updateMax(value);
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < COUNTS_LENGTH; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        totalNanos.addAndGet(other.totalNanos.get());
+        updateMax(other.maxValue.get());
+    }
+
+    /**
+     * Empties the histogram. Not safe while other threads are still recording into it.
+     */
+    public void reset() {
+        for (int i = 0; i < COUNTS_LENGTH; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalNanos.set(0);
+        maxValue.set(0);
+    }
+
+    /**
+     * Returns a copy that back-fills the samples a closed-loop client never issued while it was stuck
+     * behind a slow response, assuming requests were intended to go out every {@code expectedIntervalNanos}.
+     */
+    public LatencyHistogram copyCorrectedForCoordinatedOmission(long expectedIntervalNanos) {
+        LatencyHistogram corrected = new LatencyHistogram();
+        for (int i = 0; i < COUNTS_LENGTH; i++) {
+            long count = counts.get(i);
+            if (count == 0) {
+                continue;
+            }
+            long value = highestEquivalentValue(valueFromIndex(i));
+            corrected.recordNanos(value, count);
+            if (expectedIntervalNanos <= 0) {
+                continue;
+            }
+            for (long missing = value - expectedIntervalNanos; missing >= expectedIntervalNanos; missing -= expectedIntervalNanos) {
+                corrected.recordNanos(missing, count);
+            }
+        }
+        return corrected;
+    }
+
+    /**
+     * The non-empty buckets in ascending order, each as the highest value it stands for. Recording them into an
+     * empty histogram gives back the same percentiles, which makes them a compact form for keeping many
+     * histograms around and re-combining them.
+     */
+    Buckets buckets() {
+        int nonEmpty = 0;
+        for (int i = 0; i < COUNTS_LENGTH; i++) {
+            if (counts.get(i) != 0) {
+                nonEmpty++;
+            }
+        }
+        long[] values = new long[nonEmpty];
+        long[] bucketCounts = new long[nonEmpty];
+        for (int i = 0, bucket = 0; i < COUNTS_LENGTH && bucket < nonEmpty; i++) {
+            long count = counts.get(i);
+            if (count != 0) {
+                values[bucket] = highestEquivalentValue(valueFromIndex(i));
+                bucketCounts[bucket++] = count;
+            }
+        }
+        return new Buckets(values, bucketCounts, totalCount.get(), totalNanos.get());
+    }
+
+    /**
+     * Writes the non-empty buckets only, so a typical histogram takes a few hundred bytes.
+     */
+    public void encode(DataOutput out) throws IOException {
+        int nonEmpty = 0;
+        for (int i = 0; i < COUNTS_LENGTH; i++) {
+            if (counts.get(i) != 0) {
+                nonEmpty++;
+            }
+        }
+        out.writeInt(nonEmpty);
+        for (int i = 0; i < COUNTS_LENGTH && nonEmpty > 0; i++) {
+            long count = counts.get(i);
+            if (count != 0) {
+                out.writeShort(i);
+                out.writeLong(count);
+                nonEmpty--;
+            }
+        }
+        out.writeLong(totalNanos.get());
+        out.writeLong(maxValue.get());
+    }
+
+    public static LatencyHistogram decode(DataInput in) throws IOException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int nonEmpty = in.readInt();
+        for (int i = 0; i < nonEmpty; i++) {
+            int index = in.readUnsignedShort();
+            long count = in.readLong();
+            histogram.counts.set(index, count);
+            histogram.totalCount.addAndGet(count);
+        }
+        histogram.totalNanos.set(in.readLong());
+        histogram.maxValue.set(in.readLong());
+        return histogram;
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    public long getMaxValue() {
+        return maxValue.get();
+    }
+
+    public double getMean() {
+        long count = totalCount.get();
+        return count == 0 ? 0.0 : (double) totalNanos.get() / count;
+    }
+
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < COUNTS_LENGTH; i++) {
+            seen += counts.get(i);
+            if (seen >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(valueFromIndex(i)), maxValue.get());
+            }
+        }
+        return maxValue.get();
+    }
+
+    public LatencySummary summarize() {
+        return new LatencySummary(
+                getTotalCount(),
+                toMillis(getMean()),
+                toMillis(getValueAtPercentile(50.0)),
+                toMillis(getValueAtPercentile(90.0)),
+                toMillis(getValueAtPercentile(99.0)),
+                toMillis(getValueAtPercentile(99.9)),
+                toMillis(getMaxValue())
+        );
+    }
+
+    private void updateMax(long value) {
+        long current;
+        while (value > (current = maxValue.get())) {
+            if (maxValue.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    private static int countsIndex(long value) {
+        int bucketIndex = LEADING_ZERO_COUNT_BASE - Long.numberOfLeadingZeros(value | SUB_BUCKET_MASK);
+        int subBucketIndex = (int) (value >>> (bucketIndex + UNIT_MAGNITUDE));
+        int bucketBaseIndex = (bucketIndex + 1) << SUB_BUCKET_HALF_COUNT_MAGNITUDE;
+        return bucketBaseIndex + (subBucketIndex - SUB_BUCKET_HALF_COUNT);
+    }
+
+    private static long valueFromIndex(int index) {
+        int bucketIndex = (index >> SUB_BUCKET_HALF_COUNT_MAGNITUDE) - 1;
+        int subBucketIndex = (index & (SUB_BUCKET_HALF_COUNT - 1)) + SUB_BUCKET_HALF_COUNT;
+        if (bucketIndex < 0) {
+            subBucketIndex -= SUB_BUCKET_HALF_COUNT;
+            bucketIndex = 0;
+        }
+        return (long) subBucketIndex << (bucketIndex + UNIT_MAGNITUDE);
+    }
+
+    private static long highestEquivalentValue(long value) {
+        int bucketIndex = LEADING_ZERO_COUNT_BASE - Long.numberOfLeadingZeros(value | SUB_BUCKET_MASK);
+        return value + (1L << (UNIT_MAGNITUDE + bucketIndex)) - 1;
+    }
+
+    private static int countsArrayLength() {
+        long smallestUntrackableValue = (long) SUB_BUCKET_COUNT << UNIT_MAGNITUDE;
+        int bucketsNeeded = 1;
+        while (smallestUntrackableValue <= HIGHEST_TRACKABLE_VALUE) {
+            smallestUntrackableValue <<= 1;
+            bucketsNeeded++;
+        }
+        return (bucketsNeeded + 1) << SUB_BUCKET_HALF_COUNT_MAGNITUDE;
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    record Buckets(long[] values, long[] counts, long totalCount, long totalNanos) {}
+
+    @Serdeable
+    public record LatencySummary(
+            long count,
+            double meanMs,
+            double p50Ms,
+            double p90Ms,
+            double p99Ms,
+            double p999Ms,
+            double maxMs
+    ) {}
+}
@@ -0,0 +1,237 @@
+package com.lkww.service;
+
+import com.lkww.controller.TestController.TestRequest;
+import com.lkww.service.TestExecutionService.LoadProfile;
+import com.lkww.service.TestExecutionService.LoadShape;
+import com.lkww.service.TestExecutionService.LoadTarget;
+import com.lkww.service.TestExecutionService.SaturationKnee;
+import com.lkww.service.TestExecutionService.StepResult;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timing of a run's warmup and of the steps of its load profile. A level is a number of active workers, or
+ * arrivals per second when the profile targets a rate. Every step records into its own recorder that is
+ * swapped when the step ends, so each step reports exact percentiles. Only the coordinating thread of the
+ * run may start and finish steps.
+ */
+class LoadSchedule {
+
+    // The knee is the first step where less than half of the added load turns into throughput while p99 or,
+    // less noisy on short steps, the mean latency grows by more than half of the added load
+    private static final double MIN_SCALING_EFFICIENCY = 0.5;
+    private static final double MAX_LATENCY_GROWTH = 0.5;
+
+    @Getter
+    private final int warmupSeconds;
+    @Getter
+    private final LoadTarget target;
+    private final LoadShape shape;
+    private final int start;
+    private final int end;
+    private final int increment;
+    private final int stepCount;
+    private final int stepSeconds;
+    @Getter
+    private final IntervalRecorder stepRecorder = new IntervalRecorder();
+    @Getter
+    private final List<StepResult> steps = new CopyOnWriteArrayList<>();
+    private long measuredStartNanos;
+    private int currentStep = -1;
+    private long stepStartNanos;
+    private Instant stepStartedAt;
+
+    private LoadSchedule(int warmupSeconds, LoadTarget target, LoadShape shape, int start, int end, int increment,
+                         int stepSeconds) {
+        this.warmupSeconds = warmupSeconds;
+        this.target = target;
+        this.shape = shape;
+        this.start = start;
+        this.end = end;
+        this.increment = increment;
+        this.stepCount = (end - start) / increment + 1;
+        this.stepSeconds = stepSeconds;
+    }
+
+    static LoadSchedule create(TestRequest request) {
+        int warmupSeconds = request.warmupSeconds() != null ? request.warmupSeconds() : 0;
+        if (warmupSeconds < 0) {
+            throw new IllegalArgumentException("warmupSeconds must not be negative");
+        }
+
+        LoadProfile profile = request.loadProfile();
+        if (profile == null) {
+            if (warmupSeconds == 0) {
+                return null;
+            }
+            // A warmup without a profile is followed by a single step at the requested load
+            boolean openLoop = request.targetQps() != null && request.targetQps() > 0;
+            int level = openLoop ? request.targetQps() : request.concurrency();
+            return new LoadSchedule(warmupSeconds, openLoop ? LoadTarget.RATE : LoadTarget.CONCURRENCY,
+                    LoadShape.STEP, level, level, 1, Math.max(request.duration(), 1));
+        }
+
+        LoadTarget target = getTarget(request);
+        if (target == LoadTarget.CONCURRENCY && request.targetQps() != null && request.targetQps() > 0) {
+            throw new IllegalArgumentException("Open-loop tests ramp the arrival rate, use target RATE");
+        }
+        if (profile.start() == null || profile.end() == null || profile.start() < 1 || profile.end() < profile.start()) {
+            throw new IllegalArgumentException("Load profiles need 1 <= start <= end");
+        }
+        int increment = profile.increment() != null ? profile.increment() : 1;
+        if (increment < 1) {
+            throw new IllegalArgumentException("Load profile increment must be at least 1");
+        }
+        if (profile.stepSeconds() == null || profile.stepSeconds() < 1) {
+            throw new IllegalArgumentException("Load profiles need stepSeconds of at least 1");
+        }
+        return new LoadSchedule(warmupSeconds, target, profile.shape() != null ? profile.shape() : LoadShape.STEP,
+                profile.start(), profile.end(), increment, profile.stepSeconds());
+    }
+
+    static LoadTarget getTarget(TestRequest request) {
+        LoadProfile profile = request.loadProfile();
+        if (profile != null && profile.target() != null) {
+            return profile.target();
+        }
+        return request.targetQps() != null && request.targetQps() > 0 ? LoadTarget.RATE : LoadTarget.CONCURRENCY;
+    }
+
+    int getMeasuredSeconds() {
+        return stepCount * stepSeconds;
+    }
+
+    int getStartLevel() {
+        return start;
+    }
+
+    int getPeakLevel() {
+        return end;
+    }
+
+    void startWarmup(long nowNanos) {
+        stepStartNanos = nowNanos;
+        stepStartedAt = Instant.now();
+    }
+
+    void finishWarmup(long nowNanos) {
+        finishStep(0, true, start, nowNanos);
+    }
+
+    void startMeasurement(long nowNanos) {
+        measuredStartNanos = nowNanos;
+        currentStep = -1;
+    }
+
+    /**
+     * Moves on to the step that covers {@code nowNanos}, finishing the previous one, and returns the level
+     * the load should be at now.
+     */
+    int update(long nowNanos) {
+        long elapsedNanos = nowNanos - measuredStartNanos;
+        int step = (int) Math.min(elapsedNanos / TimeUnit.SECONDS.toNanos(stepSeconds), stepCount - 1);
+        if (step != currentStep) {
+            if (currentStep >= 0) {
+                finishStep(currentStep + 1, false, stepLevel(currentStep), nowNanos);
+            }
+            currentStep = step;
+            stepStartNanos = nowNanos;
+            stepStartedAt = Instant.now();
+        }
+        return levelAt(elapsedNanos);
+    }
+
+    void finishMeasurement(long nowNanos) {
+        if (currentStep >= 0) {
+            finishStep(currentStep + 1, false, stepLevel(currentStep), nowNanos);
+            currentStep = -1;
+        }
+    }
+
+    private int levelAt(long elapsedNanos) {
+        if (shape == LoadShape.LINEAR) {
+            long totalNanos = TimeUnit.SECONDS.toNanos(getMeasuredSeconds());
+            return (int) Math.min(end, start + (end - start) * Math.max(elapsedNanos, 0) / totalNanos);
+        }
+        return stepLevel(currentStep);
+    }
+
+    private int stepLevel(int step) {
+        if (shape == LoadShape.LINEAR) {
+            // The load rises during the step, so it is reported at the level it had halfway through
+            return (int) Math.round(start + (end - start) * (step + 0.5) / stepCount);
+        }
+        return start + step * increment;
+    }
+
+    private void finishStep(int step, boolean warmup, int level, long nowNanos) {
+        LatencyHistogram latency = stepRecorder.swap();
+        long errors = stepRecorder.takeErrors();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(nowNanos - stepStartNanos);
+        long queries = latency.getTotalCount();
+        steps.add(new StepResult(
+                step,
+                warmup,
+                level,
+                stepStartedAt,
+                elapsedMillis,
+                queries,
+                errors,
+                elapsedMillis > 0 ? queries * 1000.0 / elapsedMillis : 0.0,
+                latency.summarize()
+        ));
+    }
+
+    /**
+     * Finds the step after which more load stopped buying throughput and only added latency. Returns null
+     * when there are not at least two measured steps to compare.
+     */
+    SaturationKnee detectKnee() {
+        List<StepResult> measured = steps.stream()
+                .filter(step -> !step.warmup() && step.successfulQueries() > 0)
+                .toList();
+        if (measured.size() < 2) {
+            return null;
+        }
+
+        for (int i = 1; i < measured.size(); i++) {
+            StepResult previous = measured.get(i - 1);
+            StepResult current = measured.get(i);
+            double loadGrowth = (double) current.level() / previous.level() - 1;
+            double throughputGrowth = current.queriesPerSecond() / previous.queriesPerSecond() - 1;
+            double p99Growth = growth(previous.latency().p99Ms(), current.latency().p99Ms());
+            double meanGrowth = growth(previous.latency().meanMs(), current.latency().meanMs());
+            if (loadGrowth > 0 && throughputGrowth < MIN_SCALING_EFFICIENCY * loadGrowth
+                    && Math.max(p99Growth, meanGrowth) > MAX_LATENCY_GROWTH * loadGrowth) {
+                String reason = String.format(
+                        "Going from %d to %d %s raised throughput by %.1f%%, mean latency by %.1f%% and p99 by %.1f%%",
+                        previous.level(), current.level(), unit(), throughputGrowth * 100, meanGrowth * 100,
+                        p99Growth * 100);
+                return knee(true, previous, reason);
+            }
+        }
+
+        StepResult last = measured.get(measured.size() - 1);
+        return knee(false, last, "Throughput kept scaling up to " + last.level() + " " + unit()
+                + ", extend the profile to find the knee");
+    }
+
+    private static double growth(double previous, double current) {
+        return previous > 0 ? current / previous - 1 : 0.0;
+    }
+
+    private SaturationKnee knee(boolean detected, StepResult step, String reason) {
+        // Only a concurrency ramp says how many connections are worth having; a rate knee is a throughput limit
+        Integer poolSize = detected && target == LoadTarget.CONCURRENCY ? step.level() : null;
+        return new SaturationKnee(detected, target, step.level(), step.queriesPerSecond(), step.latency().p99Ms(),
+                poolSize, reason);
+    }
+
+    private String unit() {
+        return target == LoadTarget.CONCURRENCY ? "workers" : "queries/s";
+    }
+}
@@ -0,0 +1,357 @@
+package com.lkww.service;
+
+import com.lkww.service.NetworkProxyService.NetworkImpairment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-threaded NIO TCP proxy that delays, jitters and rate-limits the bytes it forwards, to emulate a
+ * WAN link between the JDBC driver and a database. Data read from either side is cut into packets; each
+ * packet is released after the one-way delay plus its serialization time at the configured bandwidth,
+ * never ahead of the packet before it, so the byte stream stays in order.
+ */
+class NetworkProxy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NetworkProxy.class);
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    // Stop reading from a side once this much data is waiting to be delivered to the other
+    private static final long MAX_PENDING_BYTES = 4 * 1024 * 1024;
+
+    private final InetSocketAddress listenAddress;
+    private final InetSocketAddress targetAddress;
+    private final Set<ProxyConnection> connections = new HashSet<>();
+    private final AtomicLong totalConnections = new AtomicLong(0);
+    private final AtomicLong bytesUpstream = new AtomicLong(0);
+    private final AtomicLong bytesDownstream = new AtomicLong(0);
+    private volatile NetworkImpairment impairment;
+    private volatile int openConnections;
+    private volatile boolean running;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+
+    NetworkProxy(InetSocketAddress listenAddress, InetSocketAddress targetAddress, NetworkImpairment impairment) {
+        this.listenAddress = listenAddress;
+        this.targetAddress = targetAddress;
+        this.impairment = impairment;
+    }
+
+    void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(listenAddress);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        thread = Thread.ofPlatform().name("network-proxy-" + listenAddress.getPort()).daemon().start(this::run);
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void setImpairment(NetworkImpairment impairment) {
+        this.impairment = impairment;
+    }
+
+    NetworkImpairment getImpairment() {
+        return impairment;
+    }
+
+    int getOpenConnections() {
+        return openConnections;
+    }
+
+    long getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    long getBytesUpstream() {
+        return bytesUpstream.get();
+    }
+
+    long getBytesDownstream() {
+        return bytesDownstream.get();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(millisUntilNextDelivery());
+                for (SelectionKey key : selector.selectedKeys()) {
+                    handle(key);
+                }
+                selector.selectedKeys().clear();
+                deliverDuePackets();
+            }
+        } catch (IOException e) {
+            LOG.error("Network proxy on port {} failed", listenAddress.getPort(), e);
+        } finally {
+            new ArrayList<>(connections).forEach(ProxyConnection::close);
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+            LOG.info("Network proxy on port {} stopped", listenAddress.getPort());
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+
+        ProxyConnection connection = (ProxyConnection) key.attachment();
+        try {
+            if (key.isConnectable()) {
+                connection.upstream.finishConnect();
+            }
+            if (key.isValid() && key.isReadable()) {
+                connection.read((SocketChannel) key.channel());
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.write((SocketChannel) key.channel());
+            }
+            connection.updateInterest();
+        } catch (IOException e) {
+            LOG.debug("Proxy connection closed: {}", e.getMessage());
+            connection.close();
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel client = serverChannel.accept();
+            if (client == null) {
+                return;
+            }
+            SocketChannel upstream = SocketChannel.open();
+            upstream.configureBlocking(false);
+            upstream.connect(targetAddress);
+            client.configureBlocking(false);
+            client.socket().setTcpNoDelay(true);
+            upstream.socket().setTcpNoDelay(true);
+
+            ProxyConnection connection = new ProxyConnection(client, upstream);
+            connections.add(connection);
+            openConnections = connections.size();
+            totalConnections.incrementAndGet();
+            connection.updateInterest();
+        } catch (IOException e) {
+            LOG.warn("Failed to accept proxy connection to {}", targetAddress, e);
+        }
+    }
+
+    private void deliverDuePackets() {
+        for (ProxyConnection connection : new ArrayList<>(connections)) {
+            try {
+                connection.upstreamPipe.deliver();
+                connection.downstreamPipe.deliver();
+                connection.updateInterest();
+            } catch (IOException e) {
+                LOG.debug("Proxy connection closed: {}", e.getMessage());
+                connection.close();
+            }
+        }
+    }
+
+    private long millisUntilNextDelivery() {
+        long next = Long.MAX_VALUE;
+        for (ProxyConnection connection : connections) {
+            next = Math.min(next, connection.upstreamPipe.nextDueNanos());
+            next = Math.min(next, connection.downstreamPipe.nextDueNanos());
+        }
+        if (next == Long.MAX_VALUE) {
+            return 0;
+        }
+        // select(0) blocks forever, so always wait at least a millisecond
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(next - System.nanoTime() + 999_999));
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (Exception e) {
+            LOG.debug("Failed to close proxy resource", e);
+        }
+    }
+
+    private record Packet(ByteBuffer data, long dueNanos) {}
+
+    private final class ProxyConnection {
+        private final SocketChannel client;
+        private final SocketChannel upstream;
+        private final SelectionKey clientKey;
+        private final SelectionKey upstreamKey;
+        private final Pipe upstreamPipe;
+        private final Pipe downstreamPipe;
+
+        private ProxyConnection(SocketChannel client, SocketChannel upstream) throws IOException {
+            this.client = client;
+            this.upstream = upstream;
+            this.clientKey = client.register(selector, 0, this);
+            this.upstreamKey = upstream.register(selector, SelectionKey.OP_CONNECT, this);
+            this.upstreamPipe = new Pipe(client, upstream, bytesUpstream);
+            this.downstreamPipe = new Pipe(upstream, client, bytesDownstream);
+        }
+
+        private void read(SocketChannel channel) throws IOException {
+            (channel == client ? upstreamPipe : downstreamPipe).read();
+        }
+
+        private void write(SocketChannel channel) throws IOException {
+            (channel == client ? downstreamPipe : upstreamPipe).deliver();
+        }
+
+        private void updateInterest() {
+            if (upstreamPipe.finished() && downstreamPipe.finished()) {
+                close();
+                return;
+            }
+            if (!clientKey.isValid() || !upstreamKey.isValid()) {
+                return;
+            }
+            int clientOps = (upstreamPipe.canRead() ? SelectionKey.OP_READ : 0)
+                    | (downstreamPipe.writeBlocked ? SelectionKey.OP_WRITE : 0);
+            int upstreamOps = upstream.isConnectionPending()
+                    ? SelectionKey.OP_CONNECT
+                    : (downstreamPipe.canRead() ? SelectionKey.OP_READ : 0)
+                    | (upstreamPipe.writeBlocked ? SelectionKey.OP_WRITE : 0);
+            clientKey.interestOps(clientOps);
+            upstreamKey.interestOps(upstreamOps);
+        }
+
+        private void close() {
+            if (connections.remove(this)) {
+                openConnections = connections.size();
+            }
+            closeQuietly(client);
+            closeQuietly(upstream);
+        }
+    }
+
+    /**
+     * One direction of a proxied connection: bytes read from {@code source} wait here until they are due
+     * for delivery to {@code destination}.
+     */
+    private final class Pipe {
+        private final SocketChannel source;
+        private final SocketChannel destination;
+        private final AtomicLong deliveredBytes;
+        private final ArrayDeque<Packet> packets = new ArrayDeque<>();
+        private long pendingBytes;
+        private long linkFreeNanos;
+        private long lastDueNanos;
+        private boolean sourceClosed;
+        private boolean outputShutdown;
+        private boolean writeBlocked;
+
+        private Pipe(SocketChannel source, SocketChannel destination, AtomicLong deliveredBytes) {
+            this.source = source;
+            this.destination = destination;
+            this.deliveredBytes = deliveredBytes;
+        }
+
+        private boolean canRead() {
+            return !sourceClosed && source.isConnected() && pendingBytes < MAX_PENDING_BYTES;
+        }
+
+        private boolean finished() {
+            return outputShutdown;
+        }
+
+        private long nextDueNanos() {
+            Packet head = packets.peek();
+            return head != null && !writeBlocked ? head.dueNanos() : Long.MAX_VALUE;
+        }
+
+        private void read() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+            int read = source.read(buffer);
+            if (read < 0) {
+                sourceClosed = true;
+                deliver();
+                return;
+            }
+            buffer.flip();
+
+            NetworkImpairment current = impairment;
+            int packetSize = Math.max(current.packetSize(), 1);
+            while (buffer.hasRemaining()) {
+                int length = Math.min(packetSize, buffer.remaining());
+                ByteBuffer packet = buffer.slice(buffer.position(), length);
+                buffer.position(buffer.position() + length);
+                packets.add(new Packet(packet, dueNanos(current, length)));
+                pendingBytes += length;
+            }
+        }
+
+        private long dueNanos(NetworkImpairment current, int length) {
+            long now = System.nanoTime();
+            long sentNanos = now;
+            if (current.bandwidthKbps() > 0) {
+                long transmitNanos = length * 8L * TimeUnit.MILLISECONDS.toNanos(1) / current.bandwidthKbps();
+                sentNanos = Math.max(now, linkFreeNanos) + transmitNanos;
+                linkFreeNanos = sentNanos;
+            }
+
+            long delayNanos = TimeUnit.MILLISECONDS.toNanos(current.rttMillis()) / 2
+                    + TimeUnit.MICROSECONDS.toNanos(current.packetDelayMicros());
+            if (current.jitterMillis() > 0) {
+                delayNanos += ThreadLocalRandom.current().nextLong(TimeUnit.MILLISECONDS.toNanos(current.jitterMillis()) + 1);
+            }
+            // TCP delivers in order, so jitter may delay a packet but never let it overtake the previous one
+            lastDueNanos = Math.max(sentNanos + delayNanos, lastDueNanos);
+            return lastDueNanos;
+        }
+
+        private void deliver() throws IOException {
+            if (!destination.isConnected()) {
+                return;
+            }
+            long now = System.nanoTime();
+            writeBlocked = false;
+            Packet head;
+            while ((head = packets.peek()) != null && head.dueNanos() <= now) {
+                int written = destination.write(head.data());
+                deliveredBytes.addAndGet(written);
+                pendingBytes -= written;
+                if (head.data().hasRemaining()) {
+                    writeBlocked = true;
+                    return;
+                }
+                packets.poll();
+            }
+            if (sourceClosed && packets.isEmpty() && !outputShutdown) {
+                destination.shutdownOutput();
+                outputShutdown = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.lkww.service;
+
+import com.lkww.config.NetworkProxyConfiguration;
+import io.micronaut.serde.annotation.Serdeable;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.h2.tools.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+@Singleton
+public class NetworkProxyService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NetworkProxyService.class);
+    private static final String H2_DATABASE_URL = "jdbc:h2:mem:latency;DB_CLOSE_DELAY=-1";
+
+    @Inject
+    private NetworkProxyConfiguration configuration;
+
+    private NetworkProxy proxy;
+    private Server h2Server;
+    // Holds the in-memory database open while the TCP server serves it
+    private Connection h2Connection;
+    private ProxyStartRequest activeRequest;
+
+    public synchronized ProxyStatus start(ProxyStartRequest request) {
+        if (proxy != null) {
+            throw new IllegalStateException("Network proxy is already running on port " + activeRequest.listenPort());
+        }
+        ProxyStartRequest resolved = withDefaults(request);
+        validate(resolved.impairment());
+        validateTargetHost(resolved.targetHost());
+
+        try {
+            if (Boolean.TRUE.equals(resolved.h2Server())) {
+                startH2Server(resolved.targetPort());
+            }
+            proxy = new NetworkProxy(new InetSocketAddress(configuration.getListenAddress(), resolved.listenPort()),
+                    new InetSocketAddress(resolved.targetHost(), resolved.targetPort()), resolved.impairment());
+            proxy.start();
+        } catch (SQLException e) {
+            stopH2Server();
+            throw new IllegalStateException("Failed to start H2 TCP server: " + e.getMessage(), e);
+        } catch (IOException e) {
+            stopH2Server();
+            proxy = null;
+            throw new UncheckedIOException("Failed to start network proxy on port " + resolved.listenPort(), e);
+        }
+
+        activeRequest = resolved;
+        LOG.info("Network proxy listening on {}:{} forwarding to {}:{} with {}", configuration.getListenAddress(),
+                resolved.listenPort(), resolved.targetHost(), resolved.targetPort(), resolved.impairment());
+        return getStatus();
+    }
+
+    public void startFromConfiguration() {
+        if (Boolean.TRUE.equals(configuration.getEnabled())) {
+            start(new ProxyStartRequest(null, null, null, null, null));
+        }
+    }
+
+    @PreDestroy
+    public synchronized ProxyStatus stop() {
+        if (proxy != null) {
+            proxy.stop();
+            proxy = null;
+        }
+        stopH2Server();
+        activeRequest = null;
+        return getStatus();
+    }
+
+    public synchronized ProxyStatus updateImpairment(NetworkImpairment impairment) {
+        if (proxy == null) {
+            throw new IllegalStateException("Network proxy is not running");
+        }
+        validate(impairment);
+        proxy.setImpairment(impairment);
+        LOG.info("Network proxy impairment changed to {}", impairment);
+        return getStatus();
+    }
+
+    public synchronized ProxyStatus getStatus() {
+        if (proxy == null) {
+            return new ProxyStatus(false, null, null, null, null, null, null, 0, 0, 0, 0);
+        }
+        return new ProxyStatus(
+                true,
+                activeRequest.listenPort(),
+                activeRequest.targetHost(),
+                activeRequest.targetPort(),
+                h2Server != null,
+                h2Server != null ? "jdbc:h2:tcp://localhost:" + activeRequest.listenPort() + "/mem:latency;DB_CLOSE_DELAY=-1" : null,
+                proxy.getImpairment(),
+                proxy.getOpenConnections(),
+                proxy.getTotalConnections(),
+                proxy.getBytesUpstream(),
+                proxy.getBytesDownstream()
+        );
+    }
+
+    private ProxyStartRequest withDefaults(ProxyStartRequest request) {
+        NetworkImpairment defaultImpairment = new NetworkImpairment(
+                configuration.getRttMillis(),
+                configuration.getJitterMillis(),
+                configuration.getBandwidthKbps(),
+                configuration.getPacketDelayMicros(),
+                configuration.getPacketSize()
+        );
+        return new ProxyStartRequest(
+                request.listenPort() != null ? request.listenPort() : configuration.getListenPort(),
+                request.targetHost() != null ? request.targetHost() : configuration.getTargetHost(),
+                request.targetPort() != null ? request.targetPort() : configuration.getTargetPort(),
+                request.h2Server() != null ? request.h2Server() : configuration.getH2Server(),
+                request.impairment() != null ? request.impairment() : defaultImpairment
+        );
+    }
+
+    private void validate(NetworkImpairment impairment) {
+        if (impairment.rttMillis() < 0 || impairment.jitterMillis() < 0 || impairment.bandwidthKbps() < 0
+                || impairment.packetDelayMicros() < 0 || impairment.packetSize() <= 0) {
+            throw new IllegalArgumentException("Impairment values must not be negative and packetSize must be positive");
+        }
+    }
+
+    // Keeps POST /proxy/start from turning the proxy into a relay to any host
+    private void validateTargetHost(String targetHost) {
+        boolean allowed = !targetHost.isBlank() && (targetHost.equalsIgnoreCase(configuration.getTargetHost())
+                || configuration.getAllowedTargetHosts().stream().anyMatch(targetHost::equalsIgnoreCase));
+        if (!allowed) {
+            throw new IllegalArgumentException("Target host " + targetHost
+                    + " is not allowed, add it to PROXY_ALLOWED_TARGET_HOSTS");
+        }
+    }
+
+    /**
+     * Starts the H2 TCP server without -ifNotExists, so clients can only open the in-memory database created
+     * here and not create databases of their own. The server only accepts local connections.
+     */
+    private void startH2Server(int port) throws SQLException {
+        h2Connection = DriverManager.getConnection(H2_DATABASE_URL, "sa", "");
+        h2Server = Server.createTcpServer("-tcpPort", String.valueOf(port)).start();
+        LOG.info("H2 TCP server started on port {}", port);
+    }
+
+    private void stopH2Server() {
+        if (h2Server != null) {
+            h2Server.stop();
+            h2Server = null;
+        }
+        if (h2Connection != null) {
+            try {
+                h2Connection.close();
+            } catch (SQLException e) {
+                LOG.debug("Failed to close the H2 keep-alive connection", e);
+            }
+            h2Connection = null;
+        }
+    }
+
+    @Serdeable
+    public record NetworkImpairment(
+            int rttMillis,
+            int jitterMillis,
+            int bandwidthKbps,
+            int packetDelayMicros,
+            int packetSize
+    ) {}
+
+    @Serdeable
+    public record ProxyStartRequest(
+            Integer listenPort,
+            String targetHost,
+            Integer targetPort,
+            Boolean h2Server,
+            NetworkImpairment impairment
+    ) {}
+
+    @Serdeable
+    public record ProxyStatus(
+            boolean running,
+            Integer listenPort,
+            String targetHost,
+            Integer targetPort,
+            Boolean h2Server,
+            String jdbcUrl,
+            NetworkImpairment impairment,
+            int openConnections,
+            long totalConnections,
+            long bytesUpstream,
+            long bytesDownstream
+    ) {}
+}
@@ -0,0 +1,28 @@
+package com.lkww.service;
+
+import io.micronaut.configuration.jdbc.hikari.DatasourceConfiguration;
+import io.micronaut.context.BeanProvider;
+import io.micronaut.context.event.BeanInitializedEventListener;
+import io.micronaut.context.event.BeanInitializingEvent;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Starts the configured network proxy before the datasource is created, so the pool's first connections
+ * already go through it.
+ */
+@Singleton
+public class NetworkProxyStartup implements BeanInitializedEventListener<DatasourceConfiguration> {
+
+    @Inject
+    private BeanProvider<NetworkProxyService> networkProxyService;
+
+    @Override
+    public DatasourceConfiguration onInitialized(BeanInitializingEvent<DatasourceConfiguration> event) {
+        NetworkProxyService service = networkProxyService.get();
+        if (!service.getStatus().running()) {
+            service.startFromConfiguration();
+        }
+        return event.getBean();
+    }
+}
@@ -0,0 +1,125 @@
+package com.lkww.service;
+
+import lombok.Getter;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Arrivals of an open-loop run. One thread dispatches an arrival every interval, whether or not earlier
+ * queries have finished, and the workers take them off the queue. An arrival that finds maxInFlight
+ * arrivals already queued or running is dropped, one that starts more than the lag tolerance after its
+ * intended start counts as delayed.
+ */
+class OpenLoopSchedule {
+
+    static final long LAG_TOLERANCE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long ARRIVAL_POLL_MILLIS = 100;
+
+    @Getter
+    private final int targetQps;
+    @Getter
+    private final int maxInFlight;
+    @Getter
+    private final List<LatencyHistogram> serviceTimeHistograms;
+    private final BlockingQueue<Long> arrivals = new LinkedBlockingQueue<>();
+    private final Semaphore inFlight;
+    private final AtomicLong scheduled = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+    private final AtomicLong delayed = new AtomicLong(0);
+    private volatile long intervalNanos;
+
+    OpenLoopSchedule(int targetQps, int maxInFlight, int initialQps, List<LatencyHistogram> serviceTimeHistograms) {
+        this.targetQps = targetQps;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.serviceTimeHistograms = serviceTimeHistograms;
+        setRate(initialQps);
+    }
+
+    void setRate(int qps) {
+        intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(qps, 1);
+    }
+
+    /**
+     * Issues arrivals until the run stops or endNanos is reached, following the rate of the load schedule
+     * if there is one.
+     */
+    void dispatch(BooleanSupplier running, long endNanos, LoadSchedule loadSchedule) {
+        long intendedStartNanos = System.nanoTime();
+
+        while (running.getAsBoolean() && intendedStartNanos < endNanos) {
+            if (loadSchedule != null) {
+                setRate(loadSchedule.update(System.nanoTime()));
+            }
+            long waitNanos = intendedStartNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+                continue;
+            }
+
+            offer(intendedStartNanos);
+            intendedStartNanos += intervalNanos;
+        }
+    }
+
+    void offer(long intendedStartNanos) {
+        scheduled.incrementAndGet();
+        if (inFlight.tryAcquire()) {
+            arrivals.add(intendedStartNanos);
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * The intended start of the next arrival, or null if none came within the poll interval.
+     */
+    Long poll() {
+        try {
+            return arrivals.poll(ARRIVAL_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    void started(long intendedStartNanos, long startNanos) {
+        if (startNanos - intendedStartNanos > LAG_TOLERANCE_NANOS) {
+            delayed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Ends an arrival taken with poll, whether its query ran or not.
+     */
+    void release() {
+        inFlight.release();
+    }
+
+    /**
+     * Counts arrivals still queued when the run ended as dropped, they were accepted but never served.
+     */
+    void finish() {
+        dropped.addAndGet(arrivals.size());
+        arrivals.clear();
+    }
+
+    long getScheduled() {
+        return scheduled.get();
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    long getDelayed() {
+        return delayed.get();
+    }
+}
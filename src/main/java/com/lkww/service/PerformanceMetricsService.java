@@ -1,43 +1,75 @@
 package com.lkww.service;
 
+import com.lkww.service.TestExecutionService.ErrorCategory;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
+import io.micronaut.serde.annotation.Serdeable;
 import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.Duration;
-import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 @Singleton
 public class PerformanceMetricsService {
 
     private static final Logger LOG = LoggerFactory.getLogger(PerformanceMetricsService.class);
 
+    // jdbc.qps and the QPS of /metrics are averaged over this window, short enough to follow a ramp and long
+    // enough that a scrape every few seconds does not alias on single slow seconds
+    private static final int QPS_WINDOW_SECONDS = 10;
+    private static final int[] RATE_WINDOWS_SECONDS = {1, QPS_WINDOW_SECONDS, RateRecorder.MAX_WINDOW_SECONDS};
+
     private final Timer queryTimer;
+    private final Timer[] phaseTimers = new Timer[QueryPhase.values().length];
     private final Counter queryCounter;
-    private final Counter errorCounter;
+    private final Counter[] errorCounters = new Counter[ErrorCategory.values().length];
+    private final Counter rowCounter;
+    private final Counter byteCounter;
     private final AtomicLong activeConnections = new AtomicLong(0);
     private final AtomicLong idleConnections = new AtomicLong(0);
-    private final AtomicReference<Double> currentQps = new AtomicReference<>(0.0);
-    private final AtomicLong totalQueries = new AtomicLong(0);
-    private final AtomicReference<Instant> lastQpsCalculation = new AtomicReference<>(Instant.now());
+    private final AtomicLong totalConnections = new AtomicLong(0);
+    private final AtomicLong pendingThreads = new AtomicLong(0);
+    private final LongAdder totalQueries = new LongAdder();
+    private final RateRecorder rates = new RateRecorder();
 
     public PerformanceMetricsService(MeterRegistry meterRegistry) {
         this.queryTimer = Timer.builder("jdbc.query.duration")
                 .description("Time taken to execute JDBC queries")
                 .register(meterRegistry);
 
+        for (QueryPhase phase : QueryPhase.values()) {
+            phaseTimers[phase.ordinal()] = Timer.builder("jdbc.query.phase.duration")
+                    .description("Time spent in one phase of a JDBC query")
+                    .tag("phase", phase.tag())
+                    .register(meterRegistry);
+        }
+
         this.queryCounter = Counter.builder("jdbc.query.total")
                 .description("Total number of JDBC queries executed")
                 .register(meterRegistry);
 
-        this.errorCounter = Counter.builder("jdbc.error.total")
-                .description("Total number of JDBC errors")
+        for (ErrorCategory category : ErrorCategory.values()) {
+            errorCounters[category.ordinal()] = Counter.builder("jdbc.error.total")
+                    .description("Total number of JDBC errors")
+                    .tag("category", category.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry);
+        }
+
+        this.rowCounter = Counter.builder("jdbc.rows.read")
+                .description("Total number of result set rows read")
+                .register(meterRegistry);
+
+        this.byteCounter = Counter.builder("jdbc.bytes.read")
+                .description("Estimated bytes of column data read from result sets")
+                .baseUnit("bytes")
                 .register(meterRegistry);
 
         Gauge.builder("jdbc.connections.active", activeConnections, AtomicLong::get)
@@ -48,9 +80,33 @@ public class PerformanceMetricsService {
                 .description("Number of idle JDBC connections")
                 .register(meterRegistry);
 
-        Gauge.builder("jdbc.qps", currentQps, AtomicReference::get)
-                .description("Current queries per second")
+        Gauge.builder("jdbc.connections.total", totalConnections, AtomicLong::get)
+                .description("Number of open JDBC connections in the pool")
                 .register(meterRegistry);
+
+        Gauge.builder("jdbc.connections.pending", pendingThreads, AtomicLong::get)
+                .description("Number of threads waiting for a pooled connection")
+                .register(meterRegistry);
+
+        Gauge.builder("jdbc.qps", rates, r -> r.queriesPerSecond(QPS_WINDOW_SECONDS))
+                .description("Successful queries per second over the last " + QPS_WINDOW_SECONDS + " seconds")
+                .register(meterRegistry);
+
+        for (int window : RATE_WINDOWS_SECONDS) {
+            String tag = window + "s";
+            Gauge.builder("jdbc.query.rate", rates, r -> r.queriesPerSecond(window))
+                    .description("Successful queries per second over a sliding window")
+                    .tag("window", tag)
+                    .register(meterRegistry);
+            Gauge.builder("jdbc.error.rate", rates, r -> r.errorsPerSecond(window))
+                    .description("Failed queries per second over a sliding window")
+                    .tag("window", tag)
+                    .register(meterRegistry);
+            Gauge.builder("jdbc.rows.rate", rates, r -> r.rowsPerSecond(window))
+                    .description("Result set rows read per second over a sliding window")
+                    .tag("window", tag)
+                    .register(meterRegistry);
+        }
     }
 
     public Timer.Sample startQueryTimer() {
@@ -60,59 +116,87 @@ public class PerformanceMetricsService {
     public void recordQuerySuccess(Timer.Sample sample) {
         sample.stop(queryTimer);
         queryCounter.increment();
-        totalQueries.incrementAndGet();
-        updateQps();
+        totalQueries.increment();
+        rates.recordSuccess();
 
-        LOG.debug("Query executed successfully. Total queries: {}, Current QPS: {}",
-                totalQueries.get(), currentQps.get());
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Query executed successfully. Total queries: {}", totalQueries.sum());
+        }
     }
 
-    public void recordQueryError(Timer.Sample sample, String errorMessage) {
+    public void recordQueryError(Timer.Sample sample, ErrorCategory category) {
         sample.stop(queryTimer);
-        errorCounter.increment();
-
-        LOG.warn("Query execution failed: {}", errorMessage);
+        errorCounters[category.ordinal()].increment();
+        rates.recordError();
     }
 
-    public void updateConnectionMetrics(long active, long idle) {
-        activeConnections.set(active);
-        idleConnections.set(idle);
-
-        LOG.debug("Connection metrics updated - Active: {}, Idle: {}", active, idle);
+    public void recordRowsRead(long rows, long bytes) {
+        rowCounter.increment(rows);
+        byteCounter.increment(bytes);
+        rates.recordRows(rows);
     }
 
-    private void updateQps() {
-        Instant now = Instant.now();
-        Instant lastCalculation = lastQpsCalculation.get();
-        Duration timeSinceLastCalculation = Duration.between(lastCalculation, now);
+    public void recordPhase(QueryPhase phase, long nanos) {
+        phaseTimers[phase.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
 
-        if (timeSinceLastCalculation.toSeconds() >= 1) {
-            if (lastQpsCalculation.compareAndSet(lastCalculation, now)) {
-                double qps = 1.0 / timeSinceLastCalculation.toMillis() * 1000.0;
-                currentQps.set(qps);
-            }
-        }
+    public void updateConnectionMetrics(long active, long idle, long total, long pending) {
+        activeConnections.set(active);
+        idleConnections.set(idle);
+        totalConnections.set(total);
+        pendingThreads.set(pending);
     }
 
     public PerformanceMetrics getCurrentMetrics() {
         return new PerformanceMetrics(
-                currentQps.get(),
-                totalQueries.get(),
-                errorCounter.count(),
+                rates.queriesPerSecond(QPS_WINDOW_SECONDS),
+                totalQueries.sum(),
+                Arrays.stream(errorCounters).mapToDouble(Counter::count).sum(),
                 activeConnections.get(),
                 idleConnections.get(),
+                totalConnections.get(),
+                pendingThreads.get(),
                 queryTimer.mean(java.util.concurrent.TimeUnit.MILLISECONDS),
-                queryTimer.max(java.util.concurrent.TimeUnit.MILLISECONDS)
+                queryTimer.max(java.util.concurrent.TimeUnit.MILLISECONDS),
+                Arrays.stream(QueryPhase.values())
+                        .map(phase -> {
+                            Timer timer = phaseTimers[phase.ordinal()];
+                            return new PhaseMetrics(phase, timer.count(), timer.mean(TimeUnit.MILLISECONDS),
+                                    timer.max(TimeUnit.MILLISECONDS));
+                        })
+                        .toList(),
+                Arrays.stream(RATE_WINDOWS_SECONDS).mapToObj(rates::rates).toList()
         );
     }
 
+    @Serdeable
+    public record PhaseMetrics(
+            QueryPhase phase,
+            long count,
+            double averageTime,
+            double maxTime
+    ) {}
+
+    @Serdeable
+    public record RateMetrics(
+            int windowSeconds,
+            double queriesPerSecond,
+            double errorsPerSecond,
+            double rowsPerSecond
+    ) {}
+
+    @Serdeable
     public record PerformanceMetrics(
             double queriesPerSecond,
             long totalQueries,
             double totalErrors,
             long activeConnections,
             long idleConnections,
+            long totalConnections,
+            long threadsAwaitingConnection,
             double averageResponseTime,
-            double maxResponseTime
+            double maxResponseTime,
+            List<PhaseMetrics> phases,
+            List<RateMetrics> rates
     ) {}
 }
\ No newline at end of file
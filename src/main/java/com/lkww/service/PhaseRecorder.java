@@ -0,0 +1,46 @@
+package com.lkww.service;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * One latency histogram per {@link QueryPhase}, recorded by the workers of a test run.
+ */
+public class PhaseRecorder {
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[QueryPhase.values().length];
+
+    public PhaseRecorder() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(QueryPhase phase, long nanos) {
+        histograms[phase.ordinal()].recordNanos(nanos);
+    }
+
+    public LatencyHistogram getHistogram(QueryPhase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    public void add(PhaseRecorder other) {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i].add(other.histograms[i]);
+        }
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    public Map<QueryPhase, LatencyHistogram.LatencySummary> summarize() {
+        Map<QueryPhase, LatencyHistogram.LatencySummary> summaries = new EnumMap<>(QueryPhase.class);
+        for (QueryPhase phase : QueryPhase.values()) {
+            summaries.put(phase, histograms[phase.ordinal()].summarize());
+        }
+        return summaries;
+    }
+}
@@ -0,0 +1,373 @@
+package com.lkww.service;
+
+import com.lkww.controller.TestController.TestRequest;
+import com.lkww.service.TestExecutionService.PoolTuning;
+import com.lkww.service.TestExecutionService.PoolTuningAction;
+import com.lkww.service.TestExecutionService.PoolTuningAlgorithm;
+import com.lkww.service.TestExecutionService.PoolTuningDecision;
+import com.lkww.service.TestExecutionService.PoolTuningResult;
+import com.lkww.service.TestExecutionService.StatementReuse;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resizes the pool of a run while it runs, looking for the smallest pool that still reaches peak throughput.
+ * Every window it compares throughput, the time queries hold a connection and the threads waiting for one,
+ * and grows, shrinks or keeps the pool. A change that did not pay off in the next window is taken back and
+ * the size it tried becomes a bound. In safe mode the pool never grows beyond its configured size, changes
+ * by one connection at a time, and goes back to its configured size as soon as queries fail. When the run
+ * ends the pool always goes back to its configured size, the size found is only reported. Only the interval
+ * ticker of the run may call {@link #tick(long)}.
+ */
+class PoolAutoTuner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PoolAutoTuner.class);
+    private static final int DEFAULT_WINDOW_SECONDS = 5;
+    private static final double DEFAULT_LATENCY_TOLERANCE = 1.0;
+    // Same rule as the saturation knee: a step up has to turn at least half of the added connections into throughput
+    private static final double MIN_SCALING_EFFICIENCY = 0.5;
+    // Windows within this much of the peak count as reaching it, a step down may not lose more
+    private static final double PEAK_TOLERANCE = 0.05;
+    private static final double AIMD_BACKOFF = 0.75;
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final String testId;
+    private final JdbcConfigurationService jdbcConfigurationService;
+    // Null when tuning the shared pool
+    private final HikariDataSource isolatedPool;
+    private final PoolTuningAlgorithm algorithm;
+    private final boolean safeMode;
+    private final int windowSeconds;
+    private final double latencyTolerance;
+    private final int initialSize;
+    private final int initialMinimumIdle;
+    private final int minSize;
+    private final int maxSize;
+    private final IntervalRecorder serviceRecorder = new IntervalRecorder();
+    private final List<PoolTuningDecision> timeline = new CopyOnWriteArrayList<>();
+    private final Map<Integer, Double> bestQpsBySize = new TreeMap<>();
+    private volatile boolean started;
+    private boolean frozen;
+    private long windowStartNanos;
+    private int maxPending;
+    private int maxActive;
+    private int size;
+    // The size tuning ended at, before the pool went back to its configured size
+    private Integer finalSize;
+    private int floor;
+    private int ceiling;
+    private double baselineMeanMs = Double.MAX_VALUE;
+    private double peakQps;
+    private PoolTuningAction lastAction;
+    private int lastSize;
+    private double lastQps;
+
+    private PoolAutoTuner(String testId, JdbcConfigurationService jdbcConfigurationService, HikariDataSource isolatedPool,
+                          HikariDataSource pool, PoolTuning tuning, int workerCount) {
+        this.testId = testId;
+        this.jdbcConfigurationService = jdbcConfigurationService;
+        this.isolatedPool = isolatedPool;
+        this.algorithm = tuning.algorithm() != null ? tuning.algorithm() : PoolTuningAlgorithm.AIMD;
+        this.safeMode = Boolean.TRUE.equals(tuning.safeMode());
+        this.windowSeconds = tuning.windowSeconds() != null ? tuning.windowSeconds() : DEFAULT_WINDOW_SECONDS;
+        this.latencyTolerance = tuning.latencyTolerance() != null ? tuning.latencyTolerance() : DEFAULT_LATENCY_TOLERANCE;
+        this.initialSize = pool.getMaximumPoolSize();
+        this.initialMinimumIdle = pool.getMinimumIdle();
+        this.minSize = tuning.minPoolSize() != null ? tuning.minPoolSize() : 1;
+        int requestedMax = tuning.maxPoolSize() != null ? tuning.maxPoolSize() : Math.max(workerCount, initialSize);
+        // On a production service the tuner may only take connections away
+        this.maxSize = safeMode ? Math.min(requestedMax, initialSize) : requestedMax;
+        this.size = initialSize;
+        this.floor = minSize;
+        this.ceiling = maxSize + 1;
+    }
+
+    /**
+     * Creates the tuner of a run on {@code isolatedPool}, or on the shared pool if that is null.
+     */
+    static PoolAutoTuner create(String testId, TestRequest request, JdbcConfigurationService jdbcConfigurationService,
+                                HikariDataSource isolatedPool, int workerCount) {
+        PoolTuning tuning = request.poolTuning();
+        if (tuning == null) {
+            return null;
+        }
+        DataSource dataSource = isolatedPool != null ? isolatedPool : jdbcConfigurationService.getDataSource();
+        if (!(dataSource instanceof HikariDataSource pool)) {
+            throw new IllegalArgumentException("Pool tuning needs a HikariCP datasource");
+        }
+        if (request.loadProfile() != null) {
+            throw new IllegalArgumentException("Pool tuning needs a constant load and cannot be combined with a load profile");
+        }
+        if (request.statementReuse() != null && request.statementReuse() != StatementReuse.PER_QUERY) {
+            throw new IllegalArgumentException("Pool tuning needs statementReuse PER_QUERY, pinned workers never return their connections");
+        }
+        if (tuning.windowSeconds() != null && tuning.windowSeconds() < 1) {
+            throw new IllegalArgumentException("Pool tuning windowSeconds must be at least 1");
+        }
+        if (tuning.latencyTolerance() != null && tuning.latencyTolerance() <= 0) {
+            throw new IllegalArgumentException("Pool tuning latencyTolerance must be positive");
+        }
+        int min = tuning.minPoolSize() != null ? tuning.minPoolSize() : 1;
+        if (min < 1 || (tuning.maxPoolSize() != null && tuning.maxPoolSize() < min)) {
+            throw new IllegalArgumentException("Pool tuning needs 1 <= minPoolSize <= maxPoolSize");
+        }
+        return new PoolAutoTuner(testId, jdbcConfigurationService, isolatedPool, pool, tuning, workerCount);
+    }
+
+    /**
+     * Starts tuning from the current pool size; what was recorded before, e.g. during the warmup, is dropped.
+     */
+    synchronized void start(long nowNanos) {
+        serviceRecorder.swap();
+        serviceRecorder.takeErrors();
+        windowStartNanos = nowNanos;
+        resize(Math.max(minSize, Math.min(size, maxSize)));
+        started = true;
+    }
+
+    void recordServiceNanos(long nanos) {
+        serviceRecorder.recordNanos(nanos);
+    }
+
+    void recordError() {
+        serviceRecorder.recordError();
+    }
+
+    /**
+     * Returns a connection to the pool. Hikari keeps connections above a lowered maximum until they have been idle
+     * for idleTimeout, so the tuner evicts them on return to make a smaller pool take effect right away.
+     * {@code source} is the pool the connection was borrowed from.
+     */
+    void release(Connection connection, DataSource source) throws SQLException {
+        connection.close();
+        HikariDataSource pool = pool();
+        if (source != pool) {
+            // The shared pool was replaced, the old one closes its connections anyway
+            return;
+        }
+        HikariPoolMXBean poolBean = pool.getHikariPoolMXBean();
+        if (poolBean != null && poolBean.getTotalConnections() > pool.getMaximumPoolSize()) {
+            pool.evictConnection(connection);
+        }
+    }
+
+    synchronized void tick(long nowNanos) {
+        if (!started || frozen) {
+            return;
+        }
+        HikariPoolMXBean poolBean = pool().getHikariPoolMXBean();
+        if (poolBean != null) {
+            maxPending = Math.max(maxPending, poolBean.getThreadsAwaitingConnection());
+            maxActive = Math.max(maxActive, poolBean.getActiveConnections());
+        }
+        long elapsedNanos = nowNanos - windowStartNanos;
+        if (elapsedNanos < TimeUnit.SECONDS.toNanos(windowSeconds)) {
+            return;
+        }
+
+        LatencyHistogram service = serviceRecorder.swap();
+        long errors = serviceRecorder.takeErrors();
+        double qps = service.getTotalCount() / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+        LatencyHistogram.LatencySummary summary = service.summarize();
+        decide(qps, summary, errors);
+        windowStartNanos = nowNanos;
+        maxPending = 0;
+        maxActive = 0;
+    }
+
+    private void decide(double qps, LatencyHistogram.LatencySummary service, long errors) {
+        if (service.count() > 0) {
+            baselineMeanMs = Math.min(baselineMeanMs, service.meanMs());
+            bestQpsBySize.merge(size, qps, Math::max);
+            peakQps = Math.max(peakQps, qps);
+        }
+
+        int previous = size;
+        PoolTuningAction action;
+        String reason;
+        int target;
+        if (errors > 0 && safeMode) {
+            frozen = true;
+            action = PoolTuningAction.REVERT;
+            target = initialSize;
+            reason = errors + " queries failed, restored the configured size and stopped tuning";
+        } else if (lastAction == PoolTuningAction.GROW && growth(lastQps, qps) < MIN_SCALING_EFFICIENCY * growth(lastSize, size)) {
+            ceiling = size;
+            action = PoolTuningAction.REVERT;
+            target = lastSize;
+            reason = String.format("Growing from %d to %d changed throughput by %.1f%% only", lastSize, size,
+                    growth(lastQps, qps) * 100);
+        } else if (lastAction == PoolTuningAction.SHRINK && growth(lastQps, qps) < -PEAK_TOLERANCE) {
+            floor = size + 1;
+            action = PoolTuningAction.REVERT;
+            target = lastSize;
+            reason = String.format("Shrinking from %d to %d lost %.1f%% throughput", lastSize, size,
+                    -growth(lastQps, qps) * 100);
+        } else {
+            target = switch (algorithm) {
+                case AIMD -> aimd(service, errors);
+                case GRADIENT -> gradient(service, errors);
+            };
+            target = Math.max(Math.max(minSize, floor), Math.min(target, Math.min(maxSize, ceiling - 1)));
+            if (safeMode) {
+                target = Math.max(size - 1, Math.min(size + 1, target));
+            }
+            action = target > size ? PoolTuningAction.GROW : target < size ? PoolTuningAction.SHRINK : PoolTuningAction.HOLD;
+            reason = describe(service, errors);
+        }
+
+        lastAction = action;
+        lastSize = previous;
+        lastQps = qps;
+        if (target != size) {
+            resize(target);
+        }
+
+        PoolTuningDecision decision = new PoolTuningDecision(
+                timeline.size() + 1,
+                Instant.now(),
+                action,
+                previous,
+                target,
+                qps,
+                service.meanMs(),
+                service.p99Ms(),
+                maxPending,
+                maxActive,
+                errors,
+                reason
+        );
+        timeline.add(decision);
+        LOG.info("Test {} pool tuning {}: {} -> {} ({})", testId, action, previous, target, reason);
+    }
+
+    private int aimd(LatencyHistogram.LatencySummary service, long errors) {
+        if (errors > 0 || isCongested(service) || isSaturated()) {
+            return Math.min(size - 1, (int) (size * AIMD_BACKOFF));
+        }
+        if (maxPending > 0) {
+            return size + 1;
+        }
+        if (maxActive < size) {
+            // Connections nobody borrowed in the whole window are given back
+            return Math.max(maxActive, Math.min(size - 1, (int) (size * AIMD_BACKOFF)));
+        }
+        return size;
+    }
+
+    private int gradient(LatencyHistogram.LatencySummary service, long errors) {
+        double gradient = service.count() > 0
+                ? Math.max(MIN_GRADIENT, Math.min(1.0, baselineMeanMs * (1 + latencyTolerance) / service.meanMs()))
+                : 1.0;
+        if (errors > 0) {
+            gradient = MIN_GRADIENT;
+        }
+        if (isSaturated()) {
+            return Math.min(size - 1, (int) Math.round(size * gradient));
+        }
+        // Waiting threads are the queue the pool has to serve, a square root of the size keeps growth gentle
+        double queue = maxPending > 0 ? Math.ceil(Math.sqrt(size)) : 0;
+        int target = (int) Math.round(size * gradient + queue);
+        if (maxPending == 0 && maxActive < size) {
+            target = Math.min(target, Math.max(maxActive, 1));
+        }
+        return target;
+    }
+
+    private boolean isCongested(LatencyHistogram.LatencySummary service) {
+        return service.count() > 0 && service.meanMs() > baselineMeanMs * (1 + latencyTolerance);
+    }
+
+    // Once more connections stopped paying off or may not be added, the tuner probes downwards until throughput drops
+    private boolean isSaturated() {
+        return ceiling <= maxSize || (size >= maxSize && maxPending > 0);
+    }
+
+    private String describe(LatencyHistogram.LatencySummary service, long errors) {
+        if (errors > 0) {
+            return errors + " queries failed";
+        }
+        if (isCongested(service)) {
+            return String.format("Mean service time %.2fms is more than %.0f%% above the best %.2fms",
+                    service.meanMs(), latencyTolerance * 100, baselineMeanMs);
+        }
+        if (isSaturated()) {
+            return size > floor
+                    ? "More than " + Math.min(ceiling - 1, maxSize) + " connections do not pay off, probing a smaller pool"
+                    : "Smallest pool that keeps throughput is " + floor;
+        }
+        if (maxPending > 0) {
+            return maxPending + " threads waited for a connection";
+        }
+        if (maxActive < size) {
+            return "At most " + maxActive + " connections were in use";
+        }
+        return "Pool is fully used without waiting threads";
+    }
+
+    private static double growth(double previous, double current) {
+        return previous > 0 ? current / previous - 1 : 0.0;
+    }
+
+    private void resize(int newSize) {
+        size = newSize;
+        int minimumIdle = Math.min(initialMinimumIdle, newSize);
+        if (isolatedPool != null) {
+            isolatedPool.setMaximumPoolSize(newSize);
+            isolatedPool.setMinimumIdle(minimumIdle);
+        } else {
+            jdbcConfigurationService.resizeSharedPool(newSize, minimumIdle);
+        }
+    }
+
+    /**
+     * The pool being tuned. The shared pool is looked up every time, so tuning moves over to a pool that
+     * replaced it.
+     */
+    private HikariDataSource pool() {
+        return isolatedPool != null ? isolatedPool : (HikariDataSource) jdbcConfigurationService.getDataSource();
+    }
+
+    /**
+     * Returns the smallest size that reached peak throughput in any window, or null before the first window.
+     */
+    synchronized Integer getRecommendedSize() {
+        return bestQpsBySize.entrySet().stream()
+                .filter(entry -> entry.getValue() >= (1 - PEAK_TOLERANCE) * peakQps)
+                .map(Map.Entry::getKey)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Puts the pool back to its configured size; the recommended size is only reported.
+     */
+    synchronized void finish() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        finalSize = size;
+        if (size != initialSize) {
+            resize(initialSize);
+        }
+        LOG.info("Test {} pool tuning finished, recommended {} connections", testId, getRecommendedSize());
+    }
+
+    synchronized PoolTuningResult summarize() {
+        return new PoolTuningResult(algorithm, safeMode, initialSize, finalSize != null ? finalSize : size,
+                getRecommendedSize(), peakQps, timeline);
+    }
+}
@@ -0,0 +1,109 @@
+package com.lkww.service;
+
+import com.lkww.service.TestExecutionService.PoolGauge;
+import com.lkww.service.TestExecutionService.PoolTelemetryResult;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What the pool of one run went through: samples of its active, idle and total connections and of the threads
+ * waiting for one, plus the pool's own timings of every connection handed out and every physical connection
+ * opened. Acquire waits that grow while the pool is exhausted mean starvation; slow queries with idle
+ * connections point at the database. A shared pool reports the events of every run using it at the time.
+ */
+class PoolTelemetry {
+
+    private final long sampleMillis;
+    private volatile Window window = new Window();
+
+    PoolTelemetry(long sampleMillis) {
+        this.sampleMillis = sampleMillis;
+    }
+
+    void recordAcquire(long nanos) {
+        window.acquireWait.recordNanos(nanos);
+    }
+
+    void recordCreation(long millis) {
+        window.creation.recordNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    void recordTimeout() {
+        window.timeouts.incrementAndGet();
+    }
+
+    /**
+     * Called by the sampler thread only.
+     */
+    void sample(HikariPoolMXBean pool) {
+        window.sample(pool.getActiveConnections(), pool.getIdleConnections(), pool.getTotalConnections(),
+                pool.getThreadsAwaitingConnection());
+    }
+
+    /**
+     * Starts over, e.g. after the warmup. Events racing with the reset land in the discarded window.
+     */
+    void reset() {
+        window = new Window();
+    }
+
+    PoolTelemetryResult summarize() {
+        Window current = window;
+        synchronized (current) {
+            return new PoolTelemetryResult(
+                    sampleMillis,
+                    current.samples,
+                    current.active.summarize(current.samples),
+                    current.idle.summarize(current.samples),
+                    current.total.summarize(current.samples),
+                    current.pending.summarize(current.samples),
+                    current.samples > 0 ? (double) current.starvedSamples / current.samples : 0.0,
+                    current.acquireWait.summarize(),
+                    current.creation.summarize(),
+                    current.timeouts.get()
+            );
+        }
+    }
+
+    private static final class Window {
+        private final LatencyHistogram acquireWait = new LatencyHistogram();
+        private final LatencyHistogram creation = new LatencyHistogram();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final Gauge active = new Gauge();
+        private final Gauge idle = new Gauge();
+        private final Gauge total = new Gauge();
+        private final Gauge pending = new Gauge();
+        private long samples;
+        private long starvedSamples;
+
+        private synchronized void sample(int activeConnections, int idleConnections, int totalConnections,
+                                         int threadsAwaiting) {
+            samples++;
+            active.add(activeConnections);
+            idle.add(idleConnections);
+            total.add(totalConnections);
+            pending.add(threadsAwaiting);
+            if (threadsAwaiting > 0) {
+                starvedSamples++;
+            }
+        }
+    }
+
+    private static final class Gauge {
+        private long sum;
+        private int min = Integer.MAX_VALUE;
+        private int max;
+
+        private void add(int value) {
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        private PoolGauge summarize(long samples) {
+            return samples > 0 ? new PoolGauge((double) sum / samples, min, max) : new PoolGauge(0.0, 0, 0);
+        }
+    }
+}
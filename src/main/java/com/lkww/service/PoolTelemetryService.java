@@ -0,0 +1,219 @@
+package com.lkww.service;
+
+import com.lkww.service.JdbcConfigurationService.PoolSwapped;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.runtime.event.annotation.EventListener;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects HikariCP's metrics to the tester. Every pool gets a metrics tracker that passes each connection
+ * handed out and each physical connection opened on to HikariCP's Micrometer tracker (the {@code hikaricp.*}
+ * meters) and to the runs attached to the pool. A sampler reads the pool gauges every {@link #SAMPLE_MILLIS} ms
+ * for the shared pool's {@code jdbc.connections.*} gauges and for the running tests.
+ */
+@Singleton
+public class PoolTelemetryService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PoolTelemetryService.class);
+    static final long SAMPLE_MILLIS = 100;
+
+    @Inject
+    private JdbcConfigurationService jdbcConfigurationService;
+
+    @Inject
+    private PerformanceMetricsService performanceMetricsService;
+
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, Tracker> trackers = new ConcurrentHashMap<>();
+    private final Map<PoolTelemetry, HikariDataSource> attached = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pool-telemetry-sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    void start() {
+        jdbcConfigurationService.setSharedPoolTrackerFactory(trackerFactory(null));
+        if (jdbcConfigurationService.getDataSource() instanceof HikariDataSource shared) {
+            try {
+                shared.setMetricsTrackerFactory(trackerFactory(null));
+            } catch (IllegalStateException e) {
+                // Something else set up metrics for the pool, the gauges are still sampled
+                LOG.warn("Pool {} already has metrics tracking, acquire and creation times are not recorded: {}",
+                        shared.getPoolName(), e.getMessage());
+            }
+        }
+        sampler.scheduleAtFixedRate(this::sample, SAMPLE_MILLIS, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        sampler.shutdownNow();
+    }
+
+    /**
+     * Tracker factory for a new pool, with the telemetry of the run that will use it attached from the start so
+     * the connections opened while the pool fills up are recorded too.
+     */
+    MetricsTrackerFactory trackerFactory(PoolTelemetry telemetry) {
+        return (poolName, poolStats) -> {
+            Tracker tracker = new Tracker(poolName, poolStats);
+            if (telemetry != null) {
+                tracker.attach(telemetry);
+            }
+            trackers.put(poolName, tracker);
+            return tracker;
+        };
+    }
+
+    /**
+     * Starts sampling the pool behind {@code dataSource} for a run. Returns null if it is not a HikariCP pool.
+     */
+    PoolTelemetry attach(DataSource dataSource, PoolTelemetry telemetry) {
+        if (!(dataSource instanceof HikariDataSource pool)) {
+            return null;
+        }
+        Tracker tracker = trackers.get(pool.getPoolName());
+        if (tracker != null) {
+            tracker.attach(telemetry);
+        }
+        attached.put(telemetry, pool);
+        return telemetry;
+    }
+
+    void detach(PoolTelemetry telemetry) {
+        HikariDataSource pool = attached.remove(telemetry);
+        if (pool != null) {
+            Tracker tracker = trackers.get(pool.getPoolName());
+            if (tracker != null) {
+                tracker.detach(telemetry);
+            }
+        }
+    }
+
+    /**
+     * Moves the runs on the shared pool over to its replacement.
+     */
+    @EventListener
+    void onPoolSwapped(PoolSwapped event) {
+        Tracker previous = trackers.get(event.previous().getPoolName());
+        Tracker current = trackers.get(event.current().getPoolName());
+        attached.replaceAll((telemetry, pool) -> {
+            if (pool != event.previous()) {
+                return pool;
+            }
+            if (previous != null) {
+                previous.detach(telemetry);
+            }
+            if (current != null) {
+                current.attach(telemetry);
+            }
+            return event.current();
+        });
+    }
+
+    private void sample() {
+        try {
+            if (jdbcConfigurationService.getDataSource() instanceof HikariDataSource shared) {
+                HikariPoolMXBean pool = shared.getHikariPoolMXBean();
+                if (pool != null) {
+                    performanceMetricsService.updateConnectionMetrics(pool.getActiveConnections(),
+                            pool.getIdleConnections(), pool.getTotalConnections(), pool.getThreadsAwaitingConnection());
+                }
+            }
+            attached.forEach((telemetry, dataSource) -> {
+                HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+                if (pool != null && !dataSource.isClosed()) {
+                    telemetry.sample(pool);
+                }
+            });
+        } catch (RuntimeException e) {
+            // An exception would cancel the schedule for good
+            LOG.debug("Pool sampling failed", e);
+        }
+    }
+
+    private final class Tracker implements IMetricsTracker {
+        private final String poolName;
+        private final IMetricsTracker meters;
+        // Replaced on attach and detach, which are rare, so the pool threads iterate without allocating
+        private volatile PoolTelemetry[] telemetries = new PoolTelemetry[0];
+
+        private Tracker(String poolName, PoolStats poolStats) {
+            this.poolName = poolName;
+            this.meters = new MicrometerMetricsTrackerFactory(meterRegistry).create(poolName, poolStats);
+        }
+
+        private synchronized void attach(PoolTelemetry telemetry) {
+            if (Arrays.asList(telemetries).contains(telemetry)) {
+                return;
+            }
+            PoolTelemetry[] updated = Arrays.copyOf(telemetries, telemetries.length + 1);
+            updated[telemetries.length] = telemetry;
+            telemetries = updated;
+        }
+
+        private synchronized void detach(PoolTelemetry telemetry) {
+            telemetries = Arrays.stream(telemetries)
+                    .filter(attachedTelemetry -> attachedTelemetry != telemetry)
+                    .toArray(PoolTelemetry[]::new);
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            meters.recordConnectionAcquiredNanos(elapsedAcquiredNanos);
+            for (PoolTelemetry telemetry : telemetries) {
+                telemetry.recordAcquire(elapsedAcquiredNanos);
+            }
+        }
+
+        @Override
+        public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+            meters.recordConnectionCreatedMillis(connectionCreatedMillis);
+            for (PoolTelemetry telemetry : telemetries) {
+                telemetry.recordCreation(connectionCreatedMillis);
+            }
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            meters.recordConnectionTimeout();
+            for (PoolTelemetry telemetry : telemetries) {
+                telemetry.recordTimeout();
+            }
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            meters.recordConnectionUsageMillis(elapsedBorrowedMillis);
+        }
+
+        @Override
+        public void close() {
+            trackers.remove(poolName, this);
+            meters.close();
+        }
+    }
+}
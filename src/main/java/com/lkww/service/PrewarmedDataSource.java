@@ -0,0 +1,164 @@
+package com.lkww.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Driver connections for a new pool that were opened up front, in parallel. HikariCP opens the connections of
+ * a pool one after the other; handed to it as its data source, this serves the connections opened in advance
+ * first and only then opens new ones, so the pool fills up as fast as the slowest single connect.
+ */
+class PrewarmedDataSource implements DataSource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PrewarmedDataSource.class);
+
+    private final DataSource driver;
+    private final Queue<Connection> opened = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile SQLException firstError;
+    private volatile boolean closed;
+
+    PrewarmedDataSource(DataSource driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * Opens {@code count} connections in parallel and keeps those that pass validation. Returns the number
+     * kept; connections still connecting after {@code timeoutMillis} are kept too if they get there later.
+     */
+    int prewarm(int count, int validationTimeoutSeconds, long timeoutMillis) {
+        ExecutorService openers = Executors.newFixedThreadPool(Math.max(count, 1), runnable -> {
+            Thread thread = new Thread(runnable, "pool-prewarm");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletableFuture<?>[] connects = new CompletableFuture<?>[count];
+            for (int i = 0; i < count; i++) {
+                connects[i] = CompletableFuture.runAsync(() -> open(validationTimeoutSeconds), openers);
+            }
+            CompletableFuture.allOf(connects).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOG.warn("Only {} of {} connections were open after {}ms", opened.size(), count, timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // open() handles its own failures
+            LOG.debug("Pre-opening connections failed", e);
+        } finally {
+            openers.shutdown();
+        }
+        return opened.size();
+    }
+
+    int getFailed() {
+        return failed.get();
+    }
+
+    SQLException getFirstError() {
+        return firstError;
+    }
+
+    /**
+     * Closes the connections the pool did not take. Later connects are closed as soon as they complete.
+     */
+    void closeUnused() {
+        closed = true;
+        Connection connection;
+        while ((connection = opened.poll()) != null) {
+            closeQuietly(connection);
+        }
+    }
+
+    private void open(int validationTimeoutSeconds) {
+        try {
+            Connection connection = driver.getConnection();
+            if (!connection.isValid(validationTimeoutSeconds)) {
+                closeQuietly(connection);
+                throw new SQLException("Connection failed validation");
+            }
+            opened.add(connection);
+            if (closed) {
+                closeUnused();
+            }
+        } catch (SQLException e) {
+            failed.incrementAndGet();
+            if (firstError == null) {
+                firstError = e;
+            }
+            LOG.debug("Pre-opening a connection failed", e);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOG.debug("Closing a pre-opened connection failed", e);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = opened.poll();
+        return connection != null ? connection : driver.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return driver.getConnection(username, password);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return driver.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        driver.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        driver.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return driver.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return driver.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> type) throws SQLException {
+        if (type.isInstance(this)) {
+            return type.cast(this);
+        }
+        return driver.unwrap(type);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> type) throws SQLException {
+        return type.isInstance(this) || driver.isWrapperFor(type);
+    }
+}
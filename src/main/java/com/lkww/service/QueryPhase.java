@@ -0,0 +1,22 @@
+package com.lkww.service;
+
+/**
+ * The phases of a single query execution, in the order they happen.
+ */
+public enum QueryPhase {
+    ACQUIRE("acquire"),
+    PREPARE("prepare"),
+    EXECUTE("execute"),
+    FIRST_ROW("first_row"),
+    DRAIN("drain");
+
+    private final String tag;
+
+    QueryPhase(String tag) {
+        this.tag = tag;
+    }
+
+    public String tag() {
+        return tag;
+    }
+}
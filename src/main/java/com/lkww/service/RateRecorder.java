@@ -0,0 +1,116 @@
+package com.lkww.service;
+
+import com.lkww.service.PerformanceMetricsService.RateMetrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts successes, errors and rows per second in a ring of one-second slots and reports their rates over
+ * the last complete seconds. Writers add to striped counters and only allocate when they are the first to
+ * record in a new second, so recording costs no allocation per query and does not contend on one counter.
+ */
+class RateRecorder {
+
+    static final int MAX_WINDOW_SECONDS = 60;
+
+    // One more slot than the longest window for the second that is being recorded, rounded up for the mask
+    private static final int SLOTS = 64;
+    private static final int MASK = SLOTS - 1;
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final LongSupplier nanoClock;
+    private final long originNanos;
+    private final AtomicReferenceArray<Slot> slots = new AtomicReferenceArray<>(SLOTS);
+
+    RateRecorder() {
+        this(System::nanoTime);
+    }
+
+    RateRecorder(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.originNanos = nanoClock.getAsLong();
+    }
+
+    void recordSuccess() {
+        slot(currentSecond()).successes.increment();
+    }
+
+    void recordError() {
+        slot(currentSecond()).errors.increment();
+    }
+
+    void recordRows(long rows) {
+        if (rows > 0) {
+            slot(currentSecond()).rows.add(rows);
+        }
+    }
+
+    /**
+     * Rates over the last {@code windowSeconds} complete seconds, or over all complete seconds so far when
+     * the recorder is younger than the window.
+     */
+    RateMetrics rates(int windowSeconds) {
+        if (windowSeconds < 1 || windowSeconds > MAX_WINDOW_SECONDS) {
+            throw new IllegalArgumentException("Rate windows are 1 to " + MAX_WINDOW_SECONDS + " seconds");
+        }
+        long current = currentSecond();
+        long seconds = Math.min(windowSeconds, current);
+        if (seconds == 0) {
+            return new RateMetrics(windowSeconds, 0.0, 0.0, 0.0);
+        }
+        long successes = 0;
+        long errors = 0;
+        long rows = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            Slot slot = slots.get(i);
+            if (slot != null && slot.second >= current - seconds && slot.second < current) {
+                successes += slot.successes.sum();
+                errors += slot.errors.sum();
+                rows += slot.rows.sum();
+            }
+        }
+        return new RateMetrics(windowSeconds, (double) successes / seconds, (double) errors / seconds,
+                (double) rows / seconds);
+    }
+
+    double queriesPerSecond(int windowSeconds) {
+        return rates(windowSeconds).queriesPerSecond();
+    }
+
+    double errorsPerSecond(int windowSeconds) {
+        return rates(windowSeconds).errorsPerSecond();
+    }
+
+    double rowsPerSecond(int windowSeconds) {
+        return rates(windowSeconds).rowsPerSecond();
+    }
+
+    private long currentSecond() {
+        return (nanoClock.getAsLong() - originNanos) / NANOS_PER_SECOND;
+    }
+
+    private Slot slot(long second) {
+        int index = (int) (second & MASK);
+        Slot slot = slots.get(index);
+        // A writer that read the clock just before a newer second took the slot counts into the newer second
+        if (slot != null && slot.second >= second) {
+            return slot;
+        }
+        Slot fresh = new Slot(second);
+        return slots.compareAndSet(index, slot, fresh) ? fresh : slots.get(index);
+    }
+
+    private static final class Slot {
+        private final long second;
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+
+        private Slot(long second) {
+            this.second = second;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.lkww.service;
+
+import com.lkww.service.TestExecutionService.ResultConsumption;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Reads the columns of each row the way the configured {@link ResultConsumption} asks for and estimates how
+ * many bytes of data that was. The estimate uses the length of character and binary values and the storage
+ * size of the other types on the database, not the size of the Java objects.
+ */
+class ResultSetConsumer {
+
+    private static final int STREAM_BUFFER_BYTES = 8192;
+
+    private final ResultConsumption mode;
+    private final int[] sqlTypes;
+    // Allocated on the first LOB, most result sets have none and a consumer is created for every query
+    private byte[] byteBuffer;
+    private char[] charBuffer;
+
+    private ResultSetConsumer(ResultConsumption mode, int[] sqlTypes) {
+        this.mode = mode;
+        this.sqlTypes = sqlTypes;
+    }
+
+    static ResultSetConsumer create(ResultConsumption mode, ResultSet rs) throws SQLException {
+        if (mode == ResultConsumption.NEXT_ONLY) {
+            return new ResultSetConsumer(mode, new int[0]);
+        }
+        ResultSetMetaData metaData = rs.getMetaData();
+        int[] sqlTypes = new int[metaData.getColumnCount()];
+        for (int i = 0; i < sqlTypes.length; i++) {
+            sqlTypes[i] = metaData.getColumnType(i + 1);
+        }
+        return new ResultSetConsumer(mode, sqlTypes);
+    }
+
+    /**
+     * Reads every column of the current row and returns the estimated number of bytes read.
+     */
+    long readRow(ResultSet rs) throws SQLException {
+        long bytes = 0;
+        for (int i = 0; i < sqlTypes.length; i++) {
+            bytes += switch (mode) {
+                case NEXT_ONLY -> 0;
+                case NATIVE -> readNative(rs, i + 1, sqlTypes[i]);
+                case STRING -> length(rs.getString(i + 1));
+                case BYTES -> readBytes(rs, i + 1, sqlTypes[i]);
+            };
+        }
+        return bytes;
+    }
+
+    private long readNative(ResultSet rs, int column, int sqlType) throws SQLException {
+        Object value = rs.getObject(column);
+        if (value == null) {
+            return 0;
+        }
+        // LOBs may come back as locators, reading them is what costs the round trips
+        if (value instanceof Blob blob) {
+            try {
+                return drain(blob.getBinaryStream());
+            } finally {
+                blob.free();
+            }
+        }
+        if (value instanceof Clob clob) {
+            try {
+                return drain(clob.getCharacterStream());
+            } finally {
+                clob.free();
+            }
+        }
+        return switch (value) {
+            case String string -> string.length();
+            case byte[] array -> array.length;
+            case BigDecimal decimal -> decimal.precision() / 2 + 1;
+            default -> fixedSize(sqlType);
+        };
+    }
+
+    private long readBytes(ResultSet rs, int column, int sqlType) throws SQLException {
+        return switch (sqlType) {
+            case Types.BINARY, Types.VARBINARY, Types.LONGVARBINARY, Types.BLOB -> drain(rs.getBinaryStream(column));
+            case Types.CLOB, Types.NCLOB, Types.LONGVARCHAR, Types.LONGNVARCHAR -> drain(rs.getCharacterStream(column));
+            // Drivers only hand out undecoded bytes for binary columns, everything else is read as text
+            default -> length(rs.getString(column));
+        };
+    }
+
+    private long drain(InputStream in) throws SQLException {
+        if (in == null) {
+            return 0;
+        }
+        if (byteBuffer == null) {
+            byteBuffer = new byte[STREAM_BUFFER_BYTES];
+        }
+        long total = 0;
+        try (in) {
+            for (int read; (read = in.read(byteBuffer)) >= 0; ) {
+                total += read;
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to read binary column", e);
+        }
+        return total;
+    }
+
+    private long drain(Reader in) throws SQLException {
+        if (in == null) {
+            return 0;
+        }
+        if (charBuffer == null) {
+            charBuffer = new char[STREAM_BUFFER_BYTES];
+        }
+        long total = 0;
+        try (in) {
+            for (int read; (read = in.read(charBuffer)) >= 0; ) {
+                total += read;
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to read character column", e);
+        }
+        return total;
+    }
+
+    private static long length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    private static int fixedSize(int sqlType) {
+        return switch (sqlType) {
+            case Types.BOOLEAN, Types.BIT, Types.TINYINT -> 1;
+            case Types.SMALLINT -> 2;
+            case Types.INTEGER, Types.REAL, Types.DATE -> 4;
+            case Types.TIME -> 3;
+            case Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE -> 10;
+            default -> 8;
+        };
+    }
+}
@@ -0,0 +1,324 @@
+package com.lkww.service;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Writes result set rows into a compact binary row file. Rows are encoded into one of two direct buffers while
+ * the other is written to the file channel on the writer executor, so the heap only ever holds the values of
+ * the current row and fetching from the driver overlaps with the disk.
+ * <p>
+ * Layout, big-endian: the magic {@code LTX1}, the column count as a short, then per column its name (short
+ * length and UTF-8 bytes) and its {@link Types} code as an int. Every row starts with a null bitmap of one bit
+ * per column, followed by the values of the columns that are not null: booleans as a byte, integer types as
+ * int or long, floating point types as float or double, decimals as a short scale, a byte length and the
+ * unscaled two's complement bytes, dates as int epoch days, times as long nanos of the day, timestamps as long
+ * epoch micros and everything else as an int length followed by the UTF-8 or binary bytes.
+ */
+class RowFileWriter implements AutoCloseable {
+
+    static final int MAGIC = 0x4C545831;
+
+    private static final RowOverflow OVERFLOW = new RowOverflow();
+
+    private final FileChannel channel;
+    private final Executor writer;
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(2);
+    private final int[] columnTypes;
+    private final int bitmapBytes;
+    private ByteBuffer buffer;
+    private CompletableFuture<Void> pending = CompletableFuture.completedFuture(null);
+    private volatile long writeNanos;
+    private volatile IOException failure;
+    private long waitNanos;
+    private long bytesWritten;
+
+    RowFileWriter(Path file, ResultSetMetaData metaData, int bufferBytes, Executor writer)
+            throws IOException, SQLException {
+        this.writer = writer;
+        int columns = metaData.getColumnCount();
+        this.columnTypes = new int[columns];
+        this.bitmapBytes = (columns + 7) / 8;
+        this.buffer = ByteBuffer.allocateDirect(bufferBytes);
+        free.add(ByteBuffer.allocateDirect(bufferBytes));
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) columns);
+        for (int column = 0; column < columns; column++) {
+            byte[] name = metaData.getColumnLabel(column + 1).getBytes(StandardCharsets.UTF_8);
+            int type = metaData.getColumnType(column + 1);
+            columnTypes[column] = type;
+            buffer.putShort((short) name.length);
+            buffer.put(name);
+            buffer.putInt(type);
+        }
+    }
+
+    /**
+     * Encodes the current row of {@code rs}. A row that does not fit into what is left of the buffer is
+     * read again into the next one.
+     */
+    void writeRow(ResultSet rs) throws SQLException, IOException {
+        int start = buffer.position();
+        try {
+            encode(rs);
+        } catch (RowOverflow | BufferOverflowException e) {
+            buffer.position(start);
+            if (start == 0) {
+                throw new SQLException("A row does not fit into the extract buffer of " + buffer.capacity() + " bytes");
+            }
+            swap();
+            writeRow(rs);
+        }
+    }
+
+    private void encode(ResultSet rs) throws SQLException {
+        int bitmap = buffer.position();
+        if (buffer.remaining() < bitmapBytes) {
+            throw OVERFLOW;
+        }
+        for (int i = 0; i < bitmapBytes; i++) {
+            buffer.put((byte) 0);
+        }
+        for (int column = 0; column < columnTypes.length; column++) {
+            if (!encodeValue(rs, column + 1, columnTypes[column])) {
+                int index = bitmap + column / 8;
+                buffer.put(index, (byte) (buffer.get(index) | 1 << (column % 8)));
+            }
+        }
+    }
+
+    // Returns false for a null value
+    private boolean encodeValue(ResultSet rs, int column, int type) throws SQLException {
+        switch (type) {
+            case Types.BOOLEAN, Types.BIT -> {
+                boolean value = rs.getBoolean(column);
+                if (rs.wasNull()) {
+                    return false;
+                }
+                buffer.put((byte) (value ? 1 : 0));
+            }
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER -> {
+                int value = rs.getInt(column);
+                if (rs.wasNull()) {
+                    return false;
+                }
+                buffer.putInt(value);
+            }
+            case Types.BIGINT -> {
+                long value = rs.getLong(column);
+                if (rs.wasNull()) {
+                    return false;
+                }
+                buffer.putLong(value);
+            }
+            case Types.REAL -> {
+                float value = rs.getFloat(column);
+                if (rs.wasNull()) {
+                    return false;
+                }
+                buffer.putFloat(value);
+            }
+            case Types.FLOAT, Types.DOUBLE -> {
+                double value = rs.getDouble(column);
+                if (rs.wasNull()) {
+                    return false;
+                }
+                buffer.putDouble(value);
+            }
+            case Types.DECIMAL, Types.NUMERIC -> {
+                BigDecimal value = rs.getBigDecimal(column);
+                if (value == null) {
+                    return false;
+                }
+                byte[] unscaled = value.unscaledValue().toByteArray();
+                buffer.putShort((short) value.scale());
+                buffer.put((byte) unscaled.length);
+                buffer.put(unscaled);
+            }
+            case Types.DATE -> {
+                Date value = rs.getDate(column);
+                if (value == null) {
+                    return false;
+                }
+                buffer.putInt((int) value.toLocalDate().toEpochDay());
+            }
+            case Types.TIME -> {
+                Time value = rs.getTime(column);
+                if (value == null) {
+                    return false;
+                }
+                buffer.putLong(value.toLocalTime().toNanoOfDay());
+            }
+            case Types.TIMESTAMP -> {
+                Timestamp value = rs.getTimestamp(column);
+                if (value == null) {
+                    return false;
+                }
+                buffer.putLong(Math.floorDiv(value.getTime(), 1000) * 1_000_000 + value.getNanos() / 1000);
+            }
+            case Types.BINARY, Types.VARBINARY, Types.LONGVARBINARY, Types.BLOB -> {
+                byte[] value = rs.getBytes(column);
+                if (value == null) {
+                    return false;
+                }
+                buffer.putInt(value.length);
+                buffer.put(value);
+            }
+            default -> {
+                String value = rs.getString(column);
+                if (value == null) {
+                    return false;
+                }
+                putString(value);
+            }
+        }
+        return true;
+    }
+
+    // ASCII goes straight into the buffer, anything else through a byte array
+    private void putString(String value) {
+        int length = value.length();
+        if (buffer.remaining() < 4 + length) {
+            throw OVERFLOW;
+        }
+        int start = buffer.position();
+        buffer.position(start + 4);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                buffer.position(start + 4);
+                buffer.put(bytes);
+                buffer.putInt(start, bytes.length);
+                return;
+            }
+            buffer.put((byte) c);
+        }
+        buffer.putInt(start, length);
+    }
+
+    /**
+     * Hands the filled buffer to the writer and continues in the other one, waiting for it if the disk has
+     * not caught up yet.
+     */
+    private void swap() throws IOException {
+        ByteBuffer filled = buffer.flip();
+        bytesWritten += filled.remaining();
+        pending = pending.thenRunAsync(() -> write(filled), writer);
+
+        long waitStart = System.nanoTime();
+        try {
+            buffer = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the extract file", e);
+        } finally {
+            waitNanos += System.nanoTime() - waitStart;
+        }
+        // Set before the failed buffer came back
+        if (failure != null) {
+            throw failure;
+        }
+        buffer.clear();
+    }
+
+    private void write(ByteBuffer filled) {
+        long start = System.nanoTime();
+        try {
+            while (filled.hasRemaining()) {
+                channel.write(filled);
+            }
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException(e);
+        } finally {
+            writeNanos += System.nanoTime() - start;
+            free.add(filled);
+        }
+    }
+
+    private void awaitPending() throws IOException {
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the extract file", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof UncheckedIOException io ? io.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Nanoseconds spent writing to the file channel, on the writer executor.
+     */
+    long getWriteNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * Nanoseconds the reading side waited for a free buffer, i.e. for the disk.
+     */
+    long getWaitNanos() {
+        return waitNanos;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Writes what is left in the buffer and waits for the file to be complete.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (buffer.position() > 0) {
+                long waitStart = System.nanoTime();
+                ByteBuffer filled = buffer.flip();
+                bytesWritten += filled.remaining();
+                pending = pending.thenRunAsync(() -> write(filled), writer);
+                awaitPending();
+                waitNanos += System.nanoTime() - waitStart;
+            } else {
+                awaitPending();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Thrown when a value does not fit into the buffer, without a stack trace as it is part of normal flow.
+     */
+    private static final class RowOverflow extends RuntimeException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private RowOverflow() {
+            super(null, null, false, false);
+        }
+    }
+}
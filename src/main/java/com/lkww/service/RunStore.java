@@ -0,0 +1,501 @@
+package com.lkww.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.lkww.config.JdbcConfiguration;
+import com.lkww.config.RunStoreConfiguration;
+import com.lkww.controller.TestController.TestRequest;
+import com.lkww.service.SweepService.RankBy;
+import com.lkww.service.TestExecutionService.IntervalSnapshot;
+import com.lkww.service.TestExecutionService.TestResult;
+import io.micronaut.json.JsonMapper;
+import io.micronaut.serde.annotation.Serdeable;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Append-only history of finished test runs. Every run is one deflated record in {@code runs.dat}; a small
+ * summary of each record is appended to {@code runs.idx} and kept in memory, so listing, comparing and
+ * ranking runs only reads the records that are actually asked for. A missing or stale index is rebuilt
+ * from the data file on startup, and a torn record at the end of the data file is cut off.
+ */
+@Singleton
+public class RunStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RunStore.class);
+    private static final int RECORD_MAGIC = 0x4C525331;
+    private static final byte FORMAT_VERSION = 1;
+    // magic, version, summary length, body length, crc
+    private static final int HEADER_BYTES = 4 + 1 + 4 + 4 + 8;
+
+    private final RunStoreConfiguration configuration;
+    private final JsonMapper jsonMapper;
+    private final List<IndexEntry> index = new ArrayList<>();
+    private FileChannel dataChannel;
+    private FileChannel indexChannel;
+
+    public RunStore(RunStoreConfiguration configuration, JsonMapper jsonMapper) {
+        this.configuration = configuration;
+        this.jsonMapper = jsonMapper;
+    }
+
+    @PostConstruct
+    void open() {
+        if (!Boolean.TRUE.equals(configuration.getEnabled())) {
+            return;
+        }
+        try {
+            Path directory = Path.of(configuration.getDirectory());
+            Files.createDirectories(directory);
+            dataChannel = FileChannel.open(directory.resolve("runs.dat"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            indexChannel = FileChannel.open(directory.resolve("runs.idx"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            loadIndex();
+            LOG.info("Run store opened at {} with {} runs", directory.toAbsolutePath(), index.size());
+        } catch (IOException e) {
+            LOG.error("Run store at {} could not be opened, runs will not be persisted", configuration.getDirectory(), e);
+            close();
+        }
+    }
+
+    @PreDestroy
+    synchronized void close() {
+        closeQuietly(dataChannel);
+        closeQuietly(indexChannel);
+        dataChannel = null;
+        indexChannel = null;
+    }
+
+    public void save(TestRun run, TestResult result, LatencyHistogram latency, PhaseRecorder phases) {
+        save(FinishedRun.of(run), result, latency, phases);
+    }
+
+    synchronized void save(FinishedRun run, TestResult result, LatencyHistogram latency, PhaseRecorder phases) {
+        if (dataChannel == null) {
+            return;
+        }
+        try {
+            TestRequest request = run.request();
+            RunSummary summary = new RunSummary(
+                    run.testId(),
+                    run.startedAt(),
+                    run.finishedAt(),
+                    run.query(),
+                    request.queryType(),
+                    request.concurrency(),
+                    result.totalQueries(),
+                    result.failedQueries(),
+                    result.queriesPerSecond(),
+                    result.latency().p50Ms(),
+                    result.latency().p99Ms()
+            );
+            byte[] summaryBytes = jsonMapper.writeValueAsBytes(summary);
+            byte[] body = encodeBody(run, result, latency, phases);
+
+            long offset = dataChannel.size();
+            ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + summaryBytes.length + body.length);
+            record.putInt(RECORD_MAGIC).put(FORMAT_VERSION).putInt(summaryBytes.length).putInt(body.length)
+                    .putLong(checksum(summaryBytes, body))
+                    .put(summaryBytes).put(body)
+                    .flip();
+            writeFully(dataChannel, record, offset);
+            dataChannel.force(false);
+
+            IndexEntry entry = new IndexEntry(summary, offset, record.capacity());
+            appendIndexEntry(entry);
+            index.add(entry);
+        } catch (IOException e) {
+            LOG.error("Failed to persist test run {}", run.testId(), e);
+        }
+    }
+
+    public synchronized List<RunSummary> listRuns(String query, int limit) {
+        return index.stream()
+                .map(IndexEntry::summary)
+                .filter(summary -> query == null || query.equals(summary.query()))
+                .sorted(Comparator.comparing(RunSummary::startedAt).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    public StoredRun getRun(String testId) {
+        IndexEntry entry;
+        synchronized (this) {
+            entry = findEntry(testId);
+        }
+        return readRecord(entry);
+    }
+
+    public RunComparison compare(String baselineId, String candidateId) {
+        StoredRun baseline = getRun(baselineId);
+        StoredRun candidate = getRun(candidateId);
+        RunSummary a = baseline.summary();
+        RunSummary b = candidate.summary();
+
+        return new RunComparison(
+                a,
+                b,
+                percentChange(a.queriesPerSecond(), b.queriesPerSecond()),
+                percentChange(a.p50Ms(), b.p50Ms()),
+                percentChange(a.p99Ms(), b.p99Ms()),
+                configurationDifferences(baseline.configuration(), candidate.configuration())
+        );
+    }
+
+    public StoredRun findBest(String query, RankBy rankBy) {
+        Comparator<RunSummary> comparator = rankBy == RankBy.P99
+                ? Comparator.comparingDouble(RunSummary::p99Ms)
+                : Comparator.comparingDouble(RunSummary::queriesPerSecond).reversed();
+
+        IndexEntry best;
+        synchronized (this) {
+            best = index.stream()
+                    .filter(entry -> Objects.equals(query, entry.summary().query()))
+                    .filter(entry -> entry.summary().failedQueries() == 0 && entry.summary().totalQueries() > 0)
+                    .min(Comparator.comparing(IndexEntry::summary, comparator))
+                    .orElseThrow(() -> new IllegalArgumentException("No successful stored runs for query: " + query));
+        }
+        return readRecord(best);
+    }
+
+    private IndexEntry findEntry(String testId) {
+        return index.stream()
+                .filter(entry -> entry.summary().testId().equals(testId))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown stored run: " + testId));
+    }
+
+    private byte[] encodeBody(FinishedRun run, TestResult result, LatencyHistogram latency,
+                              PhaseRecorder phases) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            writeBytes(out, jsonMapper.writeValueAsBytes(run.request()));
+            writeBytes(out, jsonMapper.writeValueAsBytes(run.configuration()));
+            writeBytes(out, jsonMapper.writeValueAsBytes(result));
+
+            latency.encode(out);
+            out.writeByte(QueryPhase.values().length);
+            for (QueryPhase phase : QueryPhase.values()) {
+                out.writeByte(phase.ordinal());
+                phases.getHistogram(phase).encode(out);
+            }
+
+            List<IntervalSnapshot> intervals = run.intervals();
+            out.writeInt(intervals.size());
+            for (IntervalSnapshot interval : intervals) {
+                writeInterval(out, interval);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private StoredRun readRecord(IndexEntry entry) {
+        try {
+            ByteBuffer record = ByteBuffer.allocate(entry.length());
+            readFully(dataChannel, record, entry.offset());
+            record.flip();
+            long crc = record.getLong(HEADER_BYTES - 8);
+            byte[] summaryBytes = new byte[record.getInt(5)];
+            byte[] body = new byte[record.getInt(9)];
+            record.position(HEADER_BYTES);
+            record.get(summaryBytes).get(body);
+            if (checksum(summaryBytes, body) != crc) {
+                throw new IllegalStateException("Stored run " + entry.summary().testId()
+                        + " is corrupt, its checksum does not match");
+            }
+
+            try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(body)))) {
+                TestRequest request = jsonMapper.readValue(readBytes(in), TestRequest.class);
+                JdbcConfiguration configuration = jsonMapper.readValue(readBytes(in), JdbcConfiguration.class);
+                TestResult result = jsonMapper.readValue(readBytes(in), TestResult.class);
+
+                LatencyHistogram latency = LatencyHistogram.decode(in);
+                Map<QueryPhase, LatencyHistogram> phases = new EnumMap<>(QueryPhase.class);
+                int phaseCount = in.readUnsignedByte();
+                for (int i = 0; i < phaseCount; i++) {
+                    phases.put(QueryPhase.values()[in.readUnsignedByte()], LatencyHistogram.decode(in));
+                }
+
+                int intervalCount = in.readInt();
+                List<IntervalSnapshot> intervals = new ArrayList<>(intervalCount);
+                for (int i = 0; i < intervalCount; i++) {
+                    intervals.add(readInterval(in));
+                }
+                return new StoredRun(entry.summary(), request, configuration, result, intervals, latency, phases);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Stored run " + entry.summary().testId() + " could not be read", e);
+        }
+    }
+
+    private void writeInterval(DataOutputStream out, IntervalSnapshot interval) throws IOException {
+        out.writeLong(interval.second());
+        out.writeLong(interval.timestamp().toEpochMilli());
+        out.writeLong(interval.queries());
+        out.writeLong(interval.errors());
+        out.writeDouble(interval.queriesPerSecond());
+        LatencyHistogram.LatencySummary latency = interval.latency();
+        out.writeLong(latency.count());
+        out.writeDouble(latency.meanMs());
+        out.writeDouble(latency.p50Ms());
+        out.writeDouble(latency.p90Ms());
+        out.writeDouble(latency.p99Ms());
+        out.writeDouble(latency.p999Ms());
+        out.writeDouble(latency.maxMs());
+        out.writeInt(interval.poolActive() != null ? interval.poolActive() : -1);
+        out.writeInt(interval.poolIdle() != null ? interval.poolIdle() : -1);
+        out.writeInt(interval.poolPending() != null ? interval.poolPending() : -1);
+    }
+
+    private IntervalSnapshot readInterval(DataInputStream in) throws IOException {
+        long second = in.readLong();
+        Instant timestamp = Instant.ofEpochMilli(in.readLong());
+        long queries = in.readLong();
+        long errors = in.readLong();
+        double queriesPerSecond = in.readDouble();
+        LatencyHistogram.LatencySummary latency = new LatencyHistogram.LatencySummary(in.readLong(), in.readDouble(),
+                in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+        return new IntervalSnapshot(second, timestamp, queries, errors, queriesPerSecond, latency,
+                optionalCount(in.readInt()), optionalCount(in.readInt()), optionalCount(in.readInt()));
+    }
+
+    private void loadIndex() throws IOException {
+        List<IndexEntry> entries = readIndexFile();
+        long indexedEnd = entries.isEmpty() ? 0 : entries.getLast().offset() + entries.getLast().length();
+        if (indexedEnd != dataChannel.size()) {
+            LOG.warn("Run store index is out of date, rebuilding it from the data file");
+            entries = rebuildIndex();
+        }
+        index.addAll(entries);
+    }
+
+    private List<IndexEntry> readIndexFile() throws IOException {
+        List<IndexEntry> entries = new ArrayList<>();
+        long position = 0;
+        long size = indexChannel.size();
+        ByteBuffer header = ByteBuffer.allocate(8 + 4 + 4);
+        while (position + header.capacity() <= size) {
+            header.clear();
+            readFully(indexChannel, header, position);
+            header.flip();
+            long offset = header.getLong();
+            int length = header.getInt();
+            int summaryLength = header.getInt();
+            if (position + header.capacity() + summaryLength > size) {
+                break;
+            }
+            ByteBuffer summary = ByteBuffer.allocate(summaryLength);
+            readFully(indexChannel, summary, position + header.capacity());
+            entries.add(new IndexEntry(jsonMapper.readValue(summary.array(), RunSummary.class), offset, length));
+            position += header.capacity() + summaryLength;
+        }
+        return entries;
+    }
+
+    private List<IndexEntry> rebuildIndex() throws IOException {
+        List<IndexEntry> entries = new ArrayList<>();
+        long position = 0;
+        long size = dataChannel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(dataChannel, header, position);
+            header.flip();
+            if (header.getInt() != RECORD_MAGIC || header.get() != FORMAT_VERSION) {
+                break;
+            }
+            int summaryLength = header.getInt();
+            int bodyLength = header.getInt();
+            long crc = header.getLong();
+            int length = HEADER_BYTES + summaryLength + bodyLength;
+            if (position + length > size) {
+                break;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(summaryLength + bodyLength);
+            readFully(dataChannel, payload, position + HEADER_BYTES);
+            byte[] summaryBytes = new byte[summaryLength];
+            byte[] body = new byte[bodyLength];
+            payload.flip();
+            payload.get(summaryBytes).get(body);
+            if (checksum(summaryBytes, body) != crc) {
+                break;
+            }
+
+            entries.add(new IndexEntry(jsonMapper.readValue(summaryBytes, RunSummary.class), position, length));
+            position += length;
+        }
+
+        if (position < size) {
+            LOG.warn("Discarding {} bytes of incomplete run data at the end of the run store", size - position);
+            dataChannel.truncate(position);
+        }
+        indexChannel.truncate(0);
+        for (IndexEntry entry : entries) {
+            appendIndexEntry(entry);
+        }
+        return entries;
+    }
+
+    private void appendIndexEntry(IndexEntry entry) throws IOException {
+        byte[] summary = jsonMapper.writeValueAsBytes(entry.summary());
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 4 + 4 + summary.length);
+        buffer.putLong(entry.offset()).putInt(entry.length()).putInt(summary.length).put(summary).flip();
+        writeFully(indexChannel, buffer, indexChannel.size());
+    }
+
+    private Map<String, List<Object>> configurationDifferences(JdbcConfiguration a, JdbcConfiguration b) {
+        Map<String, List<Object>> differences = new LinkedHashMap<>();
+        try {
+            Map<?, ?> first = jsonMapper.readValue(jsonMapper.writeValueAsBytes(a), Map.class);
+            Map<?, ?> second = jsonMapper.readValue(jsonMapper.writeValueAsBytes(b), Map.class);
+            for (Object key : first.keySet()) {
+                if (!Objects.equals(first.get(key), second.get(key))) {
+                    differences.put(String.valueOf(key), Arrays.asList(first.get(key), second.get(key)));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to compare configurations", e);
+        }
+        return differences;
+    }
+
+    private static Double percentChange(double baseline, double candidate) {
+        return baseline != 0 ? (candidate - baseline) * 100.0 / baseline : null;
+    }
+
+    private static Integer optionalCount(int value) {
+        return value >= 0 ? value : null;
+    }
+
+    private static long checksum(byte[] summary, byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(summary);
+        crc.update(body);
+        return crc.getValue();
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of run store at " + position);
+            }
+            position += read;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.debug("Failed to close run store file", e);
+        }
+    }
+
+    private record IndexEntry(RunSummary summary, long offset, int length) {}
+
+    /**
+     * What is kept of a finished run besides its results. The query is what runs are listed and ranked by,
+     * the SQL of a single statement or the names of a workload mix.
+     */
+    record FinishedRun(
+            String testId,
+            Instant startedAt,
+            Instant finishedAt,
+            String query,
+            TestRequest request,
+            JdbcConfiguration configuration,
+            List<IntervalSnapshot> intervals
+    ) {
+        static FinishedRun of(TestRun run) {
+            return new FinishedRun(run.getTestId(), run.getStartedAt(),
+                    run.getFinishedAt() != null ? run.getFinishedAt() : Instant.now(), run.getWorkloadMix().describe(),
+                    run.getRequest(), run.getConfiguration(), run.getIntervals());
+        }
+    }
+
+    @Serdeable
+    public record RunSummary(
+            String testId,
+            Instant startedAt,
+            Instant finishedAt,
+            String query,
+            String queryType,
+            int concurrency,
+            long totalQueries,
+            long failedQueries,
+            double queriesPerSecond,
+            double p50Ms,
+            double p99Ms
+    ) {}
+
+    @Serdeable
+    public record StoredRun(
+            RunSummary summary,
+            TestRequest request,
+            JdbcConfiguration configuration,
+            TestResult result,
+            List<IntervalSnapshot> intervals,
+            @JsonIgnore LatencyHistogram latencyHistogram,
+            @JsonIgnore Map<QueryPhase, LatencyHistogram> phaseHistograms
+    ) {}
+
+    @Serdeable
+    public record RunComparison(
+            RunSummary baseline,
+            RunSummary candidate,
+            Double queriesPerSecondChangePercent,
+            Double p50ChangePercent,
+            Double p99ChangePercent,
+            Map<String, List<Object>> configurationDifferences
+    ) {}
+}
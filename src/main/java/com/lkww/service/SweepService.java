@@ -0,0 +1,303 @@
+package com.lkww.service;
+
+import com.lkww.config.JdbcConfiguration;
+import com.lkww.controller.TestController.TestRequest;
+import com.lkww.service.TestExecutionService.ResultConsumption;
+import com.lkww.service.TestExecutionService.StatementReuse;
+import com.lkww.service.TestExecutionService.TestResult;
+import io.micronaut.serde.annotation.Serdeable;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Singleton
+public class SweepService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SweepService.class);
+    private static final int DEFAULT_WARMUP_SECONDS = 10;
+    private static final long DEFAULT_POOL_REFRESH_TIMEOUT_MILLIS = 60000;
+    private static final String STATEMENT_REUSE_PARAMETER = "statementReuse";
+    private static final String RESULT_CONSUMPTION_PARAMETER = "resultConsumption";
+    private static final int MAX_RETAINED_SWEEPS = 50;
+
+    @Inject
+    private TestExecutionService testExecutionService;
+
+    @Inject
+    private JdbcConfigurationService jdbcConfigurationService;
+
+    private final ExecutorService sweepExecutor = Executors.newSingleThreadExecutor();
+    private final Map<String, SweepRun> sweeps = new ConcurrentHashMap<>();
+
+    public SweepStatus startSweep(SweepRequest request) {
+        if (request.test() == null || request.parameters() == null || request.parameters().isEmpty()) {
+            throw new IllegalArgumentException("A sweep needs a test request and at least one parameter to vary");
+        }
+
+        List<Map<String, String>> combinations = expandCombinations(request.parameters());
+        SweepRun sweep = new SweepRun(UUID.randomUUID().toString(), request, combinations);
+        sweeps.put(sweep.sweepId, sweep);
+        evictFinishedSweeps();
+
+        LOG.info("Starting sweep {} with {} combinations over {}", sweep.sweepId, combinations.size(),
+                request.parameters().keySet());
+        sweepExecutor.submit(() -> executeSweep(sweep));
+
+        return sweep.toStatus();
+    }
+
+    public SweepStatus getSweep(String sweepId) {
+        SweepRun sweep = sweeps.get(sweepId);
+        if (sweep == null) {
+            throw new IllegalArgumentException("Unknown sweep: " + sweepId);
+        }
+        return sweep.toStatus();
+    }
+
+    public SweepStatus stopSweep(String sweepId) {
+        SweepRun sweep = sweeps.get(sweepId);
+        if (sweep == null) {
+            throw new IllegalArgumentException("Unknown sweep: " + sweepId);
+        }
+        sweep.stopRequested = true;
+        if (sweep.currentTestId != null) {
+            testExecutionService.stopTest(sweep.currentTestId);
+        }
+        return sweep.toStatus();
+    }
+
+    private void executeSweep(SweepRun sweep) {
+        JdbcConfiguration originalConfiguration = jdbcConfigurationService.snapshotConfiguration();
+        sweep.status = SweepState.RUNNING;
+
+        try {
+            for (Map<String, String> combination : sweep.combinations) {
+                if (sweep.stopRequested) {
+                    sweep.status = SweepState.STOPPED;
+                    return;
+                }
+                sweep.currentCombination = combination;
+                SweepEntry entry = runCombination(sweep, combination);
+                if (entry == null) {
+                    sweep.status = SweepState.STOPPED;
+                    return;
+                }
+                sweep.entries.add(entry);
+            }
+            sweep.status = SweepState.COMPLETED;
+        } catch (RuntimeException e) {
+            LOG.error("Sweep {} failed", sweep.sweepId, e);
+            sweep.error = e.getMessage();
+            sweep.status = SweepState.FAILED;
+        } finally {
+            sweep.currentCombination = null;
+            sweep.currentTestId = null;
+            sweep.finishedAt = Instant.now();
+            jdbcConfigurationService.restoreConfiguration(originalConfiguration);
+            LOG.info("Sweep {} finished with status {}", sweep.sweepId, sweep.status);
+        }
+    }
+
+    /**
+     * Runs the test of one combination, or returns null if the sweep was stopped meanwhile.
+     */
+    private SweepEntry runCombination(SweepRun sweep, Map<String, String> combination) {
+        SweepRequest request = sweep.request;
+        LOG.info("Sweep applying {}", combination);
+        TestRequest test = prepareTest(request);
+        for (Map.Entry<String, String> parameter : combination.entrySet()) {
+            if (isTestParameter(parameter.getKey())) {
+                test = withTestParameter(test, parameter.getKey(), parameter.getValue());
+            } else {
+                jdbcConfigurationService.updateSingleField(parameter.getKey(), parameter.getValue());
+            }
+        }
+        jdbcConfigurationService.awaitPoolReady(getPoolRefreshTimeoutMillis(request));
+
+        TestResult result = runTest(sweep, test);
+        if (sweep.stopRequested) {
+            // A measured run cut short is not comparable with the others
+            return null;
+        }
+
+        return new SweepEntry(combination, result.testId(), result.queriesPerSecond(), result.failedQueries(),
+                result.latency());
+    }
+
+    /**
+     * The test as the sweep runs it. The warmup is part of the test, so only the measured part is stored
+     * and ranked. The sweep's warmupSeconds overrides the test's own, which overrides the default.
+     */
+    static TestRequest prepareTest(SweepRequest request) {
+        TestRequest test = request.test();
+        if (request.warmupSeconds() == null && test.warmupSeconds() != null) {
+            return test;
+        }
+        return test.withWarmupSeconds(request.warmupSeconds() != null ? request.warmupSeconds() : DEFAULT_WARMUP_SECONDS);
+    }
+
+    /**
+     * Whether a parameter belongs to the test request rather than to the JDBC configuration.
+     */
+    static boolean isTestParameter(String name) {
+        return STATEMENT_REUSE_PARAMETER.equalsIgnoreCase(name) || RESULT_CONSUMPTION_PARAMETER.equalsIgnoreCase(name);
+    }
+
+    static TestRequest withTestParameter(TestRequest test, String name, String value) {
+        return STATEMENT_REUSE_PARAMETER.equalsIgnoreCase(name)
+                ? test.withStatementReuse(StatementReuse.valueOf(value.toUpperCase()))
+                : test.withResultConsumption(ResultConsumption.valueOf(value.toUpperCase()));
+    }
+
+    /**
+     * Rough running time of a sweep whose prepared test runs {@code testSeconds} including its warmup, without
+     * the pool refreshes.
+     */
+    static long estimateSeconds(SweepRequest request, long testSeconds) {
+        long combinations = 1;
+        for (List<String> values : request.parameters().values()) {
+            combinations *= values != null ? values.size() : 0;
+        }
+        return combinations * testSeconds;
+    }
+
+    private TestResult runTest(SweepRun sweep, TestRequest test) {
+        sweep.currentTestId = testExecutionService.startTest(test);
+        if (sweep.stopRequested) {
+            // stopSweep may have looked at the previous test
+            testExecutionService.stopTest(sweep.currentTestId);
+        }
+        return testExecutionService.awaitResult(sweep.currentTestId);
+    }
+
+    private long getPoolRefreshTimeoutMillis(SweepRequest request) {
+        return request.poolRefreshTimeoutSeconds() != null
+                ? request.poolRefreshTimeoutSeconds() * 1000L
+                : DEFAULT_POOL_REFRESH_TIMEOUT_MILLIS;
+    }
+
+    private void evictFinishedSweeps() {
+        sweeps.values().stream()
+                .filter(run -> run.finishedAt != null)
+                .sorted(Comparator.comparing((SweepRun run) -> run.startedAt).reversed())
+                .skip(MAX_RETAINED_SWEEPS)
+                .forEach(run -> sweeps.remove(run.sweepId));
+    }
+
+    private List<Map<String, String>> expandCombinations(Map<String, List<String>> parameters) {
+        List<Map<String, String>> combinations = new ArrayList<>();
+        combinations.add(new LinkedHashMap<>());
+
+        for (Map.Entry<String, List<String>> parameter : parameters.entrySet()) {
+            if (parameter.getValue() == null || parameter.getValue().isEmpty()) {
+                throw new IllegalArgumentException("No values given for sweep parameter: " + parameter.getKey());
+            }
+            List<Map<String, String>> expanded = new ArrayList<>();
+            for (Map<String, String> combination : combinations) {
+                for (String value : parameter.getValue()) {
+                    Map<String, String> next = new LinkedHashMap<>(combination);
+                    next.put(parameter.getKey(), value);
+                    expanded.add(next);
+                }
+            }
+            combinations = expanded;
+        }
+        return combinations;
+    }
+
+    private static List<SweepEntry> rank(List<SweepEntry> entries, RankBy rankBy) {
+        Comparator<SweepEntry> byThroughput = Comparator.comparingDouble(SweepEntry::queriesPerSecond).reversed();
+        Comparator<SweepEntry> byTailLatency = Comparator.comparingDouble(entry -> entry.latency().p99Ms());
+
+        Comparator<SweepEntry> comparator = rankBy == RankBy.P99
+                ? byTailLatency.thenComparing(byThroughput)
+                : byThroughput.thenComparing(byTailLatency);
+        return entries.stream()
+                .sorted(Comparator.comparingLong(SweepEntry::failedQueries).thenComparing(comparator))
+                .toList();
+    }
+
+    private static final class SweepRun {
+        private final String sweepId;
+        private final SweepRequest request;
+        private final List<Map<String, String>> combinations;
+        private final List<SweepEntry> entries = new CopyOnWriteArrayList<>();
+        private final Instant startedAt = Instant.now();
+        private volatile Instant finishedAt;
+        private volatile SweepState status = SweepState.QUEUED;
+        private volatile Map<String, String> currentCombination;
+        private volatile String currentTestId;
+        private volatile String error;
+        private volatile boolean stopRequested;
+
+        private SweepRun(String sweepId, SweepRequest request, List<Map<String, String>> combinations) {
+            this.sweepId = sweepId;
+            this.request = request;
+            this.combinations = combinations;
+        }
+
+        private SweepStatus toStatus() {
+            RankBy rankBy = request.rankBy() != null ? request.rankBy() : RankBy.THROUGHPUT;
+            return new SweepStatus(sweepId, status, startedAt, finishedAt, combinations.size(), entries.size(),
+                    currentCombination, rankBy, rank(entries, rankBy), error);
+        }
+    }
+
+    public enum SweepState {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        STOPPED,
+        FAILED
+    }
+
+    public enum RankBy {
+        THROUGHPUT,
+        P99
+    }
+
+    @Serdeable
+    public record SweepRequest(
+            TestRequest test,
+            Map<String, List<String>> parameters,
+            Integer warmupSeconds,
+            Integer poolRefreshTimeoutSeconds,
+            RankBy rankBy
+    ) {}
+
+    @Serdeable
+    public record SweepEntry(
+            Map<String, String> parameters,
+            String testId,
+            double queriesPerSecond,
+            long failedQueries,
+            LatencyHistogram.LatencySummary latency
+    ) {}
+
+    @Serdeable
+    public record SweepStatus(
+            String sweepId,
+            SweepState status,
+            Instant startedAt,
+            Instant finishedAt,
+            int totalCombinations,
+            int completedCombinations,
+            Map<String, String> currentCombination,
+            RankBy rankBy,
+            List<SweepEntry> ranking,
+            String error
+    ) {}
+}
@@ -2,9 +2,13 @@ package com.lkww.service;
 
 import com.lkww.config.JdbcConfiguration;
 import com.lkww.controller.TestController.TestRequest;
+import com.zaxxer.hikari.HikariDataSource;
 import io.micrometer.core.instrument.Timer;
+import io.micronaut.serde.annotation.Serdeable;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
+import org.reactivestreams.FlowAdapters;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,12 +17,19 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
 
 @Singleton
 public class TestExecutionService {
@@ -26,102 +37,510 @@ public class TestExecutionService {
     private static final Logger LOG = LoggerFactory.getLogger(TestExecutionService.class);
     private static final String DEFAULT_QUERY = "SELECT 1 FROM SYSIBM.SYSDUMMY1";
     private static final int ROW_CHECK_INTERVAL = 10000;
+    private static final int MAX_HISTOGRAM_STRIPES = 64;
+    private static final int MAX_RETAINED_RUNS = 50;
+    private static final Set<String> BATCH_QUERY_TYPES = Set.of("INSERT", "UPDATE", "MERGE");
+    private static final long INTERVAL_MILLIS = 1000;
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+    private static final long LOAD_STEP_POLL_MILLIS = 100;
+    private static final long START_POLL_MILLIS = 100;
     
-    @Inject
-    private DataSource dataSource;
-
     @Inject
     private PerformanceMetricsService performanceMetricsService;
     
     @Inject
     private JdbcConfigurationService jdbcConfigurationService;
     
-    private ExecutorService executorService;
-    private final AtomicBoolean testRunning = new AtomicBoolean(false);
-    private CompletableFuture<TestResult> currentTest;
-    private TestResult lastResult;
+    @Inject
+    private RunStore runStore;
+    
+    @Inject
+    private PoolTelemetryService poolTelemetryService;
+    
+    // Each run coordinates its workers from its own thread, so concurrent runs never queue behind each other
+    private final ExecutorService testCoordinator = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService intervalTicker = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, TestRun> runs = new ConcurrentHashMap<>();
+    private final Map<ExecutorMode, HarnessOverheadProbe.HarnessOverhead> overheadByMode = new ConcurrentHashMap<>();
     
     public String startTest(TestRequest request) {
-        if (testRunning.get()) {
-            throw new IllegalStateException("Test is already running");
-        }
-        
-        String testId = UUID.randomUUID().toString();
-        executorService = Executors.newFixedThreadPool(request.concurrency());
-        testRunning.set(true);
+        return startTest(request, RunOptions.NONE);
+    }
+    
+    /**
+     * Starts a run coordinated by another service, see {@link RunOptions}. The run is prepared right away, so
+     * invalid requests fail here rather than at the start time.
+     */
+    String startTest(TestRequest request, RunOptions options) {
+        Instant startAt = options.startAt();
+        TestRun run = createRun(request, options.configuration());
+        run.setIntervalListener(options.intervalListener());
+        register(run);
         
-        LOG.info("Starting test {} with concurrency: {}, duration: {}s, query: {}", 
-                testId, request.concurrency(), request.duration(), request.query());
+        LOG.info("Starting test {} with concurrency: {}, duration: {}s, targetQps: {}, executor: {}, isolatedPool: {}, query: {}{}", 
+                run.getTestId(), run.getWorkerCount(), getMeasuredSeconds(run), request.targetQps(), getExecutorMode(request),
+                run.getIsolatedDataSource() != null, run.getWorkloadMix().describe(), startAt != null ? ", at: " + startAt : "");
         
-        currentTest = CompletableFuture.supplyAsync(() -> executeTest(testId, request));
+        long startDelayMillis = startAt != null ? Math.max(Duration.between(Instant.now(), startAt).toMillis(), 0) : 0;
+        run.setIntervalTicker(intervalTicker.scheduleAtFixedRate(() -> captureInterval(run),
+                startDelayMillis + INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS));
+        run.setFuture(CompletableFuture.supplyAsync(() -> {
+            awaitStart(run, startAt);
+            return executeTest(run);
+        }, testCoordinator));
         
-        return testId;
+        return run.getTestId();
+    }
+    
+    public TestResult runTest(TestRequest request) {
+        return awaitResult(startTest(request));
+    }
+    
+    public TestResult awaitResult(String testId) {
+        try {
+            return getRun(testId).getFuture().join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Test execution failed: " + e.getCause().getMessage(), e.getCause());
+        }
     }
     
     public void stopTest() {
-        if (testRunning.get()) {
-            testRunning.set(false);
-            if (executorService != null) {
-                executorService.shutdownNow();
+        runs.values().stream()
+                .filter(TestRun::isRunning)
+                .forEach(run -> stopTest(run.getTestId()));
+    }
+    
+    public void stopTest(String testId) {
+        TestRun run = getRun(testId);
+        if (run.isRunning()) {
+            run.stop();
+            LOG.info("Test {} execution stopped", testId);
+        }
+    }
+    
+    public Publisher<IntervalSnapshot> streamIntervals(String testId) {
+        return FlowAdapters.toPublisher(getRun(testId).getIntervalPublisher());
+    }
+    
+    public List<IntervalSnapshot> getIntervals(String testId) {
+        return getRun(testId).getIntervals();
+    }
+    
+    public List<TestRunSummary> listRuns() {
+        return runs.values().stream()
+                .sorted(Comparator.comparing(TestRun::getStartedAt).reversed())
+                .map(this::summarize)
+                .toList();
+    }
+    
+    /**
+     * Parks every worker of a closed-loop run without stopping it, or lets them all run again. Intervals keep
+     * being captured while paused.
+     */
+    void pauseTest(String testId, boolean paused) {
+        TestRun run = getRun(testId);
+        run.setActiveWorkers(paused ? 0 : run.getWorkerCount());
+    }
+    
+    TestRunSummary getRunSummary(String testId) {
+        return summarize(getRun(testId));
+    }
+    
+    /**
+     * The merged latency histogram of a finished run, null while it is running.
+     */
+    LatencyHistogram getLatencyHistogram(String testId) {
+        return getRun(testId).getLatency();
+    }
+    
+    private TestRun getRun(String testId) {
+        TestRun run = runs.get(testId);
+        if (run == null) {
+            throw new IllegalArgumentException("Unknown test: " + testId);
+        }
+        return run;
+    }
+    
+    /**
+     * A run tuning the shared pool resizes it under every other run on that pool, so it may neither start
+     * next to such a run nor have one start next to it.
+     */
+    private synchronized void register(TestRun run) {
+        if (run.getIsolatedDataSource() == null) {
+            boolean tuning = run.getPoolTuner() != null;
+            TestRun conflict = runs.values().stream()
+                    .filter(other -> other.isRunning() && other.getIsolatedDataSource() == null)
+                    .filter(other -> tuning || other.getPoolTuner() != null)
+                    .findFirst()
+                    .orElse(null);
+            if (conflict != null) {
+                if (run.getPoolTelemetry() != null) {
+                    poolTelemetryService.detach(run.getPoolTelemetry());
+                }
+                run.finish();
+                throw new IllegalArgumentException(tuning
+                        ? "Pool tuning on the shared pool needs it alone, test " + conflict.getTestId()
+                                + " is running on it; set isolatedPool to tune a pool of its own"
+                        : "Test " + conflict.getTestId() + " is tuning the shared pool; set isolatedPool to run next to it");
             }
-            LOG.info("Test execution stopped");
         }
+        runs.put(run.getTestId(), run);
     }
     
-    public Object getResults() {
-        if (currentTest != null && currentTest.isDone()) {
-            try {
-                lastResult = currentTest.get();
-                return lastResult;
-            } catch (InterruptedException | ExecutionException e) {
-                LOG.error("Error getting test results", e);
-                return new TestResult(null, 0, 0, 0, List.of("Error: " + e.getMessage()));
-            }
-        } else if (lastResult != null) {
-            return lastResult;
+    /**
+     * Prepares a run without registering or starting it.
+     */
+    TestRun createRun(TestRequest request, JdbcConfiguration pinnedConfiguration) {
+        String testId = UUID.randomUUID().toString();
+        JdbcConfiguration configuration = pinnedConfiguration != null
+                ? pinnedConfiguration
+                : jdbcConfigurationService.snapshotConfiguration();
+        LoadSchedule loadSchedule = LoadSchedule.create(request);
+        int workerCount = getWorkerCount(request, loadSchedule);
+        BatchWorkload batchWorkload = createBatchWorkload(request, configuration);
+        WorkloadMix workloadMix = request.workload() != null
+                ? WorkloadMix.of(request.workload())
+                : WorkloadMix.single(getQueryToExecute(request));
+        PoolTelemetry poolTelemetry = new PoolTelemetry(PoolTelemetryService.SAMPLE_MILLIS);
+        // A pinned configuration always gets a pool of its own, the shared pool follows the live configuration
+        HikariDataSource isolatedDataSource = Boolean.TRUE.equals(request.isolatedPool()) || pinnedConfiguration != null
+                ? jdbcConfigurationService.createDataSource("test-" + testId.substring(0, 8), configuration,
+                        poolTelemetryService.trackerFactory(poolTelemetry))
+                : null;
+        DataSource dataSource = isolatedDataSource != null ? isolatedDataSource : jdbcConfigurationService.getDataSource();
+        PoolAutoTuner poolTuner;
+        try {
+            poolTuner = PoolAutoTuner.create(testId, request, jdbcConfigurationService, isolatedDataSource, workerCount);
+        } catch (RuntimeException e) {
+            if (isolatedDataSource != null) {
+                isolatedDataSource.close();
+            }
+            throw e;
+        }
+        
+        return new TestRun(
+                testId,
+                request,
+                configuration,
+                pinnedConfiguration != null,
+                createExecutor(request, workerCount),
+                createQuerySlots(request, configuration),
+                jdbcConfigurationService::getDataSource,
+                isolatedDataSource,
+                createWorkerHistograms(workerCount),
+                createPhaseRecorders(workerCount),
+                batchWorkload,
+                workloadMix,
+                loadSchedule,
+                poolTuner,
+                poolTelemetryService.attach(dataSource, poolTelemetry),
+                workerCount
+        );
+    }
+    
+    private BatchWorkload createBatchWorkload(TestRequest request, JdbcConfiguration configuration) {
+        if (!isBatchWrite(request)) {
+            return null;
+        }
+        if (request.query() == null) {
+            throw new IllegalArgumentException("Query type " + request.queryType() + " needs a parameterized query");
+        }
+        if (request.workload() != null) {
+            throw new IllegalArgumentException("Workload mixes are not supported for batched writes");
+        }
+        if (isOpenLoop(request)) {
+            throw new IllegalArgumentException("targetQps is not supported for batched writes");
+        }
+        if (request.loadProfile() != null) {
+            throw new IllegalArgumentException("Load profiles are not supported for batched writes");
+        }
+        if (request.poolTuning() != null) {
+            throw new IllegalArgumentException("Pool tuning is not supported for batched writes");
+        }
+        
+        int batchSize = Math.max(configuration.getBatchSize(), 1);
+        int commitInterval = request.commitInterval() != null ? Math.max(request.commitInterval(), 1) : 1;
+        BatchRowSource rowSource = request.dataFile() != null
+                ? BatchRowSource.fromFile(request.dataFile())
+                : BatchRowSource.synthetic();
+        return new BatchWorkload(batchSize, commitInterval, rowSource);
+    }
+    
+    static boolean isBatchWrite(TestRequest request) {
+        return request.queryType() != null && BATCH_QUERY_TYPES.contains(request.queryType().toUpperCase());
+    }
+    
+    private TestRunSummary summarize(TestRun run) {
+        TestRunState state;
+        if (!run.isFinished()) {
+            state = TestRunState.RUNNING;
+        } else if (run.getFuture().isCompletedExceptionally()) {
+            state = TestRunState.FAILED;
+        } else if (run.getStopRequested().get()) {
+            state = TestRunState.STOPPED;
         } else {
-            return new TestResult(null, 0, 0, 0, List.of("No test results available"));
+            state = TestRunState.COMPLETED;
+        }
+        
+        return new TestRunSummary(run.getTestId(), state, run.getStartedAt(), run.getFinishedAt(),
+                run.getWorkloadMix().describe(), run.getWorkerCount(), getMeasuredSeconds(run), run.getIsolatedDataSource() != null);
+    }
+    
+    public List<HarnessOverheadProbe.HarnessOverhead> getHarnessOverheadComparison() {
+        return overheadByMode.values().stream()
+                .sorted(Comparator.comparing(HarnessOverheadProbe.HarnessOverhead::executorMode))
+                .toList();
+    }
+    
+    private ExecutorMode getExecutorMode(TestRequest request) {
+        return request.executorMode() != null ? request.executorMode() : ExecutorMode.PLATFORM;
+    }
+    
+    private int getWorkerCount(TestRequest request, LoadSchedule loadSchedule) {
+        // A concurrency ramp starts the workers of its peak level up front and parks those above the current level
+        if (loadSchedule != null && loadSchedule.getTarget() == LoadTarget.CONCURRENCY) {
+            return loadSchedule.getPeakLevel();
+        }
+        return request.concurrency();
+    }
+    
+    private int getMeasuredSeconds(TestRun run) {
+        return run.getLoadSchedule() != null ? run.getLoadSchedule().getMeasuredSeconds() : run.getRequest().duration();
+    }
+    
+    private ExecutorService createExecutor(TestRequest request, int workerCount) {
+        return switch (getExecutorMode(request)) {
+            case PLATFORM -> Executors.newFixedThreadPool(workerCount);
+            case VIRTUAL, BOUNDED_VIRTUAL -> Executors.newVirtualThreadPerTaskExecutor();
+        };
+    }
+    
+    private Semaphore createQuerySlots(TestRequest request, JdbcConfiguration configuration) {
+        if (getExecutorMode(request) != ExecutorMode.BOUNDED_VIRTUAL) {
+            return null;
+        }
+        int permits = request.maxConcurrentQueries() != null
+                ? request.maxConcurrentQueries()
+                : configuration.getMaximumPoolSize();
+        return new Semaphore(permits);
+    }
+    
+    public Object getResults() {
+        return runs.values().stream()
+                .filter(TestRun::isFinished)
+                .max(Comparator.comparing(TestRun::getStartedAt))
+                .map(this::getResults)
+                .orElseGet(() -> TestResult.empty("No test results available"));
+    }
+    
+    public Object getResults(String testId) {
+        return getResults(getRun(testId));
+    }
+    
+    private Object getResults(TestRun run) {
+        if (!run.isFinished()) {
+            return TestResult.empty("Test " + run.getTestId() + " is still running");
+        }
+        try {
+            return run.getFuture().get();
+        } catch (InterruptedException | ExecutionException e) {
+            LOG.error("Error getting test results", e);
+            return TestResult.empty("Error: " + e.getMessage());
         }
     }
     
-    private TestResult executeTest(String testId, TestRequest request) {
-        Instant startTime = Instant.now();
-        AtomicLong successCount = new AtomicLong(0);
-        AtomicLong errorCount = new AtomicLong(0);
-        List<String> errors = new CopyOnWriteArrayList<>();
+    private void awaitStart(TestRun run, Instant startAt) {
+        if (startAt != null) {
+            long remainingMillis;
+            while (run.isRunning() && (remainingMillis = Duration.between(Instant.now(), startAt).toMillis()) > 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.min(remainingMillis, START_POLL_MILLIS)));
+            }
+        }
+        run.setLastIntervalNanos(System.nanoTime());
+    }
+    
+    private TestResult executeTest(TestRun run) {
+        TestRequest request = run.getRequest();
+        LoadSchedule loadSchedule = run.getLoadSchedule();
+        HarnessOverheadProbe overheadProbe = null;
+        HarnessOverheadProbe.HarnessOverhead overhead = null;
+        Instant startTime;
+        OpenLoopSchedule schedule;
+        
+        try {
+            runWarmup(run);
+            if (run.getPoolTuner() != null) {
+                run.getPoolTuner().start(System.nanoTime());
+            }
+            
+            overheadProbe = HarnessOverheadProbe.start();
+            startTime = Instant.now();
+            int startLevel = loadSchedule != null ? loadSchedule.getStartLevel() : 0;
+            schedule = isOpenLoop(request)
+                    ? createOpenLoopSchedule(run, loadSchedule != null ? startLevel : request.targetQps())
+                    : null;
+            if (loadSchedule != null) {
+                loadSchedule.startMeasurement(System.nanoTime());
+                applyLevel(run, schedule, loadSchedule.update(System.nanoTime()));
+            }
+            runWorkers(run, getMeasuredSeconds(run), schedule, loadSchedule);
+            if (loadSchedule != null) {
+                loadSchedule.finishMeasurement(System.nanoTime());
+            }
+        } finally {
+            cleanupResources(run);
+            // Also after a failure, or later runs would count as overlapping with this one
+            if (overheadProbe != null) {
+                overhead = overheadProbe.finish(getExecutorMode(request),
+                        run.getSuccessCount().get() + run.getErrorCount().get());
+            }
+        }
         
-        String query = getQueryToExecute(request);
-        List<CompletableFuture<Void>> tasks = createWorkerTasks(request, startTime, query, successCount, errorCount, errors);
+        long elapsedMillis = Duration.between(startTime, Instant.now()).toMillis();
+        if (overhead.exclusive()) {
+            // Figures of overlapping runs would compare the modes of both runs together
+            overheadByMode.put(overhead.executorMode(), overhead);
+        }
         
-        waitForTasksToComplete(tasks);
-        cleanupResources();
+        LatencyHistogram latency = mergeHistograms(run.getHistograms());
+        run.setLatency(latency);
+        PhaseRecorder phases = mergePhaseRecorders(run.getPhaseRecorders());
+        TestResult result = createTestResult(run, latency, phases, createOpenLoopResult(run, schedule, elapsedMillis),
+                createBatchResult(run, elapsedMillis), createReadThroughput(run, elapsedMillis), overhead, elapsedMillis);
+        runStore.save(run, result, latency, phases);
+        return result;
+    }
+    
+    private void runWarmup(TestRun run) {
+        LoadSchedule loadSchedule = run.getLoadSchedule();
+        if (loadSchedule == null || loadSchedule.getWarmupSeconds() == 0) {
+            return;
+        }
         
-        return createTestResult(testId, successCount, errorCount, errors);
+        loadSchedule.startWarmup(System.nanoTime());
+        OpenLoopSchedule schedule = isOpenLoop(run.getRequest())
+                ? createOpenLoopSchedule(run, loadSchedule.getStartLevel())
+                : null;
+        applyLevel(run, schedule, loadSchedule.getStartLevel());
+        runWorkers(run, loadSchedule.getWarmupSeconds(), schedule, null);
+        loadSchedule.finishWarmup(System.nanoTime());
+        
+        // The warmup workers have all finished, so nothing records while the statistics are cleared
+        run.resetStatistics();
+        LOG.info("Test {} finished its {}s warmup", run.getTestId(), loadSchedule.getWarmupSeconds());
+    }
+    
+    private void runWorkers(TestRun run, int seconds, OpenLoopSchedule schedule, LoadSchedule loadSchedule) {
+        if (!run.isRunning()) {
+            return;
+        }
+        long endNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<CompletableFuture<Void>> tasks = createWorkerTasks(run, Instant.now().plusSeconds(seconds), schedule);
+        
+        if (schedule != null) {
+            schedule.dispatch(run::isRunning, endNanos, loadSchedule);
+        } else if (loadSchedule != null) {
+            followLoadSchedule(run, endNanos, loadSchedule);
+        }
+        waitForTasksToComplete(tasks);
+    }
+    
+    private void followLoadSchedule(TestRun run, long endNanos, LoadSchedule loadSchedule) {
+        long now;
+        while (run.isRunning() && (now = System.nanoTime()) < endNanos) {
+            run.setActiveWorkers(loadSchedule.update(now));
+            LockSupport.parkNanos(Math.min(TimeUnit.MILLISECONDS.toNanos(LOAD_STEP_POLL_MILLIS), endNanos - now));
+        }
+    }
+    
+    private void applyLevel(TestRun run, OpenLoopSchedule schedule, int level) {
+        if (schedule != null) {
+            schedule.setRate(level);
+        } else {
+            run.setActiveWorkers(level);
+        }
+    }
+    
+    private boolean isOpenLoop(TestRequest request) {
+        return LoadSchedule.getTarget(request) == LoadTarget.RATE;
+    }
+    
+    private OpenLoopSchedule createOpenLoopSchedule(TestRun run, int initialQps) {
+        TestRequest request = run.getRequest();
+        // With a rate profile the peak of the profile is the target
+        int targetQps = run.getLoadSchedule() != null ? run.getLoadSchedule().getPeakLevel() : request.targetQps();
+        // Default to roughly one second of backlog so queueing shows up in the latency numbers
+        int maxInFlight = request.maxInFlight() != null
+                ? request.maxInFlight()
+                : Math.max(request.concurrency(), targetQps);
+        return new OpenLoopSchedule(targetQps, maxInFlight, initialQps, createWorkerHistograms(run.getWorkerCount()));
     }
     
     private String getQueryToExecute(TestRequest request) {
         return request.query() != null ? request.query() : getDefaultQuery();
     }
     
-    private List<CompletableFuture<Void>> createWorkerTasks(TestRequest request, Instant startTime, String query,
-                                                             AtomicLong successCount, AtomicLong errorCount, List<String> errors) {
-        return IntStream.range(0, request.concurrency())
-                .mapToObj(i -> CompletableFuture.runAsync(() -> 
-                    executeWorkerTask(startTime, request.duration(), query, successCount, errorCount, errors), executorService))
+    private List<LatencyHistogram> createWorkerHistograms(int workerCount) {
+        // Thousands of virtual-thread workers share a bounded set of histogram stripes instead of one each
+        int stripes = Math.min(workerCount, MAX_HISTOGRAM_STRIPES);
+        List<LatencyHistogram> histograms = new ArrayList<>(stripes);
+        for (int i = 0; i < stripes; i++) {
+            histograms.add(new LatencyHistogram());
+        }
+        return histograms;
+    }
+    
+    private List<PhaseRecorder> createPhaseRecorders(int workerCount) {
+        int stripes = Math.min(workerCount, MAX_HISTOGRAM_STRIPES);
+        List<PhaseRecorder> recorders = new ArrayList<>(stripes);
+        for (int i = 0; i < stripes; i++) {
+            recorders.add(new PhaseRecorder());
+        }
+        return recorders;
+    }
+    
+    private List<CompletableFuture<Void>> createWorkerTasks(TestRun run, Instant endTime, OpenLoopSchedule schedule) {
+        List<LatencyHistogram> workerHistograms = run.getHistograms();
+        return IntStream.range(0, run.getWorkerCount())
+                .mapToObj(i -> CompletableFuture.runAsync(() -> {
+                    int stripe = i % workerHistograms.size();
+                    PhaseRecorder phases = run.getPhaseRecorders().get(stripe);
+                    if (run.getBatchWorkload() != null) {
+                        executeBatchWorkerTask(run, endTime, run.getRequest().query(), workerHistograms.get(stripe), phases);
+                        return;
+                    }
+                    try (WorkerSession session = new WorkerSession(run)) {
+                        if (schedule != null) {
+                            executeOpenLoopWorkerTask(run, endTime, workerHistograms.get(stripe),
+                                    schedule.getServiceTimeHistograms().get(stripe), phases, session, schedule);
+                        } else {
+                            executeWorkerTask(run, endTime, i, workerHistograms.get(stripe), phases, session);
+                        }
+                    }
+                }, run.getExecutor()))
                 .toList();
     }
     
-    private void executeWorkerTask(Instant startTime, int durationSeconds, String query,
-                                   AtomicLong successCount, AtomicLong errorCount, List<String> errors) {
-        Instant endTime = startTime.plusSeconds(durationSeconds);
-        
-        while (shouldContinueExecution(endTime)) {
-            Timer.Sample sample = performanceMetricsService.startQueryTimer();
+    private void executeWorkerTask(TestRun run, Instant endTime, int worker, LatencyHistogram histogram,
+                                   PhaseRecorder phases, WorkerSession session) {
+        while (shouldContinueExecution(run, endTime)) {
+            if (worker >= run.getActiveWorkers()) {
+                // Parked by the load profile, without holding on to a pooled connection
+                session.close();
+                if (!pauseBetweenQueries()) {
+                    break;
+                }
+                continue;
+            }
             
+            WorkloadMix.MixStatement statement = run.getWorkloadMix().next();
+            if (!acquireQuerySlot(run)) {
+                break;
+            }
             try {
-                executeQueryWithMetrics(query, sample, successCount);
-            } catch (SQLException e) {
-                handleQueryError(sample, e, errorCount, errors);
+                executeQuery(run, statement, histogram, phases, session);
+            } finally {
+                releaseQuerySlot(run);
             }
             
             if (!pauseBetweenQueries()) {
@@ -130,24 +549,214 @@ public class TestExecutionService {
         }
     }
     
-    private boolean shouldContinueExecution(Instant endTime) {
-        return testRunning.get() && Instant.now().isBefore(endTime);
+    /**
+     * One query of a closed-loop worker that holds its query slot, with everything recorded about it.
+     * Package-private so the worker loop benchmark measures this very code.
+     */
+    void executeQuery(TestRun run, WorkloadMix.MixStatement statement, LatencyHistogram histogram,
+                      PhaseRecorder phases, WorkerSession session) {
+        // Timed only once the slot is held, the wait for maxConcurrentQueries is not query latency
+        Timer.Sample sample = performanceMetricsService.startQueryTimer();
+        long startNanos = System.nanoTime();
+        try {
+            executeQueryWithMetrics(run, statement, sample, phases, session);
+            long latencyNanos = System.nanoTime() - startNanos;
+            histogram.recordNanos(latencyNanos);
+            statement.recordSuccess(latencyNanos);
+            recordInterval(run, latencyNanos);
+        } catch (SQLException e) {
+            statement.recordError();
+            handleQueryError(run, sample, e);
+            session.discard();
+        }
     }
     
-    private void executeQueryWithMetrics(String query, Timer.Sample sample, AtomicLong successCount) throws SQLException {
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement stmt = prepareStatement(connection, query)) {
+    private void executeOpenLoopWorkerTask(TestRun run, Instant endTime, LatencyHistogram histogram,
+                                           LatencyHistogram serviceTimeHistogram, PhaseRecorder phases,
+                                           WorkerSession session, OpenLoopSchedule schedule) {
+        while (shouldContinueExecution(run, endTime) && !Thread.currentThread().isInterrupted()) {
+            Long intendedStartNanos = schedule.poll();
+            if (intendedStartNanos == null) {
+                continue;
+            }
             
-            long rowsProcessed = executeQueryAndProcessResults(stmt);
-            LOG.debug("Processed {} rows for query execution", rowsProcessed);
+            WorkloadMix.MixStatement statement = run.getWorkloadMix().next();
+            if (!acquireQuerySlot(run)) {
+                schedule.release();
+                break;
+            }
+            Timer.Sample sample = performanceMetricsService.startQueryTimer();
+            long startNanos = System.nanoTime();
+            schedule.started(intendedStartNanos, startNanos);
+            
+            try {
+                executeQueryWithMetrics(run, statement, sample, phases, session);
+                long endNanos = System.nanoTime();
+                histogram.recordNanos(endNanos - intendedStartNanos);
+                serviceTimeHistogram.recordNanos(endNanos - startNanos);
+                statement.recordSuccess(endNanos - intendedStartNanos);
+                recordInterval(run, endNanos - intendedStartNanos);
+            } catch (SQLException e) {
+                statement.recordError();
+                handleQueryError(run, sample, e);
+                session.discard();
+            } finally {
+                releaseQuerySlot(run);
+                schedule.release();
+            }
+        }
+    }
+    
+    private void executeBatchWorkerTask(TestRun run, Instant endTime, String query, LatencyHistogram histogram,
+                                        PhaseRecorder phases) {
+        // Each worker keeps one connection with autoCommit off and only borrows a new one after a failure
+        while (shouldContinueExecution(run, endTime)) {
+            Timer.Sample sample = performanceMetricsService.startQueryTimer();
+            long phaseStartNanos = System.nanoTime();
+            DataSource dataSource = run.getDataSource();
+            try (Connection connection = dataSource.getConnection()) {
+                phaseStartNanos = markPhase(phases, QueryPhase.ACQUIRE, phaseStartNanos);
+                connection.setAutoCommit(false);
+                
+                try (PreparedStatement stmt = prepareStatement(run, connection, query)) {
+                    markPhase(phases, QueryPhase.PREPARE, phaseStartNanos);
+                    executeBatches(run, endTime, dataSource, connection, stmt, histogram, phases);
+                }
+            } catch (SQLException e) {
+                handleQueryError(run, sample, e);
+                if (!pauseBetweenQueries()) {
+                    break;
+                }
+            }
+        }
+    }
+    
+    private void executeBatches(TestRun run, Instant endTime, DataSource dataSource, Connection connection,
+                                PreparedStatement stmt, LatencyHistogram histogram, PhaseRecorder phases) throws SQLException {
+        BatchWorkload workload = run.getBatchWorkload();
+        BatchRowSource.ParameterTypes types = BatchRowSource.describe(stmt);
+        long uncommittedRows = 0;
+        int uncommittedBatches = 0;
+        
+        try {
+            while (shouldContinueExecution(run, endTime)) {
+                for (int row = 0; row < workload.getBatchSize(); row++) {
+                    workload.getRowSource().bindNextRow(stmt, types);
+                    stmt.addBatch();
+                }
+                
+                Timer.Sample sample = performanceMetricsService.startQueryTimer();
+                long startNanos = System.nanoTime();
+                stmt.executeBatch();
+                long latencyNanos = System.nanoTime() - startNanos;
+                histogram.recordNanos(latencyNanos);
+                recordInterval(run, latencyNanos);
+                markPhase(phases, QueryPhase.EXECUTE, startNanos);
+                performanceMetricsService.recordQuerySuccess(sample);
+                run.getSuccessCount().incrementAndGet();
+                
+                uncommittedRows += workload.getBatchSize();
+                if (++uncommittedBatches >= workload.getCommitInterval()) {
+                    commitBatches(workload, connection, uncommittedRows);
+                    uncommittedRows = 0;
+                    uncommittedBatches = 0;
+                    if (run.getDataSource() != dataSource) {
+                        // The shared pool was replaced, continue on a connection of the new one
+                        return;
+                    }
+                }
+            }
+            if (uncommittedRows > 0) {
+                commitBatches(workload, connection, uncommittedRows);
+            }
+        } catch (SQLException e) {
+            stmt.clearBatch();
+            rollbackQuietly(connection);
+            workload.getRolledBackRows().addAndGet(uncommittedRows);
+            throw e;
+        }
+    }
+    
+    private void commitBatches(BatchWorkload workload, Connection connection, long rows) throws SQLException {
+        long startNanos = System.nanoTime();
+        connection.commit();
+        workload.getCommitLatency().recordNanos(System.nanoTime() - startNanos);
+        workload.getCommits().incrementAndGet();
+        workload.getCommittedRows().addAndGet(rows);
+    }
+    
+    private void rollbackQuietly(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            LOG.debug("Rollback after failed batch failed", e);
+        }
+    }
+    
+    private boolean acquireQuerySlot(TestRun run) {
+        if (run.getQuerySlots() == null) {
+            return true;
+        }
+        try {
+            run.getQuerySlots().acquire();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    private void releaseQuerySlot(TestRun run) {
+        if (run.getQuerySlots() != null) {
+            run.getQuerySlots().release();
+        }
+    }
+    
+    private boolean shouldContinueExecution(TestRun run, Instant endTime) {
+        return run.isRunning() && Instant.now().isBefore(endTime);
+    }
+    
+    private void executeQueryWithMetrics(TestRun run, WorkloadMix.MixStatement statement, Timer.Sample sample,
+                                         PhaseRecorder phases, WorkerSession session) throws SQLException {
+        long phaseStartNanos = System.nanoTime();
+        Connection connection = session.borrowConnection();
+        try {
+            phaseStartNanos = markPhase(phases, QueryPhase.ACQUIRE, phaseStartNanos);
+            long acquiredNanos = phaseStartNanos;
             
-            performanceMetricsService.recordQuerySuccess(sample);
-            successCount.incrementAndGet();
+            PreparedStatement stmt = session.prepare(connection, statement.getSql());
+            try {
+                statement.bind(stmt);
+                phaseStartNanos = markPhase(phases, QueryPhase.PREPARE, phaseStartNanos);
+                
+                long rowsProcessed = executeQueryAndProcessResults(run, stmt, phases, phaseStartNanos);
+                LOG.debug("Processed {} rows for query execution", rowsProcessed);
+                
+                performanceMetricsService.recordQuerySuccess(sample);
+                run.getSuccessCount().incrementAndGet();
+                if (run.getPoolTuner() != null) {
+                    // The tuner judges the pool by how long queries hold a connection, not by the wait for one
+                    run.getPoolTuner().recordServiceNanos(System.nanoTime() - acquiredNanos);
+                }
+            } finally {
+                session.release(stmt);
+            }
+        } finally {
+            session.release(connection);
         }
     }
     
-    private PreparedStatement prepareStatement(Connection connection, String query) throws SQLException {
-        JdbcConfiguration config = jdbcConfigurationService.getCurrentConfiguration();
+    private long markPhase(PhaseRecorder phases, QueryPhase phase, long phaseStartNanos) {
+        long now = System.nanoTime();
+        phases.record(phase, now - phaseStartNanos);
+        performanceMetricsService.recordPhase(phase, now - phaseStartNanos);
+        return now;
+    }
+    
+    private PreparedStatement prepareStatement(TestRun run, Connection connection, String query) throws SQLException {
+        JdbcConfiguration config = run.isConfigurationPinned()
+                ? run.getConfiguration()
+                : jdbcConfigurationService.getCurrentConfiguration();
         PreparedStatement stmt = connection.prepareStatement(query);
         stmt.setFetchSize(config.getFetchSize());
         
@@ -158,18 +767,35 @@ public class TestExecutionService {
         return stmt;
     }
     
-    private long executeQueryAndProcessResults(PreparedStatement stmt) throws SQLException {
+    private long executeQueryAndProcessResults(TestRun run, PreparedStatement stmt, PhaseRecorder phases,
+                                               long executeStartNanos) throws SQLException {
         try (ResultSet rs = stmt.executeQuery()) {
+            long phaseStartNanos = markPhase(phases, QueryPhase.EXECUTE, executeStartNanos);
+            ResultSetConsumer consumer = ResultSetConsumer.create(getResultConsumption(run.getRequest()), rs);
             long rowsProcessed = 0;
+            long bytesRead = 0;
             
-            while (rs.next() && testRunning.get()) {
-                rowsProcessed++;
-                
-                if (shouldCheckForInterruption(rowsProcessed)) {
-                    break;
+            boolean hasRow = rs.next();
+            phaseStartNanos = markPhase(phases, QueryPhase.FIRST_ROW, phaseStartNanos);
+            
+            try {
+                while (hasRow && run.isRunning()) {
+                    rowsProcessed++;
+                    bytesRead += consumer.readRow(rs);
+                    
+                    if (shouldCheckForInterruption(rowsProcessed)) {
+                        break;
+                    }
+                    hasRow = rs.next();
                 }
+            } finally {
+                // Rows read before a failure still went over the wire
+                run.getRowCount().addAndGet(rowsProcessed);
+                run.getByteCount().addAndGet(bytesRead);
+                performanceMetricsService.recordRowsRead(rowsProcessed, bytesRead);
             }
             
+            markPhase(phases, QueryPhase.DRAIN, phaseStartNanos);
             return rowsProcessed;
         }
     }
@@ -178,12 +804,32 @@ public class TestExecutionService {
         return rowsProcessed % ROW_CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted();
     }
     
-    private void handleQueryError(Timer.Sample sample, SQLException e, AtomicLong errorCount, List<String> errors) {
-        String errorMsg = "SQL Error: " + e.getMessage();
-        performanceMetricsService.recordQueryError(sample, errorMsg);
-        errorCount.incrementAndGet();
-        errors.add(errorMsg);
-        LOG.warn("Query execution failed", e);
+    private void handleQueryError(TestRun run, Timer.Sample sample, SQLException e) {
+        ErrorCategory category = run.getErrorAggregator().record(e);
+        performanceMetricsService.recordQueryError(sample, category);
+        run.getErrorCount().incrementAndGet();
+        run.getIntervalRecorder().recordError();
+        if (run.getLoadSchedule() != null) {
+            run.getLoadSchedule().getStepRecorder().recordError();
+        }
+        if (run.getPoolTuner() != null) {
+            run.getPoolTuner().recordError();
+        }
+    }
+    
+    private ResultConsumption getResultConsumption(TestRequest request) {
+        return request.resultConsumption() != null ? request.resultConsumption() : ResultConsumption.NEXT_ONLY;
+    }
+    
+    private StatementReuse getStatementReuse(TestRequest request) {
+        return request.statementReuse() != null ? request.statementReuse() : StatementReuse.PER_QUERY;
+    }
+    
+    private void recordInterval(TestRun run, long latencyNanos) {
+        run.getIntervalRecorder().recordNanos(latencyNanos);
+        if (run.getLoadSchedule() != null) {
+            run.getLoadSchedule().getStepRecorder().recordNanos(latencyNanos);
+        }
     }
     
     private boolean pauseBetweenQueries() {
@@ -200,31 +846,588 @@ public class TestExecutionService {
         CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
     }
     
-    private void cleanupResources() {
-        testRunning.set(false);
-        executorService.shutdown();
+    private void captureInterval(TestRun run) {
+        // The ticker and the final capture at the end of a run must not swap concurrently
+        synchronized (run.getIntervalRecorder()) {
+            long now = System.nanoTime();
+            double seconds = (now - run.getLastIntervalNanos()) / (double) TimeUnit.SECONDS.toNanos(1);
+            run.setLastIntervalNanos(now);
+            
+            LatencyHistogram interval = run.getIntervalRecorder().swap();
+            long errors = run.getIntervalRecorder().takeErrors();
+            Integer poolActive = null;
+            Integer poolIdle = null;
+            Integer poolPending = null;
+            if (run.getDataSource() instanceof HikariDataSource hikariDS && hikariDS.getHikariPoolMXBean() != null) {
+                poolActive = hikariDS.getHikariPoolMXBean().getActiveConnections();
+                poolIdle = hikariDS.getHikariPoolMXBean().getIdleConnections();
+                poolPending = hikariDS.getHikariPoolMXBean().getThreadsAwaitingConnection();
+            }
+            
+            IntervalSnapshot snapshot = new IntervalSnapshot(
+                    run.getIntervals().size() + 1,
+                    Instant.now(),
+                    interval.getTotalCount(),
+                    errors,
+                    seconds > 0 ? interval.getTotalCount() / seconds : 0.0,
+                    interval.summarize(),
+                    poolActive,
+                    poolIdle,
+                    poolPending
+            );
+            run.getIntervals().add(snapshot);
+            if (run.getIntervalListener() != null) {
+                run.getIntervalListener().accept(snapshot, interval);
+            }
+            // Slow stream consumers miss snapshots instead of holding up the ticker
+            run.getIntervalPublisher().offer(snapshot, (subscriber, dropped) -> false);
+            if (run.getPoolTuner() != null && run.isRunning()) {
+                run.getPoolTuner().tick(now);
+            }
+        }
+    }
+    
+    private void stopIntervalTicker(TestRun run) {
+        if (run.getIntervalTicker() != null) {
+            run.getIntervalTicker().cancel(false);
+        }
+        captureInterval(run);
+    }
+    
+    private void cleanupResources(TestRun run) {
+        stopIntervalTicker(run);
+        if (run.getPoolTelemetry() != null) {
+            poolTelemetryService.detach(run.getPoolTelemetry());
+        }
+        run.finish();
+        evictFinishedRuns();
+    }
+    
+    private void evictFinishedRuns() {
+        List<TestRun> finished = runs.values().stream()
+                .filter(run -> !run.isRunning())
+                .sorted(Comparator.comparing(TestRun::getStartedAt).reversed())
+                .toList();
+        finished.stream()
+                .skip(MAX_RETAINED_RUNS)
+                .forEach(run -> runs.remove(run.getTestId()));
+    }
+    
+    private LatencyHistogram mergeHistograms(List<LatencyHistogram> histograms) {
+        LatencyHistogram merged = new LatencyHistogram();
+        histograms.forEach(merged::add);
+        return merged;
+    }
+    
+    private PhaseRecorder mergePhaseRecorders(List<PhaseRecorder> recorders) {
+        PhaseRecorder merged = new PhaseRecorder();
+        recorders.forEach(merged::add);
+        return merged;
+    }
+    
+    private OpenLoopResult createOpenLoopResult(TestRun run, OpenLoopSchedule schedule, long elapsedMillis) {
+        if (schedule == null) {
+            return null;
+        }
+        
+        schedule.finish();
+        
+        long completed = run.getSuccessCount().get() + run.getErrorCount().get();
+        double achievedQps = elapsedMillis > 0 ? completed * 1000.0 / elapsedMillis : 0.0;
+        return new OpenLoopResult(
+                schedule.getTargetQps(),
+                achievedQps,
+                schedule.getMaxInFlight(),
+                schedule.getScheduled(),
+                schedule.getDropped(),
+                schedule.getDelayed(),
+                mergeHistograms(schedule.getServiceTimeHistograms()).summarize()
+        );
     }
     
-    private TestResult createTestResult(String testId, AtomicLong successCount, AtomicLong errorCount, List<String> errors) {
+    private BatchResult createBatchResult(TestRun run, long elapsedMillis) {
+        BatchWorkload workload = run.getBatchWorkload();
+        if (workload == null) {
+            return null;
+        }
+        
+        long rows = workload.getCommittedRows().get();
+        long batches = run.getSuccessCount().get();
+        return new BatchResult(
+                workload.getBatchSize(),
+                workload.getCommitInterval(),
+                rows,
+                workload.getRolledBackRows().get(),
+                batches,
+                workload.getCommits().get(),
+                elapsedMillis > 0 ? rows * 1000.0 / elapsedMillis : 0.0,
+                elapsedMillis > 0 ? batches * 1000.0 / elapsedMillis : 0.0,
+                workload.getCommitLatency().summarize()
+        );
+    }
+    
+    private ReadThroughput createReadThroughput(TestRun run, long elapsedMillis) {
+        if (run.getBatchWorkload() != null) {
+            return null;
+        }
+        
+        ResultConsumption consumption = getResultConsumption(run.getRequest());
+        long rows = run.getRowCount().get();
+        double seconds = elapsedMillis / 1000.0;
+        if (consumption == ResultConsumption.NEXT_ONLY) {
+            // Without reading the columns there is nothing to base a byte count on
+            return new ReadThroughput(consumption, rows, seconds > 0 ? rows / seconds : 0.0, null, null, null);
+        }
+        long bytes = run.getByteCount().get();
+        return new ReadThroughput(
+                consumption,
+                rows,
+                seconds > 0 ? rows / seconds : 0.0,
+                bytes,
+                seconds > 0 ? bytes / BYTES_PER_MEGABYTE / seconds : 0.0,
+                rows > 0 ? (double) bytes / rows : 0.0
+        );
+    }
+    
+    private TestResult createTestResult(TestRun run, LatencyHistogram latency, PhaseRecorder phases, OpenLoopResult openLoop,
+                                        BatchResult batch, ReadThroughput readThroughput,
+                                        HarnessOverheadProbe.HarnessOverhead harnessOverhead, long elapsedMillis) {
+        String testId = run.getTestId();
+        TestRequest request = run.getRequest();
+        AtomicLong successCount = run.getSuccessCount();
+        AtomicLong errorCount = run.getErrorCount();
         long totalQueries = successCount.get() + errorCount.get();
+        double queriesPerSecond = elapsedMillis > 0 ? successCount.get() * 1000.0 / elapsedMillis : 0.0;
+        LatencyHistogram.LatencySummary summary = latency.summarize();
+        LatencyHistogram.LatencySummary correctedSummary = request.expectedIntervalMs() != null
+                ? latency.copyCorrectedForCoordinatedOmission(TimeUnit.MILLISECONDS.toNanos(request.expectedIntervalMs())).summarize()
+                : null;
         
-        LOG.info("Test {} completed. Total queries: {}, Success: {}, Errors: {}", 
-                testId, totalQueries, successCount.get(), errorCount.get());
+        LOG.info("Test {} completed. Total queries: {}, Success: {}, Errors: {}, p50: {}ms, p99: {}ms, p99.9: {}ms", 
+                testId, totalQueries, successCount.get(), errorCount.get(), summary.p50Ms(), summary.p99Ms(), summary.p999Ms());
+        
+        LoadSchedule loadSchedule = run.getLoadSchedule();
+        SaturationKnee knee = loadSchedule != null && request.loadProfile() != null ? loadSchedule.detectKnee() : null;
+        if (knee != null) {
+            LOG.info("Test {} saturation: {}", testId, knee.reason());
+        }
         
-        return new TestResult(testId, totalQueries, successCount.get(), errorCount.get(), errors);
+        return new TestResult(testId, totalQueries, successCount.get(), errorCount.get(), elapsedMillis, queriesPerSecond,
+                run.getBatchWorkload() == null ? getStatementReuse(request) : null,
+                run.getErrorAggregator().describeGroups(), run.getErrorAggregator().summarize(elapsedMillis),
+                summary, correctedSummary, phases.summarize(),
+                request.workload() != null ? run.getWorkloadMix().summarize(elapsedMillis) : null,
+                loadSchedule != null ? loadSchedule.getSteps() : null, knee,
+                run.getPoolTuner() != null ? run.getPoolTuner().summarize() : null,
+                run.getPoolTelemetry() != null ? run.getPoolTelemetry().summarize() : null,
+                readThroughput, openLoop, batch, harnessOverhead);
     }
     
     private String getDefaultQuery() {
         return DEFAULT_QUERY;
     }
     
+    @Serdeable
     public record TestResult(
             String testId,
             long totalQueries,
             long successfulQueries,
             long failedQueries,
-            List<String> errors
+            long elapsedMillis,
+            double queriesPerSecond,
+            StatementReuse statementReuse,
+            List<String> errors,
+            ErrorSummary errorSummary,
+            LatencyHistogram.LatencySummary latency,
+            LatencyHistogram.LatencySummary correctedLatency,
+            Map<QueryPhase, LatencyHistogram.LatencySummary> phases,
+            List<StatementResult> statements,
+            List<StepResult> steps,
+            SaturationKnee saturationKnee,
+            PoolTuningResult poolTuning,
+            PoolTelemetryResult poolTelemetry,
+            ReadThroughput readThroughput,
+            OpenLoopResult openLoop,
+            BatchResult batch,
+            HarnessOverheadProbe.HarnessOverhead harnessOverhead
+    ) {
+        static TestResult empty(String message) {
+            return new TestResult(null, 0, 0, 0, 0, 0.0, null, List.of(message), null, null, null, null, null, null, null, null, null, null, null, null, null);
+        }
+    }
+    
+    public enum ErrorCategory {
+        CONNECT,
+        TIMEOUT,
+        QUERY
+    }
+    
+    @Serdeable
+    public record ErrorSummary(
+            long totalErrors,
+            double errorsPerSecond,
+            Map<ErrorCategory, Long> categories,
+            List<ErrorGroup> groups,
+            List<ErrorRate> timeline,
+            long suppressedLogMessages
+    ) {}
+    
+    @Serdeable
+    public record ErrorGroup(
+            String sqlState,
+            int errorCode,
+            String exceptionClass,
+            ErrorCategory category,
+            long count,
+            Instant firstSeen,
+            Instant lastSeen,
+            List<String> messages
+    ) {}
+    
+    @Serdeable
+    public record ErrorRate(
+            Instant start,
+            double seconds,
+            long connectErrors,
+            long timeoutErrors,
+            long queryErrors,
+            double errorsPerSecond
+    ) {}
+    
+    @Serdeable
+    public record TestRunSummary(
+            String testId,
+            TestRunState state,
+            Instant startedAt,
+            Instant finishedAt,
+            String query,
+            int concurrency,
+            int duration,
+            boolean isolatedPool
+    ) {}
+    
+    public enum TestRunState {
+        RUNNING,
+        COMPLETED,
+        STOPPED,
+        FAILED
+    }
+    
+    public enum StatementReuse {
+        PER_QUERY,
+        PINNED_CONNECTION,
+        PINNED_STATEMENT
+    }
+    
+    @Serdeable
+    public record LoadProfile(
+            LoadShape shape,
+            LoadTarget target,
+            Integer start,
+            Integer end,
+            Integer increment,
+            Integer stepSeconds
+    ) {}
+    
+    public enum LoadShape {
+        STEP,
+        LINEAR
+    }
+    
+    public enum LoadTarget {
+        CONCURRENCY,
+        RATE
+    }
+    
+    @Serdeable
+    public record StepResult(
+            int step,
+            boolean warmup,
+            int level,
+            Instant startedAt,
+            long elapsedMillis,
+            long successfulQueries,
+            long failedQueries,
+            double queriesPerSecond,
+            LatencyHistogram.LatencySummary latency
     ) {}
+    
+    @Serdeable
+    public record SaturationKnee(
+            boolean detected,
+            LoadTarget target,
+            int level,
+            double queriesPerSecond,
+            double p99Ms,
+            Integer recommendedMaximumPoolSize,
+            String reason
+    ) {}
+    
+    @Serdeable
+    public record PoolTuning(
+            PoolTuningAlgorithm algorithm,
+            Integer minPoolSize,
+            Integer maxPoolSize,
+            Integer windowSeconds,
+            Double latencyTolerance,
+            Boolean safeMode
+    ) {}
+    
+    public enum PoolTuningAlgorithm {
+        AIMD,
+        GRADIENT
+    }
+    
+    public enum PoolTuningAction {
+        HOLD,
+        GROW,
+        SHRINK,
+        REVERT
+    }
+    
+    @Serdeable
+    public record PoolTuningDecision(
+            int window,
+            Instant timestamp,
+            PoolTuningAction action,
+            int previousSize,
+            int newSize,
+            double queriesPerSecond,
+            double serviceMeanMs,
+            double serviceP99Ms,
+            int maxPending,
+            int maxActive,
+            long errors,
+            String reason
+    ) {}
+    
+    @Serdeable
+    public record PoolTuningResult(
+            PoolTuningAlgorithm algorithm,
+            boolean safeMode,
+            int initialSize,
+            int finalSize,
+            Integer recommendedMaximumPoolSize,
+            double peakQueriesPerSecond,
+            List<PoolTuningDecision> timeline
+    ) {}
+    
+    @Serdeable
+    public record PoolGauge(
+            double mean,
+            int min,
+            int max
+    ) {}
+    
+    @Serdeable
+    public record PoolTelemetryResult(
+            long sampleMillis,
+            long samples,
+            PoolGauge active,
+            PoolGauge idle,
+            PoolGauge total,
+            PoolGauge threadsAwaiting,
+            double starvedSampleRatio,
+            LatencyHistogram.LatencySummary acquireWait,
+            LatencyHistogram.LatencySummary connectionCreation,
+            long acquireTimeouts
+    ) {}
+    
+    public enum ResultConsumption {
+        NEXT_ONLY,
+        NATIVE,
+        STRING,
+        BYTES
+    }
+    
+    public enum ExecutorMode {
+        PLATFORM,
+        VIRTUAL,
+        BOUNDED_VIRTUAL
+    }
+    
+    @Serdeable
+    public record OpenLoopResult(
+            int targetQps,
+            double achievedQps,
+            int maxInFlight,
+            long scheduledArrivals,
+            long droppedArrivals,
+            long delayedArrivals,
+            LatencyHistogram.LatencySummary serviceTime
+    ) {}
+    
+    @Serdeable
+    public record IntervalSnapshot(
+            long second,
+            Instant timestamp,
+            long queries,
+            long errors,
+            double queriesPerSecond,
+            LatencyHistogram.LatencySummary latency,
+            Integer poolActive,
+            Integer poolIdle,
+            Integer poolPending
+    ) {}
+    
+    @Serdeable
+    public record WorkloadStatement(
+            String name,
+            String sql,
+            Integer weight,
+            List<ParameterSource> parameters
+    ) {}
+    
+    @Serdeable
+    public record ParameterSource(
+            ParameterSourceType type,
+            String file,
+            Integer column,
+            Long min,
+            Long max,
+            Long start,
+            Long step
+    ) {}
+    
+    public enum ParameterSourceType {
+        CSV,
+        RANDOM,
+        SEQUENCE
+    }
+    
+    @Serdeable
+    public record StatementResult(
+            String name,
+            String sql,
+            int weight,
+            long successfulQueries,
+            long failedQueries,
+            double queriesPerSecond,
+            LatencyHistogram.LatencySummary latency
+    ) {}
+    
+    @Serdeable
+    public record ReadThroughput(
+            ResultConsumption resultConsumption,
+            long rows,
+            double rowsPerSecond,
+            Long bytes,
+            Double megabytesPerSecond,
+            Double averageRowBytes
+    ) {}
+    
+    @Serdeable
+    public record BatchResult(
+            int batchSize,
+            int commitInterval,
+            long committedRows,
+            long rolledBackRows,
+            long batches,
+            long commits,
+            double rowsPerSecond,
+            double batchesPerSecond,
+            LatencyHistogram.LatencySummary commitLatency
+    ) {}
+    
+    /**
+     * How a run started by another service differs from a plain one. Workers start at {@code startAt} instead of
+     * right away, so instances started together begin in sync. A configuration pins the run to a pool of its own
+     * built from it, independent of later changes to the live configuration. The listener gets every interval
+     * together with its histogram. Any of them may be null.
+     */
+    record RunOptions(
+            Instant startAt,
+            JdbcConfiguration configuration,
+            BiConsumer<IntervalSnapshot, LatencyHistogram> intervalListener
+    ) {
+        static final RunOptions NONE = new RunOptions(null, null, null);
+    }
+    
+    /**
+     * Connection and statement handling of one worker. PER_QUERY borrows and prepares for every query, the pinned
+     * modes keep the connection (and optionally the prepared statements of the workload) for the lifetime of the worker.
+     */
+    final class WorkerSession implements AutoCloseable {
+        private final TestRun run;
+        private final StatementReuse mode;
+        private Connection pinnedConnection;
+        private DataSource pinnedSource;
+        private DataSource borrowedSource;
+        private final Map<String, PreparedStatement> cachedStatements = new HashMap<>();
+        
+        WorkerSession(TestRun run) {
+            this.run = run;
+            this.mode = getStatementReuse(run.getRequest());
+        }
+        
+        private Connection borrowConnection() throws SQLException {
+            DataSource dataSource = run.getDataSource();
+            if (mode == StatementReuse.PER_QUERY) {
+                borrowedSource = dataSource;
+                return dataSource.getConnection();
+            }
+            if (pinnedConnection != null && pinnedSource != dataSource) {
+                // The shared pool was replaced, give the connection back so the old pool can drain
+                close();
+            }
+            if (pinnedConnection == null) {
+                pinnedConnection = dataSource.getConnection();
+                pinnedSource = dataSource;
+            }
+            return pinnedConnection;
+        }
+        
+        private PreparedStatement prepare(Connection connection, String query) throws SQLException {
+            if (mode != StatementReuse.PINNED_STATEMENT) {
+                return prepareStatement(run, connection, query);
+            }
+            PreparedStatement cached = cachedStatements.get(query);
+            if (cached == null) {
+                cached = prepareStatement(run, connection, query);
+                cachedStatements.put(query, cached);
+            }
+            return cached;
+        }
+        
+        private void release(PreparedStatement stmt) throws SQLException {
+            if (mode != StatementReuse.PINNED_STATEMENT) {
+                stmt.close();
+            }
+        }
+        
+        private void release(Connection connection) throws SQLException {
+            if (connection == pinnedConnection) {
+                return;
+            }
+            if (run.getPoolTuner() != null) {
+                run.getPoolTuner().release(connection, borrowedSource);
+            } else {
+                connection.close();
+            }
+        }
+        
+        // After a failure the pinned connection may be broken, so the next query starts from a fresh one
+        private void discard() {
+            close();
+        }
+        
+        @Override
+        public void close() {
+            try {
+                for (PreparedStatement cached : cachedStatements.values()) {
+                    cached.close();
+                }
+                if (pinnedConnection != null) {
+                    pinnedConnection.close();
+                }
+            } catch (SQLException e) {
+                LOG.debug("Failed to close pinned worker resources", e);
+            } finally {
+                cachedStatements.clear();
+                pinnedConnection = null;
+            }
+        }
+    }
 }
 
 class IntStream {
@@ -0,0 +1,526 @@
+package com.lkww.service;
+
+import com.lkww.config.QueueConfiguration;
+import com.lkww.controller.TestController.TestRequest;
+import com.lkww.service.SweepService.SweepRequest;
+import com.lkww.service.SweepService.SweepState;
+import com.lkww.service.SweepService.SweepStatus;
+import com.lkww.service.TestExecutionService.TestRunState;
+import io.micronaut.json.JsonMapper;
+import io.micronaut.runtime.event.annotation.EventListener;
+import io.micronaut.runtime.server.event.ServerStartupEvent;
+import io.micronaut.scheduling.cron.CronExpression;
+import io.micronaut.serde.annotation.Serdeable;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs queued tests and sweeps one after another, with a cooldown in between and, if asked for, only inside
+ * cron-style time windows. The queue is saved to disk on every change, so it carries on after a restart; a run
+ * that a restart interrupted is run again from the start.
+ */
+@Singleton
+public class TestQueueService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestQueueService.class);
+    private static final String QUEUE_FILE = "queue.json";
+    private static final int TICK_SECONDS = 5;
+    private static final long SWEEP_POLL_MILLIS = 1000;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int MAX_FINISHED_ENTRIES = 200;
+    // A window must open long enough for the run at least once within this many days
+    private static final int WINDOW_LOOKAHEAD_DAYS = 8;
+
+    @Inject
+    private TestExecutionService testExecutionService;
+
+    @Inject
+    private SweepService sweepService;
+
+    @Inject
+    private QueueConfiguration queueConfiguration;
+
+    @Inject
+    private JsonMapper jsonMapper;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "test-queue");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<QueuedRun> entries = new ArrayList<>();
+    private volatile boolean paused;
+    private volatile Instant cooldownUntil;
+    private volatile QueuedRun current;
+
+    @PostConstruct
+    void load() {
+        Path file = Path.of(queueConfiguration.getDirectory()).resolve(QUEUE_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            QueueState state = jsonMapper.readValue(Files.readAllBytes(file), QueueState.class);
+            paused = state.paused();
+            cooldownUntil = state.cooldownUntil();
+            for (QueueEntry entry : state.entries()) {
+                entries.add(new QueuedRun(restore(entry)));
+            }
+            LOG.info("Loaded test queue with {} pending entries", countPending());
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Could not read the test queue from {}, starting with an empty queue", file, e);
+        }
+    }
+
+    @EventListener
+    void onStartup(ServerStartupEvent event) {
+        scheduler.scheduleWithFixedDelay(this::tick, TICK_SECONDS, TICK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public synchronized QueueEntry submit(QueueRequest request) {
+        if ((request.test() == null) == (request.sweep() == null)) {
+            throw new IllegalArgumentException("A queue entry needs either a test or a sweep");
+        }
+        if (request.sweep() != null && (request.sweep().test() == null || request.sweep().parameters() == null
+                || request.sweep().parameters().isEmpty())) {
+            throw new IllegalArgumentException("A sweep needs a test request and at least one parameter to vary");
+        }
+        if (request.cooldownSeconds() != null && request.cooldownSeconds() < 0) {
+            throw new IllegalArgumentException("cooldownSeconds must not be negative");
+        }
+        QueuedRun run = new QueuedRun(UUID.randomUUID().toString(), request);
+        long seconds = estimateSeconds(run);
+        List<CronExpression> window = parseWindow(getWindow(run));
+        if (!window.isEmpty() && !windowEverFits(window, ZonedDateTime.now(zone()), seconds)) {
+            throw new IllegalArgumentException("The window '" + getWindow(run) + "' is never open for the "
+                    + seconds + "s the run takes within the next " + WINDOW_LOOKAHEAD_DAYS + " days");
+        }
+
+        entries.add(run);
+        save();
+        LOG.info("Queued {} {} ({}s)", run.test != null ? "test" : "sweep", run.entryId, seconds);
+        return run.toEntry();
+    }
+
+    public synchronized QueueStatus getQueue() {
+        QueuedRun running = current;
+        return new QueueStatus(paused, running != null ? running.entryId : null, cooldownUntil, countPending(),
+                entries.stream().map(QueuedRun::toEntry).toList());
+    }
+
+    public synchronized QueueEntry getEntry(String entryId) {
+        return findEntry(entryId).toEntry();
+    }
+
+    public synchronized QueueEntry cancel(String entryId) {
+        QueuedRun run = findEntry(entryId);
+        switch (run.state) {
+            case PENDING -> {
+                run.state = QueueEntryState.CANCELLED;
+                run.finishedAt = Instant.now();
+                save();
+            }
+            case RUNNING -> {
+                run.cancelRequested = true;
+                stopRun(run);
+            }
+            default -> throw new IllegalArgumentException("Queue entry " + entryId + " has already finished");
+        }
+        return run.toEntry();
+    }
+
+    public synchronized QueueStatus setPaused(boolean paused) {
+        this.paused = paused;
+        save();
+        LOG.info("Test queue {}", paused ? "paused" : "resumed");
+        return getQueue();
+    }
+
+    private QueuedRun findEntry(String entryId) {
+        return entries.stream()
+                .filter(run -> run.entryId.equals(entryId))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown queue entry: " + entryId));
+    }
+
+    private void tick() {
+        try {
+            QueuedRun next = nextRun();
+            if (next != null) {
+                execute(next);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Test queue failed", e);
+        }
+    }
+
+    /**
+     * The first pending entry that may start now. Entries waiting for their window let later ones pass, and
+     * nothing starts during the cooldown or while any other test is running.
+     */
+    private synchronized QueuedRun nextRun() {
+        if (paused || (cooldownUntil != null && Instant.now().isBefore(cooldownUntil))) {
+            return null;
+        }
+        boolean testRunning = testExecutionService.listRuns().stream()
+                .anyMatch(run -> run.state() == TestRunState.RUNNING);
+        if (testRunning) {
+            return null;
+        }
+        ZonedDateTime now = ZonedDateTime.now(zone());
+        for (QueuedRun run : entries) {
+            if (run.state != QueueEntryState.PENDING) {
+                continue;
+            }
+            List<CronExpression> window = parseWindow(getWindow(run));
+            if (window.isEmpty() || isOpen(window, now, estimateSeconds(run))) {
+                run.state = QueueEntryState.RUNNING;
+                run.startedAt = Instant.now();
+                run.attempts++;
+                run.error = null;
+                current = run;
+                save();
+                return run;
+            }
+        }
+        return null;
+    }
+
+    private void execute(QueuedRun run) {
+        LOG.info("Starting queued {} {}, attempt {}", run.test != null ? "test" : "sweep", run.entryId, run.attempts);
+        QueueEntryState state;
+        try {
+            if (run.test != null) {
+                setRunId(run, testExecutionService.startTest(run.test));
+                testExecutionService.awaitResult(run.runId);
+            } else {
+                setRunId(run, sweepService.startSweep(run.sweep).sweepId());
+                SweepStatus sweep = awaitSweep(run.runId);
+                if (sweep.status() == SweepState.FAILED) {
+                    throw new IllegalStateException("Sweep failed: " + sweep.error());
+                }
+            }
+            state = run.cancelRequested ? QueueEntryState.CANCELLED : QueueEntryState.COMPLETED;
+        } catch (RuntimeException e) {
+            LOG.error("Queued run {} failed", run.entryId, e);
+            run.error = e.getMessage();
+            state = run.cancelRequested ? QueueEntryState.CANCELLED : QueueEntryState.FAILED;
+        }
+        finish(run, state);
+    }
+
+    private synchronized void setRunId(QueuedRun run, String runId) {
+        run.runId = runId;
+        save();
+        // A cancel that came in while the run was starting
+        if (run.cancelRequested) {
+            stopRun(run);
+        }
+    }
+
+    private synchronized void finish(QueuedRun run, QueueEntryState state) {
+        run.state = state;
+        run.finishedAt = Instant.now();
+        current = null;
+        int cooldownSeconds = run.cooldownSeconds != null
+                ? run.cooldownSeconds
+                : queueConfiguration.getCooldownSeconds();
+        cooldownUntil = run.finishedAt.plusSeconds(cooldownSeconds);
+        pruneFinished();
+        save();
+        LOG.info("Queued run {} finished with status {}, next run not before {}", run.entryId, state, cooldownUntil);
+    }
+
+    private SweepStatus awaitSweep(String sweepId) {
+        while (true) {
+            SweepStatus sweep = sweepService.getSweep(sweepId);
+            if (sweep.status() != SweepState.QUEUED && sweep.status() != SweepState.RUNNING) {
+                return sweep;
+            }
+            try {
+                Thread.sleep(SWEEP_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for sweep " + sweepId, e);
+            }
+        }
+    }
+
+    private void stopRun(QueuedRun run) {
+        if (run.runId == null) {
+            return;
+        }
+        if (run.test != null) {
+            testExecutionService.stopTest(run.runId);
+        } else {
+            sweepService.stopSweep(run.runId);
+        }
+    }
+
+    /**
+     * The entry as it carries on after a restart, a run the restart interrupted is queued again or fails.
+     */
+    static QueueEntry restore(QueueEntry entry) {
+        QueuedRun run = new QueuedRun(entry);
+        if (run.state == QueueEntryState.RUNNING) {
+            interrupted(run);
+        }
+        return run.toEntry();
+    }
+
+    private static void interrupted(QueuedRun run) {
+        if (run.attempts >= MAX_ATTEMPTS) {
+            run.state = QueueEntryState.FAILED;
+            run.finishedAt = Instant.now();
+            run.error = "Interrupted by a restart " + run.attempts + " times";
+        } else {
+            run.state = QueueEntryState.PENDING;
+            run.error = "Interrupted by a restart, runs again";
+        }
+        run.runId = null;
+    }
+
+    private long countPending() {
+        return entries.stream().filter(run -> run.state == QueueEntryState.PENDING).count();
+    }
+
+    // Keeps the newest finished entries, pending and running ones are never dropped
+    private void pruneFinished() {
+        long finished = entries.stream().filter(QueuedRun::isFinished).count();
+        for (int i = 0; i < entries.size() && finished > MAX_FINISHED_ENTRIES; ) {
+            if (entries.get(i).isFinished()) {
+                entries.remove(i);
+                finished--;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private synchronized void save() {
+        Path directory = Path.of(queueConfiguration.getDirectory());
+        try {
+            Files.createDirectories(directory);
+            QueueState state = new QueueState(paused, cooldownUntil, entries.stream().map(QueuedRun::toEntry).toList());
+            Path temporary = directory.resolve(QUEUE_FILE + ".tmp");
+            Files.write(temporary, jsonMapper.writeValueAsBytes(state));
+            Files.move(temporary, directory.resolve(QUEUE_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.error("Could not save the test queue to {}", directory, e);
+        }
+    }
+
+    private String getWindow(QueuedRun run) {
+        return run.window != null ? run.window : queueConfiguration.getWindow();
+    }
+
+    private ZoneId zone() {
+        String timeZone = queueConfiguration.getTimeZone();
+        return timeZone == null || timeZone.isBlank() ? ZoneId.systemDefault() : ZoneId.of(timeZone);
+    }
+
+    private static long estimateSeconds(QueuedRun run) {
+        return run.test != null
+                ? estimateSeconds(run.test)
+                : SweepService.estimateSeconds(run.sweep, estimateSeconds(SweepService.prepareTest(run.sweep)));
+    }
+
+    private static long estimateSeconds(TestRequest test) {
+        LoadSchedule schedule = LoadSchedule.create(test);
+        return schedule != null ? schedule.getWarmupSeconds() + schedule.getMeasuredSeconds() : test.duration();
+    }
+
+    /**
+     * Parses a window of one or more cron expressions separated by ';'. Five fields (minute, hour, day of
+     * month, month, day of week) as in crontab, or six with seconds first.
+     */
+    static List<CronExpression> parseWindow(String window) {
+        List<CronExpression> expressions = new ArrayList<>();
+        if (window == null || window.isBlank()) {
+            return expressions;
+        }
+        for (String expression : window.split(";")) {
+            String trimmed = expression.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            try {
+                expressions.add(CronExpression.create(trimmed));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid window '" + trimmed + "': " + e.getMessage(), e);
+            }
+        }
+        return expressions;
+    }
+
+    /**
+     * Whether every minute from now until the run is expected to end lies in the window.
+     */
+    static boolean isOpen(List<CronExpression> window, ZonedDateTime now, long seconds) {
+        ZonedDateTime end = now.plusSeconds(seconds);
+        for (ZonedDateTime minute = now.truncatedTo(ChronoUnit.MINUTES); !minute.isAfter(end);
+             minute = minute.plusMinutes(1)) {
+            if (!matches(window, minute)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether the window opens long enough for the run at least once in the days after {@code from}.
+     */
+    static boolean windowEverFits(List<CronExpression> window, ZonedDateTime from, long seconds) {
+        long neededMinutes = TimeUnit.SECONDS.toMinutes(seconds) + 1;
+        ZonedDateTime minute = from.truncatedTo(ChronoUnit.MINUTES);
+        ZonedDateTime until = minute.plusDays(WINDOW_LOOKAHEAD_DAYS);
+        long open = 0;
+        for (; minute.isBefore(until); minute = minute.plusMinutes(1)) {
+            open = matches(window, minute) ? open + 1 : 0;
+            if (open > neededMinutes) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(List<CronExpression> window, ZonedDateTime minute) {
+        ZonedDateTime before = minute.minusSeconds(1);
+        for (CronExpression expression : window) {
+            if (minute.equals(expression.nextTimeAfter(before))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class QueuedRun {
+        private final String entryId;
+        private final String name;
+        private final TestRequest test;
+        private final SweepRequest sweep;
+        private final String window;
+        private final Integer cooldownSeconds;
+        private final Instant submittedAt;
+        private volatile QueueEntryState state = QueueEntryState.PENDING;
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+        private volatile String runId;
+        private volatile int attempts;
+        private volatile String error;
+        private volatile boolean cancelRequested;
+
+        private QueuedRun(String entryId, QueueRequest request) {
+            this.entryId = entryId;
+            this.name = request.name();
+            this.test = request.test();
+            this.sweep = request.sweep();
+            this.window = request.window();
+            this.cooldownSeconds = request.cooldownSeconds();
+            this.submittedAt = Instant.now();
+        }
+
+        private QueuedRun(QueueEntry entry) {
+            this.entryId = entry.entryId();
+            this.name = entry.name();
+            this.test = entry.test();
+            this.sweep = entry.sweep();
+            this.window = entry.window();
+            this.cooldownSeconds = entry.cooldownSeconds();
+            this.submittedAt = entry.submittedAt();
+            this.state = entry.state();
+            this.startedAt = entry.startedAt();
+            this.finishedAt = entry.finishedAt();
+            this.runId = entry.runId();
+            this.attempts = entry.attempts();
+            this.error = entry.error();
+        }
+
+        private boolean isFinished() {
+            return state != QueueEntryState.PENDING && state != QueueEntryState.RUNNING;
+        }
+
+        private QueueEntry toEntry() {
+            return new QueueEntry(entryId, name, test, sweep, window, cooldownSeconds, state, submittedAt, startedAt,
+                    finishedAt, runId, attempts, error);
+        }
+    }
+
+    public enum QueueEntryState {
+        PENDING,
+        RUNNING,
+        COMPLETED,
+        FAILED,
+        CANCELLED
+    }
+
+    @Serdeable
+    public record QueueRequest(
+            String name,
+            TestRequest test,
+            SweepRequest sweep,
+            String window,
+            Integer cooldownSeconds
+    ) {}
+
+    @Serdeable
+    public record QueueEntry(
+            String entryId,
+            String name,
+            TestRequest test,
+            SweepRequest sweep,
+            String window,
+            Integer cooldownSeconds,
+            QueueEntryState state,
+            Instant submittedAt,
+            Instant startedAt,
+            Instant finishedAt,
+            String runId,
+            int attempts,
+            String error
+    ) {}
+
+    @Serdeable
+    public record QueueStatus(
+            boolean paused,
+            String currentEntryId,
+            Instant cooldownUntil,
+            long pending,
+            List<QueueEntry> entries
+    ) {}
+
+    /**
+     * What is saved to disk.
+     */
+    @Serdeable
+    record QueueState(
+            boolean paused,
+            Instant cooldownUntil,
+            List<QueueEntry> entries
+    ) {}
+}
@@ -0,0 +1,160 @@
+package com.lkww.service;
+
+import com.lkww.config.JdbcConfiguration;
+import com.lkww.controller.TestController.TestRequest;
+import com.lkww.service.TestExecutionService.IntervalSnapshot;
+import com.lkww.service.TestExecutionService.TestResult;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * State of a single test run: its own executor, stop control, counters and latency histograms.
+ */
+@Getter
+class TestRun {
+
+    private final String testId;
+    private final TestRequest request;
+    private final JdbcConfiguration configuration;
+    // Pinned runs use their own configuration for statements too, others follow live changes
+    private final boolean configurationPinned;
+    private final Instant startedAt = Instant.now();
+    private final ExecutorService executor;
+    private final Semaphore querySlots;
+    @Getter(AccessLevel.NONE)
+    private final Supplier<DataSource> sharedDataSource;
+    private final HikariDataSource isolatedDataSource;
+    private final List<LatencyHistogram> histograms;
+    private final List<PhaseRecorder> phaseRecorders;
+    private final BatchWorkload batchWorkload;
+    private final WorkloadMix workloadMix;
+    private final LoadSchedule loadSchedule;
+    private final PoolAutoTuner poolTuner;
+    private final PoolTelemetry poolTelemetry;
+    private final int workerCount;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final AtomicBoolean stopRequested = new AtomicBoolean(false);
+    private final AtomicLong successCount = new AtomicLong(0);
+    private final AtomicLong errorCount = new AtomicLong(0);
+    private final AtomicLong rowCount = new AtomicLong(0);
+    private final AtomicLong byteCount = new AtomicLong(0);
+    private final ErrorAggregator errorAggregator;
+    private final IntervalRecorder intervalRecorder = new IntervalRecorder();
+    private final List<IntervalSnapshot> intervals = new CopyOnWriteArrayList<>();
+    private final SubmissionPublisher<IntervalSnapshot> intervalPublisher = new SubmissionPublisher<>();
+    @Setter
+    private volatile int activeWorkers;
+    @Setter
+    private volatile ScheduledFuture<?> intervalTicker;
+    @Setter
+    private volatile long lastIntervalNanos = System.nanoTime();
+    @Setter
+    private volatile CompletableFuture<TestResult> future;
+    @Setter
+    private volatile Instant finishedAt;
+    @Setter
+    private volatile BiConsumer<IntervalSnapshot, LatencyHistogram> intervalListener;
+    @Setter
+    private volatile LatencyHistogram latency;
+
+    TestRun(String testId, TestRequest request, JdbcConfiguration configuration, boolean configurationPinned,
+            ExecutorService executor, Semaphore querySlots, Supplier<DataSource> sharedDataSource,
+            HikariDataSource isolatedDataSource, List<LatencyHistogram> histograms,
+            List<PhaseRecorder> phaseRecorders, BatchWorkload batchWorkload, WorkloadMix workloadMix,
+            LoadSchedule loadSchedule, PoolAutoTuner poolTuner, PoolTelemetry poolTelemetry, int workerCount) {
+        this.testId = testId;
+        this.request = request;
+        this.configuration = configuration;
+        this.configurationPinned = configurationPinned;
+        this.executor = executor;
+        this.querySlots = querySlots;
+        this.sharedDataSource = sharedDataSource;
+        this.isolatedDataSource = isolatedDataSource;
+        this.histograms = histograms;
+        this.phaseRecorders = phaseRecorders;
+        this.batchWorkload = batchWorkload;
+        this.workloadMix = workloadMix;
+        this.loadSchedule = loadSchedule;
+        this.poolTuner = poolTuner;
+        this.poolTelemetry = poolTelemetry;
+        this.workerCount = workerCount;
+        this.activeWorkers = workerCount;
+        this.errorAggregator = new ErrorAggregator(testId);
+    }
+
+    /**
+     * The pool to borrow from. Runs on the shared pool look it up every time, so they move over when a
+     * configuration change replaces it.
+     */
+    DataSource getDataSource() {
+        return isolatedDataSource != null ? isolatedDataSource : sharedDataSource.get();
+    }
+
+    boolean isRunning() {
+        return running.get();
+    }
+
+    boolean isFinished() {
+        return future != null && future.isDone();
+    }
+
+    void stop() {
+        stopRequested.set(true);
+        if (running.compareAndSet(true, false)) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Clears everything the results are built from. Only safe while no worker is running, e.g. after the warmup.
+     */
+    void resetStatistics() {
+        histograms.forEach(LatencyHistogram::reset);
+        phaseRecorders.forEach(PhaseRecorder::reset);
+        successCount.set(0);
+        errorCount.set(0);
+        rowCount.set(0);
+        byteCount.set(0);
+        errorAggregator.reset();
+        if (poolTelemetry != null) {
+            poolTelemetry.reset();
+        }
+        workloadMix.resetStatistics();
+        if (batchWorkload != null) {
+            batchWorkload.resetStatistics();
+        }
+    }
+
+    void finish() {
+        running.set(false);
+        executor.shutdown();
+        if (poolTuner != null) {
+            poolTuner.finish();
+        }
+        if (isolatedDataSource != null) {
+            isolatedDataSource.close();
+        }
+        if (batchWorkload != null) {
+            batchWorkload.close();
+        }
+        workloadMix.close();
+        intervalPublisher.close();
+        finishedAt = Instant.now();
+    }
+}
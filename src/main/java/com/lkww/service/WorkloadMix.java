@@ -0,0 +1,247 @@
+package com.lkww.service;
+
+import com.lkww.service.TestExecutionService.ParameterSource;
+import com.lkww.service.TestExecutionService.ParameterSourceType;
+import com.lkww.service.TestExecutionService.StatementResult;
+import com.lkww.service.TestExecutionService.WorkloadStatement;
+import lombok.Getter;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * The statements a run executes. Every execution picks one of them at random in proportion to its weight
+ * and binds the next values of its parameter sources; latency and counts are kept per statement.
+ */
+class WorkloadMix implements AutoCloseable {
+
+    private final List<MixStatement> statements;
+    private final int[] cumulativeWeights;
+
+    private WorkloadMix(List<MixStatement> statements) {
+        this.statements = statements;
+        this.cumulativeWeights = new int[statements.size()];
+        int total = 0;
+        for (int i = 0; i < statements.size(); i++) {
+            total = Math.addExact(total, statements.get(i).weight);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    static WorkloadMix single(String query) {
+        return new WorkloadMix(List.of(new MixStatement("query", query, 1, List.of())));
+    }
+
+    static WorkloadMix of(List<WorkloadStatement> definitions) {
+        if (definitions.isEmpty()) {
+            throw new IllegalArgumentException("A workload needs at least one statement");
+        }
+        List<MixStatement> statements = new ArrayList<>(definitions.size());
+        try {
+            for (int i = 0; i < definitions.size(); i++) {
+                WorkloadStatement definition = definitions.get(i);
+                if (definition.sql() == null || definition.sql().isBlank()) {
+                    throw new IllegalArgumentException("Workload statement " + (i + 1) + " has no sql");
+                }
+                int weight = definition.weight() != null ? definition.weight() : 1;
+                if (weight < 1) {
+                    throw new IllegalArgumentException("Workload statement weights must be at least 1");
+                }
+                String name = definition.name() != null ? definition.name() : "statement-" + (i + 1);
+                List<ParameterSource> parameters = definition.parameters() != null ? definition.parameters() : List.of();
+                parameters.forEach(WorkloadMix::validate);
+                statements.add(new MixStatement(name, definition.sql(), weight, parameters));
+            }
+        } catch (RuntimeException e) {
+            statements.forEach(MixStatement::close);
+            throw e;
+        }
+        return new WorkloadMix(statements);
+    }
+
+    private static void validate(ParameterSource source) {
+        if (source.type() == null) {
+            throw new IllegalArgumentException("Parameter sources need a type");
+        }
+        switch (source.type()) {
+            case CSV -> {
+                if (source.file() == null) {
+                    throw new IllegalArgumentException("CSV parameter sources need a file");
+                }
+                if (source.column() != null && source.column() < 0) {
+                    throw new IllegalArgumentException("CSV parameter column must not be negative");
+                }
+            }
+            case RANDOM -> {
+                if (source.min() == null || source.max() == null || source.min() > source.max()) {
+                    throw new IllegalArgumentException("RANDOM parameter sources need min <= max");
+                }
+                if (source.max() == Long.MAX_VALUE) {
+                    throw new IllegalArgumentException("RANDOM parameter max must be below " + Long.MAX_VALUE);
+                }
+            }
+            case SEQUENCE -> {
+                if (source.step() != null && source.step() <= 0) {
+                    throw new IllegalArgumentException("SEQUENCE parameter step must be positive");
+                }
+                if (source.max() != null && source.max() < startOf(source)) {
+                    throw new IllegalArgumentException("SEQUENCE parameter max must not be below start");
+                }
+            }
+        }
+    }
+
+    MixStatement next() {
+        if (statements.size() == 1) {
+            return statements.get(0);
+        }
+        int ticket = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (ticket < cumulativeWeights[i]) {
+                return statements.get(i);
+            }
+        }
+        throw new IllegalStateException("Ticket " + ticket + " is outside the workload weights");
+    }
+
+    String describe() {
+        if (statements.size() == 1) {
+            return statements.get(0).sql;
+        }
+        return statements.stream().map(MixStatement::getName).collect(Collectors.joining(", ", "workload: ", ""));
+    }
+
+    List<StatementResult> summarize(long elapsedMillis) {
+        return statements.stream().map(statement -> statement.summarize(elapsedMillis)).toList();
+    }
+
+    void resetStatistics() {
+        statements.forEach(MixStatement::resetStatistics);
+    }
+
+    @Override
+    public void close() {
+        statements.forEach(MixStatement::close);
+    }
+
+    private static long startOf(ParameterSource source) {
+        return source.start() != null ? source.start() : 1;
+    }
+
+    @Getter
+    static final class MixStatement {
+        private final String name;
+        private final String sql;
+        private final int weight;
+        private final List<ParameterSource> parameters;
+        private final AtomicLong[] sequences;
+        // CSV sources of a statement that read the same file take their columns from the same row
+        private final Map<String, DataFileReader> files = new LinkedHashMap<>();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong successCount = new AtomicLong(0);
+        private final AtomicLong errorCount = new AtomicLong(0);
+
+        private MixStatement(String name, String sql, int weight, List<ParameterSource> parameters) {
+            this.name = name;
+            this.sql = sql;
+            this.weight = weight;
+            this.parameters = parameters;
+            this.sequences = new AtomicLong[parameters.size()];
+            try {
+                for (int i = 0; i < parameters.size(); i++) {
+                    sequences[i] = new AtomicLong(0);
+                    ParameterSource source = parameters.get(i);
+                    if (source.type() == ParameterSourceType.CSV && !files.containsKey(source.file())) {
+                        files.put(source.file(), new DataFileReader(source.file()));
+                    }
+                }
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        void bind(PreparedStatement stmt) throws SQLException {
+            Map<String, String[]> rows = files.isEmpty() ? Map.of() : new HashMap<>();
+            for (int i = 0; i < parameters.size(); i++) {
+                ParameterSource source = parameters.get(i);
+                int index = i + 1;
+                switch (source.type()) {
+                    case CSV -> bindCsvValue(stmt, index, source, rows);
+                    case RANDOM -> stmt.setLong(index, ThreadLocalRandom.current().nextLong(source.min(), source.max() + 1));
+                    case SEQUENCE -> stmt.setLong(index, nextSequenceValue(source, sequences[i]));
+                }
+            }
+        }
+
+        private void bindCsvValue(PreparedStatement stmt, int index, ParameterSource source,
+                                  Map<String, String[]> rows) throws SQLException {
+            String[] row = rows.get(source.file());
+            if (row == null) {
+                row = files.get(source.file()).nextRow();
+                rows.put(source.file(), row);
+            }
+            int column = source.column() != null ? source.column() : 0;
+            if (column >= row.length) {
+                throw new SQLException("Data file " + source.file() + " has no column " + column);
+            }
+            String value = row[column].trim();
+            if (value.isEmpty()) {
+                stmt.setNull(index, Types.VARCHAR);
+            } else {
+                stmt.setString(index, value);
+            }
+        }
+
+        private long nextSequenceValue(ParameterSource source, AtomicLong sequence) {
+            long start = startOf(source);
+            long step = source.step() != null ? source.step() : 1;
+            long n = sequence.getAndIncrement();
+            if (source.max() != null) {
+                n %= (source.max() - start) / step + 1;
+            }
+            return start + n * step;
+        }
+
+        void recordSuccess(long latencyNanos) {
+            latency.recordNanos(latencyNanos);
+            successCount.incrementAndGet();
+        }
+
+        void recordError() {
+            errorCount.incrementAndGet();
+        }
+
+        private void resetStatistics() {
+            latency.reset();
+            successCount.set(0);
+            errorCount.set(0);
+        }
+
+        private StatementResult summarize(long elapsedMillis) {
+            long successful = successCount.get();
+            return new StatementResult(
+                    name,
+                    sql,
+                    weight,
+                    successful,
+                    errorCount.get(),
+                    elapsedMillis > 0 ? successful * 1000.0 / elapsedMillis : 0.0,
+                    latency.summarize()
+            );
+        }
+
+        private void close() {
+            files.values().forEach(DataFileReader::close);
+        }
+    }
+}
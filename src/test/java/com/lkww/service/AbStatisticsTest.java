@@ -0,0 +1,74 @@
+package com.lkww.service;
+
+import com.lkww.service.AbStatistics.Period;
+import com.lkww.service.AbStatistics.PeriodPair;
+import com.lkww.service.AbTestService.AbComparison;
+import com.lkww.service.AbTestService.RankTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+class AbStatisticsTest {
+
+    @Test
+    void testRankTestUsesAllPairs() {
+        List<PeriodPair> pairs = pairs();
+        LatencyHistogram allA = new LatencyHistogram();
+        LatencyHistogram allB = new LatencyHistogram();
+        for (PeriodPair pair : pairs) {
+            record(allA, pair.a());
+            record(allB, pair.b());
+        }
+        RankTest expected = AbStatistics.rankTest(allA.buckets(), allB.buckets(), 0.05);
+
+        AbComparison comparison = AbStatistics.compare(pairs, 0.95, 200, new SplittableRandom(42));
+
+        Assertions.assertEquals(expected, comparison.latencyRankTest());
+    }
+
+    @Test
+    void testRankTestDoesNotDependOnResamples() {
+        List<PeriodPair> pairs = pairs();
+
+        AbComparison first = AbStatistics.compare(pairs, 0.95, 200, new SplittableRandom(1));
+        AbComparison second = AbStatistics.compare(pairs, 0.95, 200, new SplittableRandom(2));
+
+        Assertions.assertEquals(first.latencyRankTest(), second.latencyRankTest());
+    }
+
+    @Test
+    void testFasterVariantDetected() {
+        AbComparison comparison = AbStatistics.compare(pairs(), 0.95, 200, new SplittableRandom(42));
+
+        Assertions.assertTrue(comparison.latencyRankTest().probabilityBFaster() > 0.5);
+        Assertions.assertTrue(comparison.latencyRankTest().significant());
+        Assertions.assertEquals(10, comparison.pairs());
+    }
+
+    // B is about 20% faster than A, with the load of both drifting from pair to pair
+    private static List<PeriodPair> pairs() {
+        List<PeriodPair> pairs = new ArrayList<>();
+        for (int pair = 0; pair < 10; pair++) {
+            LatencyHistogram a = new LatencyHistogram();
+            LatencyHistogram b = new LatencyHistogram();
+            for (int i = 1; i <= 100; i++) {
+                long micros = 1000L + pair * 50L + i * 10L;
+                a.recordNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+                b.recordNanos(TimeUnit.MICROSECONDS.toNanos(micros * 8 / 10));
+            }
+            pairs.add(new PeriodPair(new Period(a.buckets(), 1.0), new Period(b.buckets(), 1.0)));
+        }
+        return pairs;
+    }
+
+    private static void record(LatencyHistogram histogram, Period period) {
+        LatencyHistogram.Buckets buckets = period.latency();
+        for (int bucket = 0; bucket < buckets.values().length; bucket++) {
+            histogram.recordNanos(buckets.values()[bucket], buckets.counts()[bucket]);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.lkww.service;
+
+import com.lkww.controller.TestController.TestRequest;
+import com.lkww.service.AgentService.AgentResult;
+import com.lkww.service.ClusterService.AgentHandle;
+import com.lkww.service.TestExecutionService.IntervalSnapshot;
+import com.lkww.service.TestExecutionService.LoadProfile;
+import com.lkww.service.TestExecutionService.LoadShape;
+import com.lkww.service.TestExecutionService.LoadTarget;
+import com.lkww.service.TestExecutionService.TestRunState;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+class ClusterServiceTest {
+
+    @Test
+    void testSplitDistributesRemainderToFirstAgents() {
+        TestRequest test = request(10, 11, 5, null);
+
+        List<TestRequest> shares = splitAll(test, 3);
+
+        Assertions.assertEquals(List.of(4, 3, 3), shares.stream().map(TestRequest::concurrency).toList());
+        Assertions.assertEquals(List.of(4, 4, 3), shares.stream().map(TestRequest::targetQps).toList());
+        Assertions.assertEquals(List.of(2, 2, 1), shares.stream().map(TestRequest::maxInFlight).toList());
+    }
+
+    @Test
+    void testSplitKeepsAtLeastOneInFlight() {
+        List<TestRequest> shares = splitAll(request(10, 10, 2, null), 3);
+
+        Assertions.assertEquals(List.of(1, 1, 1), shares.stream().map(TestRequest::maxInFlight).toList());
+    }
+
+    @Test
+    void testMaxSharesLimitedByWorkersAndRate() {
+        Assertions.assertEquals(10, ClusterService.getMaxShares(request(10, null, null, null)));
+        Assertions.assertEquals(3, ClusterService.getMaxShares(request(10, 3, null, null)));
+    }
+
+    @Test
+    void testSplitProfileKeepsStepCountAndTotals() {
+        LoadProfile profile = new LoadProfile(LoadShape.STEP, LoadTarget.CONCURRENCY, 10, 40, 10, 5);
+
+        List<TestRequest> shares = splitAll(request(1, null, null, profile), 3);
+
+        int startSum = 0;
+        int endSum = 0;
+        for (TestRequest share : shares) {
+            LoadProfile split = share.loadProfile();
+            Assertions.assertEquals(3, (split.end() - split.start()) / split.increment());
+            Assertions.assertEquals(5, split.stepSeconds());
+            startSum += split.start();
+            endSum += split.end();
+        }
+        Assertions.assertEquals(10, startSum);
+        Assertions.assertEquals(40, endSum);
+    }
+
+    @Test
+    void testIncrementSmallerThanAgentsLimitsShares() {
+        LoadProfile profile = new LoadProfile(LoadShape.STEP, LoadTarget.CONCURRENCY, 4, 10, 2, 5);
+        TestRequest test = request(1, null, null, profile);
+
+        int shares = Math.min(5, ClusterService.getMaxShares(test));
+        List<TestRequest> split = splitAll(test, shares);
+
+        Assertions.assertEquals(2, shares);
+        for (TestRequest share : split) {
+            Assertions.assertEquals(1, share.loadProfile().increment());
+            Assertions.assertEquals(2, share.loadProfile().start());
+            Assertions.assertEquals(5, share.loadProfile().end());
+        }
+    }
+
+    @Test
+    void testSingleStepProfileKeepsIncrement() {
+        LoadProfile profile = new LoadProfile(LoadShape.STEP, LoadTarget.CONCURRENCY, 10, 10, 5, 5);
+
+        TestRequest share = ClusterService.split(request(1, null, null, profile), 1, 3);
+
+        Assertions.assertEquals(3, share.loadProfile().start());
+        Assertions.assertEquals(3, share.loadProfile().end());
+        Assertions.assertEquals(5, share.loadProfile().increment());
+    }
+
+    @Test
+    void testMergeWaitsForAllRunningAgents() {
+        AgentHandle first = new AgentHandle("http://a", null);
+        AgentHandle second = new AgentHandle("http://b", null);
+        first.receive(interval(100), histogram(100));
+        first.receive(interval(200), histogram(200));
+        List<IntervalSnapshot> merged = new ArrayList<>();
+
+        ClusterService.mergeIntervals(merged, List.of(first, second));
+        Assertions.assertTrue(merged.isEmpty());
+
+        second.receive(interval(50), histogram(50));
+        ClusterService.mergeIntervals(merged, List.of(first, second));
+
+        Assertions.assertEquals(1, merged.size());
+        Assertions.assertEquals(150, merged.get(0).queries());
+        Assertions.assertEquals(150, merged.get(0).latency().count());
+    }
+
+    @Test
+    void testMergeContinuesWithoutAgentsThatFinishedEarly() {
+        AgentHandle first = new AgentHandle("http://a", null);
+        AgentHandle second = new AgentHandle("http://b", null);
+        first.receive(interval(100), histogram(100));
+        first.receive(interval(200), histogram(200));
+        first.receive(interval(300), histogram(300));
+        second.receive(interval(50), histogram(50));
+        List<IntervalSnapshot> merged = new ArrayList<>();
+
+        ClusterService.mergeIntervals(merged, List.of(first, second));
+        Assertions.assertEquals(1, merged.size());
+
+        second.finish(new AgentResult("b", TestRunState.COMPLETED, null, null, null));
+        ClusterService.mergeIntervals(merged, List.of(first, second));
+
+        Assertions.assertEquals(List.of(150L, 200L, 300L), merged.stream().map(IntervalSnapshot::queries).toList());
+        Assertions.assertEquals(List.of(1L, 2L, 3L), merged.stream().map(IntervalSnapshot::second).toList());
+    }
+
+    private static List<TestRequest> splitAll(TestRequest test, int shares) {
+        List<TestRequest> split = new ArrayList<>();
+        for (int i = 0; i < shares; i++) {
+            split.add(ClusterService.split(test, i, shares));
+        }
+        return split;
+    }
+
+    private static TestRequest request(int concurrency, Integer targetQps, Integer maxInFlight, LoadProfile profile) {
+        return new TestRequest("SELECT", 10, concurrency, null, null, targetQps, maxInFlight, null, null, null, null,
+                null, null, null, null, null, profile, null);
+    }
+
+    private static IntervalSnapshot interval(long queries) {
+        return new IntervalSnapshot(1, Instant.now(), queries, 0, queries, null, null, null, null);
+    }
+
+    private static LatencyHistogram histogram(long queries) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(1), queries);
+        return histogram;
+    }
+}
@@ -0,0 +1,115 @@
+package com.lkww.service;
+
+import com.lkww.service.TestExecutionService.ErrorCategory;
+import com.lkww.service.TestExecutionService.ErrorGroup;
+import com.lkww.service.TestExecutionService.ErrorSummary;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLSyntaxErrorException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+
+class ErrorAggregatorTest {
+
+    private final ErrorAggregator aggregator = new ErrorAggregator("test");
+
+    @Test
+    void testTimeoutsClassified() {
+        Assertions.assertEquals(ErrorCategory.TIMEOUT, ErrorAggregator.classify(new SQLTimeoutException("timed out")));
+        Assertions.assertEquals(ErrorCategory.TIMEOUT, ErrorAggregator.classify(new SQLException("timeout", "HYT00")));
+        // DB2 for i cancelling a statement at its query timeout
+        Assertions.assertEquals(ErrorCategory.TIMEOUT, ErrorAggregator.classify(new SQLException("cancelled", "57014", -952)));
+    }
+
+    @Test
+    void testConnectionFailuresClassified() {
+        Assertions.assertEquals(ErrorCategory.CONNECT, ErrorAggregator.classify(new SQLException("link down", "08S01")));
+        Assertions.assertEquals(ErrorCategory.CONNECT,
+                ErrorAggregator.classify(new SQLTransientConnectionException("Connection is not available")));
+        Assertions.assertEquals(ErrorCategory.CONNECT,
+                ErrorAggregator.classify(new SQLNonTransientConnectionException("refused")));
+    }
+
+    @Test
+    void testOtherErrorsAreQueryErrors() {
+        Assertions.assertEquals(ErrorCategory.QUERY, ErrorAggregator.classify(new SQLSyntaxErrorException("bad", "42601")));
+        Assertions.assertEquals(ErrorCategory.QUERY, ErrorAggregator.classify(new SQLException("no state")));
+    }
+
+    @Test
+    void testErrorsGroupedBySqlStateCodeAndClass() {
+        aggregator.record(new SQLException("row locked", "57033", -913));
+        aggregator.record(new SQLException("row locked again", "57033", -913));
+        aggregator.record(new SQLException("row locked", "57033", -913));
+        aggregator.record(new SQLException("other code", "57033", -904));
+        aggregator.record(new SQLTimeoutException("timed out", "57033", -913));
+
+        ErrorSummary summary = aggregator.summarize(1000);
+
+        Assertions.assertEquals(5, summary.totalErrors());
+        Assertions.assertEquals(3, summary.groups().size());
+        ErrorGroup largest = summary.groups().get(0);
+        Assertions.assertEquals("57033", largest.sqlState());
+        Assertions.assertEquals(-913, largest.errorCode());
+        Assertions.assertEquals(SQLException.class.getName(), largest.exceptionClass());
+        Assertions.assertEquals(3, largest.count());
+        Assertions.assertEquals(List.of("row locked", "row locked again"), largest.messages());
+        Assertions.assertEquals(4, summary.categories().get(ErrorCategory.QUERY));
+        Assertions.assertEquals(1, summary.categories().get(ErrorCategory.TIMEOUT));
+    }
+
+    @Test
+    void testMessagesCappedPerGroup() {
+        for (int i = 0; i < 20; i++) {
+            aggregator.record(new SQLException("message " + i, "42704", -204));
+        }
+
+        ErrorGroup group = aggregator.summarize(1000).groups().get(0);
+        Assertions.assertEquals(20, group.count());
+        Assertions.assertEquals(5, group.messages().size());
+    }
+
+    @Test
+    void testGroupsBeyondCapCountedInOverflowGroup() {
+        for (int code = 1; code <= 64; code++) {
+            aggregator.record(new SQLException("error " + code, "42000", -code));
+        }
+        for (int code = 65; code <= 100; code++) {
+            aggregator.record(new SQLException("error " + code, "42000", -code));
+        }
+        // A kind seen before the cap keeps its own group
+        aggregator.record(new SQLException("error 1", "42000", -1));
+
+        ErrorSummary summary = aggregator.summarize(1000);
+
+        Assertions.assertEquals(101, summary.totalErrors());
+        Assertions.assertEquals(65, summary.groups().size());
+        ErrorGroup overflow = summary.groups().stream()
+                .filter(group -> "other".equals(group.exceptionClass()))
+                .findFirst()
+                .orElseThrow();
+        Assertions.assertEquals(36, overflow.count());
+        Assertions.assertNull(overflow.sqlState());
+        Assertions.assertEquals(2, summary.groups().stream()
+                .filter(group -> group.errorCode() == -1)
+                .findFirst()
+                .orElseThrow()
+                .count());
+    }
+
+    @Test
+    void testResetForgetsErrors() {
+        aggregator.record(new SQLException("link down", "08S01"));
+
+        aggregator.reset();
+
+        ErrorSummary summary = aggregator.summarize(1000);
+        Assertions.assertEquals(0, summary.totalErrors());
+        Assertions.assertTrue(summary.groups().isEmpty());
+        Assertions.assertTrue(summary.timeline().isEmpty());
+    }
+}
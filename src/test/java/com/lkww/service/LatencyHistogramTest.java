@@ -0,0 +1,74 @@
+package com.lkww.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.concurrent.TimeUnit;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testPercentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        Assertions.assertEquals(1000, histogram.getTotalCount());
+        assertWithinOnePercent(TimeUnit.MILLISECONDS.toNanos(500), histogram.getValueAtPercentile(50.0));
+        assertWithinOnePercent(TimeUnit.MILLISECONDS.toNanos(990), histogram.getValueAtPercentile(99.0));
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), histogram.getMaxValue());
+    }
+
+    @Test
+    void testEncodeDecodeRoundTrip() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 500; i++) {
+            histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(i * 37L));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        histogram.encode(new DataOutputStream(bytes));
+        LatencyHistogram decoded = LatencyHistogram.decode(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        Assertions.assertEquals(histogram.getTotalCount(), decoded.getTotalCount());
+        Assertions.assertEquals(histogram.getMaxValue(), decoded.getMaxValue());
+        Assertions.assertEquals(histogram.getMean(), decoded.getMean());
+        Assertions.assertEquals(histogram.getValueAtPercentile(99.0), decoded.getValueAtPercentile(99.0));
+    }
+
+    @Test
+    void testMergeAddsCounts() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.recordNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        second.recordNanos(TimeUnit.MILLISECONDS.toNanos(100));
+
+        first.add(second);
+
+        Assertions.assertEquals(2, first.getTotalCount());
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), first.getMaxValue());
+    }
+
+    @Test
+    void testCoordinatedOmissionCorrectionBackfillsStalls() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        LatencyHistogram corrected = histogram.copyCorrectedForCoordinatedOmission(TimeUnit.MILLISECONDS.toNanos(10));
+
+        Assertions.assertTrue(corrected.getTotalCount() > 190);
+        Assertions.assertTrue(corrected.getValueAtPercentile(90.0) > histogram.getValueAtPercentile(90.0));
+    }
+
+    private static void assertWithinOnePercent(long expected, long actual) {
+        Assertions.assertEquals(expected, actual, expected * 0.01);
+    }
+}
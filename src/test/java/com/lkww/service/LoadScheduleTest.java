@@ -0,0 +1,119 @@
+package com.lkww.service;
+
+import com.lkww.controller.TestController.TestRequest;
+import com.lkww.service.LatencyHistogram.LatencySummary;
+import com.lkww.service.TestExecutionService.LoadProfile;
+import com.lkww.service.TestExecutionService.LoadShape;
+import com.lkww.service.TestExecutionService.LoadTarget;
+import com.lkww.service.TestExecutionService.SaturationKnee;
+import com.lkww.service.TestExecutionService.StepResult;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+class LoadScheduleTest {
+
+    @Test
+    void testKneeWhereThroughputStopsScaling() {
+        LoadSchedule schedule = schedule(LoadTarget.CONCURRENCY);
+        schedule.getSteps().add(step(1, 2, 100, 2.0, 4.0));
+        schedule.getSteps().add(step(2, 4, 195, 2.1, 4.2));
+        schedule.getSteps().add(step(3, 8, 205, 3.9, 9.0));
+
+        SaturationKnee knee = schedule.detectKnee();
+
+        Assertions.assertTrue(knee.detected());
+        Assertions.assertEquals(4, knee.level());
+        Assertions.assertEquals(195, knee.queriesPerSecond());
+        Assertions.assertEquals(4, knee.recommendedMaximumPoolSize());
+    }
+
+    @Test
+    void testNoKneeWhileThroughputScales() {
+        LoadSchedule schedule = schedule(LoadTarget.CONCURRENCY);
+        schedule.getSteps().add(step(1, 2, 100, 2.0, 4.0));
+        schedule.getSteps().add(step(2, 4, 190, 2.1, 4.4));
+        schedule.getSteps().add(step(3, 6, 280, 2.2, 4.6));
+
+        SaturationKnee knee = schedule.detectKnee();
+
+        Assertions.assertFalse(knee.detected());
+        Assertions.assertEquals(6, knee.level());
+        Assertions.assertNull(knee.recommendedMaximumPoolSize());
+    }
+
+    @Test
+    void testFlatThroughputWithoutLatencyGrowthIsNoKnee() {
+        LoadSchedule schedule = schedule(LoadTarget.CONCURRENCY);
+        schedule.getSteps().add(step(1, 2, 100, 2.0, 4.0));
+        schedule.getSteps().add(step(2, 4, 100, 2.0, 4.0));
+
+        Assertions.assertFalse(schedule.detectKnee().detected());
+    }
+
+    @Test
+    void testMeanLatencyGrowthDetectsKneeWithFlatP99() {
+        LoadSchedule schedule = schedule(LoadTarget.CONCURRENCY);
+        schedule.getSteps().add(step(1, 4, 200, 2.0, 10.0));
+        schedule.getSteps().add(step(2, 8, 210, 3.8, 10.0));
+
+        Assertions.assertTrue(schedule.detectKnee().detected());
+    }
+
+    @Test
+    void testRateKneeRecommendsNoPoolSize() {
+        LoadSchedule schedule = schedule(LoadTarget.RATE);
+        schedule.getSteps().add(step(1, 100, 100, 2.0, 4.0));
+        schedule.getSteps().add(step(2, 200, 120, 8.0, 20.0));
+
+        SaturationKnee knee = schedule.detectKnee();
+
+        Assertions.assertTrue(knee.detected());
+        Assertions.assertEquals(100, knee.level());
+        Assertions.assertNull(knee.recommendedMaximumPoolSize());
+    }
+
+    @Test
+    void testWarmupAndEmptyStepsIgnored() {
+        LoadSchedule schedule = schedule(LoadTarget.CONCURRENCY);
+        schedule.getSteps().add(new StepResult(0, true, 2, Instant.now(), 1000, 50, 0, 50, summary(9.0, 20.0)));
+        schedule.getSteps().add(step(1, 2, 100, 2.0, 4.0));
+        schedule.getSteps().add(new StepResult(2, false, 4, Instant.now(), 1000, 0, 10, 0, summary(0, 0)));
+
+        Assertions.assertNull(schedule.detectKnee());
+    }
+
+    @Test
+    void testStepLevelsFollowProfile() {
+        LoadSchedule schedule = schedule(LoadTarget.CONCURRENCY);
+        long second = TimeUnit.SECONDS.toNanos(1);
+
+        schedule.startMeasurement(0);
+
+        Assertions.assertEquals(2, schedule.update(0));
+        Assertions.assertEquals(4, schedule.update(second));
+        Assertions.assertEquals(8, schedule.update(3 * second));
+        Assertions.assertEquals(8, schedule.update(10 * second));
+        schedule.finishMeasurement(10 * second);
+        Assertions.assertEquals(3, schedule.getSteps().size());
+        Assertions.assertEquals(4, schedule.getMeasuredSeconds());
+    }
+
+    private static LoadSchedule schedule(LoadTarget target) {
+        LoadProfile profile = new LoadProfile(LoadShape.STEP, target, 2, 8, 2, 1);
+        return LoadSchedule.create(new TestRequest("SELECT", 10, 1, null, null, null, null, null, null, null, null,
+                null, null, null, null, null, profile, null));
+    }
+
+    private static StepResult step(int step, int level, double queriesPerSecond, double meanMs, double p99Ms) {
+        long queries = (long) queriesPerSecond;
+        return new StepResult(step, false, level, Instant.now(), 1000, queries, 0, queriesPerSecond,
+                summary(meanMs, p99Ms));
+    }
+
+    private static LatencySummary summary(double meanMs, double p99Ms) {
+        return new LatencySummary(100, meanMs, meanMs, p99Ms, p99Ms, p99Ms, p99Ms);
+    }
+}
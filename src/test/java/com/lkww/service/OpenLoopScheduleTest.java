@@ -0,0 +1,95 @@
+package com.lkww.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+class OpenLoopScheduleTest {
+
+    private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void testArrivalsFollowTargetRate() {
+        OpenLoopSchedule schedule = new OpenLoopSchedule(1000, 1000, 1000, List.of());
+
+        schedule.dispatch(() -> true, System.nanoTime() + 50 * MILLISECOND, null);
+
+        // Nothing takes the arrivals, so all of them are still queued with their intended starts
+        long scheduled = schedule.getScheduled();
+        Assertions.assertTrue(scheduled >= 45 && scheduled <= 50, "scheduled " + scheduled);
+        Assertions.assertEquals(0, schedule.getDropped());
+        long previous = schedule.poll();
+        for (int i = 1; i < scheduled; i++) {
+            long next = schedule.poll();
+            Assertions.assertEquals(MILLISECOND, next - previous);
+            previous = next;
+        }
+    }
+
+    @Test
+    void testRateChangeTakesEffectOnNextArrival() {
+        OpenLoopSchedule schedule = new OpenLoopSchedule(1000, 1000, 1000, List.of());
+        schedule.setRate(500);
+
+        schedule.dispatch(() -> true, System.nanoTime() + 10 * MILLISECOND, null);
+
+        long first = schedule.poll();
+        Assertions.assertEquals(2 * MILLISECOND, schedule.poll() - first);
+    }
+
+    @Test
+    void testStoppedRunDispatchesNothing() {
+        OpenLoopSchedule schedule = new OpenLoopSchedule(1000, 1000, 1000, List.of());
+
+        schedule.dispatch(() -> false, System.nanoTime() + 50 * MILLISECOND, null);
+
+        Assertions.assertEquals(0, schedule.getScheduled());
+    }
+
+    @Test
+    void testArrivalsBeyondMaxInFlightDropped() {
+        OpenLoopSchedule schedule = new OpenLoopSchedule(100, 3, 100, List.of());
+
+        for (int i = 0; i < 5; i++) {
+            schedule.offer(i);
+        }
+
+        Assertions.assertEquals(5, schedule.getScheduled());
+        Assertions.assertEquals(2, schedule.getDropped());
+
+        // A finished arrival makes room for the next one
+        Assertions.assertEquals(0L, schedule.poll());
+        schedule.release();
+        schedule.offer(5);
+        Assertions.assertEquals(6, schedule.getScheduled());
+        Assertions.assertEquals(2, schedule.getDropped());
+    }
+
+    @Test
+    void testDelayedOnlyBeyondLagTolerance() {
+        OpenLoopSchedule schedule = new OpenLoopSchedule(100, 10, 100, List.of());
+
+        schedule.started(0, OpenLoopSchedule.LAG_TOLERANCE_NANOS);
+        Assertions.assertEquals(0, schedule.getDelayed());
+
+        schedule.started(0, OpenLoopSchedule.LAG_TOLERANCE_NANOS + 1);
+        Assertions.assertEquals(1, schedule.getDelayed());
+    }
+
+    @Test
+    void testQueuedArrivalsDroppedAtFinish() {
+        OpenLoopSchedule schedule = new OpenLoopSchedule(100, 10, 100, List.of());
+        schedule.offer(0);
+        schedule.offer(1);
+        schedule.offer(2);
+        schedule.poll();
+
+        schedule.finish();
+
+        Assertions.assertEquals(3, schedule.getScheduled());
+        Assertions.assertEquals(2, schedule.getDropped());
+        Assertions.assertNull(schedule.poll());
+    }
+}
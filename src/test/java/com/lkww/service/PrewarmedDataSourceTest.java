@@ -0,0 +1,116 @@
+package com.lkww.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class PrewarmedDataSourceTest {
+
+    private final List<Connection> connects = new CopyOnWriteArrayList<>();
+    private final List<Connection> closed = new CopyOnWriteArrayList<>();
+
+    @Test
+    void testPrewarmedConnectionsHandedOutFirst() throws Exception {
+        PrewarmedDataSource dataSource = new PrewarmedDataSource(driver(null, true));
+
+        Assertions.assertEquals(3, dataSource.prewarm(3, 1, 5000));
+        Assertions.assertEquals(3, connects.size());
+
+        List<Connection> handedOut = List.of(dataSource.getConnection(), dataSource.getConnection(),
+                dataSource.getConnection());
+        Assertions.assertTrue(connects.containsAll(handedOut));
+        Assertions.assertEquals(3, connects.size());
+
+        // Once the prewarmed ones are taken, connections are opened on demand
+        Connection fourth = dataSource.getConnection();
+        Assertions.assertEquals(4, connects.size());
+        Assertions.assertSame(connects.get(3), fourth);
+        Assertions.assertTrue(closed.isEmpty());
+    }
+
+    @Test
+    void testUnusedConnectionsClosed() throws Exception {
+        PrewarmedDataSource dataSource = new PrewarmedDataSource(driver(null, true));
+        dataSource.prewarm(3, 1, 5000);
+        Connection taken = dataSource.getConnection();
+
+        dataSource.closeUnused();
+
+        Assertions.assertEquals(2, closed.size());
+        Assertions.assertFalse(closed.contains(taken));
+    }
+
+    @Test
+    void testLateConnectionsClosedOnArrival() throws Exception {
+        CountDownLatch connectsHeld = new CountDownLatch(1);
+        PrewarmedDataSource dataSource = new PrewarmedDataSource(driver(connectsHeld, true));
+
+        Assertions.assertEquals(0, dataSource.prewarm(2, 1, 50));
+        dataSource.closeUnused();
+        connectsHeld.countDown();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (closed.size() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(2, connects.size());
+        Assertions.assertTrue(closed.containsAll(connects));
+    }
+
+    @Test
+    void testInvalidConnectionsCountedAsFailed() {
+        PrewarmedDataSource dataSource = new PrewarmedDataSource(driver(null, false));
+
+        Assertions.assertEquals(0, dataSource.prewarm(2, 1, 5000));
+        Assertions.assertEquals(2, dataSource.getFailed());
+        Assertions.assertEquals("Connection failed validation", dataSource.getFirstError().getMessage());
+        Assertions.assertTrue(closed.containsAll(connects));
+    }
+
+    /**
+     * A driver whose connects wait for {@code connectsHeld}, if given, and whose connections pass validation
+     * if {@code valid}.
+     */
+    private DataSource driver(CountDownLatch connectsHeld, boolean valid) {
+        return (DataSource) Proxy.newProxyInstance(PrewarmedDataSourceTest.class.getClassLoader(),
+                new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("getConnection")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    if (connectsHeld != null && !connectsHeld.await(5, TimeUnit.SECONDS)) {
+                        throw new SQLException("Connect timed out");
+                    }
+                    Connection connection = connection(valid);
+                    connects.add(connection);
+                    return connection;
+                });
+    }
+
+    private Connection connection(boolean valid) {
+        AtomicBoolean isClosed = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(PrewarmedDataSourceTest.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "isValid" -> valid;
+                    case "isClosed" -> isClosed.get();
+                    case "close" -> {
+                        if (!isClosed.getAndSet(true)) {
+                            closed.add((Connection) proxy);
+                        }
+                        yield null;
+                    }
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "toString" -> "connection@" + System.identityHashCode(proxy);
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
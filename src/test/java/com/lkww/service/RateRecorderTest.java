@@ -0,0 +1,107 @@
+package com.lkww.service;
+
+import com.lkww.service.PerformanceMetricsService.RateMetrics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class RateRecorderTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong(5 * SECOND);
+    private final RateRecorder recorder = new RateRecorder(clock::get);
+
+    @Test
+    void testCurrentSecondNotCounted() {
+        record(10, 2, 100);
+
+        Assertions.assertEquals(0.0, recorder.queriesPerSecond(1));
+
+        clock.addAndGet(SECOND);
+
+        RateMetrics rates = recorder.rates(1);
+        Assertions.assertEquals(10.0, rates.queriesPerSecond());
+        Assertions.assertEquals(2.0, rates.errorsPerSecond());
+        Assertions.assertEquals(100.0, rates.rowsPerSecond());
+    }
+
+    @Test
+    void testWindowAveragesCompleteSeconds() {
+        for (int second = 0; second < 10; second++) {
+            record(second, 0, 0);
+            clock.addAndGet(SECOND);
+        }
+
+        // The last three seconds recorded 7, 8 and 9 queries
+        Assertions.assertEquals(8.0, recorder.queriesPerSecond(3));
+        Assertions.assertEquals(4.5, recorder.queriesPerSecond(10));
+    }
+
+    @Test
+    void testYoungRecorderAveragesOverItsAge() {
+        record(30, 0, 0);
+        clock.addAndGet(2 * SECOND);
+
+        Assertions.assertEquals(15.0, recorder.queriesPerSecond(60));
+    }
+
+    @Test
+    void testReusedSlotDropsOldSecond() {
+        record(50, 0, 0);
+        clock.addAndGet(64 * SECOND);
+        record(3, 0, 0);
+        clock.addAndGet(SECOND);
+
+        Assertions.assertEquals(3.0, recorder.queriesPerSecond(1));
+        Assertions.assertEquals(3.0 / 60, recorder.queriesPerSecond(60), 1e-9);
+    }
+
+    @Test
+    void testIdleSecondsLowerTheRate() {
+        record(20, 0, 0);
+        clock.addAndGet(4 * SECOND);
+
+        Assertions.assertEquals(5.0, recorder.queriesPerSecond(4));
+        Assertions.assertEquals(0.0, recorder.queriesPerSecond(3));
+    }
+
+    @Test
+    void testWindowOutsideLimitsRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> recorder.rates(0));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> recorder.rates(RateRecorder.MAX_WINDOW_SECONDS + 1));
+    }
+
+    @Test
+    void testConcurrentWritersAllCounted() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    recorder.recordSuccess();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        clock.addAndGet(SECOND);
+
+        Assertions.assertEquals(80_000.0, recorder.queriesPerSecond(1));
+    }
+
+    private void record(int successes, int errors, long rows) {
+        for (int i = 0; i < successes; i++) {
+            recorder.recordSuccess();
+        }
+        for (int i = 0; i < errors; i++) {
+            recorder.recordError();
+        }
+        recorder.recordRows(rows);
+    }
+}
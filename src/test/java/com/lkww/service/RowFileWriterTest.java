@@ -0,0 +1,179 @@
+package com.lkww.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+class RowFileWriterTest {
+
+    @TempDir
+    Path directory;
+
+    private Connection connection;
+    private ExecutorService writer;
+
+    @BeforeEach
+    void createTable() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:rowfile", "sa", "");
+        writer = Executors.newSingleThreadExecutor();
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE T (ID INTEGER, BIG BIGINT, NAME VARCHAR(100), PRICE DECIMAL(10, 2), "
+                    + "BORN DATE, SEEN TIMESTAMP)");
+            stmt.execute("INSERT INTO T SELECT X, X * 10000000000, 'row-' || X, X / 4.0, DATEADD(DAY, X, DATE '2024-01-01'), "
+                    + "TIMESTAMP '2024-01-01 12:00:00.123456' FROM SYSTEM_RANGE(1, 500)");
+        }
+    }
+
+    @AfterEach
+    void dropTable() throws SQLException {
+        writer.shutdown();
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS T");
+        }
+        connection.close();
+    }
+
+    @Test
+    void testEncodingLayout() throws Exception {
+        Path file = directory.resolve("layout.ltx");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("INSERT INTO T VALUES (0, NULL, 'grüße', -12.5, NULL, NULL)");
+        }
+
+        write(file, "SELECT * FROM T WHERE ID IN (0, 1) ORDER BY ID", 4096);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)));
+        Assertions.assertEquals(RowFileWriter.MAGIC, in.readInt());
+        Assertions.assertEquals(6, in.readShort());
+        Assertions.assertEquals("ID", readName(in));
+        Assertions.assertEquals(Types.INTEGER, in.readInt());
+        Assertions.assertEquals("BIG", readName(in));
+        Assertions.assertEquals(Types.BIGINT, in.readInt());
+        Assertions.assertEquals("NAME", readName(in));
+        Assertions.assertEquals(Types.VARCHAR, in.readInt());
+        Assertions.assertEquals("PRICE", readName(in));
+        Assertions.assertEquals(Types.DECIMAL, in.readInt());
+        Assertions.assertEquals("BORN", readName(in));
+        Assertions.assertEquals(Types.DATE, in.readInt());
+        Assertions.assertEquals("SEEN", readName(in));
+        Assertions.assertEquals(Types.TIMESTAMP, in.readInt());
+
+        // BIG, BORN and SEEN are null
+        Assertions.assertEquals(0b110010, in.readByte());
+        Assertions.assertEquals(0, in.readInt());
+        Assertions.assertEquals("grüße", readString(in));
+        Assertions.assertEquals(new BigDecimal("-12.50"), readDecimal(in));
+
+        Assertions.assertEquals(0, in.readByte());
+        Assertions.assertEquals(1, in.readInt());
+        Assertions.assertEquals(10000000000L, in.readLong());
+        Assertions.assertEquals("row-1", readString(in));
+        Assertions.assertEquals(new BigDecimal("0.25"), readDecimal(in));
+        Assertions.assertEquals(LocalDate.of(2024, 1, 2).toEpochDay(), in.readInt());
+        LocalDateTime at = LocalDateTime.of(2024, 1, 1, 12, 0, 0, 123_456_000);
+        Assertions.assertEquals(ChronoUnit.MICROS.between(Instant.EPOCH, at.atZone(ZoneId.systemDefault())),
+                in.readLong());
+        Assertions.assertEquals(0, in.available());
+    }
+
+    @Test
+    void testRowsThatOverflowMoveToNextBuffer() throws Exception {
+        Path small = directory.resolve("small.ltx");
+        Path large = directory.resolve("large.ltx");
+
+        // Rows take around 45 bytes, so most buffers end with a row that only partly fits
+        long smallBytes = write(small, "SELECT * FROM T ORDER BY ID", 128);
+        long largeBytes = write(large, "SELECT * FROM T ORDER BY ID", 1 << 20);
+
+        Assertions.assertArrayEquals(Files.readAllBytes(large), Files.readAllBytes(small));
+        Assertions.assertEquals(Files.size(large), smallBytes);
+        Assertions.assertEquals(largeBytes, smallBytes);
+    }
+
+    @Test
+    void testRowLargerThanBufferRejected() throws Exception {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("UPDATE T SET NAME = REPEAT('x', 100) WHERE ID = 3");
+        }
+
+        SQLException e = Assertions.assertThrows(SQLException.class,
+                () -> write(directory.resolve("wide.ltx"), "SELECT * FROM T ORDER BY ID", 128));
+        Assertions.assertTrue(e.getMessage().contains("does not fit"));
+    }
+
+    @Test
+    void testWriteFailureSurfacesOnSwap() throws Exception {
+        Path full = Path.of("/dev/full");
+        Assumptions.assumeTrue(Files.isWritable(full));
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM T ORDER BY ID")) {
+            RowFileWriter file = new RowFileWriter(full, rs.getMetaData(), 128, Runnable::run);
+            IOException e = Assertions.assertThrows(IOException.class, () -> {
+                while (rs.next()) {
+                    file.writeRow(rs);
+                }
+            });
+            Assertions.assertTrue(rs.getRow() < 500);
+            Assertions.assertSame(e, Assertions.assertThrows(IOException.class, file::close));
+        }
+    }
+
+    private long write(Path file, String sql, int bufferBytes) throws Exception {
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            RowFileWriter rows = new RowFileWriter(file, rs.getMetaData(), bufferBytes, writer);
+            try {
+                while (rs.next()) {
+                    rows.writeRow(rs);
+                }
+            } finally {
+                rows.close();
+            }
+            return rows.getBytesWritten();
+        }
+    }
+
+    private static String readName(DataInputStream in) throws IOException {
+        byte[] name = new byte[in.readShort()];
+        in.readFully(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] value = new byte[in.readInt()];
+        in.readFully(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        int scale = in.readShort();
+        byte[] unscaled = new byte[in.readByte()];
+        in.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+}
@@ -0,0 +1,199 @@
+package com.lkww.service;
+
+import com.lkww.config.JdbcConfiguration;
+import com.lkww.config.RunStoreConfiguration;
+import com.lkww.controller.TestController.TestRequest;
+import com.lkww.service.RunStore.FinishedRun;
+import com.lkww.service.RunStore.RunSummary;
+import com.lkww.service.RunStore.StoredRun;
+import com.lkww.service.TestExecutionService.TestResult;
+import io.micronaut.json.JsonMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+class RunStoreTest {
+
+    private static final JsonMapper JSON = JsonMapper.createDefault();
+
+    @TempDir
+    Path directory;
+
+    private RunStore store;
+
+    @AfterEach
+    void closeStore() {
+        store.close();
+    }
+
+    @Test
+    void testRunsSurviveReopen() throws IOException {
+        open();
+        save("first", 100);
+        save("second", 200);
+
+        reopen();
+
+        Assertions.assertEquals(List.of("second", "first"), testIds());
+        StoredRun run = store.getRun("first");
+        Assertions.assertEquals(100, run.summary().totalQueries());
+        Assertions.assertEquals(100, run.latencyHistogram().getTotalCount());
+        Assertions.assertEquals(3, run.request().concurrency());
+    }
+
+    @Test
+    void testTornRecordCutOff() throws IOException {
+        open();
+        save("first", 100);
+        long intactSize = Files.size(data());
+        save("second", 200);
+        store.close();
+        byte[] bytes = Files.readAllBytes(data());
+        Files.write(data(), Arrays.copyOf(bytes, bytes.length - 10));
+
+        open();
+
+        Assertions.assertEquals(List.of("first"), testIds());
+        Assertions.assertEquals(intactSize, Files.size(data()));
+
+        save("third", 300);
+        reopen();
+        Assertions.assertEquals(List.of("third", "first"), testIds());
+        Assertions.assertEquals(300, store.getRun("third").summary().totalQueries());
+    }
+
+    @Test
+    void testCorruptRecordCutOff() throws IOException {
+        open();
+        save("first", 100);
+        long intactSize = Files.size(data());
+        save("second", 200);
+        store.close();
+        byte[] bytes = Files.readAllBytes(data());
+        bytes[bytes.length - 1] ^= 0x55;
+        Files.write(data(), bytes);
+        // The index still covers the whole file, only the checksum notices the damage once it is rebuilt
+        Files.delete(directory.resolve("runs.idx"));
+
+        open();
+
+        Assertions.assertEquals(List.of("first"), testIds());
+        Assertions.assertEquals(intactSize, Files.size(data()));
+    }
+
+    @Test
+    void testCorruptRecordRejectedOnRead() throws IOException {
+        open();
+        save("first", 100);
+        store.close();
+        byte[] bytes = Files.readAllBytes(data());
+        bytes[bytes.length - 1] ^= 0x55;
+        Files.write(data(), bytes);
+
+        // The index still matches the data file, so the record is only checked when it is read
+        open();
+
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, () -> store.getRun("first"));
+        Assertions.assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+    }
+
+    @Test
+    void testRunsListedByQuery() throws IOException {
+        open();
+        save("single", "SELECT 1", 100);
+        save("mix", "workload: reads, writes", 200);
+
+        Assertions.assertEquals(List.of("mix"), store.listRuns("workload: reads, writes", 10).stream()
+                .map(RunSummary::testId).toList());
+        Assertions.assertEquals("single", store.findBest("SELECT 1", null).summary().testId());
+    }
+
+    @Test
+    void testMissingIndexRebuilt() throws IOException {
+        open();
+        save("first", 100);
+        save("second", 200);
+        store.close();
+        Files.delete(directory.resolve("runs.idx"));
+
+        open();
+
+        Assertions.assertEquals(List.of("second", "first"), testIds());
+        Assertions.assertEquals(200, store.getRun("second").latencyHistogram().getTotalCount());
+        Assertions.assertTrue(Files.size(directory.resolve("runs.idx")) > 0);
+    }
+
+    @Test
+    void testStaleIndexRebuilt() throws IOException {
+        open();
+        save("first", 100);
+        long indexSize = Files.size(directory.resolve("runs.idx"));
+        save("second", 200);
+        store.close();
+        // An index that lost its last entry, as if the process died between the two appends
+        try (var channel = Files.newByteChannel(directory.resolve("runs.idx"), StandardOpenOption.WRITE)) {
+            channel.truncate(indexSize);
+        }
+
+        open();
+
+        Assertions.assertEquals(List.of("second", "first"), testIds());
+    }
+
+    @Test
+    void testUnknownRunRejected() {
+        open();
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> store.getRun("missing"));
+    }
+
+    private void open() {
+        RunStoreConfiguration configuration = new RunStoreConfiguration();
+        configuration.setDirectory(directory.toString());
+        store = new RunStore(configuration, JSON);
+        store.open();
+    }
+
+    private void reopen() {
+        store.close();
+        open();
+    }
+
+    private Path data() {
+        return directory.resolve("runs.dat");
+    }
+
+    private List<String> testIds() {
+        return store.listRuns(null, 10).stream().map(RunSummary::testId).toList();
+    }
+
+    private void save(String testId, int queries) throws IOException {
+        save(testId, "SELECT 1", queries);
+    }
+
+    private void save(String testId, String query, int queries) throws IOException {
+        LatencyHistogram latency = new LatencyHistogram();
+        latency.recordNanos(TimeUnit.MILLISECONDS.toNanos(2), queries);
+        // Read from JSON so only the fields the store looks at need to be given
+        TestRequest request = JSON.readValue("""
+                {"queryType": "SELECT", "duration": 10, "concurrency": 3, "query": "SELECT 1"}""", TestRequest.class);
+        TestResult result = JSON.readValue("""
+                {"testId": "%s", "totalQueries": %d, "successfulQueries": %d, "queriesPerSecond": %d, "latency": %s}"""
+                .formatted(testId, queries, queries, queries, new String(JSON.writeValueAsBytes(latency.summarize()))),
+                TestResult.class);
+        Instant startedAt = Instant.now();
+        FinishedRun run = new FinishedRun(testId, startedAt, startedAt.plusSeconds(10), query, request,
+                new JdbcConfiguration(), List.of());
+        store.save(run, result, latency, new PhaseRecorder());
+    }
+}
@@ -0,0 +1,97 @@
+package com.lkww.service;
+
+import com.lkww.controller.TestController.TestRequest;
+import com.lkww.service.TestQueueService.QueueEntry;
+import com.lkww.service.TestQueueService.QueueEntryState;
+import io.micronaut.scheduling.cron.CronExpression;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+class TestQueueServiceTest {
+
+    // A Monday
+    private static final ZonedDateTime MONDAY = ZonedDateTime.of(2026, 10, 19, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    @Test
+    void testOpenOnlyWhileRunEndsInsideWindow() {
+        List<CronExpression> window = TestQueueService.parseWindow("* 9-16 * * *");
+
+        Assertions.assertTrue(TestQueueService.isOpen(window, at(16, 50, 0), 300));
+        Assertions.assertFalse(TestQueueService.isOpen(window, at(16, 50, 0), 600));
+        Assertions.assertFalse(TestQueueService.isOpen(window, at(8, 59, 30), 60));
+        Assertions.assertTrue(TestQueueService.isOpen(window, at(9, 0, 0), 60));
+    }
+
+    @Test
+    void testOpenAcrossAdjacentExpressions() {
+        List<CronExpression> window = TestQueueService.parseWindow("* 9 * * *; * 10 * * *");
+
+        Assertions.assertEquals(2, window.size());
+        Assertions.assertTrue(TestQueueService.isOpen(window, at(9, 55, 0), 600));
+        Assertions.assertFalse(TestQueueService.isOpen(window, at(10, 55, 0), 600));
+    }
+
+    @Test
+    void testWindowFitsOnlyRunsShorterThanIt() {
+        List<CronExpression> window = TestQueueService.parseWindow("* 2 * * *");
+
+        Assertions.assertTrue(TestQueueService.windowEverFits(window, at(12, 0, 0), 3000));
+        Assertions.assertFalse(TestQueueService.windowEverFits(window, at(12, 0, 0), 3600));
+    }
+
+    @Test
+    void testWeeklyWindowFoundWithinLookahead() {
+        List<CronExpression> window = TestQueueService.parseWindow("* 3 * * SUN");
+
+        // The next Sunday is six days after the Monday
+        Assertions.assertTrue(TestQueueService.windowEverFits(window, at(4, 0, 0), 1800));
+    }
+
+    @Test
+    void testEmptyAndInvalidWindows() {
+        Assertions.assertTrue(TestQueueService.parseWindow(" ").isEmpty());
+        Assertions.assertTrue(TestQueueService.parseWindow(null).isEmpty());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> TestQueueService.parseWindow("* 25 * * *"));
+    }
+
+    @Test
+    void testRunningEntriesQueuedAgainAfterRestart() {
+        QueueEntry requeued = TestQueueService.restore(running("interrupted-once", 1));
+        Assertions.assertEquals(QueueEntryState.PENDING, requeued.state());
+        Assertions.assertNull(requeued.runId());
+        Assertions.assertNull(requeued.finishedAt());
+        Assertions.assertEquals(1, requeued.attempts());
+
+        QueueEntry failed = TestQueueService.restore(running("interrupted-often", 3));
+        Assertions.assertEquals(QueueEntryState.FAILED, failed.state());
+        Assertions.assertNotNull(failed.finishedAt());
+        Assertions.assertNull(failed.runId());
+
+        QueueEntry waiting = pending("waiting");
+        Assertions.assertEquals(waiting, TestQueueService.restore(waiting));
+    }
+
+    private static ZonedDateTime at(int hour, int minute, int second) {
+        return MONDAY.withHour(hour).withMinute(minute).withSecond(second);
+    }
+
+    private static QueueEntry running(String entryId, int attempts) {
+        return new QueueEntry(entryId, null, test(), null, null, null, QueueEntryState.RUNNING, Instant.now(),
+                Instant.now(), null, "run-" + entryId, attempts, null);
+    }
+
+    private static QueueEntry pending(String entryId) {
+        return new QueueEntry(entryId, null, test(), null, null, null, QueueEntryState.PENDING, Instant.now(), null,
+                null, null, 0, null);
+    }
+
+    private static TestRequest test() {
+        return new TestRequest("SELECT", 10, 1, "SELECT 1", null, null, null, null, null, null, null, null, null,
+                null, null, null, null, null);
+    }
+}
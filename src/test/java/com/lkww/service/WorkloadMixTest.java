@@ -0,0 +1,102 @@
+package com.lkww.service;
+
+import com.lkww.service.TestExecutionService.ParameterSource;
+import com.lkww.service.TestExecutionService.ParameterSourceType;
+import com.lkww.service.TestExecutionService.WorkloadStatement;
+import com.lkww.service.WorkloadMix.MixStatement;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class WorkloadMixTest {
+
+    @Test
+    void testStatementsPickedInProportionToWeight() {
+        try (WorkloadMix mix = WorkloadMix.of(List.of(
+                new WorkloadStatement("read", "SELECT 1", 3, null),
+                new WorkloadStatement("write", "SELECT 2", 1, null)))) {
+            Map<String, Integer> picks = new HashMap<>();
+            for (int i = 0; i < 40_000; i++) {
+                picks.merge(mix.next().getName(), 1, Integer::sum);
+            }
+
+            Assertions.assertEquals(0.75, picks.get("read") / 40_000.0, 0.02);
+            Assertions.assertEquals(0.25, picks.get("write") / 40_000.0, 0.02);
+        }
+    }
+
+    @Test
+    void testWeightBelowOneRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> WorkloadMix.of(List.of(new WorkloadStatement(null, "SELECT 1", 0, null))));
+    }
+
+    @Test
+    void testSequenceWrapsAtMax() throws SQLException {
+        ParameterSource sequence = new ParameterSource(ParameterSourceType.SEQUENCE, null, null, null, 9L, 3L, 2L);
+
+        Assertions.assertEquals(List.of(3L, 5L, 7L, 9L, 3L, 5L), bindAll(sequence, 6));
+    }
+
+    @Test
+    void testSequenceWithoutMaxKeepsCounting() throws SQLException {
+        ParameterSource sequence = new ParameterSource(ParameterSourceType.SEQUENCE, null, null, null, null, null, null);
+
+        Assertions.assertEquals(List.of(1L, 2L, 3L, 4L), bindAll(sequence, 4));
+    }
+
+    @Test
+    void testSequenceMaxBelowStartRejected() {
+        ParameterSource sequence = new ParameterSource(ParameterSourceType.SEQUENCE, null, null, null, 2L, 5L, null);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> mixOf(sequence));
+    }
+
+    @Test
+    void testRandomStaysWithinBounds() throws SQLException {
+        ParameterSource random = new ParameterSource(ParameterSourceType.RANDOM, null, null, -2L, 2L, null, null);
+
+        List<Long> values = bindAll(random, 1000);
+
+        Assertions.assertTrue(values.stream().allMatch(value -> value >= -2 && value <= 2));
+        Assertions.assertTrue(values.contains(-2L));
+        Assertions.assertTrue(values.contains(2L));
+    }
+
+    @Test
+    void testRandomMaxOfLongRangeRejected() {
+        ParameterSource random = new ParameterSource(ParameterSourceType.RANDOM, null, null, 0L, Long.MAX_VALUE,
+                null, null);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> mixOf(random));
+    }
+
+    private static WorkloadMix mixOf(ParameterSource source) {
+        return WorkloadMix.of(List.of(new WorkloadStatement(null, "SELECT ?", null, List.of(source))));
+    }
+
+    private static List<Long> bindAll(ParameterSource source, int count) throws SQLException {
+        List<Long> values = new ArrayList<>();
+        PreparedStatement stmt = (PreparedStatement) Proxy.newProxyInstance(WorkloadMixTest.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("setLong")) {
+                        values.add((Long) args[1]);
+                    }
+                    return null;
+                });
+        try (WorkloadMix mix = mixOf(source)) {
+            MixStatement statement = mix.next();
+            for (int i = 0; i < count; i++) {
+                statement.bind(stmt);
+            }
+        }
+        return values;
+    }
+}